@@ -1,14 +0,0 @@
-package com.rajesh.files.fileprocessor;
-
-import com.zaxxer.hikari.HikariDataSource;
-import org.springframework.context.annotation.Bean;
-import org.springframework.context.annotation.Configuration;
-import org.springframework.jdbc.core.JdbcTemplate;
-
-@Configuration
-public class AppConfig {
-   @Bean
-   public JdbcTemplate jdbcTemplate(HikariDataSource hikariDataSource){
-       return new JdbcTemplate(hikariDataSource);
-   }
-}
\ No newline at end of file
@@ -0,0 +1,131 @@
+package com.rajesh.files.fileprocessor.benchmark;
+
+import com.rajesh.files.fileprocessor.domain.ProcedureCodeData;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic proc code records for the benchmarks.
+ * <p>
+ * A key id maps to one (geography id, proc code, indicator, level) key; FAC_MSA rows exist for the key ids
+ * below {@code tableKeys}, so the hit ratio of the input is {@code tableKeys / keySpace}.
+ */
+public final class BenchmarkData {
+
+    public static final String HEADER = "GEOGRAPHY ID|PROCEDURE CODE|PROCEDURE CODE DESCRIPTION|MODIFIER|ACTUAL/DERIVED INDICATOR|GEOGRAPHIC LEVEL|GEOGRAPHIC DESCRIPTION|REFERENCE AMOUNT";
+    public static final long SEED = 20221215L;
+    private static final int GEOGRAPHIES = 997;
+    private static final String[] INDICATORS = {"Actual", "Derived"};
+    private static final String[] LEVELS = {"MSA", "Census Division", "State", "National"};
+    private static final String[] MODIFIERS = {"  ", "26", "TC", "59"};
+    private static final LocalDate FIRST_EFF_DATE = LocalDate.of(2019, 1, 2);
+    private static final LocalDate INFINITE_END_DATE = LocalDate.of(9999, 12, 31);
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * @param count    input records
+     * @param keySpace key ids are drawn uniformly from [0, keySpace)
+     */
+    public static List<ProcedureCodeData> inputRecords(int count, int keySpace) {
+        Random random = new Random(SEED);
+        List<ProcedureCodeData> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int keyId = random.nextInt(keySpace);
+            records.add(record(keyId, MODIFIERS[random.nextInt(MODIFIERS.length)], 100 + random.nextInt(500000) / 100.0, null, null));
+        }
+        return records;
+    }
+
+    /**
+     * FAC_MSA rows of the key ids in [0, tableKeys), each key with {@code rowsPerKey} yearly versions
+     */
+    public static List<ProcedureCodeData> facMsaRows(int tableKeys, int rowsPerKey) {
+        List<ProcedureCodeData> rows = new ArrayList<>(tableKeys * rowsPerKey);
+        for (int keyId = 0; keyId < tableKeys; keyId++) {
+            for (int version = 0; version < rowsPerKey; version++) {
+                rows.add(facMsaRow(keyId, version));
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * FAC_MSA rows of the keys of the given input records that exist in a table of {@code tableKeys} keys
+     */
+    public static List<ProcedureCodeData> facMsaRowsFor(List<ProcedureCodeData> inputRecords, int tableKeys, int rowsPerKey) {
+        List<ProcedureCodeData> rows = new ArrayList<>();
+        boolean[] seen = new boolean[tableKeys];
+        for (ProcedureCodeData input : inputRecords) {
+            int keyId = keyId(input);
+            if (keyId < tableKeys && !seen[keyId]) {
+                seen[keyId] = true;
+                for (int version = 0; version < rowsPerKey; version++) {
+                    rows.add(facMsaRow(keyId, version));
+                }
+            }
+        }
+        return rows;
+    }
+
+    public static String line(ProcedureCodeData record) {
+        return record.getGeographyId() + "|" + record.getProcedureCode() + "|" + record.getProcedureCodeDescription()
+                + "|" + record.getModifier() + "|" + record.getActualDerivedIndicator() + "|" + record.getGeographicLevel()
+                + "|" + record.getGeographicDescription() + "|" + record.getReferenceAmount();
+    }
+
+    /**
+     * @return a temporary input file with the header and the given records
+     */
+    public static Path writeInputFile(List<ProcedureCodeData> records) throws IOException {
+        Path file = Files.createTempFile("proc-code-benchmark", ".txt");
+        file.toFile().deleteOnExit();
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.write('\n');
+            for (ProcedureCodeData record : records) {
+                writer.write(line(record));
+                writer.write('\n');
+            }
+        }
+        return file;
+    }
+
+    private static ProcedureCodeData facMsaRow(int keyId, int version) {
+        return record(keyId, "  ", 1000 + keyId % 1000 + version / 10.0,
+                FIRST_EFF_DATE.plusYears(version), INFINITE_END_DATE);
+    }
+
+    private static ProcedureCodeData record(int keyId, String modifier, double amount, LocalDate effDate, LocalDate endDate) {
+        return new ProcedureCodeData(
+                1 + keyId % GEOGRAPHIES,
+                10000 + keyId / GEOGRAPHIES / (INDICATORS.length * LEVELS.length),
+                "PROCEDURE " + keyId,
+                modifier,
+                INDICATORS[(keyId / GEOGRAPHIES) % INDICATORS.length],
+                LEVELS[(keyId / GEOGRAPHIES / INDICATORS.length) % LEVELS.length],
+                "GEOGRAPHY " + (1 + keyId % GEOGRAPHIES),
+                amount,
+                effDate,
+                endDate);
+    }
+
+    private static int keyId(ProcedureCodeData record) {
+        int indicator = INDICATORS[0].equals(record.getActualDerivedIndicator()) ? 0 : 1;
+        int level = 0;
+        while (!LEVELS[level].equals(record.getGeographicLevel())) {
+            level++;
+        }
+        int group = (record.getProcedureCode() - 10000) * (INDICATORS.length * LEVELS.length) + level * INDICATORS.length + indicator;
+        return group * GEOGRAPHIES + record.getGeographyId() - 1;
+    }
+}
@@ -0,0 +1,29 @@
+package com.rajesh.files.fileprocessor.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the stage benchmarks with the GC profiler, so every result comes with its allocation rate (gc.alloc.rate.norm).
+ * <pre>
+ * mvn -f procedure-code-processor install -DskipTests
+ * mvn -f procedure-code-benchmarks package
+ * java -jar procedure-code-benchmarks/target/benchmarks.jar [JMH options, e.g. ParseBenchmark -p batchSize=1000]
+ * </pre>
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        Options options = new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
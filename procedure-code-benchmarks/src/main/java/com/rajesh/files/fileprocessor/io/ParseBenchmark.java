@@ -0,0 +1,86 @@
+package com.rajesh.files.fileprocessor.io;
+
+import com.rajesh.files.fileprocessor.benchmark.BenchmarkData;
+import com.rajesh.files.fileprocessor.domain.ProcedureCodeData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parse stage: one batch of input lines into records, from the mapped file and from Strings, and into the columns
+ * of the processing path
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class ParseBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    private int batchSize;
+
+    private Path inputFile;
+    private ProcedureCodeFileReader reader;
+    private InputBatch batch;
+    private List<String> lines;
+    // warm dictionary, as after the first batches of a run
+    private StringDictionary dictionary;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        List<ProcedureCodeData> records = BenchmarkData.inputRecords(batchSize, 4 * batchSize);
+        inputFile = BenchmarkData.writeInputFile(records);
+        reader = new ProcedureCodeFileReader(inputFile);
+        reader.readHeader();
+        batch = reader.nextBatch(batchSize);
+        dictionary = new StringDictionary();
+        batch.parse(dictionary);
+        lines = new ArrayList<>(batchSize);
+        for (ProcedureCodeData record : records) {
+            lines.add(BenchmarkData.line(record));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        reader.close();
+        Files.deleteIfExists(inputFile);
+    }
+
+    @Benchmark
+    public List<ProcedureCodeData> parseMappedBatch() {
+        return batch.parse();
+    }
+
+    @Benchmark
+    public ProcedureCodeBatch parseMappedBatchColumns() {
+        return batch.parse(dictionary);
+    }
+
+    @Benchmark
+    public void parseStrings(Blackhole blackhole) {
+        for (int i = 0; i < lines.size(); i++) {
+            blackhole.consume(ProcedureCodeLineParser.parse(lines.get(i), i + 2));
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.rajesh.files.fileprocessor.io;
+
+import com.rajesh.files.fileprocessor.benchmark.BenchmarkData;
+import com.rajesh.files.fileprocessor.domain.ProcedureCodeData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write stage: output rows of one batch as {@link ProcedureCodeData#content()} Strings and through the CSV writer
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class SerializeBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    private int batchSize;
+
+    private List<ProcedureCodeData> rows;
+    private ProcedureCodeCsvWriter writer;
+    private LocalDate today;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        rows = BenchmarkData.facMsaRows(batchSize, 1);
+        writer = new ProcedureCodeCsvWriter(new DiscardingChannel(), "\n");
+        today = LocalDate.now();
+    }
+
+    @Benchmark
+    public void content(Blackhole blackhole) {
+        for (int i = 0; i < rows.size(); i++) {
+            blackhole.consume(rows.get(i).content());
+        }
+    }
+
+    @Benchmark
+    public void contentBytes(Blackhole blackhole) {
+        for (int i = 0; i < rows.size(); i++) {
+            blackhole.consume((rows.get(i).content() + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Benchmark
+    public long csvWriter() throws IOException {
+        for (int i = 0; i < rows.size(); i++) {
+            ProcedureCodeData row = rows.get(i);
+            writer.write(row, row.getModifier(), row.getEffectiveDate(), today);
+        }
+        writer.flush();
+        return writer.getBytesWritten();
+    }
+
+    /**
+     * Channel that accepts and drops everything, the benchmark measures encoding only
+     */
+    private static class DiscardingChannel implements WritableByteChannel {
+
+        @Override
+        public int write(ByteBuffer src) {
+            int bytes = src.remaining();
+            src.position(src.limit());
+            return bytes;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.rajesh.files.fileprocessor.repository;
+
+import com.rajesh.files.fileprocessor.benchmark.BenchmarkData;
+import com.rajesh.files.fileprocessor.domain.ProcedureCodeData;
+import com.rajesh.files.fileprocessor.domain.ProcessStatistics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup stage: key dedup and IN list SQL of {@code findAllProcedureCodes}, and the whole lookup against
+ * an in-memory H2 FAC_MSA of {@code tableRows} rows. Half of the input keys exist in the table.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class LookupBenchmark {
+
+    private static final int ROWS_PER_KEY = 2;
+
+    @Param({"100", "1000", "10000"})
+    private int batchSize;
+
+    @Param({"10000", "100000"})
+    private int tableRows;
+
+    private List<ProcedureCodeData> inputRecords;
+    private SingleConnectionDataSource dataSource;
+    private ProcedureCodeLookupRepository repository;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int tableKeys = tableRows / ROWS_PER_KEY;
+        inputRecords = BenchmarkData.inputRecords(batchSize, 2 * tableKeys);
+
+        dataSource = new SingleConnectionDataSource("jdbc:h2:mem:fac_msa_benchmark;DB_CLOSE_DELAY=-1", "sa", "", true);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("DROP TABLE IF EXISTS FAC_MSA");
+        jdbcTemplate.execute("CREATE TABLE FAC_MSA (GEOGRAPHY_ID INTEGER NOT NULL, PROC_CODE INTEGER NOT NULL, PROC_CODE_DESC VARCHAR(1000), "
+                + "MODIFIER VARCHAR(128), ACTUAL_DERIVED_IND VARCHAR(64), GEOGRAPHIC_LEVEL VARCHAR(64), GEOGRAPHIC_DESC VARCHAR(500), "
+                + "REFERENCE_AMOUNT DOUBLE NOT NULL, EFF_DT DATE NOT NULL, END_DT DATE NOT NULL)");
+        jdbcTemplate.execute("CREATE INDEX FAC_MSA_KEY ON FAC_MSA (GEOGRAPHY_ID, PROC_CODE, ACTUAL_DERIVED_IND, GEOGRAPHIC_LEVEL, END_DT)");
+        jdbcTemplate.batchUpdate("INSERT INTO FAC_MSA VALUES (?,?,?,?,?,?,?,?,?,?)", BenchmarkData.facMsaRows(tableKeys, ROWS_PER_KEY), 1000,
+                (ps, row) -> {
+                    ps.setInt(1, row.getGeographyId());
+                    ps.setInt(2, row.getProcedureCode());
+                    ps.setString(3, row.getProcedureCodeDescription());
+                    ps.setString(4, row.getModifier());
+                    ps.setString(5, row.getActualDerivedIndicator());
+                    ps.setString(6, row.getGeographicLevel());
+                    ps.setString(7, row.getGeographicDescription());
+                    ps.setDouble(8, row.getReferenceAmount());
+                    ps.setDate(9, Date.valueOf(row.getEffectiveDate()));
+                    ps.setDate(10, Date.valueOf(row.getEndDate()));
+                });
+
+        repository = new ProcedureCodeLookupRepository();
+        ReflectionTestUtils.setField(repository, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(repository, "inListSizes", new int[]{1, 10, 50, 100, 250, 500, 1000});
+        ReflectionTestUtils.setField(repository, "stagingThreshold", 2000);
+        ReflectionTestUtils.setField(repository, "maxParameters", 32767);
+        repository.prepareInListStatements();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dataSource.destroy();
+    }
+
+    @Benchmark
+    public List<ProcedureCodeData> distinctKeys() {
+        return ProcedureCodeLookupRepository.distinctKeys(inputRecords);
+    }
+
+    /**
+     * What building the statement text per chunk would cost; the repository prepares these once at startup
+     */
+    @Benchmark
+    public String inListSql() {
+        return ProcedureCodeLookupRepository.inListSql(Math.min(batchSize, 1000));
+    }
+
+    @Benchmark
+    public List<ProcedureCodeData> findAllProcedureCodes() {
+        return repository.findAllProcedureCodes(inputRecords, LocalDate.now(), new ProcessStatistics());
+    }
+}
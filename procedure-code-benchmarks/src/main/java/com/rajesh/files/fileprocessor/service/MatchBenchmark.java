@@ -0,0 +1,87 @@
+package com.rajesh.files.fileprocessor.service;
+
+import com.rajesh.files.fileprocessor.benchmark.BenchmarkData;
+import com.rajesh.files.fileprocessor.domain.ProcedureCodeData;
+import com.rajesh.files.fileprocessor.domain.ProcessStatistics;
+import com.rajesh.files.fileprocessor.io.ProcedureCodeBatch;
+import com.rajesh.files.fileprocessor.io.StringDictionary;
+import com.rajesh.files.fileprocessor.repository.ProcedureCodeLookupRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Match stage: {@code matchRecordsAndGenerateOutputData} with the lookup answered from memory, and the match
+ * index on its own. 80% of the input keys have {@code rowsPerKey} FAC_MSA rows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class MatchBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    private int batchSize;
+
+    @Param({"1", "4"})
+    private int rowsPerKey;
+
+    private List<ProcedureCodeData> inputRecords;
+    private ProcedureCodeBatch inputBatch;
+    private List<ProcedureCodeData> facMsaRows;
+    private ProcedureCodeProcessorService service;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int keySpace = 4 * batchSize;
+        inputRecords = BenchmarkData.inputRecords(batchSize, keySpace);
+        facMsaRows = BenchmarkData.facMsaRowsFor(inputRecords, keySpace * 4 / 5, rowsPerKey);
+        inputBatch = new ProcedureCodeBatch(new StringDictionary(), batchSize);
+        for (ProcedureCodeData record : inputRecords) {
+            inputBatch.add(record);
+        }
+
+        service = new ProcedureCodeProcessorService();
+        ReflectionTestUtils.setField(service, "lookupRepository", new ProcedureCodeLookupRepository() {
+            @Override
+            public List<ProcedureCodeData> findAllProcedureCodes(ProcedureCodeBatch inputProcCodeRecords, LocalDate effectiveOn,
+                                                                 ProcessStatistics batchStatistics) {
+                return facMsaRows;
+            }
+        });
+        ReflectionTestUtils.setField(service, "snapshotService", new FacMsaSnapshotService());
+        ReflectionTestUtils.setField(service, "keyFilterService", new FacMsaKeyFilterService());
+        ReflectionTestUtils.setField(service, "metrics", new ProcessMetrics(new SimpleMeterRegistry()));
+    }
+
+    @Benchmark
+    public BatchResult matchRecordsAndGenerateOutputData() {
+        return service.matchRecordsAndGenerateOutputData(inputBatch, LocalDate.now());
+    }
+
+    @Benchmark
+    public void matchIndex(Blackhole blackhole) {
+        ProcedureCodeMatchIndex index = ProcedureCodeMatchIndex.build(facMsaRows);
+        for (int i = 0; i < inputRecords.size(); i++) {
+            blackhole.consume(index.probe(inputRecords.get(i)));
+        }
+    }
+}
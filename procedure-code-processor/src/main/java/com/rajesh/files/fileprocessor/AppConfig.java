@@ -0,0 +1,42 @@
+package com.rajesh.files.fileprocessor;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+@EnableScheduling
+public class AppConfig {
+   @Bean
+   public JdbcTemplate jdbcTemplate(HikariDataSource hikariDataSource){
+       return new JdbcTemplate(hikariDataSource);
+   }
+
+   @Bean
+   public ThreadPoolTaskExecutor processJobExecutor(@Value("${process.jobs.max-concurrent:2}") int maxConcurrentJobs) {
+       ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+       executor.setCorePoolSize(maxConcurrentJobs);
+       executor.setMaxPoolSize(maxConcurrentJobs);
+       executor.setThreadNamePrefix("proc-code-job-");
+       executor.setWaitForTasksToCompleteOnShutdown(false);
+       return executor;
+   }
+
+   /**
+    * Runs the streams of POST /api/file/stream only, handed over per request; other async requests keep the MVC default.
+    * The controller admits at most max-concurrent streams, the queue only covers a thread that is still returning to the pool.
+    */
+   @Bean
+   public ThreadPoolTaskExecutor processStreamExecutor(@Value("${process.stream.max-concurrent:2}") int maxConcurrentStreams) {
+       ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+       executor.setCorePoolSize(maxConcurrentStreams);
+       executor.setMaxPoolSize(maxConcurrentStreams);
+       executor.setQueueCapacity(maxConcurrentStreams);
+       executor.setThreadNamePrefix("proc-code-stream-");
+       return executor;
+   }
+}
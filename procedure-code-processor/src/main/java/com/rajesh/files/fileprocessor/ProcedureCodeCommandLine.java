@@ -0,0 +1,128 @@
+package com.rajesh.files.fileprocessor;
+
+import com.rajesh.files.fileprocessor.domain.ProcessStatus;
+import com.rajesh.files.fileprocessor.exception.BadInputDataException;
+import com.rajesh.files.fileprocessor.exception.BadOutputDataException;
+import com.rajesh.files.fileprocessor.exception.EmptyInputFileException;
+import com.rajesh.files.fileprocessor.exception.InputFileMissingException;
+import com.rajesh.files.fileprocessor.exception.MissingHeaderInputFileException;
+import com.rajesh.files.fileprocessor.exception.ShardFailedException;
+import com.rajesh.files.fileprocessor.service.ProcedureCodeProcessorService;
+import com.rajesh.files.fileprocessor.service.ShardedRunService;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.dao.DataAccessException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Headless one-shot run for scheduled batch jobs: {@code java -jar procedure-code-processor-exec.jar run [input] [output]}.
+ * <p>
+ * Starts with the {@code cli} profile (application-cli.properties): no web server, no JPA/Hibernate bootstrap,
+ * no H2 console, lazy beans, so only the JdbcTemplate lookups and what the run needs are created. Input and output
+ * default to input.file.location and output.file.location; any {@code --property=value} argument overrides the configuration.
+ * The exit code tells the scheduler what went wrong, see the EXIT_ constants.
+ * <p>
+ * With {@code --sharded} the instance joins the sharded run of the input (see {@link ShardedRunService}): start the same
+ * command on more nodes sharing the database and the files to finish it sooner. Each exits once the output is merged.
+ * <p>
+ * With {@code --training-run} the context is started and closed without processing, for a class data sharing archive
+ * (JDK 13+ runtime, the jar extracted so classes load from plain jars):
+ * {@code java -XX:ArchiveClassesAtExit=app.jsa -cp ... ProcedureCodeProcessorApplication run --training-run},
+ * then every run with {@code -XX:SharedArchiveFile=app.jsa}.
+ */
+public class ProcedureCodeCommandLine {
+
+    public static final String COMMAND = "run";
+    public static final String TRAINING_RUN = "--training-run";
+    public static final String SHARDED = "--sharded";
+
+    public static final int EXIT_OK = 0;
+    public static final int EXIT_FAILED = 1;
+    public static final int EXIT_USAGE = 2;
+    public static final int EXIT_INPUT_MISSING = 3;
+    public static final int EXIT_BAD_INPUT = 4;
+    public static final int EXIT_BAD_OUTPUT = 5;
+    public static final int EXIT_DATABASE = 6;
+
+    public static boolean isCommand(String[] args) {
+        return args.length > 0 && COMMAND.equals(args[0]);
+    }
+
+    /**
+     * @param args {@code run}, then input and output file and Spring {@code --property=value} arguments
+     * @return exit code of the run
+     */
+    public static int run(String[] args) {
+        List<String> files = new ArrayList<>();
+        boolean trainingRun = false;
+        boolean sharded = false;
+        for (String arg : Arrays.copyOfRange(args, 1, args.length)) {
+            if (TRAINING_RUN.equals(arg)) {
+                trainingRun = true;
+            } else if (SHARDED.equals(arg)) {
+                sharded = true;
+            } else if (!arg.startsWith("--")) {
+                files.add(arg);
+            }
+        }
+        if (files.size() > 2) {
+            System.out.println("Usage: run [input file] [output file] [--training-run] [--sharded] [--property=value ...]");
+            return EXIT_USAGE;
+        }
+
+        // devtools restarts in a new class loader before the profile's properties are read
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        ConfigurableApplicationContext context;
+        try {
+            context = new SpringApplicationBuilder(ProcedureCodeProcessorApplication.class)
+                    .web(WebApplicationType.NONE)
+                    .profiles("cli")
+                    .run(args);
+        } catch (RuntimeException e) {
+            System.out.println("Startup failed: " + e.getMessage());
+            return EXIT_FAILED;
+        }
+
+        int exitCode;
+        try {
+            if (trainingRun) {
+                exitCode = EXIT_OK;
+            } else {
+                String inputFile = files.isEmpty() ? null : files.get(0);
+                String outputFile = files.size() < 2 ? null : files.get(1);
+                ProcessStatus status;
+                if (sharded) {
+                    status = context.getBean(ShardedRunService.class).process(inputFile, outputFile);
+                } else {
+                    ProcedureCodeProcessorService service = context.getBean(ProcedureCodeProcessorService.class);
+                    status = service.processProcData(service.newRun(inputFile, outputFile));
+                }
+                System.out.println(status.getDescription());
+                System.out.println(status.getStatistics());
+                exitCode = EXIT_OK;
+            }
+        } catch (InputFileMissingException e) {
+            exitCode = failed(EXIT_INPUT_MISSING, e);
+        } catch (BadInputDataException | EmptyInputFileException | MissingHeaderInputFileException | ShardFailedException e) {
+            exitCode = failed(EXIT_BAD_INPUT, e);
+        } catch (BadOutputDataException e) {
+            exitCode = failed(EXIT_BAD_OUTPUT, e);
+        } catch (DataAccessException e) {
+            exitCode = failed(EXIT_DATABASE, e);
+        } catch (Exception e) {
+            exitCode = failed(EXIT_FAILED, e);
+        }
+        int code = exitCode;
+        return SpringApplication.exit(context, () -> code);
+    }
+
+    private static int failed(int exitCode, Exception e) {
+        System.out.println("FAIL (" + exitCode + "): " + e.getMessage());
+        return exitCode;
+    }
+}
@@ -7,6 +7,9 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 public class ProcedureCodeProcessorApplication {
 
 	public static void main(String[] args) {
+		if (ProcedureCodeCommandLine.isCommand(args)) {
+			System.exit(ProcedureCodeCommandLine.run(args));
+		}
 		SpringApplication.run(ProcedureCodeProcessorApplication.class, args);
 	}
 
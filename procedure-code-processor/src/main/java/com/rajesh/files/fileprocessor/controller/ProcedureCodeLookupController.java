@@ -0,0 +1,92 @@
+package com.rajesh.files.fileprocessor.controller;
+
+import com.rajesh.files.fileprocessor.domain.ProcedureCodeData;
+import com.rajesh.files.fileprocessor.domain.ProcedureCodeIndexInfo;
+import com.rajesh.files.fileprocessor.domain.ProcedureCodeKey;
+import com.rajesh.files.fileprocessor.service.ProcedureCodeIndexService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Current procedure code records from the in-memory lookup index, see {@link ProcedureCodeIndexService}
+ */
+@RestController
+@RequestMapping("/api/procedure-codes")
+public class ProcedureCodeLookupController {
+
+    @Autowired
+    ProcedureCodeIndexService indexService;
+
+    @Value("${lookup.index.max-batch-keys:1000}")
+    private int maxBatchKeys;
+
+    @Value("${lookup.index.max-results:100}")
+    private int maxResults;
+
+    /**
+     * Point lookup: ?geographyId=1&procCode=10004&indicator=Derived&level=MSA, indicator and level ignore case
+     */
+    @GetMapping(params = {"geographyId", "procCode"})
+    public ResponseEntity<ProcedureCodeData> find(@RequestParam int geographyId, @RequestParam int procCode,
+                                                  @RequestParam(defaultValue = "") String indicator,
+                                                  @RequestParam(defaultValue = "") String level) {
+        ProcedureCodeData found = indexService.find(geographyId, procCode, indicator, level);
+        return found == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(found);
+    }
+
+    /**
+     * Batch lookup: ?key=1|10004|Derived|MSA&key=..., one record per key in key order, null where there is none
+     */
+    @GetMapping(params = "key")
+    public List<ProcedureCodeData> findAll(@RequestParam("key") List<String> keys) {
+        if (keys.size() > maxBatchKeys) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "At most " + maxBatchKeys + " keys per request");
+        }
+        List<ProcedureCodeKey> parsed = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            parsed.add(parseKey(key));
+        }
+        return indexService.findAll(parsed);
+    }
+
+    /**
+     * Prefix search on the proc code description, ignoring case: ?description=FINE NEEDLE&limit=20
+     */
+    @GetMapping(params = "description")
+    public List<ProcedureCodeData> search(@RequestParam String description, @RequestParam(required = false) Integer limit) {
+        return indexService.searchDescription(description, limit == null ? maxResults : Math.max(0, Math.min(limit, maxResults)));
+    }
+
+    /**
+     * Records, estimated size and build time of the current index
+     */
+    @GetMapping("/index")
+    public ProcedureCodeIndexInfo index() {
+        return indexService.info();
+    }
+
+    // geography id|proc code|indicator|level, as in the input file
+    private static ProcedureCodeKey parseKey(String key) {
+        String[] parts = key.split("\\|", -1);
+        if (parts.length != 4) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Key must be geographyId|procCode|indicator|level: " + key);
+        }
+        try {
+            return new ProcedureCodeKey(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()),
+                    parts[2].toUpperCase(Locale.ROOT), parts[3].toUpperCase(Locale.ROOT));
+        } catch (NumberFormatException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Key must be geographyId|procCode|indicator|level: " + key);
+        }
+    }
+}
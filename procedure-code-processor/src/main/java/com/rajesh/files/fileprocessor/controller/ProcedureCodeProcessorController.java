@@ -1,31 +1,173 @@
 package com.rajesh.files.fileprocessor.controller;
 
+import com.rajesh.files.fileprocessor.domain.IngestedFile;
+import com.rajesh.files.fileprocessor.domain.ProcessJob;
+import com.rajesh.files.fileprocessor.domain.ProcessStatistics;
 import com.rajesh.files.fileprocessor.domain.ProcessStatus;
+import com.rajesh.files.fileprocessor.service.DirectoryIngestionService;
 import com.rajesh.files.fileprocessor.service.ProcedureCodeProcessorService;
+import com.rajesh.files.fileprocessor.service.ProcessJobService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @RestController
 @RequestMapping("/api/file")
 public class ProcedureCodeProcessorController {
 
+    private static final MediaType TEXT_CSV = MediaType.parseMediaType("text/csv");
+    private static final Logger log = LoggerFactory.getLogger(ProcedureCodeProcessorController.class);
+
+    @Autowired
+    ProcessJobService jobService;
+
     @Autowired
-    ProcedureCodeProcessorService service;
+    DirectoryIngestionService ingestionService;
+
+    @Autowired
+    ProcedureCodeProcessorService processorService;
+
+    @Autowired
+    @Qualifier("processStreamExecutor")
+    AsyncTaskExecutor processStreamExecutor;
+
+    // streams at a time, more are rejected with 503
+    @Value("${process.stream.max-concurrent:2}")
+    private int maxConcurrentStreams;
+
+    // ms a stream may take
+    @Value("${process.stream.timeout:3600000}")
+    private long streamTimeout;
+
+    private Semaphore streamPermits;
+
+    @PostConstruct
+    public void createStreamPermits() {
+        streamPermits = new Semaphore(maxConcurrentStreams);
+    }
 
+    /**
+     * Synchronous processing of the configured files, kept for existing callers. Goes through the job
+     * service so it never runs next to a job writing the same files.
+     */
     @GetMapping("/process")
     public ProcessStatus process(){
         ProcessStatus processStatus = null;
         try {
-             processStatus = service.processProcData();
+            ProcessJob job = jobService.submit();
+            processStatus = jobService.await(job.getId());
             System.out.println(processStatus);
-        } catch (IOException e) {
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             throw new RuntimeException(e);
         }
 
         return processStatus;
     }
+
+    /**
+     * Process the input file posted as the request body and stream the output CSV back while it is produced,
+     * nothing is staged on disk. Runs on processStreamExecutor; 503 when process.stream.max-concurrent streams run.
+     * <p>
+     * A failure before the first rows are sent is answered like a failed run. Once rows are sent the status is 200,
+     * so the output then ends with a row whose first column is {@code ERROR}, followed by the failure message.
+     *
+     * @param runDate date the changes are effective, today when not given
+     */
+    @PostMapping(value = "/stream", produces = "text/csv")
+    public WebAsyncTask<Void> stream(HttpServletRequest request, HttpServletResponse response,
+                                     @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate runDate) {
+        if (!streamPermits.tryAcquire()) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "All " + maxConcurrentStreams + " streams are busy");
+        }
+        // released by the stream, or on completion when a timeout cancelled it before it started
+        AtomicBoolean released = new AtomicBoolean();
+        Runnable release = () -> {
+            if (released.compareAndSet(false, true)) {
+                streamPermits.release();
+            }
+        };
+        response.setContentType(TEXT_CSV.toString());
+        Callable<Void> body = () -> {
+            try {
+                OutputStream output = response.getOutputStream();
+                try {
+                    ProcessStatistics statistics = processorService.streamProcData(request.getInputStream(), output, runDate);
+                    log.info("Streamed {}", statistics);
+                } catch (IOException | RuntimeException e) {
+                    if (!response.isCommitted()) {
+                        throw e;
+                    }
+                    log.error("Stream failed after its first rows were sent", e);
+                    output.write(processorService.streamFailureRow(e));
+                    output.flush();
+                }
+                return null;
+            } finally {
+                release.run();
+            }
+        };
+        WebAsyncTask<Void> task = new WebAsyncTask<>(streamTimeout, processStreamExecutor, body);
+        task.onCompletion(release);
+        return task;
+    }
+
+    /**
+     * Start processing the configured input into the configured output, or join the job already doing it
+     */
+    @PostMapping("/jobs")
+    public ResponseEntity<ProcessJob> submit() {
+        return new ResponseEntity<>(jobService.submit(), HttpStatus.ACCEPTED);
+    }
+
+    @GetMapping("/jobs")
+    public List<ProcessJob> jobs() {
+        return jobService.list();
+    }
+
+    @GetMapping("/jobs/{id}")
+    public ProcessJob job(@PathVariable String id) {
+        return jobService.get(id);
+    }
+
+    @DeleteMapping("/jobs/{id}")
+    public ProcessJob cancel(@PathVariable String id) {
+        return jobService.cancel(id);
+    }
+
+    /**
+     * Files picked up from the ingest directory, with their arrival to done latency
+     */
+    @GetMapping("/ingest")
+    public List<IngestedFile> ingestedFiles() {
+        return ingestionService.list();
+    }
 }
@@ -0,0 +1,26 @@
+package com.rajesh.files.fileprocessor.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Batch sizes chosen during a run
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BatchSizing {
+    boolean adaptive;
+    long targetLookupMillis;
+    int initialSize;
+    int smallestSize;
+    int largestSize;
+    int finalSize;
+    // sizes in the order they were chosen, only the first changes of a run are kept
+    List<Integer> sizeChanges;
+}
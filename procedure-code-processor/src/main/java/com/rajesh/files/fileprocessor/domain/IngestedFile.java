@@ -0,0 +1,29 @@
+package com.rajesh.files.fileprocessor.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * A file picked up from the ingest directory
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class IngestedFile {
+    String fileName;
+    String jobId;
+    JobState state;
+    String outputFile;
+    // first seen in the ingest directory
+    Instant arrivedAt;
+    Instant claimedAt;
+    Instant finishedAt;
+    // arrival to done
+    Long latencyMillis;
+    ProcessStatus result;
+}
@@ -0,0 +1,9 @@
+package com.rajesh.files.fileprocessor.domain;
+
+public enum JobState {
+    QUEUED,
+    RUNNING,
+    SUCCEEDED,
+    FAILED,
+    CANCELLED
+}
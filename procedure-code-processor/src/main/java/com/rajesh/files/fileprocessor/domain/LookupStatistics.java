@@ -0,0 +1,50 @@
+package com.rajesh.files.fileprocessor.domain;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counters and timings of one lookup strategy.
+ * Prepare time covers statement preparation and key staging, execute time covers execution and row mapping.
+ */
+@Data
+@NoArgsConstructor
+public class LookupStatistics {
+    long lookups;
+    long statements;
+    long keys;
+    long rows;
+    @JsonIgnore
+    long prepareNanos;
+    @JsonIgnore
+    long executeNanos;
+
+    public void record(long statements, long keys, long rows, long prepareNanos, long executeNanos) {
+        this.lookups++;
+        this.statements += statements;
+        this.keys += keys;
+        this.rows += rows;
+        this.prepareNanos += prepareNanos;
+        this.executeNanos += executeNanos;
+    }
+
+    public void add(LookupStatistics other) {
+        lookups += other.lookups;
+        statements += other.statements;
+        keys += other.keys;
+        rows += other.rows;
+        prepareNanos += other.prepareNanos;
+        executeNanos += other.executeNanos;
+    }
+
+    public double getPrepareMillis() {
+        return prepareNanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public double getExecuteMillis() {
+        return executeNanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,19 @@
+package com.rajesh.files.fileprocessor.domain;
+
+/**
+ * How a batch of input keys is looked up in FAC_MSA
+ */
+public enum LookupStrategy {
+    /**
+     * Keys bound as parameters into one of a few fixed size IN lists, so the statements are reused
+     */
+    IN_LIST,
+    /**
+     * Keys batch inserted into a session temporary table and joined with FAC_MSA
+     */
+    STAGING_TABLE,
+    /**
+     * Input sorted by key and merge joined with one ordered scan of FAC_MSA (lookup.mode=merge)
+     */
+    SORT_MERGE
+}
@@ -0,0 +1,21 @@
+package com.rajesh.files.fileprocessor.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ProcedureCodeIndexInfo {
+    long records;
+    long estimatedBytes;
+    Instant builtAt;
+    double buildMillis;
+    // what the index was last built from: FAC_MSA at startup or the output file of a run
+    String source;
+}
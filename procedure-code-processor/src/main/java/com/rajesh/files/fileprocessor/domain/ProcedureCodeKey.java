@@ -0,0 +1,26 @@
+package com.rajesh.files.fileprocessor.domain;
+
+import lombok.Value;
+
+import java.util.Locale;
+
+/**
+ * Composite key of a FAC_MSA row: (geography id, proc code, actual/derived indicator, geographic level).
+ * Indicator and level are compared case-insensitively, same as the lookup always did.
+ */
+@Value
+public class ProcedureCodeKey {
+    int geographyId;
+    int procedureCode;
+    String actualDerivedIndicator;
+    String geographicLevel;
+
+    public static ProcedureCodeKey of(ProcedureCodeData data) {
+        return new ProcedureCodeKey(data.getGeographyId(), data.getProcedureCode(),
+                normalize(data.getActualDerivedIndicator()), normalize(data.getGeographicLevel()));
+    }
+
+    private static String normalize(String value) {
+        return value == null ? null : value.toUpperCase(Locale.ROOT);
+    }
+}
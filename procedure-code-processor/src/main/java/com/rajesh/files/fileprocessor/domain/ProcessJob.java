@@ -0,0 +1,25 @@
+package com.rajesh.files.fileprocessor.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ProcessJob {
+    String id;
+    JobState state;
+    String inputFile;
+    String outputFile;
+    Instant submittedAt;
+    Instant startedAt;
+    Instant finishedAt;
+    ProcessProgress progress;
+    // final status once the job is done, the failure reason for failed jobs
+    ProcessStatus result;
+}
@@ -0,0 +1,28 @@
+package com.rajesh.files.fileprocessor.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Live progress of a run, counts cover the batches already written
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ProcessProgress {
+    long linesRead;
+    long batchesDone;
+    long matchedRows;
+    long unmatchedRows;
+    long rejectedLines;
+    long bytesDone;
+    long totalBytes;
+    double percentDone;
+    double rowsPerSecond;
+    // null until the first batch is written
+    Long etaSeconds;
+    double elapsedSeconds;
+}
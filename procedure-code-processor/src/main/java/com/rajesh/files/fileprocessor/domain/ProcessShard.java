@@ -0,0 +1,35 @@
+package com.rajesh.files.fileprocessor.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+/**
+ * One row of the PROCESS_SHARD lease table: a newline aligned byte range of the input of a sharded run,
+ * or the merge step of the run (shard number -1)
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ProcessShard {
+    String runId;
+    int shardNo;
+    long startOffset;
+    long endOffset;
+    LocalDate runDate;
+    ShardState state;
+    String owner;
+    // epoch ms the owner's lease runs out, by the owner's clock; renewed by the heartbeat, read by the writer
+    volatile long leaseExpires;
+    // claims so far, a lease is only renewed or completed by the claim that holds it
+    int attempts;
+    // attempt that completed the shard, the only one whose output is merged; 0 until done
+    int doneAttempt;
+    // counters of the completed attempt, without the lookup timings
+    ProcessStatistics statistics;
+    String message;
+}
@@ -0,0 +1,58 @@
+package com.rajesh.files.fileprocessor.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ProcessStatistics {
+    long linesRead;
+    long batches;
+    long matchedRows;
+    long unmatchedRows;
+    // input rows whose key matched more than one FAC_MSA row
+    long multiMatchedRows;
+    // matched rows whose values differ from their FAC_MSA row and those that are the same, counted when output.changes-only
+    // is on; new rows are the unmatched rows
+    long changedRows;
+    long unchangedRows;
+    long outputRows;
+    // FAC_MSA rows changed by the database output mode
+    long endDatedRows;
+    long insertedRows;
+    // input rows the FAC_MSA key filter answered without a lookup, and rows it let through that had no match
+    long skippedLookups;
+    long keyFilterFalsePositives;
+    // input lines written to the reject file
+    long rejectedLines;
+    @Builder.Default
+    Map<LookupStrategy, LookupStatistics> lookups = new EnumMap<>(LookupStrategy.class);
+
+    public LookupStatistics lookupStatistics(LookupStrategy strategy) {
+        return lookups.computeIfAbsent(strategy, s -> new LookupStatistics());
+    }
+
+    public void add(ProcessStatistics other) {
+        linesRead += other.linesRead;
+        batches += other.batches;
+        matchedRows += other.matchedRows;
+        unmatchedRows += other.unmatchedRows;
+        multiMatchedRows += other.multiMatchedRows;
+        changedRows += other.changedRows;
+        unchangedRows += other.unchangedRows;
+        outputRows += other.outputRows;
+        endDatedRows += other.endDatedRows;
+        insertedRows += other.insertedRows;
+        skippedLookups += other.skippedLookups;
+        keyFilterFalsePositives += other.keyFilterFalsePositives;
+        rejectedLines += other.rejectedLines;
+        other.lookups.forEach((strategy, lookup) -> lookupStatistics(strategy).add(lookup));
+    }
+}
@@ -12,4 +12,11 @@ import lombok.NoArgsConstructor;
 public class ProcessStatus {
     String code;
     String description;
+    ProcessStatistics statistics;
+    BatchSizing batchSizing;
+
+    public ProcessStatus(String code, String description) {
+        this.code = code;
+        this.description = description;
+    }
 }
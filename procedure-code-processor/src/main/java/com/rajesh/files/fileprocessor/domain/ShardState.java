@@ -0,0 +1,8 @@
+package com.rajesh.files.fileprocessor.domain;
+
+public enum ShardState {
+    PENDING,
+    RUNNING,
+    DONE,
+    FAILED
+}
@@ -18,4 +18,19 @@ public class GlobalExceptionHandler extends ResponseEntityExceptionHandler {
         status.setDescription(rte.getMessage());
         return new ResponseEntity<>(status, HttpStatus.EXPECTATION_FAILED);
     }
+
+    @ExceptionHandler(value = {JobNotFoundException.class})
+    public ResponseEntity<ProcessStatus> handleJobNotFound(RuntimeException rte, WebRequest wReq) {
+        return new ResponseEntity<>(new ProcessStatus("NOT_FOUND", rte.getMessage()), HttpStatus.NOT_FOUND);
+    }
+
+    @ExceptionHandler(value = {IndexUnavailableException.class})
+    public ResponseEntity<ProcessStatus> handleIndexUnavailable(RuntimeException rte, WebRequest wReq) {
+        return new ResponseEntity<>(new ProcessStatus("UNAVAILABLE", rte.getMessage()), HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    @ExceptionHandler(value = {JobConflictException.class, ProcessCancelledException.class})
+    public ResponseEntity<ProcessStatus> handleJobConflict(RuntimeException rte, WebRequest wReq) {
+        return new ResponseEntity<>(new ProcessStatus("CONFLICT", rte.getMessage()), HttpStatus.CONFLICT);
+    }
 }
@@ -0,0 +1,7 @@
+package com.rajesh.files.fileprocessor.exception;
+
+public class IndexUnavailableException extends RuntimeException {
+    public IndexUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package com.rajesh.files.fileprocessor.exception;
+
+public class JobConflictException extends RuntimeException {
+    public JobConflictException(String message) {
+        super(message);
+    }
+}
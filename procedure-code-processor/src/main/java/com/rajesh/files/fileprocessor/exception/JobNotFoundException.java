@@ -0,0 +1,7 @@
+package com.rajesh.files.fileprocessor.exception;
+
+public class JobNotFoundException extends RuntimeException {
+    public JobNotFoundException(String message) {
+        super(message);
+    }
+}
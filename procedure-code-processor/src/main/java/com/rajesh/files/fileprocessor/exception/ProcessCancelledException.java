@@ -0,0 +1,7 @@
+package com.rajesh.files.fileprocessor.exception;
+
+public class ProcessCancelledException extends RuntimeException {
+    public ProcessCancelledException(String message) {
+        super(message);
+    }
+}
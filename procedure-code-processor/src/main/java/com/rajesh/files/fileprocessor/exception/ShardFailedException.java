@@ -0,0 +1,7 @@
+package com.rajesh.files.fileprocessor.exception;
+
+public class ShardFailedException extends RuntimeException {
+    public ShardFailedException(String message) {
+        super(message);
+    }
+}
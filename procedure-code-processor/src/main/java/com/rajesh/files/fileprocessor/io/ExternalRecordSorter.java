@@ -0,0 +1,227 @@
+package com.rajesh.files.fileprocessor.io;
+
+import com.rajesh.files.fileprocessor.domain.ProcedureCodeData;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Sorts any number of proc code records in bounded memory.
+ * <p>
+ * Records are buffered up to {@code maxRecordsInMemory}; every full buffer is sorted and spilled to a run file
+ * in the temp directory, and {@link #sorted()} merges the runs with the last buffer. The sort is stable, records
+ * with equal keys come back in the order they were added. Run files are deleted on close.
+ */
+public class ExternalRecordSorter implements Closeable {
+
+    private static final int IO_BUFFER_SIZE = 256 * 1024;
+
+    private final Comparator<ProcedureCodeData> order;
+    private final int maxRecordsInMemory;
+    private final Path tempDirectory;
+    private final List<Path> runFiles = new ArrayList<>();
+    private final List<Long> runSizes = new ArrayList<>();
+    private final List<DataInputStream> openRuns = new ArrayList<>();
+    private List<ProcedureCodeData> buffer = new ArrayList<>();
+    private long count;
+
+    public ExternalRecordSorter(Comparator<ProcedureCodeData> order, int maxRecordsInMemory, Path tempDirectory) {
+        this.order = order;
+        this.maxRecordsInMemory = Math.max(1, maxRecordsInMemory);
+        this.tempDirectory = tempDirectory;
+    }
+
+    public void add(ProcedureCodeData record) throws IOException {
+        buffer.add(record);
+        count++;
+        if (buffer.size() >= maxRecordsInMemory) {
+            spill();
+        }
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public int getRunCount() {
+        return runFiles.size();
+    }
+
+    /**
+     * @return all records added so far in order; call once, after the last add
+     */
+    public Iterator<ProcedureCodeData> sorted() throws IOException {
+        buffer.sort(order);
+        if (runFiles.isEmpty()) {
+            return buffer.iterator();
+        }
+        PriorityQueue<RunCursor> heads = new PriorityQueue<>((a, b) -> {
+            int compared = order.compare(a.head, b.head);
+            return compared != 0 ? compared : Integer.compare(a.index, b.index);
+        });
+        for (int i = 0; i < runFiles.size(); i++) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(runFiles.get(i)), IO_BUFFER_SIZE));
+            openRuns.add(in);
+            RunCursor cursor = new RunCursor(i, in, runSizes.get(i), null);
+            if (cursor.advance()) {
+                heads.add(cursor);
+            }
+        }
+        // the last buffer is the newest run
+        RunCursor memoryRun = new RunCursor(runFiles.size(), null, 0, buffer.iterator());
+        if (memoryRun.advance()) {
+            heads.add(memoryRun);
+        }
+        return new Iterator<ProcedureCodeData>() {
+            @Override
+            public boolean hasNext() {
+                return !heads.isEmpty();
+            }
+
+            @Override
+            public ProcedureCodeData next() {
+                RunCursor cursor = heads.poll();
+                if (cursor == null) {
+                    throw new NoSuchElementException();
+                }
+                ProcedureCodeData record = cursor.head;
+                try {
+                    if (cursor.advance()) {
+                        heads.add(cursor);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to read sorted run " + runFiles.get(cursor.index), e);
+                }
+                return record;
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (DataInputStream in : openRuns) {
+            in.close();
+        }
+        for (Path runFile : runFiles) {
+            Files.deleteIfExists(runFile);
+        }
+        buffer = new ArrayList<>();
+    }
+
+    private void spill() throws IOException {
+        buffer.sort(order);
+        Path runFile = Files.createTempFile(tempDirectory, "proc-code-run-", ".bin");
+        runFiles.add(runFile);
+        runSizes.add((long) buffer.size());
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(runFile), IO_BUFFER_SIZE))) {
+            for (ProcedureCodeData record : buffer) {
+                writeRecord(out, record);
+            }
+        }
+        buffer = new ArrayList<>(maxRecordsInMemory);
+    }
+
+    private static void writeRecord(DataOutputStream out, ProcedureCodeData record) throws IOException {
+        writeInteger(out, record.getGeographyId());
+        writeInteger(out, record.getProcedureCode());
+        writeString(out, record.getProcedureCodeDescription());
+        writeString(out, record.getModifier());
+        writeString(out, record.getActualDerivedIndicator());
+        writeString(out, record.getGeographicLevel());
+        writeString(out, record.getGeographicDescription());
+        out.writeBoolean(record.getReferenceAmount() != null);
+        if (record.getReferenceAmount() != null) {
+            out.writeDouble(record.getReferenceAmount());
+        }
+        writeDate(out, record.getEffectiveDate());
+        writeDate(out, record.getEndDate());
+    }
+
+    private static ProcedureCodeData readRecord(DataInputStream in) throws IOException {
+        return new ProcedureCodeData(
+                readInteger(in),
+                readInteger(in),
+                readString(in),
+                readString(in),
+                readString(in),
+                readString(in),
+                readString(in),
+                in.readBoolean() ? in.readDouble() : null,
+                readDate(in),
+                readDate(in));
+    }
+
+    private static void writeInteger(DataOutputStream out, Integer value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeInt(value);
+        }
+    }
+
+    private static Integer readInteger(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readInt() : null;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeDate(DataOutputStream out, LocalDate value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value.toEpochDay());
+        }
+    }
+
+    private static LocalDate readDate(DataInputStream in) throws IOException {
+        return in.readBoolean() ? LocalDate.ofEpochDay(in.readLong()) : null;
+    }
+
+    private static class RunCursor {
+        final int index;
+        final DataInputStream in;
+        final Iterator<ProcedureCodeData> memory;
+        long remaining;
+        ProcedureCodeData head;
+
+        RunCursor(int index, DataInputStream in, long size, Iterator<ProcedureCodeData> memory) {
+            this.index = index;
+            this.in = in;
+            this.remaining = size;
+            this.memory = memory;
+        }
+
+        boolean advance() throws IOException {
+            if (memory != null) {
+                head = memory.hasNext() ? memory.next() : null;
+            } else if (remaining > 0) {
+                head = readRecord(in);
+                remaining--;
+            } else {
+                head = null;
+            }
+            return head != null;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.rajesh.files.fileprocessor.io;
+
+import lombok.Value;
+
+/**
+ * Byte range [start, end) of the input file, always starting and ending on a line boundary
+ */
+@Value
+public class FileRange {
+    long start;
+    long end;
+
+    public long length() {
+        return end - start;
+    }
+}
@@ -0,0 +1,118 @@
+package com.rajesh.files.fileprocessor.io;
+
+import com.rajesh.files.fileprocessor.domain.ProcedureCodeData;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lines of one batch, located in a mapped window of the input file but not parsed yet.
+ * Parsing happens on the pipeline worker that picks the batch up.
+ */
+public class InputBatch {
+
+    private final ByteBuffer window;
+    // lineStarts[i] is the first byte of line i, lineStarts[lineCount] the byte after the last line terminator
+    private final int[] lineStarts;
+    private final int lineCount;
+    private final long firstLineNumber;
+    private final long endOffset;
+
+    InputBatch(ByteBuffer window, int[] lineStarts, int lineCount, long firstLineNumber, long endOffset) {
+        this.window = window;
+        this.lineStarts = lineStarts;
+        this.lineCount = lineCount;
+        this.firstLineNumber = firstLineNumber;
+        this.endOffset = endOffset;
+    }
+
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    public long getFirstLineNumber() {
+        return firstLineNumber;
+    }
+
+    /**
+     * @return file offset right after the last line of this batch
+     */
+    public long getEndOffset() {
+        return endOffset;
+    }
+
+    public List<ProcedureCodeData> parse() {
+        return parse((List<RejectedLine>) null);
+    }
+
+    /**
+     * @param rejects receives the lines that can't be parsed, null to fail on the first one
+     */
+    public List<ProcedureCodeData> parse(List<RejectedLine> rejects) {
+        ProcedureCodeLineParser parser = new ProcedureCodeLineParser(window);
+        List<ProcedureCodeData> records = new ArrayList<>(lineCount);
+        for (int i = 0; i < lineCount; i++) {
+            try {
+                records.add(parser.parse(lineStarts[i], contentEnd(i), firstLineNumber + i));
+            } catch (RuntimeException e) {
+                reject(rejects, i, e);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Parse the lines into primitive columns, text values become ids of the run's dictionary
+     *
+     * @param rejects receives the lines that can't be parsed, null to fail on the first one
+     */
+    public ProcedureCodeBatch parse(StringDictionary dictionary, List<RejectedLine> rejects) {
+        ProcedureCodeLineParser parser = new ProcedureCodeLineParser(window);
+        ProcedureCodeBatch records = new ProcedureCodeBatch(dictionary, lineCount);
+        for (int i = 0; i < lineCount; i++) {
+            try {
+                parser.parseInto(lineStarts[i], contentEnd(i), firstLineNumber + i, records);
+            } catch (RuntimeException e) {
+                reject(rejects, i, e);
+            }
+        }
+        return records;
+    }
+
+    public ProcedureCodeBatch parse(StringDictionary dictionary) {
+        return parse(dictionary, null);
+    }
+
+    /**
+     * @return line i of the batch as text, without its terminator
+     */
+    public String lineText(int line) {
+        int start = lineStarts[line];
+        byte[] bytes = new byte[contentEnd(line) - start];
+        ByteBuffer view = window.duplicate();
+        view.position(start);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void reject(List<RejectedLine> rejects, int line, RuntimeException e) {
+        if (rejects == null) {
+            throw e;
+        }
+        // a line parses completely or not at all, nothing of it is in the records
+        rejects.add(new RejectedLine(firstLineNumber + line, e.getMessage() == null ? e.toString() : e.getMessage(), lineText(line)));
+    }
+
+    private int contentEnd(int line) {
+        int end = lineStarts[line + 1];
+        if (end > lineStarts[line] && window.get(end - 1) == '\n') {
+            end--;
+            if (end > lineStarts[line] && window.get(end - 1) == '\r') {
+                end--;
+            }
+        }
+        return end;
+    }
+}
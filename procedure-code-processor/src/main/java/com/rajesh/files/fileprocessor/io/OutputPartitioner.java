@@ -0,0 +1,82 @@
+package com.rajesh.files.fileprocessor.io;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Picks the output partition of an input row, its name becomes part of the partition's file name.
+ * Both output rows of a match go to the partition of the input row.
+ */
+public interface OutputPartitioner {
+
+    String GEOGRAPHIC_LEVEL = "geographic-level";
+    String GEOGRAPHY_ID = "geography-id";
+
+    String partition(ProcedureCodeBatch batch, int row);
+
+    /**
+     * @param key   output.partition.by: geographic-level, geography-id or blank
+     * @param count partitions of geography-id
+     * @return the partitioner, null for blank (one output file)
+     */
+    static OutputPartitioner of(String key, int count) {
+        if (key == null || key.trim().isEmpty()) {
+            return null;
+        }
+        if (GEOGRAPHIC_LEVEL.equalsIgnoreCase(key.trim())) {
+            return new ByGeographicLevel();
+        }
+        if (GEOGRAPHY_ID.equalsIgnoreCase(key.trim())) {
+            return new ByGeographyId(count);
+        }
+        throw new IllegalArgumentException("output.partition.by must be " + GEOGRAPHIC_LEVEL + ", " + GEOGRAPHY_ID + " or blank, not " + key);
+    }
+
+    /**
+     * One partition per upper-case geographic level, named after it with anything but letters and digits as '_'.
+     * Used from the pipeline writer only.
+     */
+    class ByGeographicLevel implements OutputPartitioner {
+        private final Map<String, String> names = new HashMap<>();
+
+        @Override
+        public String partition(ProcedureCodeBatch batch, int row) {
+            String level = batch.getNormalizedLevel(row);
+            if (level == null) {
+                return "NONE";
+            }
+            return names.computeIfAbsent(level, value -> {
+                String name = value.trim().replaceAll("[^A-Z0-9]+", "_");
+                return name.isEmpty() ? "BLANK" : name;
+            });
+        }
+    }
+
+    /**
+     * Hash of the geography id into a fixed number of partitions p00, p01, ..
+     */
+    class ByGeographyId implements OutputPartitioner {
+        private final String[] names;
+
+        ByGeographyId(int count) {
+            names = new String[Math.max(1, count)];
+            int digits = Integer.toString(names.length - 1).length();
+            for (int i = 0; i < names.length; i++) {
+                names[i] = String.format(Locale.ROOT, "p%0" + Math.max(2, digits) + "d", i);
+            }
+        }
+
+        @Override
+        public String partition(ProcedureCodeBatch batch, int row) {
+            // spread neighbouring ids, murmur3 fmix32
+            int h = batch.getGeographyId(row);
+            h ^= h >>> 16;
+            h *= 0x85EBCA6B;
+            h ^= h >>> 13;
+            h *= 0xC2B2AE35;
+            h ^= h >>> 16;
+            return names[Math.floorMod(h, names.length)];
+        }
+    }
+}
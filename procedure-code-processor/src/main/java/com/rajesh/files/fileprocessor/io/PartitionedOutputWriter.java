@@ -0,0 +1,250 @@
+package com.rajesh.files.fileprocessor.io;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+import java.util.zip.CRC32;
+
+/**
+ * Output split by an {@link OutputPartitioner}: one file per partition, {@code <output name>.<partition>.<ext>},
+ * each with its own {@link ProcedureCodeCsvWriter} on one of the writer threads.
+ * <p>
+ * The pipeline writer hands over whole batches; the rows of a batch are grouped per partition and every group is
+ * written by the thread that owns the partition, so partitions fill in parallel and each keeps the input order.
+ * At most {@code maxBatchesInFlight} batches are queued on the writers. Files are written as {@code .part} and
+ * renamed by {@link #finish()}, which then writes {@code <output>.manifest}: file, rows, bytes and CRC32 per partition.
+ */
+public class PartitionedOutputWriter implements Closeable {
+
+    public static final String MANIFEST_HEADER = "FILE|ROWS|BYTES|CRC32";
+
+    /**
+     * Writes the output rows of one input row
+     */
+    public interface RowWriter {
+        /**
+         * @return output rows written
+         */
+        int write(int row, ProcedureCodeCsvWriter writer) throws IOException;
+    }
+
+    private static final AtomicInteger WRITER_COUNT = new AtomicInteger();
+
+    private final Path outputFile;
+    private final OutputPartitioner partitioner;
+    private final String lineSeparator;
+    private final int maxBatchesInFlight;
+    private final ExecutorService[] writers;
+    private final Map<String, Partition> partitions = new LinkedHashMap<>();
+    private final Deque<List<Future<?>>> batchesInFlight = new ArrayDeque<>();
+
+    /**
+     * @param writerThreads threads writing partitions, a partition always goes to the same one
+     */
+    public PartitionedOutputWriter(Path outputFile, OutputPartitioner partitioner, int writerThreads, int maxBatchesInFlight,
+                                   String lineSeparator) {
+        this.outputFile = outputFile;
+        this.partitioner = partitioner;
+        this.lineSeparator = lineSeparator;
+        this.maxBatchesInFlight = Math.max(1, maxBatchesInFlight);
+        this.writers = new ExecutorService[Math.max(1, writerThreads)];
+        int writerNumber = WRITER_COUNT.incrementAndGet();
+        for (int i = 0; i < writers.length; i++) {
+            String name = "output-writer-" + writerNumber + "-" + i;
+            writers[i] = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    public static Path manifestFile(Path outputFile) {
+        return outputFile.resolveSibling(outputFile.getFileName() + ".manifest");
+    }
+
+    /**
+     * @return file of a partition: the partition name goes before the output file's extension
+     */
+    public static Path partitionFile(Path outputFile, String partition) {
+        String name = outputFile.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return outputFile.resolveSibling(dot > 0
+                ? name.substring(0, dot) + "." + partition + name.substring(dot)
+                : name + "." + partition);
+    }
+
+    /**
+     * Queue the rows of a batch on the partition writers, waits while maxBatchesInFlight batches are queued
+     *
+     * @param include rows that produce output
+     */
+    public void write(ProcedureCodeBatch batch, IntPredicate include, RowWriter rowWriter) throws IOException {
+        Map<Partition, RowList> rowsByPartition = new LinkedHashMap<>();
+        for (int row = 0; row < batch.size(); row++) {
+            if (include.test(row)) {
+                rowsByPartition.computeIfAbsent(partition(partitioner.partition(batch, row)), key -> new RowList()).add(row);
+            }
+        }
+        List<Future<?>> writes = new ArrayList<>(rowsByPartition.size());
+        for (Map.Entry<Partition, RowList> group : rowsByPartition.entrySet()) {
+            Partition partition = group.getKey();
+            RowList rows = group.getValue();
+            writes.add(partition.writer.submit(() -> {
+                for (int i = 0; i < rows.size; i++) {
+                    partition.rows += rowWriter.write(rows.rows[i], partition.csv);
+                }
+                partition.bytes = partition.csv.getBytesWritten();
+                return null;
+            }));
+        }
+        batchesInFlight.addLast(writes);
+        while (batchesInFlight.size() > maxBatchesInFlight) {
+            await(batchesInFlight.removeFirst());
+        }
+    }
+
+    /**
+     * @return bytes of the batches written so far, partitions still writing count what they have
+     */
+    public long getBytesWritten() {
+        long bytes = 0;
+        for (Partition partition : partitions.values()) {
+            bytes += partition.bytes;
+        }
+        return bytes;
+    }
+
+    /**
+     * Wait for all queued rows, force and rename the partition files, then write the manifest
+     */
+    public void finish() throws IOException {
+        while (!batchesInFlight.isEmpty()) {
+            await(batchesInFlight.removeFirst());
+        }
+        StringBuilder manifest = new StringBuilder(MANIFEST_HEADER).append(lineSeparator);
+        for (Partition partition : partitions.values()) {
+            await(Arrays.asList(partition.writer.submit(() -> {
+                partition.csv.flush();
+                partition.channel.force(true);
+                partition.bytes = partition.csv.getBytesWritten();
+                return null;
+            })));
+            Files.move(partition.partFile, partition.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            manifest.append(partition.file.getFileName()).append('|')
+                    .append(partition.rows).append('|')
+                    .append(partition.bytes).append('|')
+                    .append(Long.toHexString(partition.checksum.getValue()))
+                    .append(lineSeparator);
+        }
+        Path manifestFile = manifestFile(outputFile);
+        Path temp = manifestFile.resolveSibling(manifestFile.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            writer.write(manifest.toString());
+        }
+        Files.move(temp, manifestFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Stop the writers and close the files; partitions not finished stay as .part files
+     */
+    @Override
+    public void close() throws IOException {
+        for (ExecutorService writer : writers) {
+            writer.shutdownNow();
+        }
+        IOException failure = null;
+        for (Partition partition : partitions.values()) {
+            try {
+                partition.channel.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private Partition partition(String name) throws IOException {
+        Partition partition = partitions.get(name);
+        if (partition == null) {
+            partition = new Partition(partitionFile(outputFile, name), writers[partitions.size() % writers.length]);
+            partitions.put(name, partition);
+        }
+        return partition;
+    }
+
+    private static void await(List<Future<?>> writes) throws IOException {
+        for (Future<?> write : writes) {
+            try {
+                write.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while writing output partitions", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IOException(cause);
+            }
+        }
+    }
+
+    private static final class RowList {
+        int[] rows = new int[16];
+        int size;
+
+        void add(int row) {
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size * 2);
+            }
+            rows[size++] = row;
+        }
+    }
+
+    /**
+     * Files and counters of one partition, written by its writer thread only
+     */
+    private final class Partition {
+        final Path file;
+        final Path partFile;
+        final ExecutorService writer;
+        final CRC32 checksum = new CRC32();
+        final FileChannel channel;
+        final ProcedureCodeCsvWriter csv;
+        long rows;
+        volatile long bytes;
+
+        Partition(Path file, ExecutorService writer) throws IOException {
+            this.file = file;
+            this.partFile = file.resolveSibling(file.getFileName() + ".part");
+            this.writer = writer;
+            this.channel = FileChannel.open(partFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            this.csv = new ProcedureCodeCsvWriter(channel, lineSeparator, ProcedureCodeCsvWriter.DEFAULT_BUFFER_SIZE, checksum);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.rajesh.files.fileprocessor.io;
+
+import com.rajesh.files.fileprocessor.domain.ProcedureCodeData;
+import com.rajesh.files.fileprocessor.domain.ProcedureCodeKey;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Objects;
+
+/**
+ * Input records of one batch as primitive columns: int keys, double amounts, epoch-day dates and
+ * {@link StringDictionary} ids for the text columns.
+ * <p>
+ * A row takes 44 bytes of column space, against roughly 400 for a {@link ProcedureCodeData} with its boxed numbers,
+ * dates and own copies of the strings, so far larger batches can be in flight between reader and writer.
+ * {@link #record(int)} builds the object form of one row for the code that needs it.
+ */
+public class ProcedureCodeBatch {
+
+    // epoch day of a missing date
+    static final int NO_DATE = Integer.MIN_VALUE;
+
+    private final StringDictionary dictionary;
+    private int[] geographyIds;
+    private int[] procedureCodes;
+    private int[] descriptions;
+    private int[] modifiers;
+    private int[] indicators;
+    private int[] levels;
+    private int[] geographicDescriptions;
+    private double[] amounts;
+    private int[] effectiveDays;
+    private int[] endDays;
+    // rows without an amount, only records added as objects can have one
+    private BitSet missingAmounts;
+    private int size;
+
+    public ProcedureCodeBatch(StringDictionary dictionary, int capacity) {
+        this.dictionary = dictionary;
+        int initial = Math.max(1, capacity);
+        geographyIds = new int[initial];
+        procedureCodes = new int[initial];
+        descriptions = new int[initial];
+        modifiers = new int[initial];
+        indicators = new int[initial];
+        levels = new int[initial];
+        geographicDescriptions = new int[initial];
+        amounts = new double[initial];
+        effectiveDays = new int[initial];
+        endDays = new int[initial];
+    }
+
+    public StringDictionary getDictionary() {
+        return dictionary;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Append a record, its strings go through the dictionary
+     */
+    public void add(ProcedureCodeData data) {
+        int row = size;
+        append(data.getGeographyId(), data.getProcedureCode(),
+                dictionary.id(data.getProcedureCodeDescription()),
+                dictionary.id(data.getModifier()),
+                dictionary.id(data.getActualDerivedIndicator()),
+                dictionary.id(data.getGeographicLevel()),
+                dictionary.id(data.getGeographicDescription()),
+                data.getReferenceAmount() == null ? 0 : data.getReferenceAmount(),
+                epochDay(data.getEffectiveDate()),
+                epochDay(data.getEndDate()));
+        if (data.getReferenceAmount() == null) {
+            if (missingAmounts == null) {
+                missingAmounts = new BitSet();
+            }
+            missingAmounts.set(row);
+        }
+    }
+
+    /**
+     * Append a row from its column values, dates as epoch days or {@link #NO_DATE}
+     */
+    void append(int geographyId, int procedureCode, int description, int modifier, int indicator, int level,
+                int geographicDescription, double amount, int effectiveDay, int endDay) {
+        if (size == geographyIds.length) {
+            grow();
+        }
+        geographyIds[size] = geographyId;
+        procedureCodes[size] = procedureCode;
+        descriptions[size] = description;
+        modifiers[size] = modifier;
+        indicators[size] = indicator;
+        levels[size] = level;
+        geographicDescriptions[size] = geographicDescription;
+        amounts[size] = amount;
+        effectiveDays[size] = effectiveDay;
+        endDays[size] = endDay;
+        size++;
+    }
+
+    public int getGeographyId(int row) {
+        return geographyIds[row];
+    }
+
+    public int getProcedureCode(int row) {
+        return procedureCodes[row];
+    }
+
+    public String getProcedureCodeDescription(int row) {
+        return dictionary.string(descriptions[row]);
+    }
+
+    public String getModifier(int row) {
+        return dictionary.string(modifiers[row]);
+    }
+
+    public String getActualDerivedIndicator(int row) {
+        return dictionary.string(indicators[row]);
+    }
+
+    public String getGeographicLevel(int row) {
+        return dictionary.string(levels[row]);
+    }
+
+    public String getGeographicDescription(int row) {
+        return dictionary.string(geographicDescriptions[row]);
+    }
+
+    public Double getReferenceAmount(int row) {
+        return missingAmounts != null && missingAmounts.get(row) ? null : amounts[row];
+    }
+
+    public LocalDate getEffectiveDate(int row) {
+        return date(effectiveDays[row]);
+    }
+
+    public LocalDate getEndDate(int row) {
+        return date(endDays[row]);
+    }
+
+    /**
+     * Dictionary ids of the key strings, equal ids mean equal strings within the run
+     */
+    public int getIndicatorId(int row) {
+        return indicators[row];
+    }
+
+    public int getLevelId(int row) {
+        return levels[row];
+    }
+
+    /**
+     * @return upper-case indicator, as matched against FAC_MSA
+     */
+    public String getNormalizedIndicator(int row) {
+        return dictionary.normalized(indicators[row]);
+    }
+
+    /**
+     * @return upper-case geographic level, as matched against FAC_MSA
+     */
+    public String getNormalizedLevel(int row) {
+        return dictionary.normalized(levels[row]);
+    }
+
+    /**
+     * @return match key of the row, same as {@link ProcedureCodeKey#of} on {@link #record(int)}
+     */
+    public ProcedureCodeKey key(int row) {
+        return new ProcedureCodeKey(geographyIds[row], procedureCodes[row], getNormalizedIndicator(row), getNormalizedLevel(row));
+    }
+
+    /**
+     * Compare the columns a new input row can change for its key: reference amount, modifier, proc code description
+     * and geographic description. Key and dates are not compared. The amount goes first, most changes show there
+     * without looking at a string.
+     *
+     * @return true when the row carries the same values as the record
+     */
+    public boolean hasSameValues(int row, ProcedureCodeData data) {
+        return Objects.equals(getReferenceAmount(row), data.getReferenceAmount())
+                && Objects.equals(getModifier(row), data.getModifier())
+                && Objects.equals(getProcedureCodeDescription(row), data.getProcedureCodeDescription())
+                && Objects.equals(getGeographicDescription(row), data.getGeographicDescription());
+    }
+
+    /**
+     * @return a new object holding the values of the row
+     */
+    public ProcedureCodeData record(int row) {
+        return new ProcedureCodeData(
+                geographyIds[row],
+                procedureCodes[row],
+                getProcedureCodeDescription(row),
+                getModifier(row),
+                getActualDerivedIndicator(row),
+                getGeographicLevel(row),
+                getGeographicDescription(row),
+                getReferenceAmount(row),
+                getEffectiveDate(row),
+                getEndDate(row));
+    }
+
+    private static int epochDay(LocalDate date) {
+        return date == null ? NO_DATE : (int) date.toEpochDay();
+    }
+
+    private static LocalDate date(int epochDay) {
+        return epochDay == NO_DATE ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+    private void grow() {
+        int capacity = geographyIds.length * 2;
+        geographyIds = Arrays.copyOf(geographyIds, capacity);
+        procedureCodes = Arrays.copyOf(procedureCodes, capacity);
+        descriptions = Arrays.copyOf(descriptions, capacity);
+        modifiers = Arrays.copyOf(modifiers, capacity);
+        indicators = Arrays.copyOf(indicators, capacity);
+        levels = Arrays.copyOf(levels, capacity);
+        geographicDescriptions = Arrays.copyOf(geographicDescriptions, capacity);
+        amounts = Arrays.copyOf(amounts, capacity);
+        effectiveDays = Arrays.copyOf(effectiveDays, capacity);
+        endDays = Arrays.copyOf(endDays, capacity);
+    }
+}
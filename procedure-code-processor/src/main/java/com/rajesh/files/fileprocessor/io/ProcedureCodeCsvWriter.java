@@ -0,0 +1,301 @@
+package com.rajesh.files.fileprocessor.io;
+
+import com.rajesh.files.fileprocessor.domain.ProcedureCodeData;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Writes output rows in the format of {@link ProcedureCodeData#content()} straight into a reusable buffer
+ * that is flushed to a channel.
+ * <p>
+ * Ints, amounts and dates are formatted into the buffer without temporary Strings; formatted dates are cached,
+ * the run only sees a handful of them (today, 9999-12-31, the DB effective dates). Amounts print like
+ * {@code Double.toString}; the rare ones that need an exponent or more than 6 decimals go through it directly.
+ * Not thread safe, owned by the pipeline writer.
+ */
+public class ProcedureCodeCsvWriter implements Closeable {
+
+    public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+    private static final byte SEPARATOR = ',';
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+    private static final int MAX_CACHED_DATES = 4096;
+    private static final int MAX_FAST_DECIMALS = 6;
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6};
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+    private final byte[] lineSeparator;
+    private final Map<LocalDate, byte[]> formattedDates = new HashMap<>();
+    private final byte[] digits = new byte[20];
+    private final CRC32 checksum;
+    private long bytesWritten;
+
+    public ProcedureCodeCsvWriter(WritableByteChannel channel, String lineSeparator) {
+        this(channel, lineSeparator, DEFAULT_BUFFER_SIZE, null);
+    }
+
+    public ProcedureCodeCsvWriter(WritableByteChannel channel, String lineSeparator, int bufferSize) {
+        this(channel, lineSeparator, bufferSize, null);
+    }
+
+    /**
+     * @param checksum updated with every byte handed to the channel, may be null
+     */
+    public ProcedureCodeCsvWriter(WritableByteChannel channel, String lineSeparator, int bufferSize, CRC32 checksum) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        this.lineSeparator = lineSeparator.getBytes(StandardCharsets.UTF_8);
+        this.checksum = checksum;
+    }
+
+    /**
+     * Map the configured line terminator, LF / CRLF / CR by name or the literal separator, blank for the platform one
+     */
+    public static String lineSeparator(String configured) {
+        if (configured == null || configured.isEmpty()) {
+            return System.lineSeparator();
+        }
+        switch (configured.toUpperCase()) {
+            case "LF":
+                return "\n";
+            case "CRLF":
+                return "\r\n";
+            case "CR":
+                return "\r";
+            default:
+                return configured;
+        }
+    }
+
+    public void write(ProcedureCodeData data) throws IOException {
+        write(data, data.getModifier(), data.getEffectiveDate(), data.getEndDate());
+    }
+
+    /**
+     * Write one row of the given record with its modifier and dates replaced
+     */
+    public void write(ProcedureCodeData data, String modifier, LocalDate effectiveDate, LocalDate endDate) throws IOException {
+        putInt(data.getGeographyId());
+        put(SEPARATOR);
+        putInt(data.getProcedureCode());
+        put(SEPARATOR);
+        putText(data.getProcedureCodeDescription());
+        put(SEPARATOR);
+        putText(modifier);
+        put(SEPARATOR);
+        putText(data.getActualDerivedIndicator());
+        put(SEPARATOR);
+        putText(data.getGeographicLevel());
+        put(SEPARATOR);
+        putText(data.getGeographicDescription());
+        put(SEPARATOR);
+        putAmount(data.getReferenceAmount());
+        put(SEPARATOR);
+        putDate(effectiveDate);
+        put(SEPARATOR);
+        putDate(endDate);
+        put(lineSeparator);
+    }
+
+    /**
+     * Write input row {@code row} of the batch with its dates replaced
+     */
+    public void write(ProcedureCodeBatch batch, int row, LocalDate effectiveDate, LocalDate endDate) throws IOException {
+        putLong(batch.getGeographyId(row));
+        put(SEPARATOR);
+        putLong(batch.getProcedureCode(row));
+        put(SEPARATOR);
+        putText(batch.getProcedureCodeDescription(row));
+        put(SEPARATOR);
+        putText(batch.getModifier(row));
+        put(SEPARATOR);
+        putText(batch.getActualDerivedIndicator(row));
+        put(SEPARATOR);
+        putText(batch.getGeographicLevel(row));
+        put(SEPARATOR);
+        putText(batch.getGeographicDescription(row));
+        put(SEPARATOR);
+        putAmount(batch.getReferenceAmount(row));
+        put(SEPARATOR);
+        putDate(effectiveDate);
+        put(SEPARATOR);
+        putDate(endDate);
+        put(lineSeparator);
+    }
+
+    /**
+     * @return bytes handed to the channel so far, buffered bytes included
+     */
+    public long getBytesWritten() {
+        return bytesWritten + buffer.position();
+    }
+
+    public void flush() throws IOException {
+        buffer.flip();
+        if (checksum != null) {
+            checksum.update(buffer.duplicate());
+        }
+        while (buffer.hasRemaining()) {
+            bytesWritten += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void put(byte b) throws IOException {
+        if (!buffer.hasRemaining()) {
+            flush();
+        }
+        buffer.put(b);
+    }
+
+    private void put(byte[] bytes) throws IOException {
+        if (buffer.remaining() < bytes.length) {
+            flush();
+        }
+        if (bytes.length > buffer.remaining()) {
+            for (byte b : bytes) {
+                put(b);
+            }
+        } else {
+            buffer.put(bytes);
+        }
+    }
+
+    private void putInt(Integer boxed) throws IOException {
+        if (boxed == null) {
+            put(NULL);
+            return;
+        }
+        putLong(boxed);
+    }
+
+    private void putLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            put(Long.toString(value).getBytes(StandardCharsets.US_ASCII));
+            return;
+        }
+        if (value < 0) {
+            put((byte) '-');
+            value = -value;
+        }
+        int pos = digits.length;
+        do {
+            digits[--pos] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        while (pos < digits.length) {
+            put(digits[pos++]);
+        }
+    }
+
+    private void putAmount(Double boxed) throws IOException {
+        if (boxed == null) {
+            put(NULL);
+            return;
+        }
+        double value = boxed;
+        double magnitude = Math.abs(value);
+        // Double.toString uses plain notation in [1e-3, 1e7)
+        if (value != 0 && (magnitude < 1e-3 || magnitude >= 1e7 || Double.isNaN(value))) {
+            put(Double.toString(value).getBytes(StandardCharsets.US_ASCII));
+            return;
+        }
+        for (int decimals = 1; decimals <= MAX_FAST_DECIMALS; decimals++) {
+            long scaled = Math.round(magnitude * POWERS_OF_TEN[decimals]);
+            // the fewest decimals that read back as the same double is what Double.toString prints
+            if (scaled / POWERS_OF_TEN[decimals] == magnitude) {
+                if (value < 0 || (value == 0 && 1 / value < 0)) {
+                    put((byte) '-');
+                }
+                putFixed(scaled, decimals);
+                return;
+            }
+        }
+        put(Double.toString(value).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Print scaled / 10^decimals without trailing zeros, keeping at least one decimal
+     */
+    private void putFixed(long scaled, int decimals) throws IOException {
+        long unit = (long) POWERS_OF_TEN[decimals];
+        putLong(scaled / unit);
+        put((byte) '.');
+        long fraction = scaled % unit;
+        int pos = digits.length;
+        for (int i = 0; i < decimals; i++) {
+            digits[--pos] = (byte) ('0' + fraction % 10);
+            fraction /= 10;
+        }
+        int end = digits.length;
+        while (end - pos > 1 && digits[end - 1] == '0') {
+            end--;
+        }
+        while (pos < end) {
+            put(digits[pos++]);
+        }
+    }
+
+    private void putDate(LocalDate date) throws IOException {
+        if (date == null) {
+            put(NULL);
+            return;
+        }
+        byte[] formatted = formattedDates.get(date);
+        if (formatted == null) {
+            if (formattedDates.size() >= MAX_CACHED_DATES) {
+                formattedDates.clear();
+            }
+            formatted = date.toString().getBytes(StandardCharsets.US_ASCII);
+            formattedDates.put(date, formatted);
+        }
+        put(formatted);
+    }
+
+    private void putText(String text) throws IOException {
+        if (text == null) {
+            put(NULL);
+            return;
+        }
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                put((byte) c);
+            } else if (c < 0x800) {
+                put((byte) (0xC0 | (c >> 6)));
+                put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                put((byte) (0xF0 | (codePoint >> 18)));
+                put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                put((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                // unpaired surrogate, same replacement as String.getBytes
+                put((byte) '?');
+            } else {
+                put((byte) (0xE0 | (c >> 12)));
+                put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+}
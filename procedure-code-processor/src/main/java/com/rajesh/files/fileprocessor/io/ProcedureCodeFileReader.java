@@ -0,0 +1,190 @@
+package com.rajesh.files.fileprocessor.io;
+
+import com.rajesh.files.fileprocessor.exception.EmptyInputFileException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the pipe delimited input file through memory mapped windows.
+ * <p>
+ * The reader only scans for line terminators and cuts batches; field parsing is left to
+ * {@link InputBatch#parse()} so it can run on several threads. Windows are remapped on line boundaries,
+ * so files larger than one mapping (2GB) are fine.
+ */
+public class ProcedureCodeFileReader implements Closeable {
+
+    static final long DEFAULT_WINDOW_SIZE = 256L << 20;
+
+    private final FileChannel channel;
+    private final long rangeEnd;
+    private final long windowSize;
+    private long position;
+    private long lineNumber;
+    private long windowStart;
+    private MappedByteBuffer window;
+
+    public ProcedureCodeFileReader(Path file) throws IOException {
+        this(file, null, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param range part of the file to read, null for the whole file. A range other than the first has no header.
+     */
+    public ProcedureCodeFileReader(Path file, FileRange range) throws IOException {
+        this(file, range, DEFAULT_WINDOW_SIZE);
+    }
+
+    ProcedureCodeFileReader(Path file, FileRange range, long windowSize) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        long size = channel.size();
+        this.position = range == null ? 0 : range.getStart();
+        this.rangeEnd = range == null ? size : Math.min(range.getEnd(), size);
+        this.windowSize = windowSize;
+        // line numbers are only exact when reading from the start of the file
+        this.lineNumber = 1;
+    }
+
+    /**
+     * Read the first line, to be called once before the batches
+     *
+     * @return header line without its terminator
+     */
+    public String readHeader() throws IOException {
+        if (position >= rangeEnd) {
+            throw new EmptyInputFileException("Input file is empty.");
+        }
+        InputBatch header = nextBatch(1);
+        return header.lineText(0);
+    }
+
+    /**
+     * Continue reading at a line boundary reached earlier, e.g. from a checkpoint
+     *
+     * @param offset          file offset of the next line
+     * @param nextLineNumber  line number of that line
+     */
+    public void skipTo(long offset, long nextLineNumber) {
+        position = offset;
+        lineNumber = nextLineNumber;
+    }
+
+    /**
+     * @param maxLines batch size
+     * @return next batch of at most maxLines lines, null at the end of the file
+     */
+    public InputBatch nextBatch(int maxLines) throws IOException {
+        if (position >= rangeEnd) {
+            return null;
+        }
+        long mappedSize = windowSize;
+        while (true) {
+            if (window == null || position < windowStart || position >= windowStart + window.limit()
+                    || mappedSize > windowSize) {
+                map(position, mappedSize);
+            }
+            InputBatch batch = scanBatch(maxLines);
+            if (batch != null) {
+                return batch;
+            }
+            // the batch runs past the mapped window, remap from the batch start with room for it
+            if (mappedSize >= Integer.MAX_VALUE) {
+                throw new IOException("A batch of " + maxLines + " lines does not fit into one 2GB mapping at offset " + position);
+            }
+            mappedSize = Math.min(Integer.MAX_VALUE, Math.max(mappedSize, window.limit()) * 2);
+        }
+    }
+
+    /**
+     * Split a file into newline aligned ranges of roughly equal size for parallel readers.
+     * The first range starts at 0 and contains the header.
+     */
+    public static List<FileRange> split(Path file, int parts) throws IOException {
+        List<FileRange> ranges = new ArrayList<>(parts);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long target = Math.max(1, size / Math.max(1, parts));
+            ByteBuffer probe = ByteBuffer.allocate(64 * 1024);
+            long start = 0;
+            while (start < size) {
+                long end = start + target >= size ? size : nextLineStart(channel, start + target, size, probe);
+                ranges.add(new FileRange(start, end));
+                start = end;
+            }
+        }
+        return ranges;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    private static long nextLineStart(FileChannel channel, long from, long size, ByteBuffer probe) throws IOException {
+        long offset = from - 1;
+        while (offset < size) {
+            probe.clear();
+            int read = channel.read(probe, offset);
+            if (read <= 0) {
+                return size;
+            }
+            for (int i = 0; i < read; i++) {
+                if (probe.get(i) == '\n') {
+                    return offset + i + 1;
+                }
+            }
+            offset += read;
+        }
+        return size;
+    }
+
+    private void map(long start, long size) throws IOException {
+        windowStart = start;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(size, rangeEnd - start));
+    }
+
+    private InputBatch scanBatch(int maxLines) {
+        int limit = window.limit();
+        boolean windowReachesEnd = windowStart + limit >= rangeEnd;
+        int[] lineStarts = new int[maxLines + 1];
+        int lines = 0;
+        int offset = (int) (position - windowStart);
+        while (lines < maxLines && offset < limit) {
+            int newline = indexOfNewline(offset, limit);
+            if (newline < 0) {
+                if (!windowReachesEnd) {
+                    return null;
+                }
+                // last line without terminator
+                newline = limit - 1;
+            }
+            lineStarts[lines++] = offset;
+            offset = newline + 1;
+        }
+        if (lines < maxLines && !windowReachesEnd) {
+            return null;
+        }
+        lineStarts[lines] = offset;
+        InputBatch batch = new InputBatch(window, lineStarts, lines, lineNumber, windowStart + offset);
+        position = windowStart + offset;
+        lineNumber += lines;
+        return batch;
+    }
+
+    private int indexOfNewline(int from, int limit) {
+        for (int i = from; i < limit; i++) {
+            if (window.get(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,284 @@
+package com.rajesh.files.fileprocessor.io;
+
+import com.rajesh.files.fileprocessor.domain.ProcedureCodeData;
+import com.rajesh.files.fileprocessor.exception.BadInputDataException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Parses pipe delimited proc code lines straight from the bytes of the input file.
+ * <p>
+ * Ints, amounts and yyyy-MM-dd dates are decoded from the bytes without building Strings; only the text
+ * columns become Strings. Field splitting follows {@code String.split("[|]")}, so trailing empty fields do not count.
+ * {@link #parseInto} skips even those: text columns become {@link StringDictionary} ids, and values seen before by this
+ * parser are found by their bytes, without a String.
+ * One instance per thread, it reuses its scratch buffers.
+ */
+public class ProcedureCodeLineParser {
+
+    public static final int DATA_ELEMENT_SIZE = 8;
+    public static final int EFF_DATE_POSITION = 8;
+    public static final int END_DATE_POSITION = 9;
+    private static final int MAX_FIELDS = END_DATE_POSITION + 1;
+    private static final byte DELIMITER = '|';
+    // 10^15 < 2^53: up to 15 digits the mantissa and the power of ten are exact doubles and one division rounds correctly
+    private static final int MAX_FAST_DOUBLE_DIGITS = 15;
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15};
+    private static final int TEXT_CACHE_SLOTS = 1024;
+
+    private final ByteBuffer view;
+    private final int[] fieldStart = new int[MAX_FIELDS];
+    private final int[] fieldEnd = new int[MAX_FIELDS];
+    private byte[] scratch = new byte[256];
+    // direct mapped cache of text bytes -> dictionary id, a colliding value just replaces the slot
+    private final byte[][] cachedText = new byte[TEXT_CACHE_SLOTS][];
+    private final int[] cachedIds = new int[TEXT_CACHE_SLOTS];
+    private StringDictionary cachedDictionary;
+
+    public ProcedureCodeLineParser(ByteBuffer buffer) {
+        // private view so the position changes of bulk gets never touch the shared buffer
+        this.view = buffer.duplicate();
+    }
+
+    /**
+     * @param start      offset of the first byte of the line
+     * @param end        offset after the last byte of the line, line terminator excluded
+     * @param lineNumber 1 based line number in the input file, used in error messages
+     */
+    public ProcedureCodeData parse(int start, int end, long lineNumber) {
+        int fields = splitFields(start, end);
+        if (fields < DATA_ELEMENT_SIZE) {
+            throw new BadInputDataException("One or more elements are missing in proc code data (line " + lineNumber + ")");
+        }
+        ProcedureCodeData record = new ProcedureCodeData(
+                parseInt(0, lineNumber),
+                parseInt(1, lineNumber),
+                text(2),
+                text(3),
+                text(4),
+                text(5),
+                text(6),
+                parseDouble(7, lineNumber),
+                null,
+                null);
+        if (fields > EFF_DATE_POSITION) {
+            record.setEffectiveDate(parseDate(EFF_DATE_POSITION, lineNumber));
+        }
+        if (fields > END_DATE_POSITION) {
+            record.setEndDate(parseDate(END_DATE_POSITION, lineNumber));
+        }
+        return record;
+    }
+
+    /**
+     * Parse one line into the next row of the batch
+     *
+     * @see #parse(int, int, long)
+     */
+    public void parseInto(int start, int end, long lineNumber, ProcedureCodeBatch batch) {
+        int fields = splitFields(start, end);
+        if (fields < DATA_ELEMENT_SIZE) {
+            throw new BadInputDataException("One or more elements are missing in proc code data (line " + lineNumber + ")");
+        }
+        StringDictionary dictionary = batch.getDictionary();
+        if (dictionary != cachedDictionary) {
+            Arrays.fill(cachedText, null);
+            cachedDictionary = dictionary;
+        }
+        batch.append(
+                parseInt(0, lineNumber),
+                parseInt(1, lineNumber),
+                textId(2, dictionary),
+                textId(3, dictionary),
+                textId(4, dictionary),
+                textId(5, dictionary),
+                textId(6, dictionary),
+                parseDouble(7, lineNumber),
+                fields > EFF_DATE_POSITION ? epochDay(EFF_DATE_POSITION, lineNumber) : ProcedureCodeBatch.NO_DATE,
+                fields > END_DATE_POSITION ? epochDay(END_DATE_POSITION, lineNumber) : ProcedureCodeBatch.NO_DATE);
+    }
+
+    /**
+     * Reference parser for a line that is already a String, the same rules as the byte parser
+     */
+    public static ProcedureCodeData parse(String line, long lineNumber) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        return new ProcedureCodeLineParser(ByteBuffer.wrap(bytes)).parse(0, bytes.length, lineNumber);
+    }
+
+    /**
+     * @return number of fields after dropping trailing empty ones, like {@code String.split}
+     */
+    private int splitFields(int start, int end) {
+        int field = 0;
+        int nonEmptyFields = 0;
+        int fieldBegin = start;
+        for (int i = start; i <= end; i++) {
+            if (i == end || view.get(i) == DELIMITER) {
+                if (field < MAX_FIELDS) {
+                    fieldStart[field] = fieldBegin;
+                    fieldEnd[field] = i;
+                }
+                field++;
+                if (i > fieldBegin) {
+                    nonEmptyFields = field;
+                }
+                fieldBegin = i + 1;
+            }
+        }
+        return nonEmptyFields;
+    }
+
+    private String text(int field) {
+        int length = fieldEnd[field] - fieldStart[field];
+        if (length > scratch.length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        view.position(fieldStart[field]);
+        view.get(scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private int textId(int field, StringDictionary dictionary) {
+        int start = fieldStart[field];
+        int length = fieldEnd[field] - start;
+        int hash = length;
+        for (int i = start; i < start + length; i++) {
+            hash = 31 * hash + view.get(i);
+        }
+        int slot = (hash ^ (hash >>> 16)) & (TEXT_CACHE_SLOTS - 1);
+        byte[] cached = cachedText[slot];
+        if (cached != null && cached.length == length && sameBytes(cached, start)) {
+            return cachedIds[slot];
+        }
+        // text() leaves the bytes of the field in scratch
+        int id = dictionary.id(text(field));
+        cachedText[slot] = Arrays.copyOf(scratch, length);
+        cachedIds[slot] = id;
+        return id;
+    }
+
+    private boolean sameBytes(byte[] cached, int start) {
+        for (int i = 0; i < cached.length; i++) {
+            if (cached[i] != view.get(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int parseInt(int field, long lineNumber) {
+        int i = fieldStart[field];
+        int end = fieldEnd[field];
+        boolean negative = false;
+        if (i < end && (view.get(i) == '-' || view.get(i) == '+')) {
+            negative = view.get(i) == '-';
+            i++;
+        }
+        if (i == end) {
+            throw badNumber(field, lineNumber);
+        }
+        // accumulate negatively so Integer.MIN_VALUE fits
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = view.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw badNumber(field, lineNumber);
+            }
+            value = value * 10 - digit;
+            if (value < Integer.MIN_VALUE) {
+                throw badNumber(field, lineNumber);
+            }
+        }
+        if (!negative && value == Integer.MIN_VALUE) {
+            throw badNumber(field, lineNumber);
+        }
+        return (int) (negative ? value : -value);
+    }
+
+    private double parseDouble(int field, long lineNumber) {
+        int i = fieldStart[field];
+        int end = fieldEnd[field];
+        boolean negative = false;
+        if (i < end && (view.get(i) == '-' || view.get(i) == '+')) {
+            negative = view.get(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = -1;
+        for (; i < end; i++) {
+            byte b = view.get(i);
+            if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (scale >= 0) {
+                    scale++;
+                }
+            } else if (b == '.' && scale < 0) {
+                scale = 0;
+            } else {
+                // exponents, whitespace, NaN ... take the JDK route
+                return parseDoubleSlow(field, lineNumber);
+            }
+        }
+        if (digits == 0 || digits > MAX_FAST_DOUBLE_DIGITS) {
+            return parseDoubleSlow(field, lineNumber);
+        }
+        double value = scale > 0 ? mantissa / POWERS_OF_TEN[scale] : mantissa;
+        return negative ? -value : value;
+    }
+
+    private double parseDoubleSlow(int field, long lineNumber) {
+        try {
+            return Double.parseDouble(text(field));
+        } catch (NumberFormatException e) {
+            throw badNumber(field, lineNumber);
+        }
+    }
+
+    private LocalDate parseDate(int field, long lineNumber) {
+        int start = fieldStart[field];
+        int length = fieldEnd[field] - start;
+        if (length == 0) {
+            return null;
+        }
+        if (length != 10 || view.get(start + 4) != '-' || view.get(start + 7) != '-') {
+            throw badDate(field, lineNumber);
+        }
+        try {
+            return LocalDate.of(digits(start, 4, field, lineNumber), digits(start + 5, 2, field, lineNumber), digits(start + 8, 2, field, lineNumber));
+        } catch (DateTimeException e) {
+            throw badDate(field, lineNumber);
+        }
+    }
+
+    private int epochDay(int field, long lineNumber) {
+        LocalDate date = parseDate(field, lineNumber);
+        return date == null ? ProcedureCodeBatch.NO_DATE : (int) date.toEpochDay();
+    }
+
+    private int digits(int offset, int count, int field, long lineNumber) {
+        int value = 0;
+        for (int i = offset; i < offset + count; i++) {
+            int digit = view.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw badDate(field, lineNumber);
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private BadInputDataException badNumber(int field, long lineNumber) {
+        return new BadInputDataException("Invalid number '" + text(field) + "' in element " + (field + 1) + " of line " + lineNumber);
+    }
+
+    private BadInputDataException badDate(int field, long lineNumber) {
+        return new BadInputDataException("Invalid date '" + text(field) + "' in element " + (field + 1) + " of line " + lineNumber + ", expected yyyy-MM-dd");
+    }
+}
@@ -0,0 +1,125 @@
+package com.rajesh.files.fileprocessor.io;
+
+import com.rajesh.files.fileprocessor.exception.EmptyInputFileException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Reads the pipe delimited input from a stream into the same {@link InputBatch}es as {@link ProcedureCodeFileReader},
+ * so streamed lines go through the byte level parser too.
+ * <p>
+ * Only the bytes of the line being scanned are buffered; each batch gets a copy of its own lines.
+ * The stream is not closed.
+ */
+public class ProcedureCodeStreamReader {
+
+    static final int DEFAULT_READ_SIZE = 64 * 1024;
+
+    private final InputStream input;
+    private byte[] buffer;
+    // buffer[start, end) is read but not handed out yet
+    private int start;
+    private int end;
+    private boolean endOfInput;
+    private long offset;
+    private long lineNumber = 1;
+
+    public ProcedureCodeStreamReader(InputStream input) {
+        this(input, DEFAULT_READ_SIZE);
+    }
+
+    ProcedureCodeStreamReader(InputStream input, int readSize) {
+        this.input = input;
+        this.buffer = new byte[readSize];
+    }
+
+    /**
+     * Read the first line, to be called once before the batches
+     *
+     * @return header line without its terminator
+     */
+    public String readHeader() throws IOException {
+        InputBatch header = nextBatch(1);
+        if (header == null) {
+            throw new EmptyInputFileException("Input is empty.");
+        }
+        return header.lineText(0);
+    }
+
+    /**
+     * @param maxLines batch size
+     * @return next batch of at most maxLines lines, null at the end of the stream
+     */
+    public InputBatch nextBatch(int maxLines) throws IOException {
+        int[] lineStarts = new int[maxLines + 1];
+        int lines = 0;
+        // offsets relative to start, which moves when the buffer is compacted
+        int scanned = 0;
+        int searchFrom = 0;
+        while (lines < maxLines) {
+            int newline = indexOfNewline(start + searchFrom, end);
+            if (newline < 0) {
+                searchFrom = end - start;
+                if (fill()) {
+                    continue;
+                }
+                if (scanned == end - start) {
+                    break;
+                }
+                // last line without terminator
+                newline = end - 1;
+            }
+            lineStarts[lines++] = scanned;
+            scanned = newline + 1 - start;
+            searchFrom = scanned;
+        }
+        if (lines == 0) {
+            return null;
+        }
+        lineStarts[lines] = scanned;
+        InputBatch batch = new InputBatch(ByteBuffer.wrap(Arrays.copyOfRange(buffer, start, start + scanned)),
+                lineStarts, lines, lineNumber, offset + scanned);
+        start += scanned;
+        offset += scanned;
+        lineNumber += lines;
+        return batch;
+    }
+
+    /**
+     * Read more of the stream behind the unread bytes
+     *
+     * @return false at the end of the stream
+     */
+    private boolean fill() throws IOException {
+        if (endOfInput) {
+            return false;
+        }
+        if (start > 0) {
+            System.arraycopy(buffer, start, buffer, 0, end - start);
+            end -= start;
+            start = 0;
+        }
+        if (end == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        int read = input.read(buffer, end, buffer.length - end);
+        if (read < 0) {
+            endOfInput = true;
+            return false;
+        }
+        end += read;
+        return true;
+    }
+
+    private int indexOfNewline(int from, int limit) {
+        for (int i = from; i < limit; i++) {
+            if (buffer[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,92 @@
+package com.rajesh.files.fileprocessor.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Appends rejected input lines to {@code <output>.rejects} as {@code line number|reason|original line}.
+ * <p>
+ * The file is created with the first reject, a run without rejects leaves none behind. Like the output file it can
+ * be cut back to a checkpointed length when a run resumes. Not thread safe, owned by the pipeline writer.
+ */
+public class RejectFileWriter implements Closeable {
+
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final Path file;
+    private FileChannel channel;
+    private long length;
+
+    /**
+     * @param resumeLength bytes of an earlier run's reject file to keep, 0 starts a new file
+     */
+    public RejectFileWriter(Path file, long resumeLength) throws IOException {
+        this.file = file;
+        if (resumeLength > 0 && Files.exists(file)) {
+            channel = FileChannel.open(file, StandardOpenOption.WRITE);
+            channel.truncate(resumeLength);
+            channel.position(resumeLength);
+            length = resumeLength;
+        } else {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    public static Path rejectFile(Path outputFile) {
+        return outputFile.resolveSibling(outputFile.getFileName() + ".rejects");
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return bytes in the reject file so far
+     */
+    public long getLength() {
+        return length;
+    }
+
+    public void write(List<RejectedLine> rejectedLines) throws IOException {
+        if (rejectedLines == null || rejectedLines.isEmpty()) {
+            return;
+        }
+        if (channel == null) {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        }
+        StringBuilder text = new StringBuilder();
+        for (RejectedLine rejected : rejectedLines) {
+            text.append(rejected.getLineNumber()).append('|')
+                    .append(rejected.getReason().replace('\r', ' ').replace('\n', ' ')).append('|')
+                    .append(rejected.getLine())
+                    .append(LINE_SEPARATOR);
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8));
+        while (bytes.hasRemaining()) {
+            length += channel.write(bytes);
+        }
+    }
+
+    /**
+     * Force written rejects to disk before a checkpoint refers to them
+     */
+    public void force() throws IOException {
+        if (channel != null) {
+            channel.force(false);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+}
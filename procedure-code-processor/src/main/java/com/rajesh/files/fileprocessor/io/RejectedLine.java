@@ -0,0 +1,13 @@
+package com.rajesh.files.fileprocessor.io;
+
+import lombok.Value;
+
+/**
+ * Input line that could not be parsed, with its 1 based line number and the reason
+ */
+@Value
+public class RejectedLine {
+    long lineNumber;
+    String reason;
+    String line;
+}
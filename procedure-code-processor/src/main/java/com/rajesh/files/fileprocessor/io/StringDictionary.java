@@ -0,0 +1,74 @@
+package com.rajesh.files.fileprocessor.io;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Ids for the repeated text columns of one run: every distinct string is kept once and rows store its int id.
+ * <p>
+ * Shared by the parse workers of a run, lookups of known strings do not lock. Besides the string itself it keeps
+ * the upper-case form used by the case-insensitive key match, so a probe never upper-cases per row.
+ */
+public class StringDictionary {
+
+    public static final int NO_STRING = -1;
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    // published after the slot of a new id is written, ids are only handed out after that
+    private volatile String[] values = new String[256];
+    private volatile String[] normalizedValues = new String[256];
+    private int size;
+
+    /**
+     * @return id of the value, {@link #NO_STRING} for null
+     */
+    public int id(String value) {
+        if (value == null) {
+            return NO_STRING;
+        }
+        Integer id = ids.get(value);
+        return id != null ? id : add(value);
+    }
+
+    /**
+     * @return the string of an id handed out by {@link #id}, null for {@link #NO_STRING}
+     */
+    public String string(int id) {
+        return id == NO_STRING ? null : values[id];
+    }
+
+    /**
+     * @return upper-case form of the string of an id, null for {@link #NO_STRING}
+     */
+    public String normalized(int id) {
+        return id == NO_STRING ? null : normalizedValues[id];
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private synchronized int add(String value) {
+        Integer existing = ids.get(value);
+        if (existing != null) {
+            return existing;
+        }
+        String[] strings = values;
+        String[] normalized = normalizedValues;
+        if (size == strings.length) {
+            strings = Arrays.copyOf(strings, size * 2);
+            normalized = Arrays.copyOf(normalized, size * 2);
+        }
+        String normalizedValue = value.toUpperCase(Locale.ROOT);
+        strings[size] = value;
+        // keep one instance when the value is upper-case already
+        normalized[size] = normalizedValue.equals(value) ? value : normalizedValue;
+        normalizedValues = normalized;
+        values = strings;
+        int id = size++;
+        ids.put(value, id);
+        return id;
+    }
+}
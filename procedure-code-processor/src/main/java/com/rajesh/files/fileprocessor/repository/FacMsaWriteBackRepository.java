@@ -0,0 +1,183 @@
+package com.rajesh.files.fileprocessor.repository;
+
+import com.rajesh.files.fileprocessor.domain.ProcessStatistics;
+import com.rajesh.files.fileprocessor.io.ProcedureCodeBatch;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Applies the changes of a batch straight to FAC_MSA instead of writing them to the output file:
+ * the row current before today is end-dated today (with the input modifier) and the input row is inserted effective today.
+ * <p>
+ * Each batch is one transaction, or one per {@code output.database.commit-interval} input rows when that is set,
+ * with the statements sent as JDBC batches. The changes are made by key inside the transaction rather than to the
+ * FAC_MSA row the lookup returned, which may be stale: a row of the same key written by the previous batch while this
+ * one was looked up is replaced, not left current next to the new one. A version already effective today, written by
+ * an earlier batch or by the chunks a resumed run applies again, is replaced as well, so applying a chunk twice
+ * leaves FAC_MSA as applying it once. Of several input rows of one key in a chunk the last one is applied.
+ */
+@Repository
+public class FacMsaWriteBackRepository {
+
+    private static final String KEY_PREDICATE = "GEOGRAPHY_ID = ? AND PROC_CODE = ? AND ACTUAL_DERIVED_IND = ? AND GEOGRAPHIC_LEVEL = ?";
+    private static final String DELETE_TODAY_SQL = "DELETE FROM FAC_MSA WHERE " + KEY_PREDICATE + " AND EFF_DT = ?";
+    private static final String END_DATE_SQL = "UPDATE FAC_MSA SET END_DT = ?, MODIFIER = ? WHERE " + KEY_PREDICATE
+            + " AND EFF_DT < ? AND END_DT > ?";
+    private static final String INSERT_SQL = "INSERT INTO FAC_MSA (GEOGRAPHY_ID, PROC_CODE, PROC_CODE_DESC, MODIFIER, ACTUAL_DERIVED_IND, "
+            + "GEOGRAPHIC_LEVEL, GEOGRAPHIC_DESC, REFERENCE_AMOUNT, EFF_DT, END_DT) VALUES (?,?,?,?,?,?,?,?,?,?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // input rows per transaction, 0 = the whole batch
+    @Value("${output.database.commit-interval:0}")
+    private int commitInterval;
+
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    void prepareTransactionTemplate() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * @param inputRecords    input records of one batch
+     * @param unchangedRows   rows to leave alone because FAC_MSA already holds their values, null for none
+     * @param batchStatistics receives the end-dated and inserted row counts
+     */
+    public void apply(ProcedureCodeBatch inputRecords, BitSet unchangedRows, LocalDate today, LocalDate infiniteEndDate,
+                      ProcessStatistics batchStatistics) {
+        int chunk = commitInterval > 0 ? commitInterval : Math.max(1, inputRecords.size());
+        for (int from = 0; from < inputRecords.size(); from += chunk) {
+            int to = Math.min(inputRecords.size(), from + chunk);
+            // last row of each key, in input order; dictionary ids stand for the exact key strings
+            Map<List<Integer>, Integer> lastRowOfKey = new LinkedHashMap<>();
+            for (int i = from; i < to; i++) {
+                if (unchangedRows != null && unchangedRows.get(i)) {
+                    continue;
+                }
+                List<Integer> key = Arrays.asList(inputRecords.getGeographyId(i), inputRecords.getProcedureCode(i),
+                        inputRecords.getIndicatorId(i), inputRecords.getLevelId(i));
+                lastRowOfKey.remove(key);
+                lastRowOfKey.put(key, i);
+            }
+            if (lastRowOfKey.isEmpty()) {
+                continue;
+            }
+            List<Integer> applied = new ArrayList<>(lastRowOfKey.values());
+            long[] counts = transactionTemplate.execute(status -> {
+                deleteToday(inputRecords, applied, today);
+                return new long[]{
+                        rowCount(endDate(inputRecords, applied, today)),
+                        rowCount(insert(inputRecords, applied, today, infiniteEndDate))};
+            });
+            batchStatistics.setEndDatedRows(batchStatistics.getEndDatedRows() + counts[0]);
+            batchStatistics.setInsertedRows(batchStatistics.getInsertedRows() + counts[1]);
+        }
+    }
+
+    private int[] deleteToday(ProcedureCodeBatch inputRecords, List<Integer> applied, LocalDate today) {
+        Date effDate = Date.valueOf(today);
+        return jdbcTemplate.batchUpdate(DELETE_TODAY_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                int next = bindKey(ps, 1, inputRecords, applied.get(i));
+                ps.setDate(next, effDate);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return applied.size();
+            }
+        });
+    }
+
+    private int[] endDate(ProcedureCodeBatch inputRecords, List<Integer> applied, LocalDate today) {
+        Date endDate = Date.valueOf(today);
+        return jdbcTemplate.batchUpdate(END_DATE_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                int row = applied.get(i);
+                ps.setDate(1, endDate);
+                ps.setString(2, inputRecords.getModifier(row));
+                int next = bindKey(ps, 3, inputRecords, row);
+                ps.setDate(next, endDate);
+                ps.setDate(next + 1, endDate);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return applied.size();
+            }
+        });
+    }
+
+    private int[] insert(ProcedureCodeBatch inputRecords, List<Integer> inserted, LocalDate today, LocalDate infiniteEndDate) {
+        Date effDate = Date.valueOf(today);
+        Date endDate = Date.valueOf(infiniteEndDate);
+        return jdbcTemplate.batchUpdate(INSERT_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                int row = inserted.get(i);
+                ps.setInt(1, inputRecords.getGeographyId(row));
+                ps.setInt(2, inputRecords.getProcedureCode(row));
+                ps.setString(3, inputRecords.getProcedureCodeDescription(row));
+                ps.setString(4, inputRecords.getModifier(row));
+                ps.setString(5, inputRecords.getActualDerivedIndicator(row));
+                ps.setString(6, inputRecords.getGeographicLevel(row));
+                ps.setString(7, inputRecords.getGeographicDescription(row));
+                ps.setDouble(8, inputRecords.getReferenceAmount(row));
+                ps.setDate(9, effDate);
+                ps.setDate(10, endDate);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return inserted.size();
+            }
+        });
+    }
+
+    /**
+     * @return index of the next parameter
+     */
+    private static int bindKey(PreparedStatement ps, int index, ProcedureCodeBatch inputRecords, int row) throws SQLException {
+        ps.setInt(index, inputRecords.getGeographyId(row));
+        ps.setInt(index + 1, inputRecords.getProcedureCode(row));
+        ps.setString(index + 2, inputRecords.getActualDerivedIndicator(row));
+        ps.setString(index + 3, inputRecords.getGeographicLevel(row));
+        return index + 4;
+    }
+
+    /**
+     * @return rows changed, a statement the driver reports as SUCCESS_NO_INFO counts as one row
+     */
+    private static long rowCount(int[] updateCounts) {
+        long rows = 0;
+        for (int count : updateCounts) {
+            rows += count == Statement.SUCCESS_NO_INFO ? 1 : Math.max(0, count);
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,301 @@
+package com.rajesh.files.fileprocessor.repository;
+
+import com.rajesh.files.fileprocessor.domain.LookupStrategy;
+import com.rajesh.files.fileprocessor.domain.ProcedureCodeData;
+import com.rajesh.files.fileprocessor.domain.ProcessStatistics;
+import com.rajesh.files.fileprocessor.io.ProcedureCodeBatch;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import javax.annotation.PostConstruct;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Looks up the FAC_MSA rows of a batch of input keys with bind parameters.
+ * <p>
+ * Up to {@code lookup.staging.threshold} distinct keys are bound into IN lists of a few fixed sizes
+ * (padded with the last key), so DB2/H2 see the same handful of statements and reuse their plans.
+ * Larger batches are loaded into a session temporary table and joined.
+ * <p>
+ * Only the FAC_MSA version effective on the run date is fetched ({@code EFF_DT <= date < END_DT}), with the mapped
+ * columns only, so the rows fetched per key stay flat as history accumulates. The key index of schema.sql ends in
+ * END_DT for this predicate.
+ */
+@Repository
+public class ProcedureCodeLookupRepository {
+
+    private static final String FAC_MSA_COLUMNS = "GEOGRAPHY_ID, PROC_CODE, PROC_CODE_DESC, MODIFIER, ACTUAL_DERIVED_IND, "
+            + "GEOGRAPHIC_LEVEL, GEOGRAPHIC_DESC, REFERENCE_AMOUNT, EFF_DT, END_DT";
+    private static final String SELECT_FAC_MSA = "SELECT " + FAC_MSA_COLUMNS + " FROM FAC_MSA";
+    private static final String KEY_COLUMNS = "GEOGRAPHY_ID, PROC_CODE, ACTUAL_DERIVED_IND, GEOGRAPHIC_LEVEL";
+    private static final int PARAMS_PER_KEY = 4;
+    // run date twice, bound after the keys
+    private static final String EFFECTIVE_ON = "END_DT > ? AND EFF_DT <= ?";
+    private static final int EFFECTIVE_ON_PARAMS = 2;
+
+    private static final String STAGING_TABLE = "FAC_MSA_LOOKUP_KEYS";
+    private static final String STAGING_COLUMNS = "(GEOGRAPHY_ID INTEGER NOT NULL, PROC_CODE INTEGER NOT NULL, ACTUAL_DERIVED_IND VARCHAR(64), GEOGRAPHIC_LEVEL VARCHAR(64))";
+    private static final String DB2_STAGING_DDL = "DECLARE GLOBAL TEMPORARY TABLE SESSION." + STAGING_TABLE + " " + STAGING_COLUMNS
+            + " ON COMMIT PRESERVE ROWS NOT LOGGED WITH REPLACE";
+    private static final String H2_STAGING_DDL = "CREATE LOCAL TEMPORARY TABLE IF NOT EXISTS " + STAGING_TABLE + " " + STAGING_COLUMNS;
+
+    private static final String ORDERED_SCAN_SQL = SELECT_FAC_MSA + " WHERE " + EFFECTIVE_ON + " ORDER BY GEOGRAPHY_ID, PROC_CODE";
+    private static final ProcedureCodeRowMapper ROW_MAPPER = new ProcedureCodeRowMapper();
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${lookup.in-list.sizes:1,10,50,100,250,500,1000}")
+    private int[] inListSizes;
+
+    @Value("${lookup.staging.threshold:2000}")
+    private int stagingThreshold;
+
+    // parameter markers one statement may hold (DB2: 32767), in-list sizes above it are dropped
+    @Value("${lookup.max-parameters:32767}")
+    private int maxParameters;
+
+    @Value("${lookup.merge.fetch-size:10000}")
+    private int mergeFetchSize;
+
+    private String[] inListSql;
+
+    @PostConstruct
+    void prepareInListStatements() {
+        inListSizes = Arrays.stream(inListSizes)
+                .filter(size -> size > 0 && (long) size * PARAMS_PER_KEY + EFFECTIVE_ON_PARAMS <= maxParameters)
+                .sorted().distinct().toArray();
+        if (inListSizes.length == 0) {
+            throw new IllegalStateException("lookup.in-list.sizes needs at least one positive size within lookup.max-parameters");
+        }
+        inListSql = new String[inListSizes.length];
+        for (int i = 0; i < inListSizes.length; i++) {
+            inListSql[i] = inListSql(inListSizes[i]);
+        }
+    }
+
+    static String inListSql(int size) {
+        StringBuilder sql = new StringBuilder(SELECT_FAC_MSA.length() + 96 + size * 12)
+                .append(SELECT_FAC_MSA).append(" WHERE (").append(KEY_COLUMNS).append(") IN (");
+        for (int i = 0; i < size; i++) {
+            sql.append(i == 0 ? "(?,?,?,?)" : ",(?,?,?,?)");
+        }
+        return sql.append(") AND ").append(EFFECTIVE_ON).toString();
+    }
+
+    public LookupStrategy strategyFor(int distinctKeys) {
+        return distinctKeys > stagingThreshold ? LookupStrategy.STAGING_TABLE : LookupStrategy.IN_LIST;
+    }
+
+    /**
+     * Find the FAC_MSA rows for the keys of the given input records
+     *
+     * @param inputProcCodeRecords records of one batch
+     * @param effectiveOn          run date, only rows effective on it are returned
+     * @param batchStatistics      receives the counters and timings of the strategy used
+     * @return matching FAC_MSA rows
+     */
+    public List<ProcedureCodeData> findAllProcedureCodes(List<ProcedureCodeData> inputProcCodeRecords, LocalDate effectiveOn, ProcessStatistics batchStatistics) {
+        return findByKeys(distinctKeys(inputProcCodeRecords), effectiveOn, batchStatistics);
+    }
+
+    /**
+     * Find the FAC_MSA rows for the keys of the given input batch
+     *
+     * @param inputProcCodeRecords records of one batch
+     * @param effectiveOn          run date, only rows effective on it are returned
+     * @param batchStatistics      receives the counters and timings of the strategy used
+     * @return matching FAC_MSA rows
+     */
+    public List<ProcedureCodeData> findAllProcedureCodes(ProcedureCodeBatch inputProcCodeRecords, LocalDate effectiveOn, ProcessStatistics batchStatistics) {
+        return findAllProcedureCodes(inputProcCodeRecords, null, effectiveOn, batchStatistics);
+    }
+
+    /**
+     * Find the FAC_MSA rows for the keys of some rows of the given input batch
+     *
+     * @param lookupRows rows whose keys are looked up, null for all rows
+     */
+    public List<ProcedureCodeData> findAllProcedureCodes(ProcedureCodeBatch inputProcCodeRecords, BitSet lookupRows, LocalDate effectiveOn,
+                                                         ProcessStatistics batchStatistics) {
+        return findByKeys(distinctKeys(inputProcCodeRecords, lookupRows), effectiveOn, batchStatistics);
+    }
+
+    private List<ProcedureCodeData> findByKeys(List<ProcedureCodeData> keys, LocalDate effectiveOn, ProcessStatistics batchStatistics) {
+        if (keys.isEmpty()) {
+            return new ArrayList<>();
+        }
+        LookupStrategy strategy = strategyFor(keys.size());
+        Date runDate = Date.valueOf(effectiveOn);
+        return jdbcTemplate.execute((ConnectionCallback<List<ProcedureCodeData>>) connection ->
+                strategy == LookupStrategy.STAGING_TABLE
+                        ? queryStagingTable(connection, keys, runDate, batchStatistics)
+                        : queryInLists(connection, keys, runDate, batchStatistics));
+    }
+
+    /**
+     * Stream the FAC_MSA rows effective on the run date ordered by geography id and proc code, one row at a time
+     * over a forward only cursor
+     *
+     * @param rowHandler gets every row in order
+     * @return rows scanned
+     */
+    public long scanOrderedByKey(LocalDate effectiveOn, Consumer<ProcedureCodeData> rowHandler) {
+        JdbcTemplate streaming = new JdbcTemplate(jdbcTemplate.getDataSource());
+        streaming.setFetchSize(mergeFetchSize);
+        Date runDate = Date.valueOf(effectiveOn);
+        long[] rows = {0};
+        streaming.query(ORDERED_SCAN_SQL, (RowCallbackHandler) rs -> {
+            rowHandler.accept(ROW_MAPPER.mapRow(rs, 0));
+            rows[0]++;
+        }, runDate, runDate);
+        return rows[0];
+    }
+
+    private List<ProcedureCodeData> queryInLists(Connection connection, List<ProcedureCodeData> keys, Date runDate,
+                                                 ProcessStatistics batchStatistics) throws SQLException {
+        List<ProcedureCodeData> rows = new ArrayList<>();
+        long prepareNanos = 0;
+        long executeNanos = 0;
+        int statements = 0;
+        int maxSize = inListSizes[inListSizes.length - 1];
+        for (int offset = 0; offset < keys.size(); offset += maxSize) {
+            int chunk = Math.min(maxSize, keys.size() - offset);
+            int sizeIndex = sizeIndexFor(chunk);
+            long start = System.nanoTime();
+            try (PreparedStatement ps = connection.prepareStatement(inListSql[sizeIndex])) {
+                for (int i = 0; i < inListSizes[sizeIndex]; i++) {
+                    // pad with the last key of the chunk, duplicates in an IN list do not change the result
+                    bindKey(ps, i * PARAMS_PER_KEY, keys.get(offset + Math.min(i, chunk - 1)));
+                }
+                bindRunDate(ps, inListSizes[sizeIndex] * PARAMS_PER_KEY, runDate);
+                long prepared = System.nanoTime();
+                mapRows(ps, rows);
+                prepareNanos += prepared - start;
+                executeNanos += System.nanoTime() - prepared;
+                statements++;
+            }
+        }
+        batchStatistics.lookupStatistics(LookupStrategy.IN_LIST)
+                .record(statements, keys.size(), rows.size(), prepareNanos, executeNanos);
+        return rows;
+    }
+
+    private List<ProcedureCodeData> queryStagingTable(Connection connection, List<ProcedureCodeData> keys, Date runDate,
+                                                      ProcessStatistics batchStatistics) throws SQLException {
+        boolean db2 = connection.getMetaData().getDatabaseProductName().toUpperCase().startsWith("DB2");
+        String stagingTable = db2 ? "SESSION." + STAGING_TABLE : STAGING_TABLE;
+        List<ProcedureCodeData> rows = new ArrayList<>();
+
+        long start = System.nanoTime();
+        try (Statement statement = connection.createStatement()) {
+            if (db2) {
+                statement.execute(DB2_STAGING_DDL);
+            } else {
+                statement.execute(H2_STAGING_DDL);
+                statement.execute("TRUNCATE TABLE " + stagingTable);
+            }
+        }
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO " + stagingTable + " (" + KEY_COLUMNS + ") VALUES (?,?,?,?)")) {
+            for (ProcedureCodeData key : keys) {
+                bindKey(insert, 0, key);
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+        String joinSql = "SELECT f." + FAC_MSA_COLUMNS.replace(", ", ", f.") + " FROM FAC_MSA f JOIN " + stagingTable + " k"
+                + " ON f.GEOGRAPHY_ID = k.GEOGRAPHY_ID AND f.PROC_CODE = k.PROC_CODE"
+                + " AND f.ACTUAL_DERIVED_IND = k.ACTUAL_DERIVED_IND AND f.GEOGRAPHIC_LEVEL = k.GEOGRAPHIC_LEVEL"
+                + " WHERE f.END_DT > ? AND f.EFF_DT <= ?";
+        long prepared;
+        try (PreparedStatement ps = connection.prepareStatement(joinSql)) {
+            bindRunDate(ps, 0, runDate);
+            prepared = System.nanoTime();
+            mapRows(ps, rows);
+        }
+        batchStatistics.lookupStatistics(LookupStrategy.STAGING_TABLE)
+                .record(3, keys.size(), rows.size(), prepared - start, System.nanoTime() - prepared);
+        return rows;
+    }
+
+    private int sizeIndexFor(int keyCount) {
+        for (int i = 0; i < inListSizes.length; i++) {
+            if (inListSizes[i] >= keyCount) {
+                return i;
+            }
+        }
+        return inListSizes.length - 1;
+    }
+
+    private static void bindKey(PreparedStatement ps, int offset, ProcedureCodeData key) throws SQLException {
+        ps.setInt(offset + 1, key.getGeographyId());
+        ps.setInt(offset + 2, key.getProcedureCode());
+        ps.setString(offset + 3, key.getActualDerivedIndicator());
+        ps.setString(offset + 4, key.getGeographicLevel());
+    }
+
+    private static void bindRunDate(PreparedStatement ps, int offset, Date runDate) throws SQLException {
+        ps.setDate(offset + 1, runDate);
+        ps.setDate(offset + 2, runDate);
+    }
+
+    private static void mapRows(PreparedStatement ps, List<ProcedureCodeData> rows) throws SQLException {
+        try (ResultSet rs = ps.executeQuery()) {
+            int rowNum = 0;
+            while (rs.next()) {
+                rows.add(ROW_MAPPER.mapRow(rs, rowNum++));
+            }
+        }
+    }
+
+    static List<ProcedureCodeData> distinctKeys(List<ProcedureCodeData> inputProcCodeRecords) {
+        Set<List<Object>> seen = new HashSet<>(inputProcCodeRecords.size() * 4 / 3 + 1);
+        List<ProcedureCodeData> keys = new ArrayList<>(inputProcCodeRecords.size());
+        for (ProcedureCodeData record : inputProcCodeRecords) {
+            if (seen.add(Arrays.asList(record.getGeographyId(), record.getProcedureCode(),
+                    record.getActualDerivedIndicator(), record.getGeographicLevel()))) {
+                keys.add(record);
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * @return one record per distinct key, only the key columns are filled
+     */
+    static List<ProcedureCodeData> distinctKeys(ProcedureCodeBatch inputProcCodeRecords, BitSet lookupRows) {
+        int size = inputProcCodeRecords.size();
+        // dictionary ids stand for the exact strings, as in the list version
+        Set<List<Integer>> seen = new HashSet<>(size * 4 / 3 + 1);
+        List<ProcedureCodeData> keys = new ArrayList<>(size);
+        for (int row = 0; row < size; row++) {
+            if ((lookupRows == null || lookupRows.get(row)) && seen.add(Arrays.asList(inputProcCodeRecords.getGeographyId(row), inputProcCodeRecords.getProcedureCode(row),
+                    inputProcCodeRecords.getIndicatorId(row), inputProcCodeRecords.getLevelId(row)))) {
+                keys.add(ProcedureCodeData.builder()
+                        .geographyId(inputProcCodeRecords.getGeographyId(row))
+                        .procedureCode(inputProcCodeRecords.getProcedureCode(row))
+                        .actualDerivedIndicator(inputProcCodeRecords.getActualDerivedIndicator(row))
+                        .geographicLevel(inputProcCodeRecords.getGeographicLevel(row))
+                        .build());
+            }
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,241 @@
+package com.rajesh.files.fileprocessor.repository;
+
+import com.rajesh.files.fileprocessor.domain.ProcessShard;
+import com.rajesh.files.fileprocessor.domain.ProcessStatistics;
+import com.rajesh.files.fileprocessor.domain.ShardState;
+import com.rajesh.files.fileprocessor.io.FileRange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Lease table of sharded runs, PROCESS_SHARD in the database every instance of the run shares.
+ * <p>
+ * An instance claims a PENDING shard, or a RUNNING one whose lease expired more than a grace period ago, with a
+ * conditional UPDATE that also bumps ATTEMPTS; renewing and completing a lease require the same owner and attempt, so an
+ * instance that lost its lease can no longer touch the shard. Completing records the attempt and all counters of its run.
+ * Lease expiry is epoch ms by the instances' clocks, keep them in sync. The table is created on first use when missing.
+ */
+@Repository
+public class ProcessShardRepository {
+
+    public static final int MERGE_SHARD = -1;
+
+    // the scalar counters of ProcessStatistics, bound in this order by complete()
+    private static final String[] COUNTER_COLUMNS = {"LINES_READ", "BATCHES", "MATCHED_ROWS", "UNMATCHED_ROWS", "MULTI_MATCHED_ROWS",
+            "CHANGED_ROWS", "UNCHANGED_ROWS", "OUTPUT_ROWS", "END_DATED_ROWS", "INSERTED_ROWS", "SKIPPED_LOOKUPS",
+            "KEY_FILTER_FALSE_POSITIVES", "REJECTED_LINES"};
+    private static final String COLUMNS = "RUN_ID, SHARD_NO, START_OFFSET, END_OFFSET, RUN_DATE, STATUS, OWNER, LEASE_EXPIRES, ATTEMPTS, "
+            + "DONE_ATTEMPT, " + String.join(", ", COUNTER_COLUMNS) + ", MESSAGE";
+    private static final String DDL = "CREATE TABLE PROCESS_SHARD (RUN_ID VARCHAR(64) NOT NULL, SHARD_NO INTEGER NOT NULL, "
+            + "START_OFFSET BIGINT NOT NULL, END_OFFSET BIGINT NOT NULL, RUN_DATE DATE NOT NULL, STATUS VARCHAR(16) NOT NULL, "
+            + "OWNER VARCHAR(128), LEASE_EXPIRES BIGINT NOT NULL, ATTEMPTS INTEGER NOT NULL, DONE_ATTEMPT INTEGER NOT NULL, "
+            + String.join(" BIGINT NOT NULL, ", COUNTER_COLUMNS) + " BIGINT NOT NULL, MESSAGE VARCHAR(1000), PRIMARY KEY (RUN_ID, SHARD_NO))";
+    private static final String EXISTS_SQL = "SELECT COUNT(*) FROM PROCESS_SHARD WHERE 1 = 0";
+    private static final String INSERT_SQL = "INSERT INTO PROCESS_SHARD (" + COLUMNS + ") VALUES (?,?,?,?,?,?,NULL,0,0,0,"
+            + String.join(",", Collections.nCopies(COUNTER_COLUMNS.length, "0")) + ",NULL)";
+    private static final String SELECT_RUN_SQL = "SELECT " + COLUMNS + " FROM PROCESS_SHARD WHERE RUN_ID = ? ORDER BY SHARD_NO";
+    private static final String CLAIMABLE = "(STATUS = 'PENDING' OR (STATUS = 'RUNNING' AND LEASE_EXPIRES < ?))";
+    private static final String CLAIMABLE_SQL = "SELECT " + COLUMNS + " FROM PROCESS_SHARD WHERE RUN_ID = ? AND SHARD_NO >= 0 AND "
+            + CLAIMABLE + " ORDER BY SHARD_NO";
+    private static final String CLAIM_SQL = "UPDATE PROCESS_SHARD SET STATUS = 'RUNNING', OWNER = ?, LEASE_EXPIRES = ?, ATTEMPTS = ATTEMPTS + 1 "
+            + "WHERE RUN_ID = ? AND SHARD_NO = ? AND ATTEMPTS = ? AND " + CLAIMABLE;
+    private static final String HELD = " WHERE RUN_ID = ? AND SHARD_NO = ? AND OWNER = ? AND ATTEMPTS = ? AND STATUS = 'RUNNING'";
+    private static final String RENEW_SQL = "UPDATE PROCESS_SHARD SET LEASE_EXPIRES = ?" + HELD;
+    private static final String COMPLETE_SQL = "UPDATE PROCESS_SHARD SET STATUS = 'DONE', DONE_ATTEMPT = ATTEMPTS, "
+            + String.join(" = ?, ", COUNTER_COLUMNS) + " = ?" + HELD;
+    private static final String FAIL_SQL = "UPDATE PROCESS_SHARD SET STATUS = 'FAILED', MESSAGE = ?" + HELD;
+
+    private static final RowMapper<ProcessShard> ROW_MAPPER = (rs, rowNum) -> ProcessShard.builder()
+            .runId(rs.getString("RUN_ID"))
+            .shardNo(rs.getInt("SHARD_NO"))
+            .startOffset(rs.getLong("START_OFFSET"))
+            .endOffset(rs.getLong("END_OFFSET"))
+            .runDate(rs.getDate("RUN_DATE").toLocalDate())
+            .state(ShardState.valueOf(rs.getString("STATUS")))
+            .owner(rs.getString("OWNER"))
+            .leaseExpires(rs.getLong("LEASE_EXPIRES"))
+            .attempts(rs.getInt("ATTEMPTS"))
+            .doneAttempt(rs.getInt("DONE_ATTEMPT"))
+            .statistics(ProcessStatistics.builder()
+                    .linesRead(rs.getLong("LINES_READ"))
+                    .batches(rs.getLong("BATCHES"))
+                    .matchedRows(rs.getLong("MATCHED_ROWS"))
+                    .unmatchedRows(rs.getLong("UNMATCHED_ROWS"))
+                    .multiMatchedRows(rs.getLong("MULTI_MATCHED_ROWS"))
+                    .changedRows(rs.getLong("CHANGED_ROWS"))
+                    .unchangedRows(rs.getLong("UNCHANGED_ROWS"))
+                    .outputRows(rs.getLong("OUTPUT_ROWS"))
+                    .endDatedRows(rs.getLong("END_DATED_ROWS"))
+                    .insertedRows(rs.getLong("INSERTED_ROWS"))
+                    .skippedLookups(rs.getLong("SKIPPED_LOOKUPS"))
+                    .keyFilterFalsePositives(rs.getLong("KEY_FILTER_FALSE_POSITIVES"))
+                    .rejectedLines(rs.getLong("REJECTED_LINES"))
+                    .build())
+            .message(rs.getString("MESSAGE"))
+            .build();
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessShardRepository.class);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+    private volatile boolean tableChecked;
+
+    @PostConstruct
+    void prepareTransactionTemplate() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Rows of a run ordered by shard number, the merge step first; empty when the run was not created yet
+     */
+    public List<ProcessShard> findRun(String runId) {
+        createTableIfMissing();
+        return jdbcTemplate.query(SELECT_RUN_SQL, ROW_MAPPER, runId);
+    }
+
+    /**
+     * Insert the shards and the merge step of a run in one transaction, unless another instance already did
+     *
+     * @return true when this call created the run
+     */
+    public boolean createRun(String runId, LocalDate runDate, List<FileRange> ranges, long inputSize) {
+        createTableIfMissing();
+        Date date = Date.valueOf(runDate);
+        try {
+            transactionTemplate.execute(status -> {
+                jdbcTemplate.update(INSERT_SQL, runId, MERGE_SHARD, 0L, inputSize, date, ShardState.PENDING.name());
+                return jdbcTemplate.batchUpdate(INSERT_SQL, new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        ps.setString(1, runId);
+                        ps.setInt(2, i);
+                        ps.setLong(3, ranges.get(i).getStart());
+                        ps.setLong(4, ranges.get(i).getEnd());
+                        ps.setDate(5, date);
+                        ps.setString(6, ShardState.PENDING.name());
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return ranges.size();
+                    }
+                });
+            });
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Claim the first shard of the run that is pending or whose lease expired
+     *
+     * @param graceMillis time an expired lease is left to its owner, whose last write may still be under way
+     * @return the claimed shard with this claim's owner, lease and attempt, null when there is none to claim
+     */
+    public ProcessShard claimShard(String runId, String owner, long leaseMillis, long graceMillis) {
+        long now = System.currentTimeMillis();
+        for (ProcessShard shard : jdbcTemplate.query(CLAIMABLE_SQL, ROW_MAPPER, runId, now - graceMillis)) {
+            ProcessShard claimed = claim(shard, owner, now, leaseMillis, graceMillis);
+            if (claimed != null) {
+                return claimed;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Claim the merge step of the run, to be called once all its shards are done
+     *
+     * @param merge merge row as last read
+     */
+    public ProcessShard claimMerge(ProcessShard merge, String owner, long leaseMillis, long graceMillis) {
+        long now = System.currentTimeMillis();
+        boolean claimable = merge.getState() == ShardState.PENDING
+                || (merge.getState() == ShardState.RUNNING && merge.getLeaseExpires() < now - graceMillis);
+        return claimable ? claim(merge, owner, now, leaseMillis, graceMillis) : null;
+    }
+
+    /**
+     * @return false when the lease was lost: it expired and another instance claimed the shard
+     */
+    public boolean renew(ProcessShard lease, long leaseMillis) {
+        return jdbcTemplate.update(RENEW_SQL, System.currentTimeMillis() + leaseMillis,
+                lease.getRunId(), lease.getShardNo(), lease.getOwner(), lease.getAttempts()) == 1;
+    }
+
+    /**
+     * Mark the shard done by the lease's attempt with the counters of its run
+     *
+     * @return false when the lease was lost before the shard was done
+     */
+    public boolean complete(ProcessShard lease, ProcessStatistics statistics) {
+        return jdbcTemplate.update(COMPLETE_SQL, statistics.getLinesRead(), statistics.getBatches(), statistics.getMatchedRows(),
+                statistics.getUnmatchedRows(), statistics.getMultiMatchedRows(), statistics.getChangedRows(), statistics.getUnchangedRows(),
+                statistics.getOutputRows(), statistics.getEndDatedRows(), statistics.getInsertedRows(), statistics.getSkippedLookups(),
+                statistics.getKeyFilterFalsePositives(), statistics.getRejectedLines(),
+                lease.getRunId(), lease.getShardNo(), lease.getOwner(), lease.getAttempts()) == 1;
+    }
+
+    /**
+     * Mark the shard failed, the run fails on every instance
+     */
+    public void fail(ProcessShard lease, String message) {
+        String truncated = message == null || message.length() <= 1000 ? message : message.substring(0, 1000);
+        jdbcTemplate.update(FAIL_SQL, truncated, lease.getRunId(), lease.getShardNo(), lease.getOwner(), lease.getAttempts());
+    }
+
+    private ProcessShard claim(ProcessShard shard, String owner, long now, long leaseMillis, long graceMillis) {
+        long leaseExpires = now + leaseMillis;
+        if (jdbcTemplate.update(CLAIM_SQL, owner, leaseExpires, shard.getRunId(), shard.getShardNo(), shard.getAttempts(),
+                now - graceMillis) != 1) {
+            // claimed by another instance in between
+            return null;
+        }
+        shard.setState(ShardState.RUNNING);
+        shard.setOwner(owner);
+        shard.setLeaseExpires(leaseExpires);
+        shard.setAttempts(shard.getAttempts() + 1);
+        return shard;
+    }
+
+    private void createTableIfMissing() {
+        if (tableChecked) {
+            return;
+        }
+        try {
+            jdbcTemplate.queryForObject(EXISTS_SQL, Long.class);
+        } catch (DataAccessException missing) {
+            try {
+                jdbcTemplate.execute(DDL);
+                log.info("Created lease table PROCESS_SHARD");
+            } catch (DataAccessException e) {
+                // created by another instance meanwhile
+                jdbcTemplate.queryForObject(EXISTS_SQL, Long.class);
+            }
+        }
+        tableChecked = true;
+    }
+}
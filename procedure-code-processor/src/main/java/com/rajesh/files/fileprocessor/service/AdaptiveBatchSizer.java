@@ -0,0 +1,102 @@
+package com.rajesh.files.fileprocessor.service;
+
+import com.rajesh.files.fileprocessor.domain.BatchSizing;
+import com.rajesh.files.fileprocessor.domain.LookupStatistics;
+import com.rajesh.files.fileprocessor.domain.ProcessStatistics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Picks the size of the next input batch so the FAC_MSA lookup of a batch takes about the target latency.
+ * <p>
+ * The lookup time per line is smoothed over the batches written so far; the next size is the target divided by it,
+ * at most halved or doubled per step and kept within [minSize, maxSize]. With a fixed cost per statement the
+ * per-line time falls as batches grow, so the size settles where the lookup takes the target time.
+ * The reader thread asks for sizes, the writer thread reports the batches.
+ */
+public class AdaptiveBatchSizer {
+
+    private static final double SMOOTHING = 0.3;
+    private static final int MAX_RECORDED_CHANGES = 100;
+
+    private final boolean adaptive;
+    private final int initialSize;
+    private final int minSize;
+    private final int maxSize;
+    private final long targetNanos;
+    private final List<Integer> sizeChanges = new ArrayList<>();
+    private int size;
+    private int smallestSize;
+    private int largestSize;
+    private double nanosPerLine = -1;
+
+    /**
+     * @param adaptive      false keeps initialSize for the whole run
+     * @param initialSize   size of the first batches
+     * @param minSize       smallest size to choose
+     * @param maxSize       largest size to choose
+     * @param targetLatency lookup time per batch to aim for
+     */
+    public AdaptiveBatchSizer(boolean adaptive, int initialSize, int minSize, int maxSize, long targetLatency, TimeUnit unit) {
+        if (minSize < 1 || maxSize < minSize) {
+            throw new IllegalArgumentException("Batch size bounds need 1 <= min <= max, got " + minSize + ".." + maxSize);
+        }
+        this.adaptive = adaptive;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.initialSize = adaptive ? clamp(initialSize) : Math.max(1, initialSize);
+        this.targetNanos = unit.toNanos(targetLatency);
+        this.size = this.initialSize;
+        this.smallestSize = this.initialSize;
+        this.largestSize = this.initialSize;
+        sizeChanges.add(this.initialSize);
+    }
+
+    public synchronized int nextSize() {
+        return size;
+    }
+
+    /**
+     * Feed the lookup time of a written batch
+     */
+    public synchronized void batchWritten(ProcessStatistics batchStatistics) {
+        long lines = batchStatistics.getLinesRead();
+        long lookupNanos = 0;
+        for (LookupStatistics lookup : batchStatistics.getLookups().values()) {
+            lookupNanos += lookup.getPrepareNanos() + lookup.getExecuteNanos();
+        }
+        if (!adaptive || lines == 0 || lookupNanos == 0) {
+            return;
+        }
+        double observed = lookupNanos / (double) lines;
+        nanosPerLine = nanosPerLine < 0 ? observed : SMOOTHING * observed + (1 - SMOOTHING) * nanosPerLine;
+        long wanted = Math.round(targetNanos / nanosPerLine);
+        int next = clamp((int) Math.max(size / 2, Math.min(2L * size, wanted)));
+        if (next != size) {
+            size = next;
+            smallestSize = Math.min(smallestSize, next);
+            largestSize = Math.max(largestSize, next);
+            if (sizeChanges.size() < MAX_RECORDED_CHANGES) {
+                sizeChanges.add(next);
+            }
+        }
+    }
+
+    public synchronized BatchSizing report() {
+        return BatchSizing.builder()
+                .adaptive(adaptive)
+                .targetLookupMillis(TimeUnit.NANOSECONDS.toMillis(targetNanos))
+                .initialSize(initialSize)
+                .smallestSize(smallestSize)
+                .largestSize(largestSize)
+                .finalSize(size)
+                .sizeChanges(new ArrayList<>(sizeChanges))
+                .build();
+    }
+
+    private int clamp(int batchSize) {
+        return Math.max(minSize, Math.min(maxSize, batchSize));
+    }
+}
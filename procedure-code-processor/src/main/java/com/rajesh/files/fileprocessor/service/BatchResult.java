@@ -0,0 +1,33 @@
+package com.rajesh.files.fileprocessor.service;
+
+import com.rajesh.files.fileprocessor.domain.ProcedureCodeData;
+import com.rajesh.files.fileprocessor.domain.ProcessStatistics;
+import com.rajesh.files.fileprocessor.io.ProcedureCodeBatch;
+import com.rajesh.files.fileprocessor.io.RejectedLine;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Input records of one matched batch, each with its preferred FAC_MSA match (null when there is none), and the batch counters
+ */
+@Data
+@AllArgsConstructor
+public class BatchResult {
+    ProcedureCodeBatch inputRecords;
+    ProcedureCodeData[] matchedRecords;
+    ProcessStatistics statistics;
+    // input offset right after the batch, set by the reader stage
+    long inputEndOffset;
+    // lines of the batch that could not be parsed, set by the reader stage
+    List<RejectedLine> rejectedLines;
+    // matched rows identical to their FAC_MSA row, null unless output.changes-only is on
+    BitSet unchangedRows;
+
+    public BatchResult(ProcedureCodeBatch inputRecords, ProcedureCodeData[] matchedRecords, ProcessStatistics statistics) {
+        this(inputRecords, matchedRecords, statistics, 0, Collections.emptyList(), null);
+    }
+}
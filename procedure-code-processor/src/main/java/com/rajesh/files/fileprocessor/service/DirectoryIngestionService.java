@@ -0,0 +1,335 @@
+package com.rajesh.files.fileprocessor.service;
+
+import com.rajesh.files.fileprocessor.domain.IngestedFile;
+import com.rajesh.files.fileprocessor.domain.JobState;
+import com.rajesh.files.fileprocessor.domain.ProcessJob;
+import com.rajesh.files.fileprocessor.domain.ProcessStatus;
+import com.rajesh.files.fileprocessor.exception.JobConflictException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ingestion mode ({@code ingest.enabled=true}): watches {@code ingest.directory} and processes every new file
+ * matching {@code ingest.file-pattern} into {@code ingest.output-directory/<name>.csv}.
+ * <p>
+ * A file is claimed once its size and modification time stayed the same for {@code ingest.settle-time} ms, by an
+ * atomic move into the processing/ subdirectory, so two watchers of one directory never take the same file.
+ * Claimed files run as process jobs, so {@code process.jobs.max-concurrent} bounds the files processed at once and
+ * they share the Hikari pool. Afterwards the input moves to done/ or failed/. Files left in processing/ by a stopped
+ * instance are submitted again at startup and resume from their checkpoint; with several instances on one directory
+ * give each instance its own processing/ by running it in a separate ingest.directory.
+ * <p>
+ * A file that cannot be claimed, because a file of the same name is still in processing/ or the move keeps failing,
+ * goes to failed/ under a unique name and is listed as a failed file, instead of being retried on every poll.
+ */
+@Service
+public class DirectoryIngestionService {
+
+    private static final String PROCESSING = "processing";
+    private static final String DONE = "done";
+    private static final String FAILED = "failed";
+    private static final String OUTPUT_SUFFIX = ".csv";
+    // polls a settled file may fail to move into processing/ before it is given up
+    private static final int MAX_FAILED_CLAIMS = 10;
+    private static final Logger log = LoggerFactory.getLogger(DirectoryIngestionService.class);
+
+    @Autowired
+    private ProcessJobService jobService;
+
+    @Autowired
+    private ProcessMetrics metrics;
+
+    @Value("${ingest.enabled:false}")
+    private boolean enabled;
+
+    @Value("${ingest.directory:inbox}")
+    private String ingestDirectory;
+
+    @Value("${ingest.output-directory:outbox}")
+    private String outputDirectory;
+
+    @Value("${ingest.file-pattern:*.txt}")
+    private String filePattern;
+
+    // ms a new file has to stay unchanged before it is claimed
+    @Value("${ingest.settle-time:2000}")
+    private long settleTime;
+
+    // ingested files kept for GET, oldest are dropped first
+    @Value("${ingest.history:100}")
+    private int history;
+
+    private final Map<String, IngestedFile> files = new LinkedHashMap<>();
+    // files seen but not claimed yet, only touched by the watcher thread
+    private final Map<Path, PendingFile> pending = new HashMap<>();
+    private Path inbox;
+    private Path processing;
+    private Path outbox;
+    private PathMatcher matcher;
+    private WatchService watchService;
+    private Thread watcher;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        inbox = Paths.get(ingestDirectory).toAbsolutePath().normalize();
+        processing = inbox.resolve(PROCESSING);
+        outbox = Paths.get(outputDirectory).toAbsolutePath().normalize();
+        Files.createDirectories(processing);
+        Files.createDirectories(inbox.resolve(DONE));
+        Files.createDirectories(inbox.resolve(FAILED));
+        Files.createDirectories(outbox);
+        matcher = FileSystems.getDefault().getPathMatcher("glob:" + filePattern);
+
+        watchService = inbox.getFileSystem().newWatchService();
+        inbox.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        for (Path leftover : listFiles(processing)) {
+            submit(leftover, Files.getLastModifiedTime(leftover).toInstant());
+        }
+        watcher = new Thread(this::watch, "ingest-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        log.info("Watching {} for {}", inbox, filePattern);
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        if (watcher != null) {
+            watcher.interrupt();
+            watchService.close();
+        }
+    }
+
+    public synchronized List<IngestedFile> list() {
+        return new ArrayList<>(files.values());
+    }
+
+    private void watch() {
+        try {
+            // files dropped while the service was down
+            scanInbox(true);
+            long pollMillis = Math.max(100, settleTime / 2);
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watchService.poll(pollMillis, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            scanInbox(false);
+                        } else {
+                            seen(inbox.resolve((Path) event.context()), Instant.now());
+                        }
+                    }
+                    key.reset();
+                }
+                claimSettledFiles();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // stopped
+        } catch (IOException e) {
+            log.error("Stopped watching {}", inbox, e);
+        }
+    }
+
+    private void scanInbox(boolean arrivedAtLastModified) throws IOException {
+        for (Path file : listFiles(inbox)) {
+            seen(file, arrivedAtLastModified ? Files.getLastModifiedTime(file).toInstant() : Instant.now());
+        }
+    }
+
+    private void seen(Path file, Instant arrivedAt) {
+        if (matcher.matches(file.getFileName()) && !pending.containsKey(file) && Files.isRegularFile(file)) {
+            pending.put(file, new PendingFile(arrivedAt));
+        }
+    }
+
+    private void claimSettledFiles() {
+        long now = System.nanoTime();
+        Iterator<Map.Entry<Path, PendingFile>> entries = pending.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Path, PendingFile> entry = entries.next();
+            Path file = entry.getKey();
+            PendingFile pendingFile = entry.getValue();
+            try {
+                long size = Files.size(file);
+                long modified = Files.getLastModifiedTime(file).toMillis();
+                if (size != pendingFile.size || modified != pendingFile.modified) {
+                    pendingFile.size = size;
+                    pendingFile.modified = modified;
+                    pendingFile.unchangedSince = now;
+                } else if (now - pendingFile.unchangedSince >= TimeUnit.MILLISECONDS.toNanos(settleTime)) {
+                    Path claimed = processing.resolve(file.getFileName());
+                    // an atomic move replaces the file of the same name on some platforms
+                    if (Files.exists(claimed)) {
+                        throw new FileAlreadyExistsException(claimed.toString());
+                    }
+                    Files.move(file, claimed, StandardCopyOption.ATOMIC_MOVE);
+                    entries.remove();
+                    submit(claimed, pendingFile.arrivedAt);
+                }
+            } catch (NoSuchFileException e) {
+                // removed, or claimed by another watcher
+                entries.remove();
+            } catch (FileAlreadyExistsException e) {
+                entries.remove();
+                rejected(file, pendingFile.arrivedAt, "DUPLICATE", "A file named " + file.getFileName() + " is still being processed");
+            } catch (IOException e) {
+                // still locked by the writer on some platforms, try again on the next polls
+                if (++pendingFile.failedClaims >= MAX_FAILED_CLAIMS) {
+                    entries.remove();
+                    rejected(file, pendingFile.arrivedAt, "CLAIM_FAILED", "Could not move " + file + " to " + processing + ": " + e);
+                } else if (pendingFile.failedClaims == 1) {
+                    log.warn("Could not claim {}, trying again: {}", file, e.toString());
+                }
+            }
+        }
+    }
+
+    /**
+     * Move a file that cannot be claimed to failed/, under a name that keeps an earlier failed file of the same name
+     */
+    private void rejected(Path file, Instant arrivedAt, String code, String message) {
+        Path target = inbox.resolve(FAILED).resolve(file.getFileName() + "." + System.currentTimeMillis());
+        for (int n = 1; Files.exists(target); n++) {
+            target = inbox.resolve(FAILED).resolve(file.getFileName() + "." + System.currentTimeMillis() + "-" + n);
+        }
+        try {
+            Files.move(file, target);
+        } catch (IOException e) {
+            // left in the inbox, picked up again on its next change
+            log.error("Could not move {} to {}", file, target, e);
+        }
+        Instant now = Instant.now();
+        Duration latency = Duration.between(arrivedAt, now);
+        IngestedFile ingested = IngestedFile.builder()
+                .fileName(file.getFileName().toString())
+                .state(JobState.FAILED)
+                .arrivedAt(arrivedAt)
+                .finishedAt(now)
+                .latencyMillis(latency.toMillis())
+                .result(new ProcessStatus(code, message))
+                .build();
+        synchronized (this) {
+            files.put(target.toString(), ingested);
+            evictFinishedFiles();
+        }
+        metrics.fileIngested(JobState.FAILED, latency);
+        log.warn("Rejected {}: {}", file, message);
+    }
+
+    private void submit(Path claimed, Instant arrivedAt) throws IOException {
+        String fileName = claimed.getFileName().toString();
+        int extension = fileName.lastIndexOf('.');
+        Path output = outbox.resolve((extension > 0 ? fileName.substring(0, extension) : fileName) + OUTPUT_SUFFIX);
+        IngestedFile ingested = IngestedFile.builder()
+                .fileName(fileName)
+                .state(JobState.QUEUED)
+                .outputFile(output.toString())
+                .arrivedAt(arrivedAt)
+                .claimedAt(Instant.now())
+                .build();
+        synchronized (this) {
+            files.put(claimed.toString(), ingested);
+            evictFinishedFiles();
+        }
+        try {
+            ProcessJob job = jobService.submit(claimed.toString(), output.toString(), finishedJob -> finished(claimed, ingested, finishedJob));
+            synchronized (this) {
+                ingested.setJobId(job.getId());
+            }
+        } catch (JobConflictException e) {
+            finished(claimed, ingested, ProcessJob.builder()
+                    .state(JobState.FAILED)
+                    .finishedAt(Instant.now())
+                    .result(new ProcessStatus("CONFLICT", e.getMessage()))
+                    .build());
+        }
+    }
+
+    private void finished(Path claimed, IngestedFile ingested, ProcessJob job) {
+        Path target = inbox.resolve(job.getState() == JobState.SUCCEEDED ? DONE : FAILED).resolve(claimed.getFileName());
+        try {
+            Files.move(claimed, target, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            log.error("Could not move {} to {}", claimed, target, e);
+        }
+        Duration latency = Duration.between(ingested.getArrivedAt(), job.getFinishedAt());
+        synchronized (this) {
+            ingested.setState(job.getState());
+            ingested.setFinishedAt(job.getFinishedAt());
+            ingested.setLatencyMillis(latency.toMillis());
+            ingested.setResult(job.getResult());
+        }
+        metrics.fileIngested(job.getState(), latency);
+        log.info("Ingested {}: {} {} ms after arrival", ingested.getFileName(), job.getState(), latency.toMillis());
+    }
+
+    private void evictFinishedFiles() {
+        Iterator<IngestedFile> oldestFirst = files.values().iterator();
+        while (files.size() > history && oldestFirst.hasNext()) {
+            if (oldestFirst.next().getFinishedAt() != null) {
+                oldestFirst.remove();
+            }
+        }
+    }
+
+    private static List<Path> listFiles(Path directory) throws IOException {
+        List<Path> list = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path entry : entries) {
+                if (Files.isRegularFile(entry)) {
+                    list.add(entry);
+                }
+            }
+        }
+        return list;
+    }
+
+    private static class PendingFile {
+        final Instant arrivedAt;
+        long size = -1;
+        long modified = -1;
+        long unchangedSince;
+        int failedClaims;
+
+        PendingFile(Instant arrivedAt) {
+            this.arrivedAt = arrivedAt;
+        }
+    }
+}
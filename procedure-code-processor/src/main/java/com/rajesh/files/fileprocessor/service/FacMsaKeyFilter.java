@@ -0,0 +1,124 @@
+package com.rajesh.files.fileprocessor.service;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter over the FAC_MSA composite keys (geography id, proc code, upper-case indicator and level).
+ * <p>
+ * {@link #mightContain} never answers false for a key that was put, so an input key it rejects has no FAC_MSA
+ * row and needs no lookup. Keys are hashed into two 64 bit values and the bit positions derived from them
+ * (Kirsch-Mitzenmacher double hashing). Bits are set atomically, keys can be added while batches probe.
+ */
+public class FacMsaKeyFilter {
+
+    private static final long SEED_1 = 0x9E3779B97F4A7C15L;
+    private static final long SEED_2 = 0xC2B2AE3D27D4EB4FL;
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+    private final long expectedKeys;
+
+    /**
+     * @param expectedKeys      keys the filter is sized for
+     * @param falsePositiveRate wanted probability that an absent key passes, with expectedKeys keys put
+     */
+    public FacMsaKeyFilter(long expectedKeys, double falsePositiveRate) {
+        this.expectedKeys = Math.max(1, expectedKeys);
+        double rate = Math.min(0.5, Math.max(1e-9, falsePositiveRate));
+        // m = -n ln p / (ln 2)^2, k = m/n ln 2 = -log2 p
+        long optimalBits = (long) Math.ceil(-this.expectedKeys * Math.log(rate) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (optimalBits + 63) / 64));
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = (long) words * 64;
+        this.hashCount = Math.max(1, (int) Math.round(-Math.log(rate) / Math.log(2)));
+    }
+
+    public void put(int geographyId, int procedureCode, String actualDerivedIndicator, String geographicLevel) {
+        long hash1 = hash(SEED_1, geographyId, procedureCode, actualDerivedIndicator, geographicLevel);
+        long hash2 = hash(SEED_2, geographyId, procedureCode, actualDerivedIndicator, geographicLevel);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current = bits.get(word);
+            while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+                current = bits.get(word);
+            }
+        }
+    }
+
+    /**
+     * @return false when the key is certainly not in FAC_MSA
+     */
+    public boolean mightContain(int geographyId, int procedureCode, String actualDerivedIndicator, String geographicLevel) {
+        long hash1 = hash(SEED_1, geographyId, procedureCode, actualDerivedIndicator, geographicLevel);
+        long hash2 = hash(SEED_2, geographyId, procedureCode, actualDerivedIndicator, geographicLevel);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getBitCount() {
+        return bitCount;
+    }
+
+    public long sizeInBytes() {
+        return bitCount / 8;
+    }
+
+    public int getHashCount() {
+        return hashCount;
+    }
+
+    public long getExpectedKeys() {
+        return expectedKeys;
+    }
+
+    /**
+     * @return false positive rate for the bits set now: (set bits / all bits) ^ hashes
+     */
+    public double currentFalsePositiveRate() {
+        long setBits = 0;
+        for (int i = 0; i < bits.length(); i++) {
+            setBits += Long.bitCount(bits.get(i));
+        }
+        return Math.pow((double) setBits / bitCount, hashCount);
+    }
+
+    /**
+     * @return upper-case form of an indicator or level as put into the filter
+     */
+    public static String normalize(String value) {
+        return value == null ? "" : value.toUpperCase(Locale.ROOT);
+    }
+
+    private static long hash(long seed, int geographyId, int procedureCode, String indicator, String level) {
+        long h = seed;
+        h = mix(h ^ geographyId);
+        h = mix(h ^ procedureCode);
+        h = text(h, indicator);
+        h = text(h, level);
+        return mix(h);
+    }
+
+    private static long text(long h, String value) {
+        // String caches its hash code and the batches share their strings, so this is mostly free; null hashes like ""
+        return mix(h ^ (value == null ? 0 : value.hashCode()));
+    }
+
+    // murmur3 fmix64
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB93FE1A85EC3L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,158 @@
+package com.rajesh.files.fileprocessor.service;
+
+import com.rajesh.files.fileprocessor.io.ProcedureCodeBatch;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the {@link FacMsaKeyFilter} of the database lookup mode ({@code lookup.key-filter.enabled=true}).
+ * <p>
+ * The keys of all FAC_MSA rows are streamed into a new filter at startup and whenever FAC_MSA's version changed:
+ * checked every {@code lookup.key-filter.refresh-interval} ms and at the start of every run. Besides max eff_dt and
+ * row count the version holds sums over the key columns, so a reload of as many rows or a changed key shows up too;
+ * a change none of them catches (a key swapped for another with the same sums) is picked up once the filter is
+ * {@code lookup.key-filter.max-age} ms old. Rows the database output mode inserts are added right away. Size and false positive rate are published as the
+ * {@code procedure.keyfilter.*} gauges, skipped lookups in the run statistics and {@code procedure.lookup.skipped}.
+ */
+@Service
+public class FacMsaKeyFilterService {
+
+    private static final String TABLE_VERSION_SQL = "SELECT MAX(EFF_DT) AS MAX_EFF_DT, COUNT(*) AS ROW_COUNT, "
+            + "SUM(CAST(GEOGRAPHY_ID AS BIGINT) * 1000003 + PROC_CODE) AS ID_SUM, "
+            + "SUM(CAST(PROC_CODE AS BIGINT) * (LENGTH(ACTUAL_DERIVED_IND) * 257 + LENGTH(GEOGRAPHIC_LEVEL))) AS TEXT_SUM "
+            + "FROM FAC_MSA";
+    private static final String KEYS_SQL = "SELECT GEOGRAPHY_ID, PROC_CODE, ACTUAL_DERIVED_IND, GEOGRAPHIC_LEVEL FROM FAC_MSA";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Value("${lookup.key-filter.enabled:false}")
+    private boolean enabled;
+
+    // wanted share of absent keys that still pass the filter
+    @Value("${lookup.key-filter.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+
+    // room for rows inserted between refreshes, as a share of the table's row count
+    @Value("${lookup.key-filter.headroom:0.2}")
+    private double headroom;
+
+    @Value("${lookup.key-filter.fetch-size:10000}")
+    private int fetchSize;
+
+    // ms after which the filter is rebuilt even though the table version is the same, 0 = never
+    @Value("${lookup.key-filter.max-age:3600000}")
+    private long maxAge;
+
+    private volatile FacMsaKeyFilter filter;
+    private List<Object> tableVersion;
+    private long builtAt;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @PostConstruct
+    void registerGauges() {
+        Gauge.builder("procedure.keyfilter.size", this, service -> service.filter == null ? 0 : service.filter.sizeInBytes())
+                .description("Size of the FAC_MSA key filter")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("procedure.keyfilter.keys", this, service -> service.filter == null ? 0 : service.filter.getExpectedKeys())
+                .description("Keys the FAC_MSA key filter is sized for")
+                .register(registry);
+        Gauge.builder("procedure.keyfilter.false.positive.rate", this,
+                        service -> service.filter == null ? 0 : service.filter.currentFalsePositiveRate())
+                .description("Estimated share of absent keys that still pass the FAC_MSA key filter")
+                .register(registry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        if (enabled) {
+            refreshIfChanged();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${lookup.key-filter.refresh-interval:300000}", initialDelayString = "${lookup.key-filter.refresh-interval:300000}")
+    public void scheduledRefresh() {
+        if (enabled) {
+            refreshIfChanged();
+        }
+    }
+
+    /**
+     * @return the current filter, null when the filter is disabled
+     */
+    public FacMsaKeyFilter current() {
+        if (!enabled) {
+            return null;
+        }
+        FacMsaKeyFilter current = filter;
+        return current != null ? current : refreshIfChanged();
+    }
+
+    /**
+     * Rebuild the filter when FAC_MSA changed since it was built, or it reached lookup.key-filter.max-age
+     */
+    public synchronized FacMsaKeyFilter refreshIfChanged() {
+        Map<String, Object> version = jdbcTemplate.queryForMap(TABLE_VERSION_SQL);
+        List<Object> currentVersion = Arrays.asList(version.get("MAX_EFF_DT"), number(version.get("ROW_COUNT")),
+                number(version.get("ID_SUM")), number(version.get("TEXT_SUM")));
+        long currentRowCount = ((Number) version.get("ROW_COUNT")).longValue();
+        FacMsaKeyFilter current = filter;
+        if (current != null && currentVersion.equals(tableVersion)
+                && (maxAge <= 0 || System.nanoTime() - builtAt < TimeUnit.MILLISECONDS.toNanos(maxAge))) {
+            return current;
+        }
+
+        FacMsaKeyFilter built = new FacMsaKeyFilter((long) (currentRowCount * (1 + headroom)) + 1, falsePositiveRate);
+        JdbcTemplate streaming = new JdbcTemplate(jdbcTemplate.getDataSource());
+        streaming.setFetchSize(fetchSize);
+        streaming.query(KEYS_SQL, (RowCallbackHandler) rs -> built.put(rs.getInt(1), rs.getInt(2),
+                FacMsaKeyFilter.normalize(rs.getString(3)), FacMsaKeyFilter.normalize(rs.getString(4))));
+        filter = built;
+        tableVersion = currentVersion;
+        builtAt = System.nanoTime();
+        return built;
+    }
+
+    /**
+     * Add the keys of input rows committed to FAC_MSA by this instance, so they are looked up before the next rebuild.
+     * Synchronized with the rebuild: keys committed during a scan go into the new filter.
+     */
+    public synchronized void added(ProcedureCodeBatch insertedRecords) {
+        FacMsaKeyFilter current = filter;
+        if (current == null) {
+            return;
+        }
+        for (int row = 0; row < insertedRecords.size(); row++) {
+            current.put(insertedRecords.getGeographyId(row), insertedRecords.getProcedureCode(row),
+                    insertedRecords.getNormalizedIndicator(row), insertedRecords.getNormalizedLevel(row));
+        }
+    }
+
+    /**
+     * Sums come back as BIGINT or DECIMAL depending on the database, null for an empty table
+     */
+    private static Long number(Object value) {
+        return value == null ? null : ((Number) value).longValue();
+    }
+}
@@ -0,0 +1,423 @@
+package com.rajesh.files.fileprocessor.service;
+
+import com.rajesh.files.fileprocessor.domain.ProcedureCodeData;
+import com.rajesh.files.fileprocessor.io.ProcedureCodeBatch;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Read-only image of the currently effective FAC_MSA rows, one preferred row per composite key.
+ * <p>
+ * Rows are stored as primitive columns (ints, amounts, epoch days, string ids into one dictionary) next to an
+ * open addressing hash table over the key. The same layout is the on-disk format: a snapshot is written once
+ * with {@link Builder#writeTo} and afterwards only memory mapped, so a warm start is a map and a dictionary read.
+ */
+public class FacMsaSnapshot {
+
+    private static final int MAGIC = 0x46414353;
+    private static final int VERSION = 2;
+    private static final int NO_STRING = -1;
+
+    private final long effectiveEpochDay;
+    private final long maxEffectiveEpochDay;
+    private final long rowCountInTable;
+    private final int rows;
+    private final String[] dictionary;
+    private final Map<String, Integer> dictionaryIds;
+    private final IntBuffer geographyIds;
+    private final IntBuffer procedureCodes;
+    private final IntBuffer indicatorKeys;
+    private final IntBuffer levelKeys;
+    private final IntBuffer indicators;
+    private final IntBuffer levels;
+    private final IntBuffer descriptions;
+    private final IntBuffer modifiers;
+    private final IntBuffer geographicDescriptions;
+    private final DoubleBuffer amounts;
+    private final IntBuffer effectiveDays;
+    private final IntBuffer endDays;
+    private final IntBuffer candidates;
+    // row + 1 per slot, 0 for an empty slot
+    private final IntBuffer slots;
+    private final int slotMask;
+    private final long sizeInBytes;
+
+    private FacMsaSnapshot(ByteBuffer image) {
+        if (image.getInt() != MAGIC || image.getInt() != VERSION) {
+            throw new IllegalArgumentException("Not a FAC_MSA snapshot of version " + VERSION);
+        }
+        sizeInBytes = image.limit();
+        effectiveEpochDay = image.getLong();
+        maxEffectiveEpochDay = image.getLong();
+        rowCountInTable = image.getLong();
+        rows = image.getInt();
+        int slotCount = image.getInt();
+        dictionary = new String[image.getInt()];
+        dictionaryIds = new HashMap<>(dictionary.length * 4 / 3 + 1);
+        for (int i = 0; i < dictionary.length; i++) {
+            byte[] bytes = new byte[image.getInt()];
+            image.get(bytes);
+            dictionary[i] = new String(bytes, StandardCharsets.UTF_8);
+            dictionaryIds.put(dictionary[i], i);
+        }
+        geographyIds = ints(image, rows);
+        procedureCodes = ints(image, rows);
+        indicatorKeys = ints(image, rows);
+        levelKeys = ints(image, rows);
+        indicators = ints(image, rows);
+        levels = ints(image, rows);
+        descriptions = ints(image, rows);
+        modifiers = ints(image, rows);
+        geographicDescriptions = ints(image, rows);
+        amounts = doubles(image, rows);
+        effectiveDays = ints(image, rows);
+        endDays = ints(image, rows);
+        candidates = ints(image, rows);
+        slots = ints(image, slotCount);
+        slotMask = slotCount - 1;
+    }
+
+    /**
+     * Map a snapshot file written by {@link Builder#writeTo}
+     */
+    public static FacMsaSnapshot map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer image = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new FacMsaSnapshot(image);
+        }
+    }
+
+    /**
+     * @return the preferred effective row of the input record's key, null when the key is not in FAC_MSA
+     */
+    public ProcedureCodeData find(ProcedureCodeData input) {
+        int row = findRow(input);
+        return row < 0 ? null : row(row);
+    }
+
+    /**
+     * @return the preferred effective row of the key of input row {@code inputRow}, null when the key is not in FAC_MSA
+     */
+    public ProcedureCodeData find(ProcedureCodeBatch inputs, int inputRow) {
+        int row = findRow(inputs, inputRow);
+        return row < 0 ? null : row(row);
+    }
+
+    /**
+     * @return number of effective FAC_MSA rows that had the same key as the row found for this input
+     */
+    public int candidateCount(ProcedureCodeData input) {
+        int row = findRow(input);
+        return row < 0 ? 0 : candidates.get(row);
+    }
+
+    public int candidateCount(ProcedureCodeBatch inputs, int inputRow) {
+        int row = findRow(inputs, inputRow);
+        return row < 0 ? 0 : candidates.get(row);
+    }
+
+    /**
+     * @return the day whose effective rows the snapshot holds
+     */
+    public long getEffectiveEpochDay() {
+        return effectiveEpochDay;
+    }
+
+    public long getMaxEffectiveEpochDay() {
+        return maxEffectiveEpochDay;
+    }
+
+    public long getRowCountInTable() {
+        return rowCountInTable;
+    }
+
+    public int size() {
+        return rows;
+    }
+
+    public long sizeInBytes() {
+        return sizeInBytes;
+    }
+
+    private int findRow(ProcedureCodeData input) {
+        return findRow(input.getGeographyId(), input.getProcedureCode(),
+                normalize(input.getActualDerivedIndicator()), normalize(input.getGeographicLevel()));
+    }
+
+    private int findRow(ProcedureCodeBatch inputs, int inputRow) {
+        // the batch keeps the upper-case forms already
+        String indicator = inputs.getNormalizedIndicator(inputRow);
+        String level = inputs.getNormalizedLevel(inputRow);
+        return findRow(inputs.getGeographyId(inputRow), inputs.getProcedureCode(inputRow),
+                indicator == null ? "" : indicator, level == null ? "" : level);
+    }
+
+    private int findRow(int geographyId, int procedureCode, String normalizedIndicator, String normalizedLevel) {
+        Integer indicatorKey = dictionaryIds.get(normalizedIndicator);
+        Integer levelKey = dictionaryIds.get(normalizedLevel);
+        if (rows == 0 || indicatorKey == null || levelKey == null) {
+            return -1;
+        }
+        for (int slot = hash(geographyId, procedureCode, indicatorKey, levelKey) & slotMask; ; slot = (slot + 1) & slotMask) {
+            int row = slots.get(slot) - 1;
+            if (row < 0) {
+                return -1;
+            }
+            if (geographyIds.get(row) == geographyId && procedureCodes.get(row) == procedureCode
+                    && indicatorKeys.get(row) == indicatorKey && levelKeys.get(row) == levelKey) {
+                return row;
+            }
+        }
+    }
+
+    private ProcedureCodeData row(int row) {
+        return new ProcedureCodeData(
+                geographyIds.get(row),
+                procedureCodes.get(row),
+                string(descriptions.get(row)),
+                string(modifiers.get(row)),
+                string(indicators.get(row)),
+                string(levels.get(row)),
+                string(geographicDescriptions.get(row)),
+                amounts.get(row),
+                LocalDate.ofEpochDay(effectiveDays.get(row)),
+                LocalDate.ofEpochDay(endDays.get(row)));
+    }
+
+    private String string(int id) {
+        return id == NO_STRING ? null : dictionary[id];
+    }
+
+    static String normalize(String value) {
+        return value == null ? "" : value.toUpperCase(Locale.ROOT);
+    }
+
+    static int hash(int geographyId, int procedureCode, int indicatorKey, int levelKey) {
+        int h = geographyId * 0x9E3779B9 + procedureCode;
+        h = h * 0x85EBCA6B + indicatorKey;
+        h = h * 0xC2B2AE35 + levelKey;
+        return h ^ (h >>> 16);
+    }
+
+    private static IntBuffer ints(ByteBuffer image, int count) {
+        ByteBuffer slice = image.slice();
+        slice.limit(count * Integer.BYTES);
+        image.position(image.position() + count * Integer.BYTES);
+        return slice.asIntBuffer();
+    }
+
+    private static DoubleBuffer doubles(ByteBuffer image, int count) {
+        ByteBuffer slice = image.slice();
+        slice.limit(count * Double.BYTES);
+        image.position(image.position() + count * Double.BYTES);
+        return slice.asDoubleBuffer();
+    }
+
+    /**
+     * Collects streamed FAC_MSA rows and writes the snapshot file. Of several rows with the same key
+     * the one first in {@link ProcedureCodeMatchIndex#PREFERRED_MATCH_ORDER} is kept.
+     */
+    public static class Builder {
+
+        private final Map<String, Integer> dictionaryIds = new HashMap<>();
+        private final List<String> dictionary = new ArrayList<>();
+        private final Map<RowKey, Integer> rowByKey = new HashMap<>();
+        private int[] geographyIds = new int[1024];
+        private int[] procedureCodes = new int[1024];
+        private int[] indicatorKeys = new int[1024];
+        private int[] levelKeys = new int[1024];
+        private int[] indicators = new int[1024];
+        private int[] levels = new int[1024];
+        private int[] descriptions = new int[1024];
+        private int[] modifiers = new int[1024];
+        private int[] geographicDescriptions = new int[1024];
+        private double[] amounts = new double[1024];
+        private int[] effectiveDays = new int[1024];
+        private int[] endDays = new int[1024];
+        private int[] candidates = new int[1024];
+        private int rows;
+        private long rowsSeen;
+        private long maxEffectiveEpochDay = Long.MIN_VALUE;
+
+        public void add(ProcedureCodeData data) {
+            rowsSeen++;
+            maxEffectiveEpochDay = Math.max(maxEffectiveEpochDay, data.getEffectiveDate().toEpochDay());
+            RowKey key = new RowKey(data.getGeographyId(), data.getProcedureCode(),
+                    id(normalize(data.getActualDerivedIndicator())), id(normalize(data.getGeographicLevel())));
+            Integer existing = rowByKey.get(key);
+            if (existing != null) {
+                candidates[existing]++;
+                if (ProcedureCodeMatchIndex.PREFERRED_MATCH_ORDER.compare(data, row(existing)) < 0) {
+                    set(existing, key, data);
+                }
+                return;
+            }
+            if (rows == geographyIds.length) {
+                grow();
+            }
+            rowByKey.put(key, rows);
+            candidates[rows] = 1;
+            set(rows++, key, data);
+        }
+
+        /**
+         * @param effectiveEpochDay    day the streamed rows are effective on
+         * @param maxEffectiveEpochDay max eff_dt of the whole table when the scan started
+         * @param rowCountInTable      row count of the whole table when the scan started
+         */
+        public void writeTo(Path file, long effectiveEpochDay, long maxEffectiveEpochDay, long rowCountInTable) throws IOException {
+            int slotCount = Integer.highestOneBit(Math.max(2, rows * 2 - 1)) << 1;
+            int[] slots = new int[slotCount];
+            for (int row = 0; row < rows; row++) {
+                int slot = hash(geographyIds[row], procedureCodes[row], indicatorKeys[row], levelKeys[row]) & (slotCount - 1);
+                while (slots[slot] != 0) {
+                    slot = (slot + 1) & (slotCount - 1);
+                }
+                slots[slot] = row + 1;
+            }
+            List<byte[]> encoded = new ArrayList<>(dictionary.size());
+            long size = 4 + 4 + 8 + 8 + 8 + 4 + 4 + 4;
+            for (String value : dictionary) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                encoded.add(bytes);
+                size += 4 + bytes.length;
+            }
+            size += (long) rows * (12 * Integer.BYTES + Double.BYTES) + (long) slotCount * Integer.BYTES;
+
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer image = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                image.putInt(MAGIC).putInt(VERSION)
+                        .putLong(effectiveEpochDay).putLong(maxEffectiveEpochDay).putLong(rowCountInTable)
+                        .putInt(rows).putInt(slotCount).putInt(encoded.size());
+                for (byte[] bytes : encoded) {
+                    image.putInt(bytes.length).put(bytes);
+                }
+                for (int[] column : Arrays.asList(geographyIds, procedureCodes, indicatorKeys, levelKeys, indicators, levels,
+                        descriptions, modifiers, geographicDescriptions)) {
+                    image.asIntBuffer().put(column, 0, rows);
+                    image.position(image.position() + rows * Integer.BYTES);
+                }
+                image.asDoubleBuffer().put(amounts, 0, rows);
+                image.position(image.position() + rows * Double.BYTES);
+                for (int[] column : Arrays.asList(effectiveDays, endDays, candidates, slots)) {
+                    int count = column == slots ? slotCount : rows;
+                    image.asIntBuffer().put(column, 0, count);
+                    image.position(image.position() + count * Integer.BYTES);
+                }
+                image.force();
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        public long getMaxEffectiveEpochDay() {
+            return maxEffectiveEpochDay;
+        }
+
+        public long getRowsSeen() {
+            return rowsSeen;
+        }
+
+        private void set(int row, RowKey key, ProcedureCodeData data) {
+            geographyIds[row] = key.geographyId;
+            procedureCodes[row] = key.procedureCode;
+            indicatorKeys[row] = key.indicatorKey;
+            levelKeys[row] = key.levelKey;
+            indicators[row] = id(data.getActualDerivedIndicator());
+            levels[row] = id(data.getGeographicLevel());
+            descriptions[row] = id(data.getProcedureCodeDescription());
+            modifiers[row] = id(data.getModifier());
+            geographicDescriptions[row] = id(data.getGeographicDescription());
+            amounts[row] = data.getReferenceAmount();
+            effectiveDays[row] = (int) data.getEffectiveDate().toEpochDay();
+            endDays[row] = (int) data.getEndDate().toEpochDay();
+        }
+
+        private ProcedureCodeData row(int row) {
+            return new ProcedureCodeData(geographyIds[row], procedureCodes[row], string(descriptions[row]), string(modifiers[row]),
+                    string(indicators[row]), string(levels[row]), string(geographicDescriptions[row]), amounts[row],
+                    LocalDate.ofEpochDay(effectiveDays[row]), LocalDate.ofEpochDay(endDays[row]));
+        }
+
+        private String string(int id) {
+            return id == NO_STRING ? null : dictionary.get(id);
+        }
+
+        private int id(String value) {
+            if (value == null) {
+                return NO_STRING;
+            }
+            Integer id = dictionaryIds.get(value);
+            if (id == null) {
+                id = dictionary.size();
+                dictionary.add(value);
+                dictionaryIds.put(value, id);
+            }
+            return id;
+        }
+
+        private void grow() {
+            int capacity = geographyIds.length * 2;
+            geographyIds = Arrays.copyOf(geographyIds, capacity);
+            procedureCodes = Arrays.copyOf(procedureCodes, capacity);
+            indicatorKeys = Arrays.copyOf(indicatorKeys, capacity);
+            levelKeys = Arrays.copyOf(levelKeys, capacity);
+            indicators = Arrays.copyOf(indicators, capacity);
+            levels = Arrays.copyOf(levels, capacity);
+            descriptions = Arrays.copyOf(descriptions, capacity);
+            modifiers = Arrays.copyOf(modifiers, capacity);
+            geographicDescriptions = Arrays.copyOf(geographicDescriptions, capacity);
+            amounts = Arrays.copyOf(amounts, capacity);
+            effectiveDays = Arrays.copyOf(effectiveDays, capacity);
+            endDays = Arrays.copyOf(endDays, capacity);
+            candidates = Arrays.copyOf(candidates, capacity);
+        }
+    }
+
+    private static final class RowKey {
+        final int geographyId;
+        final int procedureCode;
+        final int indicatorKey;
+        final int levelKey;
+
+        RowKey(int geographyId, int procedureCode, int indicatorKey, int levelKey) {
+            this.geographyId = geographyId;
+            this.procedureCode = procedureCode;
+            this.indicatorKey = indicatorKey;
+            this.levelKey = levelKey;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof RowKey)) {
+                return false;
+            }
+            RowKey other = (RowKey) o;
+            return geographyId == other.geographyId && procedureCode == other.procedureCode
+                    && indicatorKey == other.indicatorKey && levelKey == other.levelKey;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash(geographyId, procedureCode, indicatorKey, levelKey);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.rajesh.files.fileprocessor.service;
+
+import com.rajesh.files.fileprocessor.repository.ProcedureCodeRowMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.Map;
+
+/**
+ * Keeps the {@link FacMsaSnapshot} of the "snapshot" lookup mode ({@code lookup.mode=snapshot}).
+ * <p>
+ * A snapshot holds the rows effective on one day. At startup the snapshot file of today in {@code lookup.snapshot.directory}
+ * is mapped when it still matches FAC_MSA's max eff_dt and row count, otherwise the effective rows are streamed once
+ * into a new file. The same check runs every {@code lookup.snapshot.refresh-interval} ms, also moving the snapshot to
+ * the next day after midnight, and before a batch of a run on another day; a new snapshot is swapped in atomically,
+ * batches already matching keep the one they started with.
+ */
+@Service
+public class FacMsaSnapshotService {
+
+    public static final String SNAPSHOT_MODE = "snapshot";
+    private static final String FILE_PREFIX = "fac_msa-";
+    private static final String FILE_SUFFIX = ".snapshot";
+    private static final String TABLE_VERSION_SQL = "SELECT MAX(EFF_DT) AS MAX_EFF_DT, COUNT(*) AS ROW_COUNT FROM FAC_MSA";
+    private static final String EFFECTIVE_ROWS_SQL = "SELECT GEOGRAPHY_ID, PROC_CODE, PROC_CODE_DESC, MODIFIER, ACTUAL_DERIVED_IND, "
+            + "GEOGRAPHIC_LEVEL, GEOGRAPHIC_DESC, REFERENCE_AMOUNT, EFF_DT, END_DT FROM FAC_MSA WHERE EFF_DT <= ? AND END_DT > ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${lookup.mode:database}")
+    private String lookupMode;
+
+    @Value("${lookup.snapshot.directory:snapshot}")
+    private String snapshotDirectory;
+
+    @Value("${lookup.snapshot.fetch-size:10000}")
+    private int fetchSize;
+
+    private volatile FacMsaSnapshot snapshot;
+
+    public boolean isEnabled() {
+        return SNAPSHOT_MODE.equalsIgnoreCase(lookupMode);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() throws IOException {
+        if (isEnabled()) {
+            refreshIfChanged(LocalDate.now());
+        }
+    }
+
+    /**
+     * @param runDate day the caller matches on
+     * @return the snapshot of the run date, loaded on first use and rebuilt when the current one is of another day
+     */
+    public FacMsaSnapshot current(LocalDate runDate) {
+        FacMsaSnapshot current = snapshot;
+        if (current == null || current.getEffectiveEpochDay() != runDate.toEpochDay()) {
+            try {
+                current = refreshIfChanged(runDate);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to load FAC_MSA snapshot", e);
+            }
+        }
+        return current;
+    }
+
+    @Scheduled(fixedDelayString = "${lookup.snapshot.refresh-interval:300000}", initialDelayString = "${lookup.snapshot.refresh-interval:300000}")
+    public void scheduledRefresh() throws IOException {
+        if (isEnabled()) {
+            refreshIfChanged(LocalDate.now());
+        }
+    }
+
+    /**
+     * Map or rebuild the snapshot when it is of another day or FAC_MSA changed since it was taken
+     *
+     * @param runDate day whose effective rows the snapshot holds
+     */
+    public synchronized FacMsaSnapshot refreshIfChanged(LocalDate runDate) throws IOException {
+        Map<String, Object> version = jdbcTemplate.queryForMap(TABLE_VERSION_SQL);
+        Date maxEffDate = (Date) version.get("MAX_EFF_DT");
+        long effectiveEpochDay = runDate.toEpochDay();
+        long maxEffectiveEpochDay = maxEffDate == null ? Long.MIN_VALUE : maxEffDate.toLocalDate().toEpochDay();
+        long rowCount = ((Number) version.get("ROW_COUNT")).longValue();
+
+        FacMsaSnapshot current = snapshot;
+        if (current != null && matches(current, effectiveEpochDay, maxEffectiveEpochDay, rowCount)) {
+            return current;
+        }
+        Path directory = Paths.get(snapshotDirectory);
+        Files.createDirectories(directory);
+        Path file = directory.resolve(FILE_PREFIX + runDate + "-" + maxEffectiveEpochDay + "-" + rowCount + FILE_SUFFIX);
+        FacMsaSnapshot loaded = null;
+        if (Files.exists(file)) {
+            try {
+                loaded = FacMsaSnapshot.map(file);
+            } catch (IllegalArgumentException e) {
+                // older format, rebuilt below
+                loaded = null;
+            }
+        }
+        if (loaded == null || !matches(loaded, effectiveEpochDay, maxEffectiveEpochDay, rowCount)) {
+            build(file, runDate, maxEffectiveEpochDay, rowCount);
+            loaded = FacMsaSnapshot.map(file);
+        }
+        snapshot = loaded;
+        deleteOtherSnapshots(directory, file);
+        return loaded;
+    }
+
+    private void build(Path file, LocalDate runDate, long maxEffectiveEpochDay, long rowCount) throws IOException {
+        FacMsaSnapshot.Builder builder = new FacMsaSnapshot.Builder();
+        ProcedureCodeRowMapper rowMapper = new ProcedureCodeRowMapper();
+        Date effectiveOn = Date.valueOf(runDate);
+        JdbcTemplate streaming = new JdbcTemplate(jdbcTemplate.getDataSource());
+        streaming.setFetchSize(fetchSize);
+        streaming.query(EFFECTIVE_ROWS_SQL, (RowCallbackHandler) rs -> builder.add(rowMapper.mapRow(rs, 0)), effectiveOn, effectiveOn);
+        builder.writeTo(file, runDate.toEpochDay(), maxEffectiveEpochDay, rowCount);
+    }
+
+    private static boolean matches(FacMsaSnapshot snapshot, long effectiveEpochDay, long maxEffectiveEpochDay, long rowCount) {
+        return snapshot.getEffectiveEpochDay() == effectiveEpochDay && snapshot.getMaxEffectiveEpochDay() == maxEffectiveEpochDay
+                && snapshot.getRowCountInTable() == rowCount;
+    }
+
+    private static void deleteOtherSnapshots(Path directory, Path keep) {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            for (Path file : files) {
+                if (!file.equals(keep)) {
+                    try {
+                        Files.deleteIfExists(file);
+                    } catch (IOException e) {
+                        // still mapped on some platforms, removed on a later refresh
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // best effort cleanup
+        }
+    }
+}
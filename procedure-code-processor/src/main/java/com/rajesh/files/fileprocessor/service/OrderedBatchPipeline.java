@@ -0,0 +1,151 @@
+package com.rajesh.files.fileprocessor.service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Reader -> worker pool -> single writer pipeline.
+ * <p>
+ * The caller thread is the reader and {@link #submit}s batches. Workers run the stage function concurrently,
+ * the writer thread takes the results in submission order, so the sink sees exactly the order of a serial run.
+ * At most {@code queueDepth} batches are in flight; {@link #submit} blocks when the writer falls behind,
+ * which keeps memory bounded by the queue depth instead of the file size.
+ *
+ * @param <I> batch read from the input
+ * @param <O> result of the stage function
+ */
+public class OrderedBatchPipeline<I, O> implements AutoCloseable {
+
+    @FunctionalInterface
+    public interface BatchSink<O> {
+        void write(O result) throws IOException;
+    }
+
+    private static final AtomicInteger PIPELINE_COUNT = new AtomicInteger();
+
+    private final Function<I, O> stage;
+    private final ExecutorService workers;
+    private final ExecutorService writer;
+    private final BlockingQueue<Future<O>> inFlight;
+    private final Future<O> endOfInput = CompletableFuture.completedFuture(null);
+    private final Future<?> writerDone;
+    private volatile Throwable failure;
+    private boolean finished;
+
+    public OrderedBatchPipeline(int workerCount, int queueDepth, Function<I, O> stage, BatchSink<O> sink) {
+        int pipelineId = PIPELINE_COUNT.incrementAndGet();
+        this.stage = stage;
+        this.workers = Executors.newFixedThreadPool(workerCount, threadFactory("proc-code-worker-" + pipelineId + "-"));
+        this.writer = Executors.newSingleThreadExecutor(threadFactory("proc-code-writer-" + pipelineId + "-"));
+        this.inFlight = new ArrayBlockingQueue<>(Math.max(1, queueDepth));
+        this.writerDone = writer.submit(() -> {
+            drain(sink);
+            return null;
+        });
+    }
+
+    /**
+     * Hand one batch to the workers, blocks while {@code queueDepth} batches are waiting for the writer
+     */
+    public void submit(I batch) throws IOException {
+        rethrowFailure();
+        Future<O> result = workers.submit(() -> stage.apply(batch));
+        try {
+            while (!inFlight.offer(result, 100, TimeUnit.MILLISECONDS)) {
+                rethrowFailure();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while queueing batch");
+        }
+    }
+
+    /**
+     * Wait until every submitted batch has been written
+     */
+    public void finish() throws IOException {
+        finished = true;
+        try {
+            // a writer that failed with a full queue never takes the end marker
+            while (failure == null && !inFlight.offer(endOfInput, 100, TimeUnit.MILLISECONDS)) {
+                rethrowFailure();
+            }
+            writerDone.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the writer");
+        } catch (ExecutionException e) {
+            failure = e.getCause();
+        }
+        rethrowFailure();
+    }
+
+    @Override
+    public void close() {
+        if (!finished || failure != null) {
+            writerDone.cancel(true);
+            workers.shutdownNow();
+        } else {
+            workers.shutdown();
+        }
+        writer.shutdownNow();
+    }
+
+    private void drain(BatchSink<O> sink) throws Exception {
+        try {
+            while (true) {
+                Future<O> next = inFlight.take();
+                if (next == endOfInput) {
+                    return;
+                }
+                O result;
+                try {
+                    result = next.get();
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+                sink.write(result);
+            }
+        } catch (Exception | Error e) {
+            failure = e;
+            throw e;
+        }
+    }
+
+    private void rethrowFailure() throws IOException {
+        Throwable cause = failure;
+        if (cause == null) {
+            return;
+        }
+        if (cause instanceof IOException) {
+            throw (IOException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        throw new IllegalStateException(cause);
+    }
+
+    private static ThreadFactory threadFactory(String prefix) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
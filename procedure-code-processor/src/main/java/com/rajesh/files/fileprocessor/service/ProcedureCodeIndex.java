@@ -0,0 +1,181 @@
+package com.rajesh.files.fileprocessor.service;
+
+import com.rajesh.files.fileprocessor.domain.ProcedureCodeData;
+import com.rajesh.files.fileprocessor.domain.ProcedureCodeKey;
+import com.rajesh.files.fileprocessor.io.ProcedureCodeBatch;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Immutable in-memory index of the current record per key, served by GET /api/procedure-codes.
+ * <p>
+ * Point lookups go through a hash map on {@link ProcedureCodeKey}; description prefix search is a binary search
+ * over the upper-cased descriptions sorted once at build time. Never changed after {@link Builder#build}, so any
+ * number of readers share it without locking while the next index is built.
+ */
+public final class ProcedureCodeIndex {
+
+    // rough heap cost of a record and its map entry and key, without the strings
+    private static final long RECORD_OVERHEAD_BYTES = 200;
+
+    private final Map<ProcedureCodeKey, ProcedureCodeData> byKey;
+    private final String[] descriptions;
+    private final ProcedureCodeData[] byDescription;
+    private final long estimatedBytes;
+    private final Instant builtAt;
+    private final String source;
+
+    private ProcedureCodeIndex(Map<ProcedureCodeKey, ProcedureCodeData> byKey, String source) {
+        this.byKey = byKey;
+        this.source = source;
+        List<ProcedureCodeData> described = new ArrayList<>(byKey.size());
+        long bytes = 0;
+        for (ProcedureCodeData record : byKey.values()) {
+            if (record.getProcedureCodeDescription() != null) {
+                described.add(record);
+            }
+            bytes += RECORD_OVERHEAD_BYTES + chars(record.getProcedureCodeDescription()) + chars(record.getModifier())
+                    + chars(record.getActualDerivedIndicator()) + chars(record.getGeographicLevel()) + chars(record.getGeographicDescription());
+        }
+        ProcedureCodeData[] sorted = described.toArray(new ProcedureCodeData[0]);
+        String[] upperCased = new String[sorted.length];
+        Integer[] order = new Integer[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            upperCased[i] = upperCase(sorted[i].getProcedureCodeDescription());
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> upperCased[a].compareTo(upperCased[b]));
+        this.descriptions = new String[sorted.length];
+        this.byDescription = new ProcedureCodeData[sorted.length];
+        for (int i = 0; i < order.length; i++) {
+            descriptions[i] = upperCased[order[i]];
+            byDescription[i] = sorted[order[i]];
+        }
+        this.estimatedBytes = bytes + 8L * (descriptions.length + byDescription.length);
+        this.builtAt = Instant.now();
+    }
+
+    /**
+     * @return current record of the key, indicator and level compared case-insensitively; null when there is none
+     */
+    public ProcedureCodeData find(int geographyId, int procedureCode, String indicator, String level) {
+        return byKey.get(new ProcedureCodeKey(geographyId, procedureCode, upperCase(indicator), upperCase(level)));
+    }
+
+    public ProcedureCodeData find(ProcedureCodeKey key) {
+        return byKey.get(key);
+    }
+
+    /**
+     * @return records whose proc code description starts with the prefix, ignoring case, in description order
+     */
+    public List<ProcedureCodeData> searchDescription(String prefix, int limit) {
+        String upperPrefix = upperCase(prefix);
+        int from = Arrays.binarySearch(descriptions, upperPrefix);
+        if (from < 0) {
+            from = -from - 1;
+        }
+        List<ProcedureCodeData> found = new ArrayList<>(Math.min(limit, 16));
+        for (int i = from; i < descriptions.length && found.size() < limit && descriptions[i].startsWith(upperPrefix); i++) {
+            found.add(byDescription[i]);
+        }
+        return found;
+    }
+
+    public int size() {
+        return byKey.size();
+    }
+
+    /**
+     * @return estimated heap held by the index, strings counted per record
+     */
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    public Instant getBuiltAt() {
+        return builtAt;
+    }
+
+    /**
+     * @return what the index was last built from, e.g. the output file of the run
+     */
+    public String getSource() {
+        return source;
+    }
+
+    public static ProcedureCodeIndex empty() {
+        return new ProcedureCodeIndex(Collections.emptyMap(), "empty");
+    }
+
+    private static long chars(String value) {
+        return value == null ? 0 : 40 + 2L * value.length();
+    }
+
+    private static String upperCase(String value) {
+        return value == null ? null : value.toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * Current records collected by one writer, later records of a key replace earlier ones
+     */
+    public static class Builder {
+        private final Map<ProcedureCodeKey, ProcedureCodeData> records;
+
+        public Builder() {
+            records = new HashMap<>();
+        }
+
+        /**
+         * Start from the records of an index
+         */
+        public Builder(ProcedureCodeIndex base) {
+            records = new HashMap<>(base.byKey);
+        }
+
+        public void put(ProcedureCodeData record) {
+            records.put(ProcedureCodeKey.of(record), record);
+        }
+
+        /**
+         * Keep the record of the key the lookups would match, whatever order the records come in
+         */
+        public void putIfPreferred(ProcedureCodeData record) {
+            records.merge(ProcedureCodeKey.of(record), record, (kept, candidate) ->
+                    ProcedureCodeMatchIndex.PREFERRED_MATCH_ORDER.compare(candidate, kept) < 0 ? candidate : kept);
+        }
+
+        /**
+         * Input row of a batch as it becomes current: effective on the run date until the infinite date
+         */
+        public void put(ProcedureCodeBatch batch, int row, LocalDate effectiveDate, LocalDate endDate) {
+            ProcedureCodeData record = batch.record(row);
+            record.setEffectiveDate(effectiveDate);
+            record.setEndDate(endDate);
+            records.put(batch.key(row), record);
+        }
+
+        public void putAll(Builder other) {
+            records.putAll(other.records);
+        }
+
+        public int size() {
+            return records.size();
+        }
+
+        /**
+         * The records go to the index as they are, the builder is not used afterwards
+         */
+        public ProcedureCodeIndex build(String source) {
+            return new ProcedureCodeIndex(records, source);
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.rajesh.files.fileprocessor.service;
+
+import com.rajesh.files.fileprocessor.domain.ProcedureCodeData;
+import com.rajesh.files.fileprocessor.domain.ProcedureCodeIndexInfo;
+import com.rajesh.files.fileprocessor.domain.ProcedureCodeKey;
+import com.rajesh.files.fileprocessor.exception.IndexUnavailableException;
+import com.rajesh.files.fileprocessor.repository.ProcedureCodeLookupRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the {@link ProcedureCodeIndex} behind GET /api/procedure-codes ({@code lookup.index.enabled=true}), so downstream
+ * services read current amounts from this instance instead of querying FAC_MSA.
+ * <p>
+ * Optionally seeded at startup with the FAC_MSA rows effective on {@code lookup.index.seed-date}, blank for the day the
+ * instance starts ({@code lookup.index.seed-on-startup}), keeping per key the row the lookups would match. Every successful
+ * run then publishes the records it made current: a new index is built from the current one with the run's records on top
+ * and swapped in atomically, readers keep the index they started with. Runs that only saw part of their records, resumed
+ * from a checkpoint or sharded, publish nothing; when they wrote to FAC_MSA the index is rebuilt from it on their run date.
+ * <p>
+ * Meters: {@code procedure.index.records} and {@code procedure.index.size} gauges, {@code procedure.index.build} and
+ * {@code procedure.index.query} (tag {@code type}: point, batch, prefix) timers.
+ */
+@Service
+public class ProcedureCodeIndexService {
+
+    public static final String POINT = "point";
+    public static final String BATCH = "batch";
+    public static final String PREFIX = "prefix";
+    private static final Logger log = LoggerFactory.getLogger(ProcedureCodeIndexService.class);
+
+    @Autowired
+    private ProcedureCodeLookupRepository lookupRepository;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Value("${lookup.index.enabled:false}")
+    private boolean enabled;
+
+    // load the FAC_MSA rows effective on the seed date at startup, otherwise the index starts empty and fills with the runs
+    @Value("${lookup.index.seed-on-startup:false}")
+    private boolean seedOnStartup;
+
+    // day the startup seed loads the FAC_MSA rows of (yyyy-MM-dd), blank for the day the instance starts
+    @Value("${lookup.index.seed-date:}")
+    private String seedDate;
+
+    private final Object loadLock = new Object();
+    private volatile ProcedureCodeIndex index;
+    // records of the runs published while FAC_MSA is scanned, put on top of the loaded index
+    private ProcedureCodeIndex.Builder publishedDuringLoad;
+    private volatile long lastBuildNanos;
+    private Timer buildTimer;
+    private Timer pointTimer;
+    private Timer batchTimer;
+    private Timer prefixTimer;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @PostConstruct
+    void registerMeters() {
+        Gauge.builder("procedure.index.records", this, service -> service.index == null ? 0 : service.index.size())
+                .description("Current records in the lookup index")
+                .register(registry);
+        Gauge.builder("procedure.index.size", this, service -> service.index == null ? 0 : service.index.getEstimatedBytes())
+                .description("Estimated heap held by the lookup index")
+                .baseUnit("bytes")
+                .register(registry);
+        buildTimer = Timer.builder("procedure.index.build")
+                .description("Time to build and swap in a new lookup index")
+                .register(registry);
+        pointTimer = queryTimer(POINT);
+        batchTimer = queryTimer(BATCH);
+        prefixTimer = queryTimer(PREFIX);
+    }
+
+    private Timer queryTimer(String type) {
+        return Timer.builder("procedure.index.query")
+                .description("Latency of a lookup index query")
+                .tag("type", type)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(100))
+                .maximumExpectedValue(Duration.ofMillis(100))
+                .register(registry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void seed() {
+        if (!enabled) {
+            return;
+        }
+        if (!seedOnStartup) {
+            synchronized (this) {
+                if (index == null) {
+                    swap(ProcedureCodeIndex.empty(), 0);
+                }
+            }
+            return;
+        }
+        load(seedDate.trim().isEmpty() ? LocalDate.now() : LocalDate.parse(seedDate.trim()));
+    }
+
+    /**
+     * Replace the index by the FAC_MSA rows effective on the run date, after a run that wrote to FAC_MSA but only saw part
+     * of the records it made current
+     */
+    public void rebuild(LocalDate effectiveOn) {
+        if (enabled) {
+            load(effectiveOn);
+        }
+    }
+
+    private void load(LocalDate effectiveOn) {
+        synchronized (loadLock) {
+            long start = System.nanoTime();
+            synchronized (this) {
+                publishedDuringLoad = new ProcedureCodeIndex.Builder();
+            }
+            ProcedureCodeIndex.Builder builder = new ProcedureCodeIndex.Builder();
+            long rows;
+            try {
+                rows = lookupRepository.scanOrderedByKey(effectiveOn, builder::putIfPreferred);
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    publishedDuringLoad = null;
+                }
+                throw e;
+            }
+            ProcedureCodeIndex loaded;
+            synchronized (this) {
+                // records of runs published while the table was scanned are newer
+                builder.putAll(publishedDuringLoad);
+                publishedDuringLoad = null;
+                loaded = builder.build("FAC_MSA " + effectiveOn);
+                swap(loaded, System.nanoTime() - start);
+            }
+            log.info("Loaded lookup index with {} records of {} FAC_MSA rows effective on {} in {} ms", loaded.size(), rows, effectiveOn,
+                    (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    /**
+     * @return collector for the records a run makes current, null when the index is disabled
+     */
+    public ProcedureCodeIndex.Builder newRun() {
+        return enabled ? new ProcedureCodeIndex.Builder() : null;
+    }
+
+    /**
+     * Build the next index from the current one and the records of a finished run, then swap it in
+     *
+     * @param source output file of the run
+     */
+    public synchronized void publish(ProcedureCodeIndex.Builder run, String source) {
+        if (run == null || run.size() == 0) {
+            return;
+        }
+        long start = System.nanoTime();
+        if (publishedDuringLoad != null) {
+            publishedDuringLoad.putAll(run);
+        }
+        ProcedureCodeIndex.Builder next = index == null ? new ProcedureCodeIndex.Builder() : new ProcedureCodeIndex.Builder(index);
+        next.putAll(run);
+        swap(next.build(source), System.nanoTime() - start);
+    }
+
+    public ProcedureCodeData find(int geographyId, int procedureCode, String indicator, String level) {
+        ProcedureCodeIndex current = current();
+        long start = System.nanoTime();
+        ProcedureCodeData found = current.find(geographyId, procedureCode, indicator, level);
+        pointTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return found;
+    }
+
+    /**
+     * @return the current record of each key in key order, null for keys without one
+     */
+    public List<ProcedureCodeData> findAll(List<ProcedureCodeKey> keys) {
+        ProcedureCodeIndex current = current();
+        long start = System.nanoTime();
+        List<ProcedureCodeData> found = new ArrayList<>(keys.size());
+        for (ProcedureCodeKey key : keys) {
+            found.add(current.find(key));
+        }
+        batchTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return found;
+    }
+
+    public List<ProcedureCodeData> searchDescription(String prefix, int limit) {
+        ProcedureCodeIndex current = current();
+        long start = System.nanoTime();
+        List<ProcedureCodeData> found = current.searchDescription(prefix, limit);
+        prefixTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return found;
+    }
+
+    public ProcedureCodeIndexInfo info() {
+        ProcedureCodeIndex current = current();
+        return ProcedureCodeIndexInfo.builder()
+                .records(current.size())
+                .estimatedBytes(current.getEstimatedBytes())
+                .builtAt(current.getBuiltAt())
+                .buildMillis(lastBuildNanos / 1_000_000.0)
+                .source(current.getSource())
+                .build();
+    }
+
+    private ProcedureCodeIndex current() {
+        ProcedureCodeIndex current = index;
+        if (current == null) {
+            throw new IndexUnavailableException(enabled ? "Lookup index is still loading" : "Lookup index is disabled (lookup.index.enabled)");
+        }
+        return current;
+    }
+
+    private void swap(ProcedureCodeIndex next, long buildNanos) {
+        index = next;
+        lastBuildNanos = buildNanos;
+        buildTimer.record(buildNanos, TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,73 @@
+package com.rajesh.files.fileprocessor.service;
+
+import com.rajesh.files.fileprocessor.domain.ProcedureCodeData;
+import com.rajesh.files.fileprocessor.domain.ProcedureCodeKey;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hash index over the FAC_MSA rows fetched for one batch, keyed on {@link ProcedureCodeKey}.
+ * Built once per batch and probed once per input row.
+ */
+public class ProcedureCodeMatchIndex {
+
+    /**
+     * Order of the candidates for one key, the first one is the match used for the output:
+     * latest effective date, then latest end date, then the remaining columns so the pick never depends on DB row order.
+     */
+    static final Comparator<ProcedureCodeData> PREFERRED_MATCH_ORDER = Comparator
+            .comparing(ProcedureCodeData::getEffectiveDate, Comparator.nullsLast(Comparator.reverseOrder()))
+            .thenComparing(ProcedureCodeData::getEndDate, Comparator.nullsLast(Comparator.reverseOrder()))
+            .thenComparing(ProcedureCodeData::getReferenceAmount, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(ProcedureCodeData::getModifier, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(ProcedureCodeData::getProcedureCodeDescription, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(ProcedureCodeData::getGeographicDescription, Comparator.nullsLast(Comparator.naturalOrder()));
+
+    private final Map<ProcedureCodeKey, List<ProcedureCodeData>> rowsByKey;
+
+    private ProcedureCodeMatchIndex(Map<ProcedureCodeKey, List<ProcedureCodeData>> rowsByKey) {
+        this.rowsByKey = rowsByKey;
+    }
+
+    public static ProcedureCodeMatchIndex build(List<ProcedureCodeData> procCodesFromDb) {
+        if (procCodesFromDb == null || procCodesFromDb.isEmpty()) {
+            return new ProcedureCodeMatchIndex(Collections.emptyMap());
+        }
+        Map<ProcedureCodeKey, List<ProcedureCodeData>> rowsByKey = new HashMap<>(procCodesFromDb.size() * 4 / 3 + 1);
+        for (ProcedureCodeData dataFromDB : procCodesFromDb) {
+            rowsByKey.computeIfAbsent(ProcedureCodeKey.of(dataFromDB), key -> new ArrayList<>(1)).add(dataFromDB);
+        }
+        for (List<ProcedureCodeData> candidates : rowsByKey.values()) {
+            if (candidates.size() > 1) {
+                candidates.sort(PREFERRED_MATCH_ORDER);
+            }
+        }
+        return new ProcedureCodeMatchIndex(rowsByKey);
+    }
+
+    /**
+     * @param dataFromFile input record
+     * @return all FAC_MSA rows with the same key, preferred match first; empty when there is no match
+     */
+    public List<ProcedureCodeData> probe(ProcedureCodeData dataFromFile) {
+        return probe(ProcedureCodeKey.of(dataFromFile));
+    }
+
+    /**
+     * @param key key of an input record
+     * @return all FAC_MSA rows with the key, preferred match first; empty when there is no match
+     */
+    public List<ProcedureCodeData> probe(ProcedureCodeKey key) {
+        List<ProcedureCodeData> candidates = rowsByKey.get(key);
+        return candidates == null ? Collections.emptyList() : candidates;
+    }
+
+    public int size() {
+        return rowsByKey.size();
+    }
+}
@@ -1,39 +1,73 @@
 package com.rajesh.files.fileprocessor.service;
 
+import com.rajesh.files.fileprocessor.domain.LookupStrategy;
 import com.rajesh.files.fileprocessor.domain.ProcedureCodeData;
+import com.rajesh.files.fileprocessor.domain.ProcessStatistics;
 import com.rajesh.files.fileprocessor.domain.ProcessStatus;
 import com.rajesh.files.fileprocessor.exception.*;
+import com.rajesh.files.fileprocessor.io.ExternalRecordSorter;
+import com.rajesh.files.fileprocessor.io.FileRange;
+import com.rajesh.files.fileprocessor.io.InputBatch;
+import com.rajesh.files.fileprocessor.io.OutputPartitioner;
+import com.rajesh.files.fileprocessor.io.PartitionedOutputWriter;
+import com.rajesh.files.fileprocessor.io.ProcedureCodeBatch;
+import com.rajesh.files.fileprocessor.io.ProcedureCodeCsvWriter;
+import com.rajesh.files.fileprocessor.io.ProcedureCodeFileReader;
+import com.rajesh.files.fileprocessor.io.ProcedureCodeStreamReader;
+import com.rajesh.files.fileprocessor.io.RejectFileWriter;
+import com.rajesh.files.fileprocessor.io.RejectedLine;
+import com.rajesh.files.fileprocessor.io.StringDictionary;
+import com.rajesh.files.fileprocessor.repository.FacMsaWriteBackRepository;
 import com.rajesh.files.fileprocessor.repository.ProcedureCodeDataRepository;
+import com.rajesh.files.fileprocessor.repository.ProcedureCodeLookupRepository;
 import org.hibernate.type.IntegerType;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StopWatch;
+
+import javax.annotation.PostConstruct;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
 import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
 
 @Service
 public class ProcedureCodeProcessorService {
 
     public static final String EFF_END_DATE_FORMAT = "yyyy-MM-dd";
     public static final String INFINITE_DATE = "9999-12-31";
-    public static final int DATA_ELEMENT_SIZE = 8;
-    public static final int EFF_DATE_POSITION = 8;
-    public static final int END_DATE_POSITION = 9;
+    public static final String SORT_MERGE_MODE = "merge";
+    // composite key order of the sort-merge join, geography id and proc code first like the FAC_MSA scan
+    static final Comparator<ProcedureCodeData> KEY_ORDER = Comparator
+            .comparing(ProcedureCodeData::getGeographyId, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(ProcedureCodeData::getProcedureCode, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(data -> upperCase(data.getActualDerivedIndicator()), Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(data -> upperCase(data.getGeographicLevel()), Comparator.nullsFirst(Comparator.naturalOrder()));
+    public static final String OUTPUT_MODE_DATABASE = "database";
+    public static final String OUTPUT_MODE_BOTH = "both";
+    // first column of the row ending a streamed output that failed midway
+    public static final String STREAM_FAILURE_MARKER = "ERROR";
+    private static final LocalDate INFINITE_END_DATE = LocalDate.parse(INFINITE_DATE, DateTimeFormatter.ofPattern(EFF_END_DATE_FORMAT));
 
     private static final String expectedHeader = "GEOGRAPHY ID|PROCEDURE CODE|PROCEDURE CODE DESCRIPTION|MODIFIER|ACTUAL/DERIVED INDICATOR|GEOGRAPHIC LEVEL|GEOGRAPHIC DESCRIPTION|REFERENCE AMOUNT";
-    @Autowired
+    // JPA is not bootstrapped by the headless run (cli profile)
+    @Autowired(required = false)
     ProcedureCodeDataRepository repository;
 
     @Value("${input.file.location}")
@@ -41,22 +75,274 @@ public class ProcedureCodeProcessorService {
 
     @Value("${output.file.location}")
     private String outputFileLocation;
+    // LF, CRLF, CR or the literal separator, blank for the platform line separator
+    @Value("${output.file.line-separator:}")
+    private String outputLineSeparator;
+    // first batch size, and the only one when adaptive sizing is off
+    @Value("${input.file.batch.size:999}")
+    private int batchSize;
+    // grow or shrink batches towards lookup.target-latency within [min-size, max-size]
+    @Value("${input.file.batch.adaptive:true}")
+    private boolean adaptiveBatchSize;
+    @Value("${input.file.batch.min-size:100}")
+    private int minBatchSize;
+    @Value("${input.file.batch.max-size:10000}")
+    private int maxBatchSize;
+    // unparseable lines written to <output>.rejects before the run fails, 0 fails on the first one, negative = no limit
+    @Value("${input.reject.max-rejects:0}")
+    private long maxRejects;
+    // FAC_MSA lookup time per batch to aim for, ms
+    @Value("${lookup.target-latency:200}")
+    private long targetLookupLatency;
+    // parse/match worker threads, 0 = one per core
+    @Value("${process.workers:0}")
+    private int workers;
+    // batches in flight between reader and writer, 0 = twice the workers
+    @Value("${process.queue.depth:0}")
+    private int queueDepth;
+    // database, snapshot or merge
+    @Value("${lookup.mode:database}")
+    private String lookupMode;
+    // input records sorted in memory per spilled run in merge mode
+    @Value("${lookup.merge.run-size:1000000}")
+    private int mergeRunSize;
+    // run files of the merge mode, blank for java.io.tmpdir
+    @Value("${lookup.merge.temp-directory:}")
+    private String mergeTempDirectory;
+    // file: write the changes to the output file, database: apply them to FAC_MSA, both: do both
+    @Value("${output.mode:file}")
+    private String outputMode;
+    // geographic-level or geography-id: one output file per partition and <output>.manifest, blank for one output file
+    @Value("${output.partition.by:}")
+    private String partitionBy;
+    // partitions of output.partition.by=geography-id
+    @Value("${output.partition.count:8}")
+    private int partitionCount;
+    // threads writing partition files, 0 = one per core
+    @Value("${output.partition.writers:0}")
+    private int partitionWriters;
+    // leave out matched rows whose amount, modifier and descriptions equal their FAC_MSA row
+    @Value("${output.changes-only:false}")
+    private boolean changesOnly;
+    // batches between checkpoints, 0 disables checkpoints and resume
+    @Value("${process.checkpoint.interval:10}")
+    private int checkpointInterval;
+
+    @Autowired
+    private ProcedureCodeLookupRepository lookupRepository;
+
+    @Autowired
+    private FacMsaSnapshotService snapshotService;
+
+    @Autowired
+    private FacMsaKeyFilterService keyFilterService;
+
+    @Autowired
+    private FacMsaWriteBackRepository writeBackRepository;
+
+    @Autowired
+    private ProcedureCodeIndexService indexService;
+
+    @Autowired
+    private ProcessMetrics metrics;
 
     /**
-     * Process the procedure data and generate the data file
+     * Process the procedure data of the configured input file and generate the configured data file
      *
      * @return
      * @throws IOException
      */
     public ProcessStatus processProcData() throws IOException {
+        return processProcData(newRun(null, null));
+    }
+
+    /**
+     * @param inputFile  input file, null for input.file.location
+     * @param outputFile output file, null for output.file.location
+     */
+    public ProcessRun newRun(String inputFile, String outputFile) {
+        return new ProcessRun(Paths.get(inputFile == null ? inputFileLocation : inputFile),
+                Paths.get(outputFile == null ? outputFileLocation : outputFile));
+    }
+
+    /**
+     * Process the procedure data and generate the data file
+     *
+     * @param run files of the run, receives progress and is checked for cancellation between batches
+     * @return
+     * @throws IOException
+     */
+    public ProcessStatus processProcData(ProcessRun run) throws IOException {
+        StopWatch stopWatch = new StopWatch();
+        stopWatch.start();
         ProcessStatus status = new ProcessStatus("OK", "Process started...");
+        ProcessStatistics statistics = new ProcessStatistics();
         // Check if input file exists
-        //Path inputFilePath = Path.of(inputFileLocation);
-        Path inputFilePath = Paths.get(inputFileLocation);
+        Path inputFilePath = run.getInputFile();
+        Path outputFilePath = run.getOutputFile();
         if (Files.notExists(inputFilePath)) {
-            throw new InputFileMissingException("Input file ( " + inputFileLocation + " ) doesn't exist");
+            throw new InputFileMissingException("Input file ( " + inputFilePath + " ) doesn't exist");
         } else {
             try {
+
+                // Output goes to <output>.part and is renamed once complete; a checkpoint for the same input resumes it
+                Path partFilePath = RunCheckpoint.partFile(outputFilePath);
+                Path checkpointFilePath = RunCheckpoint.checkpointFile(outputFilePath);
+                CRC32 outputChecksum = new CRC32();
+                // a shard reads its range of the input, only the first one starts with the header
+                FileRange range = run.getRange();
+                boolean withHeader = range == null || range.getStart() == 0;
+                // shard outputs are merged into one file, they are not partitioned
+                OutputPartitioner partitioner = writesFile() && range == null ? OutputPartitioner.of(partitionBy, partitionCount) : null;
+                // sort-merge output follows key order, it cannot resume from an input offset; partition files have no resume point
+                boolean checkpointing = checkpointInterval > 0 && !isSortMergeMode() && partitioner == null;
+                RunCheckpoint checkpoint = checkpointing
+                        ? resumableCheckpoint(inputFilePath, run.getRunDate(), partFilePath, checkpointFilePath, outputChecksum) : null;
+                if (checkpoint == null) {
+                    outputChecksum.reset();
+                    Files.deleteIfExists(checkpointFilePath);
+                } else {
+                    statistics.add(checkpoint.statistics());
+                }
+                long resumeOutputLength = checkpoint == null ? 0 : checkpoint.getOutputLength();
+                long resumeRejectLength = checkpoint == null ? 0 : checkpoint.getRejectFileLength();
+
+                // a resumed run keeps the run date of its checkpoint
+                LocalDate today = checkpoint != null ? checkpoint.getRunDate() : run.getRunDate() == null ? LocalDate.now() : run.getRunDate();
+                AdaptiveBatchSizer batchSizer = new AdaptiveBatchSizer(adaptiveBatchSize, batchSize, minBatchSize, maxBatchSize,
+                        targetLookupLatency, TimeUnit.MILLISECONDS);
+                // text values of the whole run, shared by the batches
+                StringDictionary dictionary = new StringDictionary();
+                long[] batchesSinceCheckpoint = {0};
+                long[] outputBytesCounted = {0};
+                // records this run makes current, published to the lookup index once it succeeded; a shard or a resumed
+                // run only sees part of them
+                boolean partialRun = range != null || checkpoint != null;
+                ProcedureCodeIndex.Builder indexRun = partialRun ? null : indexService.newRun();
+                try (FileChannel outputChannel = openPartFile(partFilePath, resumeOutputLength);
+                     ProcedureCodeCsvWriter writer = new ProcedureCodeCsvWriter(outputChannel,
+                             ProcedureCodeCsvWriter.lineSeparator(outputLineSeparator), ProcedureCodeCsvWriter.DEFAULT_BUFFER_SIZE, outputChecksum);
+                     ProcedureCodeFileReader reader = new ProcedureCodeFileReader(inputFilePath, range);
+                     RejectFileWriter rejectWriter = new RejectFileWriter(RejectFileWriter.rejectFile(outputFilePath), resumeRejectLength);
+                     PartitionedOutputWriter partitionedWriter = partitioner == null ? null : new PartitionedOutputWriter(outputFilePath,
+                             partitioner, partitionWriterCount(), queueDepth(), ProcedureCodeCsvWriter.lineSeparator(outputLineSeparator))) {
+                    OrderedBatchPipeline.BatchSink<BatchResult> sink = batchResult -> {
+                        checkNotCancelled(run);
+                        long writeStart = metrics.start();
+                        rejectLines(batchResult.getRejectedLines(), rejectWriter, statistics, run);
+                        if (partitionedWriter != null) {
+                            BitSet unchangedRows = batchResult.getUnchangedRows();
+                            partitionedWriter.write(batchResult.getInputRecords(), row -> unchangedRows == null || !unchangedRows.get(row),
+                                    (row, partitionWriter) -> writeOutputRows(batchResult, row, today, partitionWriter));
+                        } else if (writesFile()) {
+                            writeOutputRecords(batchResult, today, writer);
+                        }
+                        if (writesDatabase()) {
+                            checkNotCancelled(run);
+                            writeBackRepository.apply(batchResult.getInputRecords(), batchResult.getUnchangedRows(), today,
+                                    INFINITE_END_DATE, batchResult.getStatistics());
+                            keyFilterService.added(batchResult.getInputRecords());
+                        }
+                        if (indexRun != null) {
+                            collectCurrentRecords(batchResult, today, indexRun);
+                        }
+                        metrics.stage(ProcessMetrics.Stage.WRITE, writeStart);
+                        long outputBytes = partitionedWriter != null ? partitionedWriter.getBytesWritten() : writer.getBytesWritten();
+                        metrics.batchWritten(batchResult.getStatistics(), outputBytes - outputBytesCounted[0]);
+                        outputBytesCounted[0] = outputBytes;
+                        statistics.add(batchResult.getStatistics());
+                        batchSizer.batchWritten(batchResult.getStatistics());
+                        run.batchWritten(batchResult.getStatistics(), batchResult.getInputEndOffset());
+                        // a batch applied to FAC_MSA is committed, checkpoint it right away; a resume applies again at most
+                        // the chunks of one batch, which leaves FAC_MSA unchanged
+                        if (checkpointing && (++batchesSinceCheckpoint[0] >= checkpointInterval || writesDatabase())) {
+                            writer.flush();
+                            outputChannel.force(false);
+                            rejectWriter.force();
+                            checkNotCancelled(run);
+                            RunCheckpoint.of(inputFilePath, today, batchResult.getInputEndOffset(), statistics,
+                                    resumeOutputLength + writer.getBytesWritten(), outputChecksum.getValue(),
+                                    rejectWriter.getLength()).save(checkpointFilePath);
+                            batchesSinceCheckpoint[0] = 0;
+                        }
+                    };
+
+                    // process proc code data
+                    if (withHeader) {
+                        String firstLine = reader.readHeader();
+                        if (!firstLine.equalsIgnoreCase(expectedHeader)) {
+                            throw new MissingHeaderInputFileException("First line should be a valid header line");
+                        }
+                    }
+                    if (checkpoint != null) {
+                        // header line + lines already processed or rejected
+                        reader.skipTo(checkpoint.getInputOffset(), checkpoint.getLinesRead() + checkpoint.getRejectedLines() + (withHeader ? 2 : 1));
+                    }
+                    if (keyFilterService.isEnabled() && !isSortMergeMode() && !snapshotService.isEnabled()) {
+                        // FAC_MSA changes since the last scheduled check must not be filtered out
+                        keyFilterService.refreshIfChanged();
+                    }
+                    run.started(range == null ? Files.size(inputFilePath) : range.getEnd(),
+                            checkpoint != null ? checkpoint.getInputOffset() : range == null ? 0 : range.getStart());
+                    if (isSortMergeMode()) {
+                        sortMergeJoin(reader, run, today, dictionary, sink, rejected -> rejectLines(rejected, rejectWriter, statistics, run));
+                    } else {
+                        try (OrderedBatchPipeline<InputBatch, BatchResult> pipeline = new OrderedBatchPipeline<>(workerCount(), queueDepth(),
+                                batch -> {
+                                    long parseStart = metrics.start();
+                                    List<RejectedLine> rejected = rejectsTolerated() ? new ArrayList<>() : null;
+                                    ProcedureCodeBatch inputRecords = batch.parse(dictionary, rejected);
+                                    metrics.stage(ProcessMetrics.Stage.PARSE, parseStart);
+                                    BatchResult batchResult = matchRecordsAndGenerateOutputData(inputRecords, today);
+                                    batchResult.setInputEndOffset(batch.getEndOffset());
+                                    if (rejected != null) {
+                                        batchResult.setRejectedLines(rejected);
+                                    }
+                                    return batchResult;
+                                },
+                                sink)) {
+                            InputBatch batch;
+                            long readStart = metrics.start();
+                            while ((batch = reader.nextBatch(batchSizer.nextSize())) != null) {
+                                metrics.stage(ProcessMetrics.Stage.READ, readStart);
+                                if (run.isCancelled()) {
+                                    throw new ProcessCancelledException("Processing of " + inputFilePath + " was cancelled");
+                                }
+                                pipeline.submit(batch);
+                                readStart = metrics.start();
+                            }
+                            pipeline.finish();
+                        }
+                    }
+                    if (partitionedWriter != null) {
+                        partitionedWriter.finish();
+                    }
+                } catch (IOException e) {
+                    if (run.isCancelled()) {
+                        throw new ProcessCancelledException("Processing of " + inputFilePath + " was cancelled");
+                    }
+                    throw new BadOutputDataException("Failed to write output records to file: " + outputFilePath);
+                }
+
+                // only complete output becomes visible, partition files were renamed when the manifest was written
+                if (writesFile() && partitioner == null) {
+                    try (FileChannel completed = FileChannel.open(partFilePath, StandardOpenOption.WRITE)) {
+                        completed.force(true);
+                    }
+                    checkNotCancelled(run);
+                    Files.move(partFilePath, outputFilePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } else {
+                    Files.deleteIfExists(partFilePath);
+                }
+                Files.deleteIfExists(checkpointFilePath);
+                if (!partialRun) {
+                    indexService.publish(indexRun, outputFilePath.toString());
+                } else if (range == null && writesDatabase()) {
+                    // the lines before the checkpoint were applied by the stopped run, FAC_MSA has all of them
+                    indexService.rebuild(today);
+                }
+
+                /*
                 List<String> lines = Files.readAllLines(Paths.get(inputFileLocation));
                 if (lines.size() == IntegerType.ZERO) {
                     throw new EmptyInputFileException("Input file is empty.");
@@ -70,10 +356,22 @@ public class ProcedureCodeProcessorService {
                 lines.remove(IntegerType.ZERO.intValue());
                 // generate output data
                 matchRecordsAndGenerateOutputData(lines);
-
+                */
+                stopWatch.stop();
+                String summary = statistics.getRejectedLines() == 0 ? ""
+                        : String.format(", %d lines rejected to %s", statistics.getRejectedLines(), RejectFileWriter.rejectFile(outputFilePath));
+                if (changesOnly) {
+                    summary = String.format(" (%d new, %d changed, %d unchanged rows)", statistics.getUnmatchedRows(),
+                            statistics.getChangedRows(), statistics.getUnchangedRows()) + summary;
+                }
+                if (checkpoint != null) {
+                    summary += String.format(", resumed after batch %d at input offset %d", checkpoint.getBatchNumber(), checkpoint.getInputOffset());
+                }
                 status = ProcessStatus.builder()
                         .code("SUCCESS")
-                        .description(String.format("Processed %s lines of data and output file generated", lines.size())).build();
+                        .description(String.format("Processed proc code data and output file generated in %s seconds%s", stopWatch.getTotalTimeSeconds(), summary))
+                        .statistics(statistics)
+                        .batchSizing(batchSizer.report()).build();
             } catch (IOException e) {
                 throw new BadInputDataException("Bad process code data");
             }
@@ -84,123 +382,476 @@ public class ProcedureCodeProcessorService {
 
 
     /**
-     * Match input proc code records with existing records and then generate output file
+     * Stop before anything more is written once the run was cancelled or, for a shard, its lease is no longer held
+     */
+    private static void checkNotCancelled(ProcessRun run) {
+        if (run.isCancelled()) {
+            throw new ProcessCancelledException("Processing of " + run.getInputFile() + " was cancelled");
+        }
+    }
+
+    private boolean rejectsTolerated() {
+        return maxRejects != 0;
+    }
+
+    /**
+     * Write the rejected lines of a batch to the reject file and fail the run once input.reject.max-rejects is exceeded
+     */
+    private void rejectLines(List<RejectedLine> rejected, RejectFileWriter rejectWriter, ProcessStatistics statistics, ProcessRun run) throws IOException {
+        if (rejected == null || rejected.isEmpty()) {
+            return;
+        }
+        rejectWriter.write(rejected);
+        statistics.setRejectedLines(statistics.getRejectedLines() + rejected.size());
+        run.linesRejected(rejected.size());
+        metrics.linesRejected(rejected.size());
+        if (maxRejects > 0 && statistics.getRejectedLines() > maxRejects) {
+            throw new BadInputDataException("More than " + maxRejects + " input lines rejected, see " + rejectWriter.getFile()
+                    + " (first: " + rejected.get(0).getReason() + ")");
+        }
+    }
+
+    /**
+     * Sort-merge join mode: external sort of the input by key, then one merge pass against FAC_MSA streamed in key order.
+     * Replaces thousands of lookups by one sequential scan on each side for files covering most of FAC_MSA.
+     * Output rows follow key order instead of input order.
+     */
+    private void sortMergeJoin(ProcedureCodeFileReader reader, ProcessRun run, LocalDate today, StringDictionary dictionary,
+                               OrderedBatchPipeline.BatchSink<BatchResult> sink,
+                               OrderedBatchPipeline.BatchSink<List<RejectedLine>> rejects) throws IOException {
+        Path tempDirectory = Paths.get(mergeTempDirectory.trim().isEmpty() ? System.getProperty("java.io.tmpdir") : mergeTempDirectory.trim());
+        Files.createDirectories(tempDirectory);
+        try (ExternalRecordSorter sorter = new ExternalRecordSorter(KEY_ORDER, mergeRunSize, tempDirectory)) {
+            long sortStart = System.nanoTime();
+            InputBatch batch;
+            long readStart = metrics.start();
+            while ((batch = reader.nextBatch(batchSize)) != null) {
+                metrics.stage(ProcessMetrics.Stage.READ, readStart);
+                if (run.isCancelled()) {
+                    throw new ProcessCancelledException("Processing of " + run.getInputFile() + " was cancelled");
+                }
+                long parseStart = metrics.start();
+                List<RejectedLine> rejected = rejectsTolerated() ? new ArrayList<>() : null;
+                for (ProcedureCodeData record : batch.parse(rejected)) {
+                    sorter.add(record);
+                }
+                if (rejected != null) {
+                    rejects.write(rejected);
+                }
+                metrics.stage(ProcessMetrics.Stage.PARSE, parseStart);
+                readStart = metrics.start();
+            }
+            MergeJoin join = new MergeJoin(sorter.sorted(), sorter.getCount(), Files.size(run.getInputFile()), run, dictionary, sink);
+            long sortNanos = System.nanoTime() - sortStart;
+            metrics.mergeSorted(sorter.getRunCount());
+
+            long scanStart = metrics.start();
+            long rowsScanned;
+            try {
+                rowsScanned = lookupRepository.scanOrderedByKey(today, join::facMsaRow);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            metrics.stage(ProcessMetrics.Stage.LOOKUP, scanStart);
+            metrics.lookup(LookupStrategy.SORT_MERGE.name(), scanStart);
+            join.finish(rowsScanned, sortNanos, System.nanoTime() - scanStart);
+        }
+    }
+
+    /**
+     * Merge of the sorted input with the ordered FAC_MSA rows. FAC_MSA rows of one geography id and proc code are
+     * gathered and matched case-insensitively on indicator and level, as in the lookup modes; the joined records
+     * go to the sink in batches of input.file.batch.size.
+     */
+    private class MergeJoin {
+        private final Iterator<ProcedureCodeData> sortedInput;
+        private final long inputCount;
+        private final long inputSize;
+        private final ProcessRun run;
+        private final StringDictionary dictionary;
+        private final OrderedBatchPipeline.BatchSink<BatchResult> sink;
+        private final List<ProcedureCodeData> group = new ArrayList<>();
+        private ProcedureCodeData nextInput;
+        private long emitted;
+        private ProcedureCodeBatch chunkInputs;
+        private List<ProcedureCodeData> chunkMatches = new ArrayList<>();
+        private ProcessStatistics chunkStatistics = new ProcessStatistics();
+
+        MergeJoin(Iterator<ProcedureCodeData> sortedInput, long inputCount, long inputSize, ProcessRun run,
+                  StringDictionary dictionary, OrderedBatchPipeline.BatchSink<BatchResult> sink) {
+            this.sortedInput = sortedInput;
+            this.inputCount = inputCount;
+            this.inputSize = inputSize;
+            this.run = run;
+            this.dictionary = dictionary;
+            this.sink = sink;
+            this.chunkInputs = new ProcedureCodeBatch(dictionary, batchSize);
+            this.nextInput = sortedInput.hasNext() ? sortedInput.next() : null;
+        }
+
+        void facMsaRow(ProcedureCodeData row) {
+            if (!group.isEmpty() && compareGroup(row, group.get(0)) != 0) {
+                joinGroup();
+            }
+            group.add(row);
+        }
+
+        void finish(long rowsScanned, long sortNanos, long scanNanos) throws IOException {
+            if (!group.isEmpty()) {
+                joinGroup();
+            }
+            while (nextInput != null) {
+                emit(nextInput, Collections.emptyList());
+            }
+            chunkStatistics.lookupStatistics(LookupStrategy.SORT_MERGE).record(1, inputCount, rowsScanned, sortNanos, scanNanos);
+            flush();
+        }
+
+        private void joinGroup() {
+            ProcedureCodeData groupKey = group.get(0);
+            // input keys before this group have no FAC_MSA rows
+            while (nextInput != null && compareGroup(nextInput, groupKey) < 0) {
+                emit(nextInput, Collections.emptyList());
+            }
+            if (nextInput != null && compareGroup(nextInput, groupKey) == 0) {
+                ProcedureCodeMatchIndex matchIndex = ProcedureCodeMatchIndex.build(group);
+                while (nextInput != null && compareGroup(nextInput, groupKey) == 0) {
+                    emit(nextInput, matchIndex.probe(nextInput));
+                }
+            }
+            group.clear();
+        }
+
+        private void emit(ProcedureCodeData input, List<ProcedureCodeData> candidates) {
+            chunkInputs.add(input);
+            chunkMatches.add(candidates.isEmpty() ? null : candidates.get(0));
+            countMatch(chunkStatistics, candidates.size());
+            nextInput = sortedInput.hasNext() ? sortedInput.next() : null;
+            if (chunkInputs.size() >= batchSize) {
+                try {
+                    flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+
+        private void flush() throws IOException {
+            if (run.isCancelled()) {
+                throw new ProcessCancelledException("Processing of " + run.getInputFile() + " was cancelled");
+            }
+            emitted += chunkInputs.size();
+            chunkStatistics.setLinesRead(chunkInputs.size());
+            chunkStatistics.setBatches(chunkInputs.isEmpty() ? 0 : 1);
+            BatchResult batchResult = new BatchResult(chunkInputs, chunkMatches.toArray(new ProcedureCodeData[0]), chunkStatistics);
+            detectChanges(batchResult);
+            // progress estimate, the output is in key order
+            batchResult.setInputEndOffset(inputCount == 0 ? inputSize : inputSize * emitted / inputCount);
+            sink.write(batchResult);
+            chunkInputs = new ProcedureCodeBatch(dictionary, batchSize);
+            chunkMatches = new ArrayList<>(batchSize);
+            chunkStatistics = new ProcessStatistics();
+        }
+
+        private int compareGroup(ProcedureCodeData a, ProcedureCodeData b) {
+            int compared = Integer.compare(a.getGeographyId(), b.getGeographyId());
+            return compared != 0 ? compared : Integer.compare(a.getProcedureCode(), b.getProcedureCode());
+        }
+    }
+
+    /**
+     * Process proc code data read from a stream into output rows written to a stream, without staging anything on disk.
+     * <p>
+     * Lines are cut into batches as the input arrives and go through the same parse/match pipeline as a file;
+     * every output batch is flushed to the output stream as soon as it is written. The output stream is left open.
      *
-     * @param lines
-     * @throws IOException
+     * @param runDate date the changes are effective, null for today
+     * @return statistics of the run
      */
-    private void matchRecordsAndGenerateOutputData(List<String> lines) {
-        List<ProcedureCodeData> outputProcCodeRecords = new ArrayList<>();
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern(EFF_END_DATE_FORMAT);
-        LocalDate today = LocalDate.now();
-        LocalDate infiniteDate = LocalDate.parse(INFINITE_DATE, formatter);
-        List<ProcedureCodeData> inputProcCodeRecords = lines.stream()
-
-                .map(dataLine -> dataLine.split("[|]")).map(dataElements -> {
-                            if (dataElements.length < DATA_ELEMENT_SIZE) {
-                                throw new BadInputDataException("One or more elements are missing in proc code data");
-                            } else {
-                                ProcedureCodeData inputProcCodeRecord = ProcedureCodeData.builder()
-                                        .geographyId(Integer.valueOf(dataElements[0]))
-                                        .procedureCode(Integer.valueOf(dataElements[1]))
-                                        .procedureCodeDescription(dataElements[2])
-                                        .modifier(dataElements[3])
-                                        .actualDerivedIndicator(dataElements[4])
-                                        .geographicLevel(dataElements[5])
-                                        .geographicDescription(dataElements[6])
-                                        .referenceAmount(Double.valueOf(dataElements[7]))
-                                        .effectiveDate(null)
-                                        .endDate(null).build();
-
-                                if (dataElements.length > EFF_DATE_POSITION) {
-                                    LocalDate effDate = LocalDate.parse(dataElements[EFF_DATE_POSITION + 1], formatter);
-                                    inputProcCodeRecord.setEffectiveDate(effDate);
-                                }
-                                if (dataElements.length > END_DATE_POSITION) {
-                                    LocalDate endDate = LocalDate.parse(dataElements[END_DATE_POSITION + 1], formatter);
-                                    inputProcCodeRecord.setEndDate(endDate);
-                                }
-                                return inputProcCodeRecord;
-                            }
-                        }
-                ).collect(Collectors.toList());
-
-        // Get procedure codes from input data
-        List<Integer> inputProcCodes = inputProcCodeRecords.stream()
-                .map(inputProcCodeData -> inputProcCodeData.getProcedureCode())
-                .collect(Collectors.toList());
-
-        // Get proc code data for given proc codes from database
-        List<ProcedureCodeData> procCodesFromDb = repository.findByProcedureCodeIn(inputProcCodes);
-
-        // Derive output proc code records from input and existing proc code records
-        inputProcCodeRecords.stream().forEach(dataFromFile -> {
-            // check if procedure code exists in database
-            Optional<ProcedureCodeData> procedureCodeRecordFromDBOpt = Optional.ofNullable(procCodesFromDb).orElseGet(Collections::emptyList).stream()
-                    .filter(dataFromDB -> dataFromDB.getProcedureCode().intValue() == dataFromFile.getProcedureCode().intValue())
-                    .findAny();
-
-            // Output record from existing input record
-            ProcedureCodeData outputProcCodeRecordFromFile = ProcedureCodeData.builder()
-                    .geographyId(dataFromFile.getGeographyId())
-                    .procedureCode(dataFromFile.getProcedureCode())
-                    .procedureCodeDescription(dataFromFile.getProcedureCodeDescription())
-                    .modifier(dataFromFile.getModifier())
-                    .actualDerivedIndicator(dataFromFile.getActualDerivedIndicator())
-                    .geographicLevel(dataFromFile.getGeographicLevel())
-                    .geographicDescription(dataFromFile.getGeographicDescription())
-                    .referenceAmount(dataFromFile.getReferenceAmount())
-                    .effectiveDate(dataFromFile.getEffectiveDate())
-                    .endDate(dataFromFile.getEndDate()).build();
-
-            // Derive new record and/or update the amount and dates if (not) match found
-            if (procedureCodeRecordFromDBOpt.isPresent()) {
-                ProcedureCodeData procedureCodeRecordFromDB = procedureCodeRecordFromDBOpt.get();
-                // Output record from existing matching record
-                ProcedureCodeData outputProcCodeRecordFromDB = ProcedureCodeData.builder()
-                        .geographyId(procedureCodeRecordFromDB.getGeographyId())
-                        .procedureCode(procedureCodeRecordFromDB.getProcedureCode())
-                        .procedureCodeDescription(procedureCodeRecordFromDB.getProcedureCodeDescription())
-                        .modifier(procedureCodeRecordFromDB.getModifier())
-                        .actualDerivedIndicator(procedureCodeRecordFromDB.getActualDerivedIndicator())
-                        .geographicLevel(procedureCodeRecordFromDB.getGeographicLevel())
-                        .geographicDescription(procedureCodeRecordFromDB.getGeographicDescription())
-                        .referenceAmount(procedureCodeRecordFromDB.getReferenceAmount())
-                        .effectiveDate(procedureCodeRecordFromDB.getEffectiveDate())
-                        .endDate(procedureCodeRecordFromDB.getEndDate()).build();
-
-                // update existing amount from input record and end date to today's date
-                outputProcCodeRecordFromDB.setEndDate(today);
-
-                // update dates for input record, effective data s today and end date as infinite date
-                outputProcCodeRecordFromFile.setEffectiveDate(today);
-                outputProcCodeRecordFromFile.setEndDate(infiniteDate);
-                outputProcCodeRecords.add(outputProcCodeRecordFromDB);
-            } else {
-                outputProcCodeRecordFromFile.setEffectiveDate(today);
-                outputProcCodeRecordFromFile.setEndDate(infiniteDate);
+    public ProcessStatistics streamProcData(InputStream input, OutputStream output, LocalDate runDate) throws IOException {
+        ProcessStatistics statistics = new ProcessStatistics();
+        ProcedureCodeStreamReader reader = new ProcedureCodeStreamReader(input);
+        if (!reader.readHeader().equalsIgnoreCase(expectedHeader)) {
+            throw new MissingHeaderInputFileException("First line should be a valid header line");
+        }
+
+        LocalDate today = runDate == null ? LocalDate.now() : runDate;
+        AdaptiveBatchSizer batchSizer = new AdaptiveBatchSizer(adaptiveBatchSize, batchSize, minBatchSize, maxBatchSize,
+                targetLookupLatency, TimeUnit.MILLISECONDS);
+        StringDictionary dictionary = new StringDictionary();
+        if (keyFilterService.isEnabled() && !snapshotService.isEnabled()) {
+            keyFilterService.refreshIfChanged();
+        }
+        ProcedureCodeCsvWriter writer = new ProcedureCodeCsvWriter(Channels.newChannel(output),
+                ProcedureCodeCsvWriter.lineSeparator(outputLineSeparator));
+        ProcedureCodeIndex.Builder indexRun = indexService.newRun();
+        try (OrderedBatchPipeline<InputBatch, BatchResult> pipeline = new OrderedBatchPipeline<>(workerCount(), queueDepth(),
+                batch -> {
+                    long parseStart = metrics.start();
+                    ProcedureCodeBatch inputRecords = batch.parse(dictionary);
+                    metrics.stage(ProcessMetrics.Stage.PARSE, parseStart);
+                    return matchRecordsAndGenerateOutputData(inputRecords, today);
+                },
+                batchResult -> {
+                    long writeStart = metrics.start();
+                    long bytesBefore = writer.getBytesWritten();
+                    writeOutputRecords(batchResult, today, writer);
+                    writer.flush();
+                    output.flush();
+                    if (indexRun != null) {
+                        collectCurrentRecords(batchResult, today, indexRun);
+                    }
+                    metrics.stage(ProcessMetrics.Stage.WRITE, writeStart);
+                    metrics.batchWritten(batchResult.getStatistics(), writer.getBytesWritten() - bytesBefore);
+                    statistics.add(batchResult.getStatistics());
+                    batchSizer.batchWritten(batchResult.getStatistics());
+                })) {
+            InputBatch batch;
+            long readStart = metrics.start();
+            while ((batch = reader.nextBatch(batchSizer.nextSize())) != null) {
+                metrics.stage(ProcessMetrics.Stage.READ, readStart);
+                pipeline.submit(batch);
+                readStart = metrics.start();
             }
-            outputProcCodeRecords.add(outputProcCodeRecordFromFile);
-        });
+            pipeline.finish();
+        }
+        writer.flush();
+        indexService.publish(indexRun, "stream");
+        return statistics;
+    }
+
+    /**
+     * Row that ends a streamed output failing after rows were sent with status 200. Data rows start with the
+     * geography id, so the first column tells it apart; commas and line breaks of the message become blanks.
+     */
+    public byte[] streamFailureRow(Exception failure) {
+        String message = failure.getMessage() == null ? failure.toString() : failure.getMessage();
+        return (STREAM_FAILURE_MARKER + "," + message.replaceAll("[,\\r\\n]", " ")
+                + ProcedureCodeCsvWriter.lineSeparator(outputLineSeparator)).getBytes(StandardCharsets.UTF_8);
+    }
 
-        // Write output records to file
-        Path outputFilePath = Paths.get(outputFileLocation);
+    /**
+     * @param runDate        run date asked for, null to continue on the checkpoint's
+     * @param outputChecksum receives the checksum of the valid output prefix when the checkpoint can be used
+     * @return the checkpoint of an earlier run over the same input on the same run date whose part file is intact, else null
+     */
+    private RunCheckpoint resumableCheckpoint(Path inputFilePath, LocalDate runDate, Path partFilePath, Path checkpointFilePath,
+                                              CRC32 outputChecksum) throws IOException {
+        RunCheckpoint checkpoint = RunCheckpoint.load(checkpointFilePath);
+        if (checkpoint != null && checkpoint.isFor(inputFilePath) && checkpoint.resumesOn(runDate)
+                && checkpoint.verifyOutput(partFilePath, outputChecksum)) {
+            metrics.runResumed();
+            return checkpoint;
+        }
+        return null;
+    }
+
+    /**
+     * Open the part file cut back to the checkpointed prefix, writing continues after it
+     */
+    private static FileChannel openPartFile(Path partFilePath, long resumeOutputLength) throws IOException {
+        FileChannel channel = FileChannel.open(partFilePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
         try {
-            Files.deleteIfExists(outputFilePath);
-            // Write the output records to file
+            channel.truncate(resumeOutputLength);
+            channel.position(resumeOutputLength);
+            return channel;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
 
-            try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputFileLocation))) {
-                for (ProcedureCodeData data : outputProcCodeRecords) {
-                    writer.write(data.content() + System.lineSeparator());
+    /**
+     * Match input proc code records with existing records
+     *
+     * Runs on the pipeline workers, so it only touches its own batch. No output records are built here,
+     * the writer derives both output rows of a match from the input record and its matched FAC_MSA row.
+     *
+     * @param inputProcCodeRecords parsed input records of one batch
+     * @param today                run date, input records match the FAC_MSA rows effective on it
+     * @return input records, their matches and the match counts of the batch
+     */
+    BatchResult matchRecordsAndGenerateOutputData(ProcedureCodeBatch inputProcCodeRecords, LocalDate today) {
+        ProcessStatistics batchStatistics = ProcessStatistics.builder()
+                .linesRead(inputProcCodeRecords.size())
+                .batches(1)
+                .build();
+        ProcedureCodeData[] matchedRecordsFromDB = new ProcedureCodeData[inputProcCodeRecords.size()];
+        if (snapshotService.isEnabled()) {
+            // snapshot mode: probe the in-memory FAC_MSA image, no database round trip
+            long lookupStart = metrics.start();
+            FacMsaSnapshot snapshot = snapshotService.current(today);
+            for (int i = 0; i < matchedRecordsFromDB.length; i++) {
+                matchedRecordsFromDB[i] = snapshot.find(inputProcCodeRecords, i);
+                countMatch(batchStatistics, matchedRecordsFromDB[i] == null ? 0 : snapshot.candidateCount(inputProcCodeRecords, i));
+            }
+            // the snapshot probe is lookup and match in one
+            metrics.stage(ProcessMetrics.Stage.LOOKUP, lookupStart);
+            metrics.lookup(FacMsaSnapshotService.SNAPSHOT_MODE, lookupStart);
+        } else {
+            // keys the filter rules out are new, they skip the lookup and go straight to the no match branch
+            FacMsaKeyFilter keyFilter = keyFilterService.current();
+            BitSet lookupRows = null;
+            if (keyFilter != null) {
+                lookupRows = new BitSet(matchedRecordsFromDB.length);
+                for (int i = 0; i < matchedRecordsFromDB.length; i++) {
+                    if (keyFilter.mightContain(inputProcCodeRecords.getGeographyId(i), inputProcCodeRecords.getProcedureCode(i),
+                            inputProcCodeRecords.getNormalizedIndicator(i), inputProcCodeRecords.getNormalizedLevel(i))) {
+                        lookupRows.set(i);
+                    }
                 }
-            } catch (IOException e) {
-                throw new BadOutputDataException("Failed to write output records to file: " + outputFileLocation);
+                batchStatistics.setSkippedLookups(matchedRecordsFromDB.length - lookupRows.cardinality());
+            }
+            // Get proc code data for the input keys from database
+            long lookupStart = metrics.start();
+            List<ProcedureCodeData> procCodesFromDb = lookupRows == null
+                    ? lookupRepository.findAllProcedureCodes(inputProcCodeRecords, today, batchStatistics)
+                    : lookupRepository.findAllProcedureCodes(inputProcCodeRecords, lookupRows, today, batchStatistics);
+            metrics.stage(ProcessMetrics.Stage.LOOKUP, lookupStart);
+            for (LookupStrategy strategy : batchStatistics.getLookups().keySet()) {
+                metrics.lookup(strategy.name(), lookupStart);
+            }
+            long matchStart = metrics.start();
+            ProcedureCodeMatchIndex matchIndex = ProcedureCodeMatchIndex.build(procCodesFromDb);
+            for (int i = 0; i < matchedRecordsFromDB.length; i++) {
+                if (lookupRows != null && !lookupRows.get(i)) {
+                    countMatch(batchStatistics, 0);
+                    continue;
+                }
+                // check if the key exists in database, the first candidate is the preferred match
+                List<ProcedureCodeData> matchingRecordsFromDB = matchIndex.probe(inputProcCodeRecords.key(i));
+                matchedRecordsFromDB[i] = matchingRecordsFromDB.isEmpty() ? null : matchingRecordsFromDB.get(0);
+                countMatch(batchStatistics, matchingRecordsFromDB.size());
+                if (lookupRows != null && matchingRecordsFromDB.isEmpty()) {
+                    batchStatistics.setKeyFilterFalsePositives(batchStatistics.getKeyFilterFalsePositives() + 1);
+                }
+            }
+            metrics.stage(ProcessMetrics.Stage.MATCH, matchStart);
+        }
+        BatchResult batchResult = new BatchResult(inputProcCodeRecords, matchedRecordsFromDB, batchStatistics);
+        detectChanges(batchResult);
+        return batchResult;
+    }
+
+    /**
+     * Count output rows; in change-only mode first mark the matched rows that carry nothing new
+     */
+    private void detectChanges(BatchResult batchResult) {
+        ProcessStatistics batchStatistics = batchResult.getStatistics();
+        if (!changesOnly) {
+            batchStatistics.setOutputRows(2 * batchStatistics.getMatchedRows() + batchStatistics.getUnmatchedRows());
+            return;
+        }
+        long matchStart = metrics.start();
+        ProcedureCodeBatch inputRecords = batchResult.getInputRecords();
+        ProcedureCodeData[] matchedRecords = batchResult.getMatchedRecords();
+        BitSet unchangedRows = new BitSet(matchedRecords.length);
+        for (int i = 0; i < matchedRecords.length; i++) {
+            if (matchedRecords[i] != null && inputRecords.hasSameValues(i, matchedRecords[i])) {
+                unchangedRows.set(i);
             }
-        } catch (IOException e) {
-            System.out.println("Error in deleting file...");
         }
+        metrics.stage(ProcessMetrics.Stage.MATCH, matchStart);
+        long unchanged = unchangedRows.cardinality();
+        batchStatistics.setUnchangedRows(unchanged);
+        batchStatistics.setChangedRows(batchStatistics.getMatchedRows() - unchanged);
+        batchStatistics.setOutputRows(2 * batchStatistics.getChangedRows() + batchStatistics.getUnmatchedRows());
+        batchResult.setUnchangedRows(unchangedRows);
+    }
 
+    private static void countMatch(ProcessStatistics batchStatistics, int candidates) {
+        if (candidates == 0) {
+            batchStatistics.setUnmatchedRows(batchStatistics.getUnmatchedRows() + 1);
+        } else {
+            batchStatistics.setMatchedRows(batchStatistics.getMatchedRows() + 1);
+            if (candidates > 1) {
+                batchStatistics.setMultiMatchedRows(batchStatistics.getMultiMatchedRows() + 1);
+            }
+        }
+    }
 
+    /**
+     * Write the output rows of one batch: for a match the FAC_MSA row end-dated today (with the input modifier),
+     * then the input row effective today until the infinite date. Unchanged rows of the change-only mode write nothing.
+     */
+    private void writeOutputRecords(BatchResult batchResult, LocalDate today, ProcedureCodeCsvWriter writer) throws IOException {
+        BitSet unchangedRows = batchResult.getUnchangedRows();
+        for (int i = 0; i < batchResult.getMatchedRecords().length; i++) {
+            if (unchangedRows == null || !unchangedRows.get(i)) {
+                writeOutputRows(batchResult, i, today, writer);
+            }
+        }
     }
 
+    /**
+     * Records of one batch for the lookup index: the input row effective today, or its FAC_MSA row when the
+     * change-only mode left it unchanged
+     */
+    private static void collectCurrentRecords(BatchResult batchResult, LocalDate today, ProcedureCodeIndex.Builder indexRun) {
+        ProcedureCodeBatch inputRecords = batchResult.getInputRecords();
+        BitSet unchangedRows = batchResult.getUnchangedRows();
+        for (int i = 0; i < inputRecords.size(); i++) {
+            if (unchangedRows != null && unchangedRows.get(i)) {
+                indexRun.put(batchResult.getMatchedRecords()[i]);
+            } else {
+                indexRun.put(inputRecords, i, today, INFINITE_END_DATE);
+            }
+        }
+    }
+
+    /**
+     * @return output rows written for input row i, 2 for a match
+     */
+    private static int writeOutputRows(BatchResult batchResult, int i, LocalDate today, ProcedureCodeCsvWriter writer) throws IOException {
+        ProcedureCodeBatch inputProcCodeRecords = batchResult.getInputRecords();
+        ProcedureCodeData dataFromDB = batchResult.getMatchedRecords()[i];
+        if (dataFromDB != null) {
+            writer.write(dataFromDB, inputProcCodeRecords.getModifier(i), dataFromDB.getEffectiveDate(), today);
+        }
+        writer.write(inputProcCodeRecords, i, today, INFINITE_END_DATE);
+        return dataFromDB == null ? 1 : 2;
+    }
+
+    /**
+     * The merge mode has no checkpoints and joins inside the open FAC_MSA scan, so it cannot apply the changes to FAC_MSA.
+     * The change-only mode compares with rows the workers looked up ahead of the writer: a key changed by one batch and
+     * sent back to its old values by a later one would be found unchanged and keep the first change in FAC_MSA.
+     */
+    @PostConstruct
+    public void validateModes() {
+        if (isSortMergeMode() && writesDatabase()) {
+            throw new IllegalStateException("lookup.mode=merge only writes the output file, it cannot run with output.mode=" + outputMode);
+        }
+        if (changesOnly && writesDatabase()) {
+            throw new IllegalStateException("output.changes-only only applies to the output file, it cannot run with output.mode=" + outputMode);
+        }
+    }
+
+    boolean isSortMergeMode() {
+        return SORT_MERGE_MODE.equalsIgnoreCase(lookupMode);
+    }
+
+    private static String upperCase(String value) {
+        return value == null ? null : value.toUpperCase(Locale.ROOT);
+    }
+
+    boolean writesFile() {
+        return !OUTPUT_MODE_DATABASE.equalsIgnoreCase(outputMode);
+    }
+
+    boolean writesDatabase() {
+        return OUTPUT_MODE_DATABASE.equalsIgnoreCase(outputMode) || OUTPUT_MODE_BOTH.equalsIgnoreCase(outputMode);
+    }
+
+    private int workerCount() {
+        return workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+    }
+
+    private int partitionWriterCount() {
+        return partitionWriters > 0 ? partitionWriters : Runtime.getRuntime().availableProcessors();
+    }
+
+    private int queueDepth() {
+        return queueDepth > 0 ? queueDepth : 2 * workerCount();
+    }
 }
@@ -0,0 +1,224 @@
+package com.rajesh.files.fileprocessor.service;
+
+import com.rajesh.files.fileprocessor.domain.JobState;
+import com.rajesh.files.fileprocessor.domain.ProcessJob;
+import com.rajesh.files.fileprocessor.domain.ProcessStatus;
+import com.rajesh.files.fileprocessor.exception.JobConflictException;
+import com.rajesh.files.fileprocessor.exception.JobNotFoundException;
+import com.rajesh.files.fileprocessor.exception.ProcessCancelledException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Runs {@link ProcedureCodeProcessorService#processProcData(ProcessRun)} as background jobs.
+ * <p>
+ * Submissions for an input file that already has a queued or running job get that job back (single flight),
+ * a submission writing to the output file of another active job is rejected.
+ */
+@Service
+public class ProcessJobService {
+
+    @Autowired
+    ProcedureCodeProcessorService service;
+
+    @Autowired
+    @Qualifier("processJobExecutor")
+    private AsyncTaskExecutor processJobExecutor;
+
+    // finished jobs kept for GET, oldest are dropped first
+    @Value("${process.jobs.history:100}")
+    private int jobHistory;
+
+    private final Map<String, Job> jobs = new LinkedHashMap<>();
+    private final Map<String, Job> activeByInput = new HashMap<>();
+    private final Map<String, Job> activeByOutput = new HashMap<>();
+
+    /**
+     * Start processing input.file.location into output.file.location, or join the active job doing it
+     */
+    public synchronized ProcessJob submit() {
+        return submit(null, null, null);
+    }
+
+    /**
+     * Start processing files chosen by this application, never by a client, or join the active job of the same input file
+     *
+     * @param inputFile  null for input.file.location
+     * @param outputFile null for output.file.location
+     * @param onFinished called once the new job has finished, whatever its state; not called when an active job is joined
+     */
+    public synchronized ProcessJob submit(String inputFile, String outputFile, Consumer<ProcessJob> onFinished) {
+        ProcessRun run = service.newRun(inputFile, outputFile);
+        String inputKey = run.getInputFile().toAbsolutePath().normalize().toString();
+        String outputKey = run.getOutputFile().toAbsolutePath().normalize().toString();
+        Job active = activeByInput.get(inputKey);
+        if (active != null) {
+            return active.toProcessJob();
+        }
+        Job outputOwner = activeByOutput.get(outputKey);
+        if (outputOwner != null) {
+            throw new JobConflictException("Output file " + outputKey + " is being written by job " + outputOwner.id);
+        }
+        Job job = new Job(UUID.randomUUID().toString(), run, inputKey, outputKey, onFinished);
+        jobs.put(job.id, job);
+        activeByInput.put(inputKey, job);
+        activeByOutput.put(outputKey, job);
+        job.future = processJobExecutor.submit(() -> execute(job));
+        evictFinishedJobs();
+        return job.toProcessJob();
+    }
+
+    public synchronized ProcessJob get(String id) {
+        return find(id).toProcessJob();
+    }
+
+    public synchronized List<ProcessJob> list() {
+        List<ProcessJob> list = new ArrayList<>(jobs.size());
+        for (Job job : jobs.values()) {
+            list.add(job.toProcessJob());
+        }
+        return list;
+    }
+
+    /**
+     * Cancel a queued or running job, the run stops at the next batch boundary
+     */
+    public synchronized ProcessJob cancel(String id) {
+        Job job = find(id);
+        if (job.state == JobState.QUEUED || job.state == JobState.RUNNING) {
+            job.run.cancel();
+            boolean wasQueued = job.state == JobState.QUEUED;
+            if (job.future.cancel(true) && wasQueued) {
+                finished(job, JobState.CANCELLED, new ProcessStatus("CANCELLED", "Cancelled before start"));
+            }
+        }
+        return job.toProcessJob();
+    }
+
+    /**
+     * Wait for a job and return its status, failures are rethrown as they happened in the run
+     */
+    public ProcessStatus await(String id) throws InterruptedException {
+        Future<ProcessStatus> future;
+        synchronized (this) {
+            future = find(id).future;
+        }
+        try {
+            return future.get();
+        } catch (CancellationException e) {
+            throw new ProcessCancelledException("Job " + id + " was cancelled");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private ProcessStatus execute(Job job) throws Exception {
+        synchronized (this) {
+            if (job.state != JobState.QUEUED) {
+                throw new ProcessCancelledException("Job " + job.id + " was cancelled");
+            }
+            job.state = JobState.RUNNING;
+            job.startedAt = Instant.now();
+        }
+        try {
+            ProcessStatus status = service.processProcData(job.run);
+            finished(job, JobState.SUCCEEDED, status);
+            return status;
+        } catch (Exception e) {
+            if (job.run.isCancelled()) {
+                finished(job, JobState.CANCELLED, new ProcessStatus("CANCELLED", e.getMessage()));
+            } else {
+                finished(job, JobState.FAILED, new ProcessStatus("FAIL", e.getMessage()));
+            }
+            throw e;
+        }
+    }
+
+    private void finished(Job job, JobState state, ProcessStatus result) {
+        ProcessJob finishedJob;
+        synchronized (this) {
+            job.state = state;
+            job.result = result;
+            job.finishedAt = Instant.now();
+            activeByInput.remove(job.inputKey, job);
+            activeByOutput.remove(job.outputKey, job);
+            finishedJob = job.toProcessJob();
+        }
+        if (job.onFinished != null) {
+            job.onFinished.accept(finishedJob);
+        }
+    }
+
+    private Job find(String id) {
+        Job job = jobs.get(id);
+        if (job == null) {
+            throw new JobNotFoundException("No process job with id " + id);
+        }
+        return job;
+    }
+
+    private void evictFinishedJobs() {
+        Iterator<Job> oldestFirst = jobs.values().iterator();
+        while (jobs.size() > jobHistory && oldestFirst.hasNext()) {
+            Job job = oldestFirst.next();
+            if (job.finishedAt != null) {
+                oldestFirst.remove();
+            }
+        }
+    }
+
+    private static class Job {
+        final String id;
+        final ProcessRun run;
+        final String inputKey;
+        final String outputKey;
+        final Consumer<ProcessJob> onFinished;
+        final Instant submittedAt = Instant.now();
+        Future<ProcessStatus> future;
+        JobState state = JobState.QUEUED;
+        Instant startedAt;
+        Instant finishedAt;
+        ProcessStatus result;
+
+        Job(String id, ProcessRun run, String inputKey, String outputKey, Consumer<ProcessJob> onFinished) {
+            this.id = id;
+            this.run = run;
+            this.inputKey = inputKey;
+            this.outputKey = outputKey;
+            this.onFinished = onFinished;
+        }
+
+        ProcessJob toProcessJob() {
+            return ProcessJob.builder()
+                    .id(id)
+                    .state(state)
+                    .inputFile(inputKey)
+                    .outputFile(outputKey)
+                    .submittedAt(submittedAt)
+                    .startedAt(startedAt)
+                    .finishedAt(finishedAt)
+                    .progress(run.progress())
+                    .result(result)
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.rajesh.files.fileprocessor.service;
+
+import com.rajesh.files.fileprocessor.domain.JobState;
+import com.rajesh.files.fileprocessor.domain.ProcessStatistics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micrometer meters of the batch hot path, published on /actuator/metrics and /actuator/prometheus.
+ * <p>
+ * {@code procedure.batch.stage} times each stage of each batch (tag {@code stage}): read, parse, lookup, match
+ * and write. Together with the Hikari pool meters ({@code hikaricp.connections.acquire} is the pool wait)
+ * they show which stage limits the throughput.
+ */
+@Component
+public class ProcessMetrics {
+
+    public enum Stage {
+        READ, PARSE, LOOKUP, MATCH, WRITE
+    }
+
+    private final Map<Stage, Timer> stageTimers = new EnumMap<>(Stage.class);
+    private final MeterRegistry registry;
+    private final DistributionSummary batchSize;
+    private final Counter linesRead;
+    private final Counter matchedRows;
+    private final Counter unmatchedRows;
+    private final Counter multiMatchedRows;
+    private final Counter changedRows;
+    private final Counter unchangedRows;
+    private final Counter outputRows;
+    private final Counter outputBytes;
+    private final Counter skippedLookups;
+    private final Counter keyFilterFalsePositives;
+    private final Counter rejectedLines;
+    private final Counter resumedRuns;
+    private final DistributionSummary mergeSpilledRuns;
+
+    public ProcessMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        for (Stage stage : Stage.values()) {
+            stageTimers.put(stage, Timer.builder("procedure.batch.stage")
+                    .description("Time spent in one stage of one batch")
+                    .tag("stage", stage.name().toLowerCase(Locale.ROOT))
+                    .publishPercentileHistogram()
+                    .register(registry));
+        }
+        this.batchSize = DistributionSummary.builder("procedure.batch.size")
+                .description("Input lines per batch")
+                .baseUnit("lines")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.linesRead = Counter.builder("procedure.lines.read").baseUnit("lines").register(registry);
+        this.matchedRows = Counter.builder("procedure.rows").tag("result", "matched").register(registry);
+        this.unmatchedRows = Counter.builder("procedure.rows").tag("result", "unmatched").register(registry);
+        this.multiMatchedRows = Counter.builder("procedure.rows").tag("result", "multi_matched").register(registry);
+        this.changedRows = Counter.builder("procedure.rows").tag("result", "changed").register(registry);
+        this.unchangedRows = Counter.builder("procedure.rows").tag("result", "unchanged").register(registry);
+        this.outputRows = Counter.builder("procedure.output.rows").baseUnit("rows").register(registry);
+        this.outputBytes = Counter.builder("procedure.output.bytes").baseUnit("bytes").register(registry);
+        this.skippedLookups = Counter.builder("procedure.lookup.skipped")
+                .description("Input rows the FAC_MSA key filter answered without a lookup")
+                .baseUnit("rows")
+                .register(registry);
+        this.keyFilterFalsePositives = Counter.builder("procedure.keyfilter.false.positives")
+                .description("Input rows looked up after passing the key filter that had no FAC_MSA row")
+                .baseUnit("rows")
+                .register(registry);
+        this.rejectedLines = Counter.builder("procedure.lines.rejected")
+                .description("Input lines written to the reject file instead of failing the run")
+                .baseUnit("lines")
+                .register(registry);
+        this.resumedRuns = Counter.builder("procedure.runs.resumed")
+                .description("Runs continued from the checkpoint of an earlier run")
+                .register(registry);
+        this.mergeSpilledRuns = DistributionSummary.builder("procedure.merge.spilled.runs")
+                .description("Sorted runs the merge mode spilled to disk per input file")
+                .baseUnit("runs")
+                .register(registry);
+    }
+
+    /**
+     * @return System.nanoTime() to pass to {@link #stage(Stage, long)} when the stage ends
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    public void stage(Stage stage, long startNanos) {
+        stageTimers.get(stage).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param strategy IN_LIST, STAGING_TABLE or snapshot
+     */
+    public void lookup(String strategy, long startNanos) {
+        Timer.builder("procedure.lookup.latency")
+                .description("Latency of the FAC_MSA lookup of one batch")
+                .tag("strategy", strategy.toLowerCase(Locale.ROOT))
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Arrival to done latency of a file of the ingest directory
+     */
+    public void fileIngested(JobState state, Duration latency) {
+        Timer.builder("procedure.ingest.latency")
+                .description("Time from arrival in the ingest directory until processed")
+                .tag("state", state.name().toLowerCase(Locale.ROOT))
+                .register(registry)
+                .record(latency);
+    }
+
+    /**
+     * Count a batch once it is written
+     */
+    public void batchWritten(ProcessStatistics batchStatistics, long bytes) {
+        batchSize.record(batchStatistics.getLinesRead());
+        linesRead.increment(batchStatistics.getLinesRead());
+        matchedRows.increment(batchStatistics.getMatchedRows());
+        unmatchedRows.increment(batchStatistics.getUnmatchedRows());
+        multiMatchedRows.increment(batchStatistics.getMultiMatchedRows());
+        changedRows.increment(batchStatistics.getChangedRows());
+        unchangedRows.increment(batchStatistics.getUnchangedRows());
+        outputRows.increment(batchStatistics.getOutputRows());
+        outputBytes.increment(bytes);
+        skippedLookups.increment(batchStatistics.getSkippedLookups());
+        keyFilterFalsePositives.increment(batchStatistics.getKeyFilterFalsePositives());
+    }
+
+    public void linesRejected(long lines) {
+        rejectedLines.increment(lines);
+    }
+
+    public void runResumed() {
+        resumedRuns.increment();
+    }
+
+    public void mergeSorted(int spilledRuns) {
+        mergeSpilledRuns.record(spilledRuns);
+    }
+}
@@ -0,0 +1,147 @@
+package com.rajesh.files.fileprocessor.service;
+
+import com.rajesh.files.fileprocessor.domain.ProcessProgress;
+import com.rajesh.files.fileprocessor.domain.ProcessStatistics;
+import com.rajesh.files.fileprocessor.io.FileRange;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * One run of {@link ProcedureCodeProcessorService#processProcData(ProcessRun)}: its files, live progress and cancel flag.
+ * Progress is written by the pipeline writer and read from any thread.
+ * A shard of a sharded run reads only its range of the input, on the run date shared by all shards, and stops writing
+ * once its lease is no longer held.
+ */
+public class ProcessRun {
+
+    private final Path inputFile;
+    private final Path outputFile;
+    private final FileRange range;
+    private final LocalDate runDate;
+    private final AtomicLong linesRead = new AtomicLong();
+    private final AtomicLong batchesDone = new AtomicLong();
+    private final AtomicLong matchedRows = new AtomicLong();
+    private final AtomicLong unmatchedRows = new AtomicLong();
+    private final AtomicLong rejectedLines = new AtomicLong();
+    private final AtomicLong bytesDone = new AtomicLong();
+    private volatile long totalBytes;
+    private volatile long startOffset;
+    private volatile long startNanos;
+    private volatile boolean cancelled;
+    private volatile BooleanSupplier held;
+
+    public ProcessRun(Path inputFile, Path outputFile) {
+        this(inputFile, outputFile, null, null);
+    }
+
+    /**
+     * @param range   part of the input to process, null for the whole file
+     * @param runDate date the changes are effective, null for today
+     */
+    public ProcessRun(Path inputFile, Path outputFile, FileRange range, LocalDate runDate) {
+        this.inputFile = inputFile;
+        this.outputFile = outputFile;
+        this.range = range;
+        this.runDate = runDate;
+    }
+
+    public Path getInputFile() {
+        return inputFile;
+    }
+
+    public Path getOutputFile() {
+        return outputFile;
+    }
+
+    public FileRange getRange() {
+        return range;
+    }
+
+    public LocalDate getRunDate() {
+        return runDate;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * @param held checked with the cancel flag before every batch is written, false cancels the run
+     */
+    public void setHeld(BooleanSupplier held) {
+        this.held = held;
+    }
+
+    public boolean isCancelled() {
+        BooleanSupplier lease = held;
+        if (!cancelled && lease != null && !lease.getAsBoolean()) {
+            cancelled = true;
+        }
+        return cancelled;
+    }
+
+    /**
+     * @param inputEnd    input offset the run ends at, the file size unless it reads a range
+     * @param startOffset input offset the run starts at, past the header or at a checkpoint
+     */
+    void started(long inputEnd, long startOffset) {
+        this.totalBytes = inputEnd - rangeStart();
+        this.startOffset = startOffset - rangeStart();
+        this.bytesDone.set(this.startOffset);
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * @param batchStatistics counters of the batch just written
+     * @param endOffset       input offset right after the batch
+     */
+    void batchWritten(ProcessStatistics batchStatistics, long endOffset) {
+        linesRead.addAndGet(batchStatistics.getLinesRead());
+        batchesDone.addAndGet(batchStatistics.getBatches());
+        matchedRows.addAndGet(batchStatistics.getMatchedRows());
+        unmatchedRows.addAndGet(batchStatistics.getUnmatchedRows());
+        bytesDone.set(endOffset - rangeStart());
+    }
+
+    /**
+     * @param lines input lines just written to the reject file
+     */
+    void linesRejected(long lines) {
+        rejectedLines.addAndGet(lines);
+    }
+
+    // progress of a range counts from its start
+    private long rangeStart() {
+        return range == null ? 0 : range.getStart();
+    }
+
+    public ProcessProgress progress() {
+        long start = startNanos;
+        double elapsedSeconds = start == 0 ? 0 : (System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1);
+        long lines = linesRead.get();
+        long done = bytesDone.get();
+        long total = totalBytes;
+        Long etaSeconds = null;
+        long doneThisRun = done - startOffset;
+        if (doneThisRun > 0 && elapsedSeconds > 0) {
+            etaSeconds = Math.round(Math.max(0, total - done) / (doneThisRun / elapsedSeconds));
+        }
+        return ProcessProgress.builder()
+                .linesRead(lines)
+                .batchesDone(batchesDone.get())
+                .matchedRows(matchedRows.get())
+                .unmatchedRows(unmatchedRows.get())
+                .rejectedLines(rejectedLines.get())
+                .bytesDone(done)
+                .totalBytes(total)
+                .percentDone(total == 0 ? 0 : 100.0 * done / total)
+                .rowsPerSecond(elapsedSeconds == 0 ? 0 : lines / elapsedSeconds)
+                .etaSeconds(etaSeconds)
+                .elapsedSeconds(elapsedSeconds)
+                .build();
+    }
+}
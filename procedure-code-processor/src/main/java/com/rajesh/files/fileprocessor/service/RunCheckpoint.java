@@ -0,0 +1,219 @@
+package com.rajesh.files.fileprocessor.service;
+
+import com.rajesh.files.fileprocessor.domain.ProcessStatistics;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Properties;
+import java.util.zip.CRC32;
+
+/**
+ * Progress of a run at a batch boundary, stored next to the output as {@code <output>.checkpoint}.
+ * <p>
+ * It ties the consumed part of the input (byte offset and the input's size and modification time) to the
+ * valid prefix of {@code <output>.part} (length and CRC32), so a rerun over the same input can continue after it.
+ * The reject file is cut back to its length at the checkpoint. The run date is kept, so the rest of the input
+ * becomes effective on the same day as the part already written.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class RunCheckpoint {
+    String inputFile;
+    long inputSize;
+    long inputLastModified;
+    LocalDate runDate;
+    long inputOffset;
+    long batchNumber;
+    long outputLength;
+    long outputChecksum;
+    long linesRead;
+    long matchedRows;
+    long unmatchedRows;
+    long multiMatchedRows;
+    long changedRows;
+    long unchangedRows;
+    long outputRows;
+    long endDatedRows;
+    long insertedRows;
+    long rejectedLines;
+    long rejectFileLength;
+
+    public static Path checkpointFile(Path outputFile) {
+        return outputFile.resolveSibling(outputFile.getFileName() + ".checkpoint");
+    }
+
+    public static Path partFile(Path outputFile) {
+        return outputFile.resolveSibling(outputFile.getFileName() + ".part");
+    }
+
+    public static RunCheckpoint of(Path inputFile, LocalDate runDate, long inputOffset, ProcessStatistics statistics, long outputLength,
+                                   long outputChecksum, long rejectFileLength) throws IOException {
+        return RunCheckpoint.builder()
+                .inputFile(inputFile.toAbsolutePath().normalize().toString())
+                .inputSize(Files.size(inputFile))
+                .inputLastModified(Files.getLastModifiedTime(inputFile).toMillis())
+                .runDate(runDate)
+                .inputOffset(inputOffset)
+                .batchNumber(statistics.getBatches())
+                .outputLength(outputLength)
+                .outputChecksum(outputChecksum)
+                .linesRead(statistics.getLinesRead())
+                .matchedRows(statistics.getMatchedRows())
+                .unmatchedRows(statistics.getUnmatchedRows())
+                .multiMatchedRows(statistics.getMultiMatchedRows())
+                .changedRows(statistics.getChangedRows())
+                .unchangedRows(statistics.getUnchangedRows())
+                .outputRows(statistics.getOutputRows())
+                .endDatedRows(statistics.getEndDatedRows())
+                .insertedRows(statistics.getInsertedRows())
+                .rejectedLines(statistics.getRejectedLines())
+                .rejectFileLength(rejectFileLength)
+                .build();
+    }
+
+    /**
+     * @return the checkpoint, null when there is none or it can't be read; a checkpoint without run date has none
+     */
+    public static RunCheckpoint load(Path checkpointFile) {
+        if (Files.notExists(checkpointFile)) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(checkpointFile)) {
+            properties.load(in);
+            return RunCheckpoint.builder()
+                    .inputFile(properties.getProperty("inputFile"))
+                    .inputSize(Long.parseLong(properties.getProperty("inputSize")))
+                    .inputLastModified(Long.parseLong(properties.getProperty("inputLastModified")))
+                    .runDate(properties.getProperty("runDate") == null ? null : LocalDate.parse(properties.getProperty("runDate")))
+                    .inputOffset(Long.parseLong(properties.getProperty("inputOffset")))
+                    .batchNumber(Long.parseLong(properties.getProperty("batchNumber")))
+                    .outputLength(Long.parseLong(properties.getProperty("outputLength")))
+                    .outputChecksum(Long.parseLong(properties.getProperty("outputChecksum")))
+                    .linesRead(Long.parseLong(properties.getProperty("linesRead")))
+                    .matchedRows(Long.parseLong(properties.getProperty("matchedRows")))
+                    .unmatchedRows(Long.parseLong(properties.getProperty("unmatchedRows")))
+                    .multiMatchedRows(Long.parseLong(properties.getProperty("multiMatchedRows")))
+                    .changedRows(Long.parseLong(properties.getProperty("changedRows", "0")))
+                    .unchangedRows(Long.parseLong(properties.getProperty("unchangedRows", "0")))
+                    .outputRows(Long.parseLong(properties.getProperty("outputRows")))
+                    .endDatedRows(Long.parseLong(properties.getProperty("endDatedRows", "0")))
+                    .insertedRows(Long.parseLong(properties.getProperty("insertedRows", "0")))
+                    .rejectedLines(Long.parseLong(properties.getProperty("rejectedLines", "0")))
+                    .rejectFileLength(Long.parseLong(properties.getProperty("rejectFileLength", "0")))
+                    .build();
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Write the checkpoint atomically, the output it refers to must already be forced to disk
+     */
+    public void save(Path checkpointFile) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("inputFile", inputFile);
+        properties.setProperty("inputSize", Long.toString(inputSize));
+        properties.setProperty("inputLastModified", Long.toString(inputLastModified));
+        if (runDate != null) {
+            properties.setProperty("runDate", runDate.toString());
+        }
+        properties.setProperty("inputOffset", Long.toString(inputOffset));
+        properties.setProperty("batchNumber", Long.toString(batchNumber));
+        properties.setProperty("outputLength", Long.toString(outputLength));
+        properties.setProperty("outputChecksum", Long.toString(outputChecksum));
+        properties.setProperty("linesRead", Long.toString(linesRead));
+        properties.setProperty("matchedRows", Long.toString(matchedRows));
+        properties.setProperty("unmatchedRows", Long.toString(unmatchedRows));
+        properties.setProperty("multiMatchedRows", Long.toString(multiMatchedRows));
+        properties.setProperty("changedRows", Long.toString(changedRows));
+        properties.setProperty("unchangedRows", Long.toString(unchangedRows));
+        properties.setProperty("outputRows", Long.toString(outputRows));
+        properties.setProperty("endDatedRows", Long.toString(endDatedRows));
+        properties.setProperty("insertedRows", Long.toString(insertedRows));
+        properties.setProperty("rejectedLines", Long.toString(rejectedLines));
+        properties.setProperty("rejectFileLength", Long.toString(rejectFileLength));
+        Path temp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            properties.store(out, "procedure code run checkpoint");
+        }
+        Files.move(temp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return true when the input file is still the one this checkpoint was taken on
+     */
+    public boolean isFor(Path inputFile) throws IOException {
+        return this.inputFile.equals(inputFile.toAbsolutePath().normalize().toString())
+                && inputSize == Files.size(inputFile)
+                && inputLastModified == Files.getLastModifiedTime(inputFile).toMillis();
+    }
+
+    /**
+     * @param requested run date asked for, null for any
+     * @return true when the rest of the input can be processed on the checkpoint's run date
+     */
+    public boolean resumesOn(LocalDate requested) {
+        return runDate != null && (requested == null || requested.equals(runDate));
+    }
+
+    /**
+     * Check the checkpointed prefix of the part file
+     *
+     * @param checksum receives the bytes of the prefix, so writing can continue the same checksum
+     * @return true when the part file holds at least outputLength bytes with the recorded CRC32
+     */
+    public boolean verifyOutput(Path partFile, CRC32 checksum) throws IOException {
+        if (Files.notExists(partFile) || Files.size(partFile) < outputLength) {
+            return false;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+        try (FileChannel channel = FileChannel.open(partFile, StandardOpenOption.READ)) {
+            long remaining = outputLength;
+            while (remaining > 0) {
+                buffer.clear();
+                if (remaining < buffer.capacity()) {
+                    buffer.limit((int) remaining);
+                }
+                int read = channel.read(buffer);
+                if (read < 0) {
+                    return false;
+                }
+                buffer.flip();
+                checksum.update(buffer);
+                remaining -= read;
+            }
+        }
+        return checksum.getValue() == outputChecksum;
+    }
+
+    public ProcessStatistics statistics() {
+        return ProcessStatistics.builder()
+                .linesRead(linesRead)
+                .batches(batchNumber)
+                .matchedRows(matchedRows)
+                .unmatchedRows(unmatchedRows)
+                .multiMatchedRows(multiMatchedRows)
+                .changedRows(changedRows)
+                .unchangedRows(unchangedRows)
+                .outputRows(outputRows)
+                .endDatedRows(endDatedRows)
+                .insertedRows(insertedRows)
+                .rejectedLines(rejectedLines)
+                .build();
+    }
+}
@@ -0,0 +1,383 @@
+package com.rajesh.files.fileprocessor.service;
+
+import com.rajesh.files.fileprocessor.domain.ProcessShard;
+import com.rajesh.files.fileprocessor.domain.ProcessStatistics;
+import com.rajesh.files.fileprocessor.domain.ProcessStatus;
+import com.rajesh.files.fileprocessor.domain.ShardState;
+import com.rajesh.files.fileprocessor.exception.BadInputDataException;
+import com.rajesh.files.fileprocessor.exception.EmptyInputFileException;
+import com.rajesh.files.fileprocessor.exception.InputFileMissingException;
+import com.rajesh.files.fileprocessor.exception.MissingHeaderInputFileException;
+import com.rajesh.files.fileprocessor.exception.ProcessCancelledException;
+import com.rajesh.files.fileprocessor.exception.ShardFailedException;
+import com.rajesh.files.fileprocessor.io.FileRange;
+import com.rajesh.files.fileprocessor.io.ProcedureCodeFileReader;
+import com.rajesh.files.fileprocessor.io.RejectFileWriter;
+import com.rajesh.files.fileprocessor.repository.ProcessShardRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StopWatch;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Sharded run of one input file by several instances sharing the database and the file system (same paths everywhere).
+ * <p>
+ * The first instance splits the input into newline aligned ranges of {@code process.shard.size-mb} and records them in
+ * the PROCESS_SHARD lease table (see {@link ProcessShardRepository}). Every instance then claims shards one at a time and
+ * processes each into {@code <output>.shard-NNNN.aN} through {@link ProcedureCodeProcessorService#processProcData(ProcessRun)},
+ * checkpointed like any run, renewing its lease every third of {@code process.shard.lease-time}. Each attempt at a shard has
+ * its own output, part, checkpoint and reject files, and stops writing once its lease is lost or ran out. A shard whose lease
+ * expired, because its instance died, is claimed by the next instance looking for work once {@code process.shard.takeover-grace}
+ * passed too, and resumes from a copy of the last checkpoint; starting another instance on the same input adds a worker to
+ * the run. Once all shards are done one instance merges the outputs of the attempts that completed them, in input order,
+ * into {@code <output>.merge.aN}, renamed to the output file once the merge is recorded. Every instance returns when the
+ * run is merged.
+ * <p>
+ * Shards run on the run date recorded with the shards. A shard rejecting its input fails the run on all instances,
+ * other failures leave the shard to be taken over. Reject files stay per shard as {@code <output>.shard-NNNN.rejects},
+ * with line numbers counted from the shard start.
+ */
+@Service
+public class ShardedRunService {
+
+    private static final Logger log = LoggerFactory.getLogger(ShardedRunService.class);
+
+    @Autowired
+    private ProcedureCodeProcessorService service;
+
+    @Autowired
+    private ProcessShardRepository repository;
+
+    @Autowired
+    private ProcedureCodeIndexService indexService;
+
+    // input bytes per shard, more shards than instances balance a run
+    @Value("${process.shard.size-mb:64}")
+    private long shardSizeMb;
+
+    // ms a claimed shard stays with its instance without a renewal
+    @Value("${process.shard.lease-time:60000}")
+    private long leaseTime;
+
+    // ms between looks for claimable shards while other instances hold the rest
+    @Value("${process.shard.poll-interval:5000}")
+    private long pollInterval;
+
+    // owner written to the lease table, blank for pid@host
+    @Value("${process.shard.owner:}")
+    private String owner;
+
+    // ms an expired lease is left to its owner before another instance takes the shard over, covers a write started just before
+    @Value("${process.shard.takeover-grace:10000}")
+    private long takeoverGrace;
+
+    /**
+     * @return file the reject file of the shard ends up next to, once the run is merged
+     */
+    public static Path shardFile(Path outputFile, int shardNo) {
+        return outputFile.resolveSibling(String.format(Locale.ROOT, "%s.shard-%04d", outputFile.getFileName(), shardNo));
+    }
+
+    /**
+     * @return output of one attempt at the shard, its part, checkpoint and reject files are named after it
+     */
+    public static Path shardFile(Path outputFile, int shardNo, int attempt) {
+        return outputFile.resolveSibling(String.format(Locale.ROOT, "%s.shard-%04d.a%d", outputFile.getFileName(), shardNo, attempt));
+    }
+
+    static Path mergeFile(Path outputFile, int attempt) {
+        return outputFile.resolveSibling(String.format(Locale.ROOT, "%s.merge.a%d", outputFile.getFileName(), attempt));
+    }
+
+    /**
+     * Join the sharded run of the input, creating it when this is the first instance, and work on it until it is merged
+     *
+     * @param inputFile  null for input.file.location
+     * @param outputFile null for output.file.location
+     * @return totals of all shards
+     */
+    public ProcessStatus process(String inputFile, String outputFile) throws IOException {
+        if (service.isSortMergeMode()) {
+            throw new IllegalStateException("lookup.mode=merge sorts the whole input, it cannot run sharded");
+        }
+        StopWatch stopWatch = new StopWatch();
+        stopWatch.start();
+        ProcessRun whole = service.newRun(inputFile, outputFile);
+        Path input = whole.getInputFile();
+        Path output = whole.getOutputFile();
+        if (Files.notExists(input)) {
+            throw new InputFileMissingException("Input file ( " + input + " ) doesn't exist");
+        }
+        long inputSize = Files.size(input);
+        if (inputSize == 0) {
+            throw new EmptyInputFileException("Input file is empty.");
+        }
+        String runId = runId(input, output, inputSize);
+        String instance = owner.trim().isEmpty() ? ManagementFactory.getRuntimeMXBean().getName() : owner.trim();
+        if (repository.findRun(runId).isEmpty()) {
+            long shardSize = Math.max(1, shardSizeMb) << 20;
+            List<FileRange> ranges = ProcedureCodeFileReader.split(input, (int) Math.min(Integer.MAX_VALUE, (inputSize + shardSize - 1) / shardSize));
+            if (repository.createRun(runId, LocalDate.now(), ranges, inputSize)) {
+                log.info("Split {} into {} shards, run {}", input, ranges.size(), runId);
+            }
+        }
+
+        ScheduledExecutorService heartbeats = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "shard-lease-" + runId);
+            thread.setDaemon(true);
+            return thread;
+        });
+        int processedHere = 0;
+        try {
+            while (true) {
+                ProcessShard lease = repository.claimShard(runId, instance, leaseTime, takeoverGrace);
+                if (lease != null) {
+                    processShard(lease, input, output, heartbeats);
+                    processedHere++;
+                    continue;
+                }
+                List<ProcessShard> shards = repository.findRun(runId);
+                ProcessShard merge = shards.get(0);
+                for (ProcessShard shard : shards) {
+                    if (shard.getState() == ShardState.FAILED) {
+                        throw new ShardFailedException("Shard " + shard.getShardNo() + " of " + input + " failed: " + shard.getMessage());
+                    }
+                }
+                if (merge.getState() == ShardState.DONE) {
+                    publishMerge(output, merge.getDoneAttempt(), shards);
+                    if (service.writesDatabase()) {
+                        // shards publish nothing to the lookup index of their instance, FAC_MSA has the records of all of them
+                        indexService.rebuild(merge.getRunDate());
+                    }
+                    stopWatch.stop();
+                    return ProcessStatus.builder()
+                            .code("SUCCESS")
+                            .description(String.format("Processed proc code data in %d shards (%d by %s) and output file generated in %s seconds",
+                                    shards.size() - 1, processedHere, instance, stopWatch.getTotalTimeSeconds()))
+                            .statistics(totals(shards))
+                            .build();
+                }
+                if (shards.stream().skip(1).allMatch(shard -> shard.getState() == ShardState.DONE)) {
+                    ProcessShard mergeLease = repository.claimMerge(merge, instance, leaseTime, takeoverGrace);
+                    if (mergeLease != null) {
+                        mergeShards(mergeLease, shards, output, heartbeats);
+                        continue;
+                    }
+                }
+                // the remaining shards are leased by other instances, an expired lease is claimable on a later pass
+                try {
+                    Thread.sleep(pollInterval);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ProcessCancelledException("Sharded run of " + input + " was interrupted");
+                }
+            }
+        } finally {
+            heartbeats.shutdownNow();
+        }
+    }
+
+    private void processShard(ProcessShard lease, Path input, Path output, ScheduledExecutorService heartbeats) throws IOException {
+        carryOverCheckpoint(lease, output);
+        ProcessRun run = new ProcessRun(input, shardFile(output, lease.getShardNo(), lease.getAttempts()),
+                new FileRange(lease.getStartOffset(), lease.getEndOffset()), lease.getRunDate());
+        // a lease that ran out stops the writer even before the heartbeat finds it lost
+        run.setHeld(() -> System.currentTimeMillis() < lease.getLeaseExpires());
+        log.info("Processing shard {} [{}, {}) of {}, attempt {}", lease.getShardNo(), lease.getStartOffset(), lease.getEndOffset(),
+                input, lease.getAttempts());
+        ScheduledFuture<?> heartbeat = keepLease(lease, run::cancel, heartbeats);
+        ProcessStatus status;
+        try {
+            status = service.processProcData(run);
+        } catch (RuntimeException | IOException e) {
+            if (run.isCancelled()) {
+                log.warn("Lost lease of shard {}, left to its new owner", lease.getShardNo());
+                return;
+            }
+            if (e instanceof BadInputDataException || e instanceof MissingHeaderInputFileException) {
+                // the input is wrong, every instance would fail the same way
+                repository.fail(lease, e.getMessage());
+            }
+            // otherwise the lease runs out and another instance takes the shard over from its checkpoint
+            throw e;
+        } finally {
+            heartbeat.cancel(false);
+        }
+        if (!repository.complete(lease, status.getStatistics())) {
+            log.warn("Lost lease of shard {} before completing it, left to its new owner", lease.getShardNo());
+        }
+    }
+
+    /**
+     * Start an attempt from the checkpoint of the latest earlier attempt that left one, copied to the files of this attempt.
+     * The earlier owner may still be finishing a write, it only appends past the checkpointed prefix.
+     */
+    private static void carryOverCheckpoint(ProcessShard lease, Path output) throws IOException {
+        Path target = shardFile(output, lease.getShardNo(), lease.getAttempts());
+        for (int attempt = lease.getAttempts() - 1; attempt > 0; attempt--) {
+            Path earlier = shardFile(output, lease.getShardNo(), attempt);
+            try {
+                // checkpoint first, the part and reject files copied after it hold at least its prefix
+                Files.copy(RunCheckpoint.checkpointFile(earlier), RunCheckpoint.checkpointFile(target), StandardCopyOption.REPLACE_EXISTING);
+            } catch (NoSuchFileException e) {
+                continue;
+            }
+            copyIfExists(RunCheckpoint.partFile(earlier), RunCheckpoint.partFile(target));
+            copyIfExists(RejectFileWriter.rejectFile(earlier), RejectFileWriter.rejectFile(target));
+            return;
+        }
+    }
+
+    private static void copyIfExists(Path source, Path target) throws IOException {
+        try {
+            Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+        } catch (NoSuchFileException e) {
+            // the checkpoint no longer verifies and the attempt starts over
+        }
+    }
+
+    /**
+     * Concatenate the outputs of the attempts that completed the shards, in shard order, into a file of this merge attempt,
+     * renamed into place only once the merge is recorded as done
+     */
+    private void mergeShards(ProcessShard lease, List<ProcessShard> shards, Path output, ScheduledExecutorService heartbeats) throws IOException {
+        AtomicBoolean lost = new AtomicBoolean();
+        ScheduledFuture<?> heartbeat = keepLease(lease, () -> lost.set(true), heartbeats);
+        Path mergeFile = mergeFile(output, lease.getAttempts());
+        try {
+            if (service.writesFile()) {
+                try (FileChannel target = FileChannel.open(mergeFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+                    for (ProcessShard shard : shards.subList(1, shards.size())) {
+                        if (lost.get()) {
+                            break;
+                        }
+                        try (FileChannel source = FileChannel.open(shardFile(output, shard.getShardNo(), shard.getDoneAttempt()),
+                                StandardOpenOption.READ)) {
+                            long size = source.size();
+                            for (long position = 0; position < size; ) {
+                                position += source.transferTo(position, size - position, target);
+                            }
+                        }
+                    }
+                    target.force(true);
+                }
+            }
+        } finally {
+            heartbeat.cancel(false);
+        }
+        if (lost.get() || !repository.complete(lease, totals(shards))) {
+            Files.deleteIfExists(mergeFile);
+            log.warn("Lost lease of the merge of {}, left to its new owner", output);
+            return;
+        }
+        publishMerge(output, lease.getAttempts(), shards);
+    }
+
+    /**
+     * Rename the file of the merge attempt that completed to the output and delete the files of the shards. Every instance
+     * that finds the merge done calls this, so a merge whose instance stopped right after completing it is still published.
+     */
+    private void publishMerge(Path output, int mergeAttempt, List<ProcessShard> shards) throws IOException {
+        if (service.writesFile()) {
+            try {
+                Files.move(mergeFile(output, mergeAttempt), output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                log.info("Merged {} shards into {}", shards.size() - 1, output);
+            } catch (NoSuchFileException e) {
+                // published by another instance, or earlier
+            }
+        }
+        for (int attempt = 1; attempt < mergeAttempt; attempt++) {
+            Files.deleteIfExists(mergeFile(output, attempt));
+        }
+        for (ProcessShard shard : shards.subList(1, shards.size())) {
+            for (int attempt = 1; attempt <= shard.getAttempts(); attempt++) {
+                Path shardFile = shardFile(output, shard.getShardNo(), attempt);
+                Files.deleteIfExists(shardFile);
+                Files.deleteIfExists(RunCheckpoint.partFile(shardFile));
+                Files.deleteIfExists(RunCheckpoint.checkpointFile(shardFile));
+                if (attempt == shard.getDoneAttempt()) {
+                    moveIfExists(RejectFileWriter.rejectFile(shardFile), RejectFileWriter.rejectFile(shardFile(output, shard.getShardNo())));
+                } else {
+                    Files.deleteIfExists(RejectFileWriter.rejectFile(shardFile));
+                }
+            }
+        }
+    }
+
+    private static void moveIfExists(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        } catch (NoSuchFileException e) {
+            // nothing rejected, or moved by another instance
+        }
+    }
+
+    /**
+     * Renew the lease every third of the lease time; a lost lease, or one that ran out while the database was
+     * unreachable, calls onLost on every renewal after it
+     */
+    private ScheduledFuture<?> keepLease(ProcessShard lease, Runnable onLost, ScheduledExecutorService heartbeats) {
+        long period = Math.max(1, leaseTime / 3);
+        return heartbeats.scheduleWithFixedDelay(() -> {
+            long now = System.currentTimeMillis();
+            boolean held;
+            try {
+                held = repository.renew(lease, leaseTime);
+                if (held) {
+                    lease.setLeaseExpires(now + leaseTime);
+                }
+            } catch (DataAccessException e) {
+                log.warn("Could not renew lease of shard {}", lease.getShardNo(), e);
+                held = now < lease.getLeaseExpires();
+            }
+            if (!held) {
+                onLost.run();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return sum of the counters of all shards
+     */
+    static ProcessStatistics totals(List<ProcessShard> shards) {
+        ProcessStatistics totals = new ProcessStatistics();
+        for (ProcessShard shard : shards) {
+            if (shard.getShardNo() != ProcessShardRepository.MERGE_SHARD && shard.getStatistics() != null) {
+                totals.add(shard.getStatistics());
+            }
+        }
+        return totals;
+    }
+
+    /**
+     * Same id on every instance for the same input version and output
+     */
+    static String runId(Path input, Path output, long inputSize) throws IOException {
+        String identity = input.toAbsolutePath().normalize() + "|" + inputSize + "|" + Files.getLastModifiedTime(input).toMillis()
+                + "|" + output.toAbsolutePath().normalize();
+        return UUID.nameUUIDFromBytes(identity.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+}
@@ -12,3 +12,59 @@ CREATE TABLE PROCEDURE_CODES (
     end_dt date NOT NULL,
     PRIMARY KEY (geography_id)
 );*/
+
+/*
+FAC_MSA is owned by the DB2 side, spring.sql.init only runs this file against embedded databases.
+The lookups fetch the row effective on the run date per key (EFF_DT <= run date < END_DT) and end-date it in place,
+so the key index carries END_DT: a key's probe stays one index range however many old versions it has.
+Apply on DB2 with the table's own schema, then RUNSTATS.
+
+CREATE TABLE FAC_MSA (
+    GEOGRAPHY_ID INTEGER NOT NULL,
+    PROC_CODE INTEGER NOT NULL,
+    PROC_CODE_DESC VARCHAR(1000),
+    MODIFIER VARCHAR(128),
+    ACTUAL_DERIVED_IND VARCHAR(64),
+    GEOGRAPHIC_LEVEL VARCHAR(64),
+    GEOGRAPHIC_DESC VARCHAR(500),
+    REFERENCE_AMOUNT DOUBLE NOT NULL,
+    EFF_DT DATE NOT NULL,
+    END_DT DATE NOT NULL
+);
+
+CREATE INDEX FAC_MSA_KEY_END ON FAC_MSA (GEOGRAPHY_ID, PROC_CODE, ACTUAL_DERIVED_IND, GEOGRAPHIC_LEVEL, END_DT);
+*/
+
+/*
+Lease table of sharded runs (run --sharded), created by the first sharded run when missing.
+One row per input range plus the merge step (SHARD_NO -1); LEASE_EXPIRES is epoch ms, ATTEMPTS fences a lost lease,
+DONE_ATTEMPT is the attempt whose output is merged.
+
+CREATE TABLE PROCESS_SHARD (
+    RUN_ID VARCHAR(64) NOT NULL,
+    SHARD_NO INTEGER NOT NULL,
+    START_OFFSET BIGINT NOT NULL,
+    END_OFFSET BIGINT NOT NULL,
+    RUN_DATE DATE NOT NULL,
+    STATUS VARCHAR(16) NOT NULL,
+    OWNER VARCHAR(128),
+    LEASE_EXPIRES BIGINT NOT NULL,
+    ATTEMPTS INTEGER NOT NULL,
+    DONE_ATTEMPT INTEGER NOT NULL,
+    LINES_READ BIGINT NOT NULL,
+    BATCHES BIGINT NOT NULL,
+    MATCHED_ROWS BIGINT NOT NULL,
+    UNMATCHED_ROWS BIGINT NOT NULL,
+    MULTI_MATCHED_ROWS BIGINT NOT NULL,
+    CHANGED_ROWS BIGINT NOT NULL,
+    UNCHANGED_ROWS BIGINT NOT NULL,
+    OUTPUT_ROWS BIGINT NOT NULL,
+    END_DATED_ROWS BIGINT NOT NULL,
+    INSERTED_ROWS BIGINT NOT NULL,
+    SKIPPED_LOOKUPS BIGINT NOT NULL,
+    KEY_FILTER_FALSE_POSITIVES BIGINT NOT NULL,
+    REJECTED_LINES BIGINT NOT NULL,
+    MESSAGE VARCHAR(1000),
+    PRIMARY KEY (RUN_ID, SHARD_NO)
+);
+*/
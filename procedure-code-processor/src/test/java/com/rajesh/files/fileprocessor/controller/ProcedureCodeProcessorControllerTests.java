@@ -0,0 +1,141 @@
+package com.rajesh.files.fileprocessor.controller;
+
+import com.rajesh.files.fileprocessor.loadtest.SyntheticDataGenerator;
+import com.rajesh.files.fileprocessor.repository.FacMsaTestTable;
+import com.rajesh.files.fileprocessor.service.ProcedureCodeProcessorService;
+import com.rajesh.files.fileprocessor.service.ProcessRun;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.rajesh.files.fileprocessor.repository.FacMsaTestTable.INFINITE;
+import static com.rajesh.files.fileprocessor.repository.FacMsaTestTable.row;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * POST /api/file/stream against an in-memory H2 FAC_MSA.
+ */
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:stream;DB_CLOSE_DELAY=-1;IGNORE_UNKNOWN_SETTINGS=TRUE",
+		"spring.datasource.driver-class-name=org.h2.Driver",
+		"spring.datasource.username=sa",
+		"spring.datasource.password=",
+		"spring.jpa.hibernate.ddl-auto=none",
+		"spring.sql.init.mode=never",
+		"lookup.mode=database"})
+@AutoConfigureMockMvc
+class ProcedureCodeProcessorControllerTests {
+
+	private static final LocalDate RUN_DATE = LocalDate.of(2023, 5, 1);
+	private static final int LINES = 40;
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private ProcedureCodeProcessorService processorService;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@TempDir
+	Path tempDir;
+
+	@BeforeEach
+	void createTable() {
+		FacMsaTestTable.reset(jdbcTemplate);
+		for (int i = 0; i < LINES; i += 3) {
+			FacMsaTestTable.insert(jdbcTemplate, row(1, 10000 + i, "MSA", 5.0, LocalDate.of(2022, 1, 2), INFINITE));
+		}
+		ReflectionTestUtils.setField(processorService, "batchSize", 4);
+		ReflectionTestUtils.setField(processorService, "adaptiveBatchSize", false);
+	}
+
+	@AfterEach
+	void restoreSettings() {
+		ReflectionTestUtils.setField(processorService, "batchSize", 999);
+		ReflectionTestUtils.setField(processorService, "adaptiveBatchSize", true);
+	}
+
+	@Test
+	void streamsTheOutputOfAFileRunOnTheRunDate() throws Exception {
+		byte[] input = input(inputLines());
+		Path inputFile = Files.write(tempDir.resolve("dataInput.txt"), input);
+		Path outputFile = tempDir.resolve("dataOutput.csv");
+		processorService.processProcData(new ProcessRun(inputFile, outputFile, null, RUN_DATE));
+
+		MvcResult result = stream(input);
+
+		mockMvc.perform(asyncDispatch(result))
+				.andExpect(status().isOk())
+				.andExpect(content().contentTypeCompatibleWith("text/csv"))
+				.andExpect(content().bytes(Files.readAllBytes(outputFile)));
+	}
+
+	@Test
+	void failureAfterTheFirstRowsEndsTheOutputWithAnErrorRow() throws Exception {
+		List<String> lines = inputLines();
+		// line 32 of the input, in the eighth batch
+		lines.set(30, "1|10030|FINE NEEDLE ASPIRATION");
+
+		MvcResult result = stream(input(lines));
+
+		mockMvc.perform(asyncDispatch(result)).andExpect(status().isOk());
+		String[] rows = result.getResponse().getContentAsString().split("\\R");
+		assertTrue(rows.length > 1, "rows of the batches before the failure");
+		assertTrue(rows[0].startsWith("1,10000,"), rows[0]);
+		String last = rows[rows.length - 1];
+		assertTrue(last.startsWith(ProcedureCodeProcessorService.STREAM_FAILURE_MARKER + ","), last);
+		assertTrue(last.contains("line 32"), last);
+	}
+
+	@Test
+	void failureBeforeAnyRowIsAnsweredLikeAFailedRun() throws Exception {
+		MvcResult result = stream("no header\n".getBytes(StandardCharsets.US_ASCII));
+
+		mockMvc.perform(asyncDispatch(result))
+				.andExpect(status().isExpectationFailed())
+				.andExpect(jsonPath("$.code").value("FAIL"));
+	}
+
+	private MvcResult stream(byte[] input) throws Exception {
+		MvcResult result = mockMvc.perform(post("/api/file/stream").param("runDate", RUN_DATE.toString()).content(input))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		result.getAsyncResult(10_000);
+		return result;
+	}
+
+	private static List<String> inputLines() {
+		List<String> lines = new ArrayList<>();
+		for (int i = 0; i < LINES; i++) {
+			lines.add("1|" + (10000 + i) + "|FINE NEEDLE ASPIRATION|26|Derived|MSA|San Juan|" + (100 + i) + ".25");
+		}
+		return lines;
+	}
+
+	private static byte[] input(List<String> lines) {
+		return (SyntheticDataGenerator.HEADER + "\n" + String.join("\n", lines) + "\n").getBytes(StandardCharsets.US_ASCII);
+	}
+}
@@ -0,0 +1,55 @@
+package com.rajesh.files.fileprocessor.io;
+
+import com.rajesh.files.fileprocessor.domain.ProcedureCodeData;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ExternalRecordSorterTests {
+
+	private static final Comparator<ProcedureCodeData> BY_KEY = Comparator.comparing(ProcedureCodeData::getGeographyId)
+			.thenComparing(ProcedureCodeData::getProcedureCode);
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void mergesSpilledRunsStablyAndDeletesThem() throws IOException {
+		Random random = new Random(7);
+		List<ProcedureCodeData> added = new ArrayList<>();
+		try (ExternalRecordSorter sorter = new ExternalRecordSorter(BY_KEY, 100, tempDir)) {
+			for (int i = 0; i < 1050; i++) {
+				ProcedureCodeData record = new ProcedureCodeData(random.nextInt(20), random.nextInt(10), "Description " + i,
+						i % 3 == 0 ? null : "26", "ACTUAL", "MSA", "Geography", i % 5 == 0 ? null : i * 1.5,
+						i % 2 == 0 ? LocalDate.of(2023, 1, 1) : null, LocalDate.of(9999, 12, 31));
+				added.add(record);
+				sorter.add(record);
+			}
+			assertEquals(10, sorter.getRunCount());
+
+			// List.sort is stable as well
+			List<ProcedureCodeData> expected = new ArrayList<>(added);
+			expected.sort(BY_KEY);
+			List<ProcedureCodeData> sorted = new ArrayList<>();
+			for (Iterator<ProcedureCodeData> records = sorter.sorted(); records.hasNext(); ) {
+				sorted.add(records.next());
+			}
+			assertEquals(expected, sorted);
+		}
+		try (Stream<Path> left = Files.list(tempDir)) {
+			assertEquals(0, left.count());
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package com.rajesh.files.fileprocessor.io;
+
+import com.rajesh.files.fileprocessor.domain.ProcedureCodeData;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class PartitionedOutputWriterTests {
+
+	@Test
+	void writesOneFilePerLevelInInputOrderWithManifest(@TempDir Path dir) throws IOException {
+		Path output = dir.resolve("dataOutput.csv");
+		String[] levels = {"MSA", "Census Division", "msa", null};
+		List<String> expectedMsa = new ArrayList<>();
+
+		try (PartitionedOutputWriter writer = new PartitionedOutputWriter(output, OutputPartitioner.of("geographic-level", 0), 2, 1, "\n")) {
+			for (int b = 0; b < 20; b++) {
+				ProcedureCodeBatch batch = new ProcedureCodeBatch(new StringDictionary(), 50);
+				for (int i = 0; i < 50; i++) {
+					ProcedureCodeData data = new ProcedureCodeData(b * 50 + i, 10000 + i, "DESC", null, "Derived", levels[i % 4], "Geo", 10.0,
+							LocalDate.of(2022, 1, 2), LocalDate.of(9999, 12, 31));
+					batch.add(data);
+					if (i % 5 != 0 && levels[i % 4] != null && levels[i % 4].equalsIgnoreCase("MSA")) {
+						expectedMsa.add(data.content());
+					}
+				}
+				// every fifth row unchanged
+				writer.write(batch, row -> row % 5 != 0, (row, csv) -> {
+					csv.write(batch, row, batch.getEffectiveDate(row), batch.getEndDate(row));
+					return 1;
+				});
+			}
+			writer.finish();
+		}
+
+		Path msa = PartitionedOutputWriter.partitionFile(output, "MSA");
+		assertEquals(dir.resolve("dataOutput.MSA.csv"), msa);
+		assertEquals(expectedMsa, Files.readAllLines(msa));
+		assertFalse(Files.exists(dir.resolve("dataOutput.MSA.csv.part")));
+
+		List<String> manifest = Files.readAllLines(PartitionedOutputWriter.manifestFile(output));
+		assertEquals(PartitionedOutputWriter.MANIFEST_HEADER, manifest.get(0));
+		assertEquals(4, manifest.size());
+		long rows = 0;
+		for (String line : manifest.subList(1, manifest.size())) {
+			String[] fields = line.split("\\|");
+			byte[] content = Files.readAllBytes(dir.resolve(fields[0]));
+			CRC32 checksum = new CRC32();
+			checksum.update(content);
+			assertEquals(Files.readAllLines(dir.resolve(fields[0])).size(), Long.parseLong(fields[1]));
+			assertEquals(content.length, Long.parseLong(fields[2]));
+			assertEquals(Long.toHexString(checksum.getValue()), fields[3]);
+			rows += Long.parseLong(fields[1]);
+		}
+		assertEquals(20 * 40, rows);
+	}
+}
@@ -0,0 +1,46 @@
+package com.rajesh.files.fileprocessor.io;
+
+import com.rajesh.files.fileprocessor.domain.ProcedureCodeData;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProcedureCodeBatchTests {
+
+	@Test
+	void onlyAmountModifierAndDescriptionsCount() {
+		ProcedureCodeData dataFromDB = row("DESC", "26", "San Juan", 1403.88);
+		ProcedureCodeBatch input = new ProcedureCodeBatch(new StringDictionary(), 5);
+		ProcedureCodeData same = row("DESC", "26", "San Juan", 1403.88);
+		// key and dates are not compared
+		same.setActualDerivedIndicator("derived");
+		same.setEffectiveDate(null);
+		input.add(same);
+		input.add(row("DESC", "26", "San Juan", 1403.89));
+		input.add(row("DESC", "TC", "San Juan", 1403.88));
+		input.add(row("DESC 2", "26", "San Juan", 1403.88));
+		input.add(row("DESC", "26", null, 1403.88));
+
+		assertTrue(input.hasSameValues(0, dataFromDB));
+		for (int row = 1; row < input.size(); row++) {
+			assertFalse(input.hasSameValues(row, dataFromDB));
+		}
+	}
+
+	private static ProcedureCodeData row(String description, String modifier, String geographicDescription, double amount) {
+		return ProcedureCodeData.builder()
+				.geographyId(1)
+				.procedureCode(10004)
+				.procedureCodeDescription(description)
+				.modifier(modifier)
+				.actualDerivedIndicator("Derived")
+				.geographicLevel("MSA")
+				.geographicDescription(geographicDescription)
+				.referenceAmount(amount)
+				.effectiveDate(LocalDate.parse("2022-01-02"))
+				.build();
+	}
+}
@@ -0,0 +1,52 @@
+package com.rajesh.files.fileprocessor.io;
+
+import com.rajesh.files.fileprocessor.domain.ProcedureCodeData;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ProcedureCodeCsvWriterTests {
+
+	@Test
+	void writesSameBytesAsContent() throws IOException {
+		Random random = new Random(42);
+		String[] texts = {"FINE NEEDLE ASPIRATION", "San Juan-Bayamon-Caguas PR", "  ", "Montréal ✓", null};
+		double[] amounts = {1403.88, 0.0, -0.0, 12.5, 1e-4, 1.0E7, 123456.789, 0.1 + 0.2, Double.NaN};
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		StringBuilder expected = new StringBuilder();
+
+		// small buffer so rows straddle flushes
+		try (ProcedureCodeCsvWriter writer = new ProcedureCodeCsvWriter(Channels.newChannel(bytes), "\r\n", 64)) {
+			for (int i = 0; i < 10_000; i++) {
+				double amount = i < amounts.length ? amounts[i] : random.nextInt(100_000_000) / 100.0;
+				ProcedureCodeData data = new ProcedureCodeData(random.nextInt(1000), 10000 + i, texts[i % texts.length],
+						texts[(i + 1) % texts.length], "Derived", "MSA", texts[(i + 2) % texts.length], amount,
+						LocalDate.ofEpochDay(random.nextInt(20_000)), i % 3 == 0 ? null : LocalDate.of(9999, 12, 31));
+				writer.write(data);
+				expected.append(data.content()).append("\r\n");
+			}
+		}
+
+		assertEquals(expected.toString(), new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	void overridesModifierAndDates() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ProcedureCodeData data = new ProcedureCodeData(1, 10004, "DESC", "26", "Derived", "MSA", "Geo", 10.0,
+				LocalDate.of(2022, 1, 2), LocalDate.of(9999, 12, 31));
+
+		try (ProcedureCodeCsvWriter writer = new ProcedureCodeCsvWriter(Channels.newChannel(bytes), ProcedureCodeCsvWriter.lineSeparator("LF"))) {
+			writer.write(data, "TC", data.getEffectiveDate(), LocalDate.of(2023, 5, 1));
+		}
+
+		assertEquals("1,10004,DESC,TC,Derived,MSA,Geo,10.0,2022-01-02,2023-05-01\n", new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,190 @@
+package com.rajesh.files.fileprocessor.io;
+
+import com.rajesh.files.fileprocessor.domain.ProcedureCodeData;
+import com.rajesh.files.fileprocessor.exception.BadInputDataException;
+import com.rajesh.files.fileprocessor.exception.EmptyInputFileException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Compares the mapped reader with the Scanner + split path it replaced, on the same file.
+ */
+class ProcedureCodeFileReaderTests {
+
+	private static final String HEADER = "GEOGRAPHY ID|PROCEDURE CODE|PROCEDURE CODE DESCRIPTION|MODIFIER|ACTUAL/DERIVED INDICATOR|GEOGRAPHIC LEVEL|GEOGRAPHIC DESCRIPTION|REFERENCE AMOUNT";
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void mappedReaderMatchesScannerPath() throws IOException {
+		Path input = writeInput(200_000, "\n");
+
+		List<ProcedureCodeData> expected = readWithScanner(input);
+		List<ProcedureCodeData> actual = readMapped(input, ProcedureCodeFileReader.DEFAULT_WINDOW_SIZE);
+
+		assertEquals(expected, actual);
+	}
+
+	@Test
+	void batchesSurviveWindowRemapsAndCrlf() throws IOException {
+		Path input = writeInput(5_000, "\r\n");
+
+		assertEquals(readWithScanner(input), readMapped(input, 4096));
+	}
+
+	@Test
+	void columnBatchesHoldTheSameRecords() throws IOException {
+		Path input = writeInput(20_000, "\n");
+		StringDictionary dictionary = new StringDictionary();
+		List<ProcedureCodeData> actual = new ArrayList<>();
+		try (ProcedureCodeFileReader reader = new ProcedureCodeFileReader(input, null, 64 * 1024)) {
+			reader.readHeader();
+			InputBatch batch;
+			while ((batch = reader.nextBatch(999)) != null) {
+				ProcedureCodeBatch columns = batch.parse(dictionary);
+				for (int row = 0; row < columns.size(); row++) {
+					actual.add(columns.record(row));
+				}
+			}
+		}
+
+		assertEquals(readWithScanner(input), actual);
+		// 13 descriptions, modifier, 2 indicators, level and the geographic description
+		assertEquals(18, dictionary.size());
+	}
+
+	@Test
+	void badLinesAreRejectedWithTheirLineNumbers() throws IOException {
+		Path input = tempDir.resolve("rejects.txt");
+		Files.write(input, (HEADER + "\n1|2|d|m|a|l|g|1.5\nx|2|d|m|a|l|g|1\n3|4|d|m|a|l|g|2.5\n5|6|d\n").getBytes(StandardCharsets.UTF_8));
+		List<RejectedLine> rejected = new ArrayList<>();
+		ProcedureCodeBatch columns;
+		try (ProcedureCodeFileReader reader = new ProcedureCodeFileReader(input)) {
+			reader.readHeader();
+			InputBatch batch = reader.nextBatch(999);
+			assertThrows(BadInputDataException.class, () -> batch.parse(new StringDictionary()));
+			columns = batch.parse(new StringDictionary(), rejected);
+		}
+
+		assertEquals(2, columns.size());
+		assertEquals(3, columns.getGeographyId(1));
+		assertEquals(2, rejected.size());
+		assertEquals(3, rejected.get(0).getLineNumber());
+		assertEquals("x|2|d|m|a|l|g|1", rejected.get(0).getLine());
+		assertEquals(5, rejected.get(1).getLineNumber());
+		assertEquals("5|6|d", rejected.get(1).getLine());
+	}
+
+	@Test
+	void streamReaderCutsTheSameBatchesAsTheMappedReader() throws IOException {
+		Path input = writeInput(5_000, "\r\n");
+		try (ProcedureCodeFileReader mapped = new ProcedureCodeFileReader(input, null, 4096);
+			 InputStream stream = Files.newInputStream(input)) {
+			// a read size below one batch makes the stream reader compact and grow its buffer
+			ProcedureCodeStreamReader streamed = new ProcedureCodeStreamReader(stream, 1000);
+			assertEquals(mapped.readHeader(), streamed.readHeader());
+			InputBatch expected;
+			while ((expected = mapped.nextBatch(999)) != null) {
+				InputBatch actual = streamed.nextBatch(999);
+				assertEquals(expected.getFirstLineNumber(), actual.getFirstLineNumber());
+				assertEquals(expected.getEndOffset(), actual.getEndOffset());
+				assertEquals(expected.parse(), actual.parse());
+			}
+			assertNull(streamed.nextBatch(999));
+		}
+		assertThrows(EmptyInputFileException.class, () -> new ProcedureCodeStreamReader(new ByteArrayInputStream(new byte[0])).readHeader());
+	}
+
+	@Test
+	void splitRangesAreLineAligned() throws IOException {
+		Path input = writeInput(10_000, "\n");
+		List<FileRange> ranges = ProcedureCodeFileReader.split(input, 7);
+		byte[] bytes = Files.readAllBytes(input);
+
+		assertEquals(0, ranges.get(0).getStart());
+		assertEquals(bytes.length, ranges.get(ranges.size() - 1).getEnd());
+		for (int i = 1; i < ranges.size(); i++) {
+			assertEquals(ranges.get(i - 1).getEnd(), ranges.get(i).getStart());
+			assertEquals('\n', bytes[(int) ranges.get(i).getStart() - 1]);
+		}
+	}
+
+	@Test
+	void numbersAndDatesAreDecodedFromBytes() {
+		ProcedureCodeData data = ProcedureCodeLineParser.parse("-7|+42|DESC|26|Derived|MSA|Somewhere|1403.88|2022-01-02|9999-12-31", 2);
+
+		assertEquals(-7, data.getGeographyId());
+		assertEquals(42, data.getProcedureCode());
+		assertEquals(Double.valueOf("1403.88"), data.getReferenceAmount());
+		assertEquals("2022-01-02", data.getEffectiveDate().toString());
+		assertEquals("9999-12-31", data.getEndDate().toString());
+		assertEquals(Double.valueOf("1.5E3"), ProcedureCodeLineParser.parse("1|2|d|m|a|l|g|1.5E3", 2).getReferenceAmount());
+		assertNull(ProcedureCodeLineParser.parse("1|2|d|m|a|l|g|1.5", 2).getEffectiveDate());
+		assertThrows(BadInputDataException.class, () -> ProcedureCodeLineParser.parse("1|2|d|m|a|l|g|", 5));
+		assertThrows(BadInputDataException.class, () -> ProcedureCodeLineParser.parse("x|2|d|m|a|l|g|1", 5));
+		assertThrows(BadInputDataException.class, () -> ProcedureCodeLineParser.parse("1|2|d|m|a|l|g|1|2022-02-30", 5));
+	}
+
+	private Path writeInput(int lines, String lineSeparator) throws IOException {
+		Path input = tempDir.resolve("input-" + lines + ".txt");
+		try (BufferedWriter writer = Files.newBufferedWriter(input, StandardCharsets.UTF_8)) {
+			writer.write(HEADER);
+			for (int i = 0; i < lines; i++) {
+				writer.write(lineSeparator);
+				writer.write((i % 900) + "|" + (10000 + i) + "|FINE NEEDLE ASPIRATION BX W/O IMG GDN EA ADDL " + (i % 13)
+						+ "|  |" + (i % 2 == 0 ? "Derived" : "Actual") + "|MSA|San Juan-Bayamon-Caguas PR|" + (i * 7 % 100000) / 100.0);
+			}
+		}
+		return input;
+	}
+
+	private static List<ProcedureCodeData> readMapped(Path input, long windowSize) throws IOException {
+		List<ProcedureCodeData> records = new ArrayList<>();
+		try (ProcedureCodeFileReader reader = new ProcedureCodeFileReader(input, null, windowSize)) {
+			assertEquals(HEADER, reader.readHeader());
+			InputBatch batch;
+			while ((batch = reader.nextBatch(999)) != null) {
+				records.addAll(batch.parse());
+			}
+		}
+		return records;
+	}
+
+	private static List<ProcedureCodeData> readWithScanner(Path input) throws IOException {
+		List<ProcedureCodeData> records = new ArrayList<>();
+		try (Scanner sc = new Scanner(new FileInputStream(input.toFile()), "UTF-8")) {
+			sc.nextLine();
+			while (sc.hasNextLine()) {
+				String[] dataElements = sc.nextLine().split("[|]");
+				records.add(ProcedureCodeData.builder()
+						.geographyId(Integer.valueOf(dataElements[0]))
+						.procedureCode(Integer.valueOf(dataElements[1]))
+						.procedureCodeDescription(dataElements[2])
+						.modifier(dataElements[3])
+						.actualDerivedIndicator(dataElements[4])
+						.geographicLevel(dataElements[5])
+						.geographicDescription(dataElements[6])
+						.referenceAmount(Double.valueOf(dataElements[7]))
+						.build());
+			}
+		}
+		return records;
+	}
+}
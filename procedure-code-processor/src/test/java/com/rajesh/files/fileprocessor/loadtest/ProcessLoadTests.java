@@ -0,0 +1,145 @@
+package com.rajesh.files.fileprocessor.loadtest;
+
+import com.rajesh.files.fileprocessor.domain.ProcessStatistics;
+import com.rajesh.files.fileprocessor.domain.ProcessStatus;
+import com.rajesh.files.fileprocessor.service.ProcedureCodeProcessorService;
+import com.rajesh.files.fileprocessor.service.ProcessRun;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * End to end run of processProcData over synthetic data on an in-memory H2 FAC_MSA.
+ * <p>
+ * Excluded from the normal build, run it with {@code mvn test -P load-test}; the data set is shaped by the
+ * loadtest.* system properties of {@link SyntheticDataSpec}. Fails when rows/sec drops more than the tolerance
+ * below the baseline in loadtest/baseline.properties; {@code -Dloadtest.record=true} records the measured
+ * rows/sec as the new baseline.
+ */
+@Tag("load-test")
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:loadtest;DB_CLOSE_DELAY=-1;IGNORE_UNKNOWN_SETTINGS=TRUE",
+		"spring.datasource.driver-class-name=org.h2.Driver",
+		"spring.datasource.username=sa",
+		"spring.datasource.password=",
+		"spring.jpa.hibernate.ddl-auto=none",
+		"spring.sql.init.mode=never",
+		"lookup.mode=database"})
+class ProcessLoadTests {
+
+	private static final String BASELINE_RESOURCE = "/loadtest/baseline.properties";
+	private static final Path BASELINE_SOURCE = Paths.get("src/test/resources/loadtest/baseline.properties");
+
+	@Autowired
+	private ProcedureCodeProcessorService processorService;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@TempDir
+	Path workDirectory;
+
+	@Test
+	void processesSyntheticFileAboveBaselineThroughput() throws IOException {
+		SyntheticDataSpec spec = SyntheticDataSpec.fromSystemProperties();
+		SyntheticDataGenerator generator = new SyntheticDataGenerator(spec);
+		Path input = workDirectory.resolve("dataInput.txt");
+		Path output = workDirectory.resolve("dataOutput.csv");
+		long seedStart = System.nanoTime();
+		long facMsaRows = generator.seedFacMsa(jdbcTemplate);
+		generator.writeInputFile(input);
+		System.out.println("Load test data: " + spec + ", FAC_MSA rows " + facMsaRows + ", input " + Files.size(input)
+				+ " bytes, generated in " + TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - seedStart) + " s");
+
+		System.gc();
+		ManagementFactory.getMemoryPoolMXBeans().forEach(MemoryPoolMXBean::resetPeakUsage);
+		long gcMillisBefore = gcMillis();
+		long start = System.nanoTime();
+		ProcessStatus status = processorService.processProcData(new ProcessRun(input, output));
+		double seconds = (System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1);
+		long gcMillis = gcMillis() - gcMillisBefore;
+		long peakHeap = peakHeapBytes();
+
+		ProcessStatistics statistics = status.getStatistics();
+		double rowsPerSecond = statistics.getLinesRead() / seconds;
+		System.out.println(String.format("Load test result: %d rows in %.1f s = %.0f rows/s, peak heap %d MB, GC %d ms, "
+						+ "matched %d, unmatched %d, multi-matched %d",
+				statistics.getLinesRead(), seconds, rowsPerSecond, peakHeap >> 20, gcMillis,
+				statistics.getMatchedRows(), statistics.getUnmatchedRows(), statistics.getMultiMatchedRows()));
+
+		assertEquals("SUCCESS", status.getCode());
+		assertEquals(spec.getInputRows(), statistics.getLinesRead());
+		try (Stream<String> lines = Files.lines(output)) {
+			assertEquals(statistics.getOutputRows(), lines.count());
+		}
+
+		if (Boolean.getBoolean("loadtest.record")) {
+			recordBaseline(rowsPerSecond);
+			return;
+		}
+		Properties baseline = baseline();
+		double baselineRowsPerSecond = Double.parseDouble(baseline.getProperty("rows-per-second"));
+		double tolerance = Double.parseDouble(baseline.getProperty("tolerance", "0.2"));
+		assertTrue(rowsPerSecond >= baselineRowsPerSecond * (1 - tolerance),
+				String.format("Throughput %.0f rows/s is below the baseline of %.0f rows/s (tolerance %.0f%%)",
+						rowsPerSecond, baselineRowsPerSecond, tolerance * 100));
+	}
+
+	private static long gcMillis() {
+		long millis = 0;
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			millis += Math.max(0, collector.getCollectionTime());
+		}
+		return millis;
+	}
+
+	/**
+	 * Sum of the heap pool peaks, an upper bound of the peak heap
+	 */
+	private static long peakHeapBytes() {
+		long bytes = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				bytes += pool.getPeakUsage().getUsed();
+			}
+		}
+		return bytes;
+	}
+
+	private static Properties baseline() throws IOException {
+		Properties baseline = new Properties();
+		try (InputStream in = ProcessLoadTests.class.getResourceAsStream(BASELINE_RESOURCE)) {
+			baseline.load(in);
+		}
+		return baseline;
+	}
+
+	private static void recordBaseline(double rowsPerSecond) throws IOException {
+		Properties baseline = baseline();
+		baseline.setProperty("rows-per-second", String.valueOf(Math.round(rowsPerSecond)));
+		try (OutputStream out = Files.newOutputStream(BASELINE_SOURCE)) {
+			baseline.store(out, "rows/sec of ProcessLoadTests with the default loadtest.* properties");
+		}
+		System.out.println("Recorded baseline of " + Math.round(rowsPerSecond) + " rows/s in " + BASELINE_SOURCE.toAbsolutePath());
+	}
+}
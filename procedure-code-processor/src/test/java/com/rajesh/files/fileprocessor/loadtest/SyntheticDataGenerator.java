@@ -0,0 +1,165 @@
+package com.rajesh.files.fileprocessor.loadtest;
+
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Random;
+
+/**
+ * Writes input files and seeds FAC_MSA at production scale, both streamed so the row counts are only bound by disk.
+ * <p>
+ * A key id maps to one (geography id, proc code, indicator, level) key. FAC_MSA holds the key ids below
+ * {@code tableKeys}; input lines that should match draw a key id from them by Zipf rank, the others use
+ * key ids above. The same spec and seed always produce the same data.
+ */
+public class SyntheticDataGenerator {
+
+	public static final String HEADER = "GEOGRAPHY ID|PROCEDURE CODE|PROCEDURE CODE DESCRIPTION|MODIFIER|ACTUAL/DERIVED INDICATOR|GEOGRAPHIC LEVEL|GEOGRAPHIC DESCRIPTION|REFERENCE AMOUNT";
+	private static final String CREATE_FAC_MSA = "CREATE TABLE FAC_MSA (GEOGRAPHY_ID INTEGER NOT NULL, PROC_CODE INTEGER NOT NULL, "
+			+ "PROC_CODE_DESC VARCHAR(1000), MODIFIER VARCHAR(128), ACTUAL_DERIVED_IND VARCHAR(64), GEOGRAPHIC_LEVEL VARCHAR(64), "
+			+ "GEOGRAPHIC_DESC VARCHAR(500), REFERENCE_AMOUNT DOUBLE NOT NULL, EFF_DT DATE NOT NULL, END_DT DATE NOT NULL)";
+	private static final String INDEX_FAC_MSA = "CREATE INDEX FAC_MSA_KEY ON FAC_MSA (GEOGRAPHY_ID, PROC_CODE, ACTUAL_DERIVED_IND, GEOGRAPHIC_LEVEL, END_DT)";
+	private static final String INSERT_FAC_MSA = "INSERT INTO FAC_MSA (GEOGRAPHY_ID, PROC_CODE, PROC_CODE_DESC, MODIFIER, ACTUAL_DERIVED_IND, "
+			+ "GEOGRAPHIC_LEVEL, GEOGRAPHIC_DESC, REFERENCE_AMOUNT, EFF_DT, END_DT) VALUES (?,?,?,?,?,?,?,?,?,?)";
+	private static final int INSERT_BATCH = 10_000;
+	private static final int GEOGRAPHIES = 997;
+	private static final String[] INDICATORS = {"Actual", "Derived"};
+	private static final String[] LEVELS = {"MSA", "Census Division", "State", "National"};
+	private static final String[] MODIFIERS = {"  ", "26", "TC", "59"};
+	private static final Date CURRENT_EFF_DATE = Date.valueOf(LocalDate.of(2022, 1, 2));
+	private static final Date HISTORY_EFF_DATE = Date.valueOf(LocalDate.of(2020, 1, 2));
+	private static final Date HISTORY_END_DATE = Date.valueOf(LocalDate.of(2022, 1, 1));
+	private static final Date INFINITE_END_DATE = Date.valueOf(LocalDate.of(9999, 12, 31));
+	// lines a duplicate may repeat
+	private static final int DUPLICATE_WINDOW = 1024;
+
+	private final SyntheticDataSpec spec;
+
+	public SyntheticDataGenerator(SyntheticDataSpec spec) {
+		this.spec = spec;
+	}
+
+	/**
+	 * Write the header and {@code inputRows} lines
+	 */
+	public void writeInputFile(Path file) throws IOException {
+		Random random = new Random(spec.getSeed());
+		String[] recent = new String[DUPLICATE_WINDOW];
+		long unmatchedKey = spec.getTableKeys();
+		try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			writer.write(HEADER);
+			writer.write('\n');
+			for (long row = 0; row < spec.getInputRows(); row++) {
+				String line;
+				if (row > 0 && random.nextDouble() < spec.getDuplicateRate()) {
+					line = recent[random.nextInt((int) Math.min(row, DUPLICATE_WINDOW))];
+				} else {
+					long keyId = random.nextDouble() < spec.getMatchRatio() ? zipfKey(random) : unmatchedKey++;
+					line = inputLine(keyId, MODIFIERS[random.nextInt(MODIFIERS.length)], 100 + random.nextInt(500_000) / 100.0);
+				}
+				recent[(int) (row % DUPLICATE_WINDOW)] = line;
+				writer.write(line);
+				writer.write('\n');
+			}
+		}
+	}
+
+	/**
+	 * (Re)create FAC_MSA with one current row per key, plus an older row for {@code historyRate} of the keys
+	 *
+	 * @return rows inserted
+	 */
+	public long seedFacMsa(JdbcTemplate jdbcTemplate) {
+		jdbcTemplate.execute("DROP TABLE IF EXISTS FAC_MSA");
+		jdbcTemplate.execute(CREATE_FAC_MSA);
+		Long rows = jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+			Random random = new Random(spec.getSeed() ^ 0x5DEECE66DL);
+			long inserted = 0;
+			int pending = 0;
+			try (PreparedStatement insert = connection.prepareStatement(INSERT_FAC_MSA)) {
+				for (long keyId = 0; keyId < spec.getTableKeys(); keyId++) {
+					if (random.nextDouble() < spec.getHistoryRate()) {
+						bindRow(insert, keyId, 900 + keyId % 1000, HISTORY_EFF_DATE, HISTORY_END_DATE);
+						insert.addBatch();
+						pending++;
+					}
+					bindRow(insert, keyId, 1000 + keyId % 1000, CURRENT_EFF_DATE, INFINITE_END_DATE);
+					insert.addBatch();
+					if (++pending >= INSERT_BATCH) {
+						insert.executeBatch();
+						inserted += pending;
+						pending = 0;
+					}
+				}
+				insert.executeBatch();
+				inserted += pending;
+			}
+			return inserted;
+		});
+		jdbcTemplate.execute(INDEX_FAC_MSA);
+		return rows == null ? 0 : rows;
+	}
+
+	/**
+	 * Key id of a matching line: rank r of [1, tableKeys] with probability proportional to 1 / r^keySkew,
+	 * sampled by inverting the continuous power law
+	 */
+	private long zipfKey(Random random) {
+		long keys = spec.getTableKeys();
+		double skew = spec.getKeySkew();
+		double u = random.nextDouble();
+		double rank;
+		if (skew <= 0) {
+			rank = 1 + u * keys;
+		} else if (Math.abs(skew - 1) < 1e-9) {
+			rank = Math.pow(keys + 1, u);
+		} else {
+			double oneMinusSkew = 1 - skew;
+			rank = Math.pow((Math.pow(keys + 1, oneMinusSkew) - 1) * u + 1, 1 / oneMinusSkew);
+		}
+		return Math.min(keys, Math.max(1, (long) rank)) - 1;
+	}
+
+	private static String inputLine(long keyId, String modifier, double amount) {
+		return geographyId(keyId) + "|" + procCode(keyId) + "|PROCEDURE " + keyId + "|" + modifier
+				+ "|" + indicator(keyId) + "|" + level(keyId) + "|GEOGRAPHY " + geographyId(keyId) + "|" + amount;
+	}
+
+	private static void bindRow(PreparedStatement insert, long keyId, double amount, Date effDate, Date endDate) throws SQLException {
+		insert.setInt(1, geographyId(keyId));
+		insert.setInt(2, procCode(keyId));
+		insert.setString(3, "PROCEDURE " + keyId);
+		insert.setString(4, "  ");
+		insert.setString(5, indicator(keyId));
+		insert.setString(6, level(keyId));
+		insert.setString(7, "GEOGRAPHY " + geographyId(keyId));
+		insert.setDouble(8, amount);
+		insert.setDate(9, effDate);
+		insert.setDate(10, endDate);
+	}
+
+	private static int geographyId(long keyId) {
+		return (int) (1 + keyId % GEOGRAPHIES);
+	}
+
+	private static int procCode(long keyId) {
+		return (int) (10000 + keyId / GEOGRAPHIES / (INDICATORS.length * LEVELS.length));
+	}
+
+	private static String indicator(long keyId) {
+		return INDICATORS[(int) ((keyId / GEOGRAPHIES) % INDICATORS.length)];
+	}
+
+	private static String level(long keyId) {
+		return LEVELS[(int) ((keyId / GEOGRAPHIES / INDICATORS.length) % LEVELS.length)];
+	}
+}
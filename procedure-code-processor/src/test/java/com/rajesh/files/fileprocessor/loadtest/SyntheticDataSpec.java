@@ -0,0 +1,50 @@
+package com.rajesh.files.fileprocessor.loadtest;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Shape of a synthetic data set, see {@link SyntheticDataGenerator}
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SyntheticDataSpec {
+	// input lines after the header
+	long inputRows;
+	// distinct keys in FAC_MSA
+	long tableKeys;
+	// share of input lines whose key exists in FAC_MSA
+	double matchRatio;
+	// Zipf exponent of the key popularity among matching lines, 0 = uniform
+	double keySkew;
+	// share of input lines repeating one of the previous lines
+	double duplicateRate;
+	// share of FAC_MSA keys that also have an older row, i.e. multi-matches
+	double historyRate;
+	long seed;
+
+	/**
+	 * Spec from the loadtest.* system properties, e.g. {@code -Dloadtest.input-rows=20000000}
+	 */
+	public static SyntheticDataSpec fromSystemProperties() {
+		long inputRows = Long.getLong("loadtest.input-rows", 1_000_000L);
+		return SyntheticDataSpec.builder()
+				.inputRows(inputRows)
+				.tableKeys(Long.getLong("loadtest.table-keys", Math.max(1, inputRows / 2)))
+				.matchRatio(doubleProperty("loadtest.match-ratio", 0.8))
+				.keySkew(doubleProperty("loadtest.key-skew", 1.0))
+				.duplicateRate(doubleProperty("loadtest.duplicate-rate", 0.05))
+				.historyRate(doubleProperty("loadtest.history-rate", 0.25))
+				.seed(Long.getLong("loadtest.seed", 20221215L))
+				.build();
+	}
+
+	private static double doubleProperty(String name, double defaultValue) {
+		String value = System.getProperty(name);
+		return value == null || value.trim().isEmpty() ? defaultValue : Double.parseDouble(value.trim());
+	}
+}
@@ -0,0 +1,65 @@
+package com.rajesh.files.fileprocessor.repository;
+
+import com.rajesh.files.fileprocessor.domain.ProcedureCodeData;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * FAC_MSA on an in-memory H2 database for the repository and service tests.
+ */
+public final class FacMsaTestTable {
+
+	public static final LocalDate INFINITE = LocalDate.of(9999, 12, 31);
+	private static final String CREATE_FAC_MSA = "CREATE TABLE FAC_MSA (GEOGRAPHY_ID INTEGER NOT NULL, PROC_CODE INTEGER NOT NULL, "
+			+ "PROC_CODE_DESC VARCHAR(1000), MODIFIER VARCHAR(128), ACTUAL_DERIVED_IND VARCHAR(64), GEOGRAPHIC_LEVEL VARCHAR(64), "
+			+ "GEOGRAPHIC_DESC VARCHAR(500), REFERENCE_AMOUNT DOUBLE NOT NULL, EFF_DT DATE NOT NULL, END_DT DATE NOT NULL)";
+	private static final String INSERT_FAC_MSA = "INSERT INTO FAC_MSA (GEOGRAPHY_ID, PROC_CODE, PROC_CODE_DESC, MODIFIER, ACTUAL_DERIVED_IND, "
+			+ "GEOGRAPHIC_LEVEL, GEOGRAPHIC_DESC, REFERENCE_AMOUNT, EFF_DT, END_DT) VALUES (?,?,?,?,?,?,?,?,?,?)";
+
+	private FacMsaTestTable() {
+	}
+
+	/**
+	 * @param name database name, each test class its own
+	 * @return template on an empty FAC_MSA
+	 */
+	public static JdbcTemplate create(String name) {
+		DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+		dataSource.setDriverClassName("org.h2.Driver");
+		return reset(new JdbcTemplate(dataSource));
+	}
+
+	/**
+	 * Replace FAC_MSA of the template's database by an empty one
+	 */
+	public static JdbcTemplate reset(JdbcTemplate jdbcTemplate) {
+		jdbcTemplate.execute("DROP TABLE IF EXISTS FAC_MSA");
+		jdbcTemplate.execute(CREATE_FAC_MSA);
+		return jdbcTemplate;
+	}
+
+	public static void insert(JdbcTemplate jdbcTemplate, ProcedureCodeData... rows) {
+		for (ProcedureCodeData row : rows) {
+			jdbcTemplate.update(INSERT_FAC_MSA, row.getGeographyId(), row.getProcedureCode(), row.getProcedureCodeDescription(),
+					row.getModifier(), row.getActualDerivedIndicator(), row.getGeographicLevel(), row.getGeographicDescription(),
+					row.getReferenceAmount(), Date.valueOf(row.getEffectiveDate()), Date.valueOf(row.getEndDate()));
+		}
+	}
+
+	/**
+	 * @return rows of the key in eff_dt order
+	 */
+	public static List<ProcedureCodeData> rows(JdbcTemplate jdbcTemplate, int geographyId, int procedureCode) {
+		return jdbcTemplate.query("SELECT * FROM FAC_MSA WHERE GEOGRAPHY_ID = ? AND PROC_CODE = ? ORDER BY EFF_DT, END_DT",
+				new ProcedureCodeRowMapper(), geographyId, procedureCode);
+	}
+
+	public static ProcedureCodeData row(int geographyId, int procedureCode, String level, double amount, LocalDate effectiveDate, LocalDate endDate) {
+		return new ProcedureCodeData(geographyId, procedureCode, "FINE NEEDLE ASPIRATION", "  ", "Derived", level, "San Juan",
+				amount, effectiveDate, endDate);
+	}
+}
@@ -0,0 +1,140 @@
+package com.rajesh.files.fileprocessor.repository;
+
+import com.rajesh.files.fileprocessor.domain.ProcedureCodeData;
+import com.rajesh.files.fileprocessor.domain.ProcessStatistics;
+import com.rajesh.files.fileprocessor.io.ProcedureCodeBatch;
+import com.rajesh.files.fileprocessor.io.StringDictionary;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.rajesh.files.fileprocessor.repository.FacMsaTestTable.INFINITE;
+import static com.rajesh.files.fileprocessor.repository.FacMsaTestTable.row;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FacMsaWriteBackRepositoryTests {
+
+	private static final LocalDate LOADED = LocalDate.of(2022, 1, 2);
+	private static final LocalDate TODAY = LocalDate.of(2023, 5, 1);
+
+	private JdbcTemplate jdbcTemplate;
+
+	@BeforeEach
+	void createTable() {
+		jdbcTemplate = FacMsaTestTable.create("writeback");
+		for (int procCode = 10000; procCode < 10005; procCode++) {
+			FacMsaTestTable.insert(jdbcTemplate, row(1, procCode, "MSA", 5.0, LOADED, INFINITE));
+		}
+	}
+
+	@Test
+	void endDatesTheCurrentRowAndInsertsTheInputRow() {
+		ProcessStatistics statistics = new ProcessStatistics();
+
+		repository(0).apply(batch(input(10000, 20.0), input(20000, 30.0)), null, TODAY, INFINITE, statistics);
+
+		List<ProcedureCodeData> rows = FacMsaTestTable.rows(jdbcTemplate, 1, 10000);
+		assertEquals(2, rows.size());
+		assertEquals(TODAY, rows.get(0).getEndDate());
+		assertEquals("26", rows.get(0).getModifier());
+		assertEquals(5.0, rows.get(0).getReferenceAmount());
+		assertCurrent(rows.get(1), 20.0);
+		assertCurrent(FacMsaTestTable.rows(jdbcTemplate, 1, 20000).get(0), 30.0);
+		assertEquals(1, statistics.getEndDatedRows());
+		assertEquals(2, statistics.getInsertedRows());
+	}
+
+	@Test
+	void applyingABatchAgainLeavesFacMsaUnchanged() {
+		FacMsaWriteBackRepository repository = repository(0);
+		ProcedureCodeBatch batch = batch(input(10000, 20.0), input(20000, 30.0));
+		repository.apply(batch, null, TODAY, INFINITE, new ProcessStatistics());
+		List<ProcedureCodeData> applied = FacMsaTestTable.rows(jdbcTemplate, 1, 10000);
+
+		ProcessStatistics again = new ProcessStatistics();
+		repository.apply(batch, null, TODAY, INFINITE, again);
+
+		assertEquals(applied, FacMsaTestTable.rows(jdbcTemplate, 1, 10000));
+		assertEquals(1, FacMsaTestTable.rows(jdbcTemplate, 1, 20000).size());
+		assertEquals(0, again.getEndDatedRows());
+		assertEquals(2, again.getInsertedRows());
+	}
+
+	@Test
+	void laterRowsOfAKeyReplaceTheVersionOfEarlierOnes() {
+		FacMsaWriteBackRepository repository = repository(0);
+
+		// the second batch was looked up before the first one committed, and a key repeats within a batch
+		repository.apply(batch(input(10000, 20.0)), null, TODAY, INFINITE, new ProcessStatistics());
+		repository.apply(batch(input(10000, 30.0), input(10000, 40.0)), null, TODAY, INFINITE, new ProcessStatistics());
+
+		List<ProcedureCodeData> rows = FacMsaTestTable.rows(jdbcTemplate, 1, 10000);
+		assertEquals(2, rows.size());
+		assertEquals(TODAY, rows.get(0).getEndDate());
+		assertCurrent(rows.get(1), 40.0);
+	}
+
+	@Test
+	void commitsEveryCommitIntervalRowsAndResumesAfterTheLastCommittedChunk() {
+		FacMsaWriteBackRepository repository = repository(2);
+		ProcedureCodeData tooLong = input(10003, 13.0);
+		char[] description = new char[1001];
+		Arrays.fill(description, 'X');
+		tooLong.setProcedureCodeDescription(new String(description));
+
+		assertThrows(DataAccessException.class, () -> repository.apply(batch(input(10000, 10.0), input(10001, 11.0),
+				input(10002, 12.0), tooLong, input(10004, 14.0)), null, TODAY, INFINITE, new ProcessStatistics()));
+
+		// the first chunk is committed, the failed one rolled back and the last one never started
+		assertCurrent(FacMsaTestTable.rows(jdbcTemplate, 1, 10001).get(1), 11.0);
+		assertEquals(1, FacMsaTestTable.rows(jdbcTemplate, 1, 10002).size());
+		assertEquals(1, FacMsaTestTable.rows(jdbcTemplate, 1, 10004).size());
+
+		// a resume applies the whole batch again
+		repository.apply(batch(input(10000, 10.0), input(10001, 11.0), input(10002, 12.0), input(10003, 13.0), input(10004, 14.0)),
+				null, TODAY, INFINITE, new ProcessStatistics());
+		for (int procCode = 10000; procCode < 10005; procCode++) {
+			List<ProcedureCodeData> rows = FacMsaTestTable.rows(jdbcTemplate, 1, procCode);
+			assertEquals(2, rows.size(), "rows of " + procCode);
+			assertEquals(TODAY, rows.get(0).getEndDate());
+			assertCurrent(rows.get(1), procCode - 10000 + 10.0);
+		}
+	}
+
+	private FacMsaWriteBackRepository repository(int commitInterval) {
+		FacMsaWriteBackRepository repository = new FacMsaWriteBackRepository();
+		ReflectionTestUtils.setField(repository, "jdbcTemplate", jdbcTemplate);
+		ReflectionTestUtils.setField(repository, "transactionManager", new DataSourceTransactionManager(jdbcTemplate.getDataSource()));
+		ReflectionTestUtils.setField(repository, "commitInterval", commitInterval);
+		repository.prepareTransactionTemplate();
+		return repository;
+	}
+
+	private static void assertCurrent(ProcedureCodeData row, double amount) {
+		assertEquals(amount, row.getReferenceAmount());
+		assertEquals(TODAY, row.getEffectiveDate());
+		assertEquals(INFINITE, row.getEndDate());
+	}
+
+	private static ProcedureCodeData input(int procCode, double amount) {
+		ProcedureCodeData input = row(1, procCode, "MSA", amount, null, null);
+		input.setModifier("26");
+		return input;
+	}
+
+	private static ProcedureCodeBatch batch(ProcedureCodeData... inputs) {
+		ProcedureCodeBatch batch = new ProcedureCodeBatch(new StringDictionary(), inputs.length);
+		for (ProcedureCodeData input : inputs) {
+			batch.add(input);
+		}
+		return batch;
+	}
+}
@@ -0,0 +1,104 @@
+package com.rajesh.files.fileprocessor.repository;
+
+import com.rajesh.files.fileprocessor.domain.LookupStrategy;
+import com.rajesh.files.fileprocessor.domain.ProcedureCodeData;
+import com.rajesh.files.fileprocessor.domain.ProcessStatistics;
+import com.rajesh.files.fileprocessor.io.ProcedureCodeBatch;
+import com.rajesh.files.fileprocessor.io.StringDictionary;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static com.rajesh.files.fileprocessor.repository.FacMsaTestTable.INFINITE;
+import static com.rajesh.files.fileprocessor.repository.FacMsaTestTable.row;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Only the FAC_MSA version effective on the run date is returned, whichever way the rows are fetched.
+ */
+class ProcedureCodeLookupRepositoryTests {
+
+	private static final LocalDate RUN_DATE = LocalDate.of(2023, 5, 1);
+	private static final LocalDate NEXT_YEAR = LocalDate.of(2024, 1, 1);
+
+	private JdbcTemplate jdbcTemplate;
+
+	@BeforeEach
+	void createTable() {
+		jdbcTemplate = FacMsaTestTable.create("lookup");
+		FacMsaTestTable.insert(jdbcTemplate,
+				// ended on the run date, effective from the run date, not effective yet
+				row(1, 10000, "MSA", 1.0, LocalDate.of(2021, 1, 1), RUN_DATE),
+				row(1, 10000, "MSA", 2.0, RUN_DATE, NEXT_YEAR),
+				row(1, 10000, "MSA", 3.0, NEXT_YEAR, INFINITE),
+				// only a later version
+				row(1, 10001, "MSA", 4.0, NEXT_YEAR, INFINITE),
+				// only an ended one
+				row(1, 10002, "MSA", 5.0, LocalDate.of(2021, 1, 1), LocalDate.of(2022, 1, 2)),
+				row(1, 10003, "MSA", 6.0, LocalDate.of(2022, 1, 2), INFINITE));
+	}
+
+	@Test
+	void inListLookupReturnsOnlyRowsEffectiveOnTheRunDate() {
+		ProcessStatistics statistics = new ProcessStatistics();
+
+		List<ProcedureCodeData> rows = repository(2000).findAllProcedureCodes(batch(), RUN_DATE, statistics);
+
+		assertEffectiveOnRunDate(rows);
+		assertEquals(1, statistics.lookupStatistics(LookupStrategy.IN_LIST).getLookups());
+	}
+
+	@Test
+	void stagingTableLookupReturnsOnlyRowsEffectiveOnTheRunDate() {
+		ProcessStatistics statistics = new ProcessStatistics();
+
+		List<ProcedureCodeData> rows = repository(0).findAllProcedureCodes(batch(), RUN_DATE, statistics);
+
+		assertEffectiveOnRunDate(rows);
+		assertEquals(1, statistics.lookupStatistics(LookupStrategy.STAGING_TABLE).getLookups());
+	}
+
+	@Test
+	void orderedScanReturnsOnlyRowsEffectiveOnTheRunDate() {
+		List<ProcedureCodeData> rows = new ArrayList<>();
+
+		long scanned = repository(2000).scanOrderedByKey(RUN_DATE, rows::add);
+
+		assertEquals(2, scanned);
+		assertEffectiveOnRunDate(rows);
+	}
+
+	private static void assertEffectiveOnRunDate(List<ProcedureCodeData> rows) {
+		rows.sort(Comparator.comparing(ProcedureCodeData::getProcedureCode));
+		assertEquals(2, rows.size(), rows.toString());
+		assertEquals(10000, rows.get(0).getProcedureCode());
+		assertEquals(2.0, rows.get(0).getReferenceAmount());
+		assertEquals(10003, rows.get(1).getProcedureCode());
+		assertEquals(6.0, rows.get(1).getReferenceAmount());
+	}
+
+	private ProcedureCodeLookupRepository repository(int stagingThreshold) {
+		ProcedureCodeLookupRepository repository = new ProcedureCodeLookupRepository();
+		ReflectionTestUtils.setField(repository, "jdbcTemplate", jdbcTemplate);
+		ReflectionTestUtils.setField(repository, "inListSizes", new int[]{1, 10, 50});
+		ReflectionTestUtils.setField(repository, "stagingThreshold", stagingThreshold);
+		ReflectionTestUtils.setField(repository, "maxParameters", 32767);
+		ReflectionTestUtils.setField(repository, "mergeFetchSize", 100);
+		repository.prepareInListStatements();
+		return repository;
+	}
+
+	private static ProcedureCodeBatch batch() {
+		ProcedureCodeBatch batch = new ProcedureCodeBatch(new StringDictionary(), 4);
+		for (int procCode = 10000; procCode < 10004; procCode++) {
+			batch.add(row(1, procCode, "MSA", 9.0, null, null));
+		}
+		return batch;
+	}
+}
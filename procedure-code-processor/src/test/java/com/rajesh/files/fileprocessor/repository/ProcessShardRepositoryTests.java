@@ -0,0 +1,107 @@
+package com.rajesh.files.fileprocessor.repository;
+
+import com.rajesh.files.fileprocessor.domain.ProcessShard;
+import com.rajesh.files.fileprocessor.domain.ProcessStatistics;
+import com.rajesh.files.fileprocessor.domain.ShardState;
+import com.rajesh.files.fileprocessor.io.FileRange;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProcessShardRepositoryTests {
+
+	private static final String RUN_ID = "run";
+	private static final LocalDate RUN_DATE = LocalDate.of(2023, 5, 1);
+	private static final long LEASE = 60_000;
+
+	private ProcessShardRepository repository;
+
+	@BeforeEach
+	void createRun() {
+		JdbcTemplate jdbcTemplate = FacMsaTestTable.create("shards");
+		jdbcTemplate.execute("DROP TABLE IF EXISTS PROCESS_SHARD");
+		repository = new ProcessShardRepository();
+		ReflectionTestUtils.setField(repository, "jdbcTemplate", jdbcTemplate);
+		ReflectionTestUtils.setField(repository, "transactionManager", new DataSourceTransactionManager(jdbcTemplate.getDataSource()));
+		repository.prepareTransactionTemplate();
+		assertTrue(repository.createRun(RUN_ID, RUN_DATE, Arrays.asList(new FileRange(0, 100), new FileRange(100, 250)), 250));
+	}
+
+	@Test
+	void runIsCreatedOnceWithTheMergeStepFirst() {
+		assertFalse(repository.createRun(RUN_ID, RUN_DATE, Arrays.asList(new FileRange(0, 250)), 250));
+
+		List<ProcessShard> shards = repository.findRun(RUN_ID);
+		assertEquals(3, shards.size());
+		assertEquals(ProcessShardRepository.MERGE_SHARD, shards.get(0).getShardNo());
+		assertEquals(100, shards.get(2).getStartOffset());
+		assertEquals(RUN_DATE, shards.get(2).getRunDate());
+		assertEquals(ShardState.PENDING, shards.get(2).getState());
+	}
+
+	@Test
+	void claimsEachPendingShardOnceAndRenewsOnlyItsOwnLease() {
+		ProcessShard first = repository.claimShard(RUN_ID, "a", LEASE, 0);
+		ProcessShard second = repository.claimShard(RUN_ID, "b", LEASE, 0);
+
+		assertEquals(0, first.getShardNo());
+		assertEquals(1, second.getShardNo());
+		assertEquals(1, first.getAttempts());
+		assertNull(repository.claimShard(RUN_ID, "c", LEASE, 0));
+		assertTrue(repository.renew(first, LEASE));
+		ProcessShard notHeld = repository.findRun(RUN_ID).get(1);
+		notHeld.setOwner("b");
+		assertFalse(repository.renew(notHeld, LEASE));
+	}
+
+	@Test
+	void expiredLeaseIsTakenOverAfterTheGraceAndFencesItsOwner() throws InterruptedException {
+		ProcessShard stale = repository.claimShard(RUN_ID, "a", 1, 0);
+		repository.claimShard(RUN_ID, "other", LEASE, 0);
+		Thread.sleep(10);
+
+		assertNull(repository.claimShard(RUN_ID, "b", LEASE, LEASE), "expired within the grace");
+		ProcessShard taken = repository.claimShard(RUN_ID, "b", LEASE, 0);
+		assertEquals(0, taken.getShardNo());
+		assertEquals(2, taken.getAttempts());
+
+		assertFalse(repository.renew(stale, LEASE));
+		assertFalse(repository.complete(stale, new ProcessStatistics()));
+		ProcessStatistics statistics = ProcessStatistics.builder()
+				.linesRead(1).batches(2).matchedRows(3).unmatchedRows(4).multiMatchedRows(5).changedRows(6).unchangedRows(7)
+				.outputRows(8).endDatedRows(9).insertedRows(10).skippedLookups(11).keyFilterFalsePositives(12).rejectedLines(13)
+				.build();
+		assertTrue(repository.complete(taken, statistics));
+
+		ProcessShard done = repository.findRun(RUN_ID).get(1);
+		assertEquals(ShardState.DONE, done.getState());
+		assertEquals(2, done.getDoneAttempt());
+		assertEquals(statistics, done.getStatistics());
+	}
+
+	@Test
+	void mergeIsClaimedOnceItsLeaseExpired() throws InterruptedException {
+		ProcessShard merge = repository.findRun(RUN_ID).get(0);
+		ProcessShard stale = repository.claimMerge(merge, "a", 1, 0);
+		assertNotNull(stale);
+		Thread.sleep(10);
+
+		ProcessShard expired = repository.findRun(RUN_ID).get(0);
+		assertNull(repository.claimMerge(expired, "b", LEASE, LEASE));
+		ProcessShard taken = repository.claimMerge(expired, "b", LEASE, 0);
+		assertEquals(2, taken.getAttempts());
+		assertFalse(repository.complete(stale, new ProcessStatistics()));
+	}
+}
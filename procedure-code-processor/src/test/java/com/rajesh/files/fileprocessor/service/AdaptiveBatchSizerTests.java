@@ -0,0 +1,64 @@
+package com.rajesh.files.fileprocessor.service;
+
+import com.rajesh.files.fileprocessor.domain.BatchSizing;
+import com.rajesh.files.fileprocessor.domain.LookupStrategy;
+import com.rajesh.files.fileprocessor.domain.ProcessStatistics;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveBatchSizerTests {
+
+	@Test
+	void settlesWhereLookupTakesTheTargetLatency() {
+		AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(true, 999, 100, 10000, 200, TimeUnit.MILLISECONDS);
+
+		// 20 ms per statement plus 0.1 ms per key: 200 ms at 1800 keys
+		for (int i = 0; i < 50; i++) {
+			int size = sizer.nextSize();
+			sizer.batchWritten(batch(size, TimeUnit.MILLISECONDS.toNanos(20) + size * TimeUnit.MICROSECONDS.toNanos(100)));
+		}
+
+		assertTrue(Math.abs(sizer.nextSize() - 1800) < 20, "size " + sizer.nextSize());
+		BatchSizing report = sizer.report();
+		assertEquals(999, report.getInitialSize());
+		assertEquals(999, report.getSmallestSize());
+		assertEquals(sizer.nextSize(), report.getFinalSize());
+	}
+
+	@Test
+	void staysWithinBoundsAndChangesAtMostTwofoldPerBatch() {
+		AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(true, 1000, 100, 4000, 200, TimeUnit.MILLISECONDS);
+
+		sizer.batchWritten(batch(1000, TimeUnit.MILLISECONDS.toNanos(1)));
+		assertEquals(2000, sizer.nextSize());
+		sizer.batchWritten(batch(2000, TimeUnit.MILLISECONDS.toNanos(1)));
+		sizer.batchWritten(batch(4000, TimeUnit.MILLISECONDS.toNanos(1)));
+		assertEquals(4000, sizer.nextSize());
+
+		for (int i = 0; i < 20; i++) {
+			sizer.batchWritten(batch(sizer.nextSize(), TimeUnit.SECONDS.toNanos(60)));
+		}
+		assertEquals(100, sizer.nextSize());
+		assertEquals(4000, sizer.report().getLargestSize());
+	}
+
+	@Test
+	void keepsTheConfiguredSizeWhenNotAdaptive() {
+		AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(false, 999, 100, 10000, 200, TimeUnit.MILLISECONDS);
+
+		sizer.batchWritten(batch(999, TimeUnit.SECONDS.toNanos(5)));
+
+		assertEquals(999, sizer.nextSize());
+		assertEquals(1, sizer.report().getSizeChanges().size());
+	}
+
+	private static ProcessStatistics batch(int lines, long lookupNanos) {
+		ProcessStatistics statistics = ProcessStatistics.builder().linesRead(lines).batches(1).build();
+		statistics.lookupStatistics(LookupStrategy.IN_LIST).record(1, lines, lines, 0, lookupNanos);
+		return statistics;
+	}
+}
@@ -0,0 +1,150 @@
+package com.rajesh.files.fileprocessor.service;
+
+import com.rajesh.files.fileprocessor.domain.IngestedFile;
+import com.rajesh.files.fileprocessor.domain.JobState;
+import com.rajesh.files.fileprocessor.domain.ProcessJob;
+import com.rajesh.files.fileprocessor.domain.ProcessStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Settle, claim and done/failed routing of the ingest directory, with jobs that finish as soon as they are submitted.
+ */
+class DirectoryIngestionServiceTests {
+
+	private static final long SETTLE_TIME = 500;
+
+	@TempDir
+	Path tempDir;
+
+	private DirectoryIngestionService service;
+
+	@AfterEach
+	void stopWatching() throws IOException {
+		service.stop();
+	}
+
+	@Test
+	void claimsSettledFilesAndMovesThemToDoneOrFailed() throws Exception {
+		Path inbox = start();
+		write(inbox.resolve("ok.txt"));
+		write(inbox.resolve("fail.txt"));
+		write(inbox.resolve("other.csv"));
+
+		// not claimed before it stayed unchanged for the settle time
+		Thread.sleep(SETTLE_TIME / 2);
+		assertTrue(Files.exists(inbox.resolve("ok.txt")));
+
+		await(() -> Files.exists(inbox.resolve("done/ok.txt")) && Files.exists(inbox.resolve("failed/fail.txt")));
+		assertTrue(Files.exists(inbox.resolve("other.csv")));
+		assertEquals(0, list(inbox.resolve("processing")).size());
+		assertEquals(JobState.SUCCEEDED, ingested("ok.txt").getState());
+		assertEquals(JobState.FAILED, ingested("fail.txt").getState());
+		assertEquals(tempDir.resolve("outbox/ok.csv").toString(), ingested("ok.txt").getOutputFile());
+	}
+
+	@Test
+	void fileNamedLikeOneStillProcessingGoesToFailedUnderAUniqueName() throws Exception {
+		Path inbox = tempDir.resolve("inbox");
+		Path processing = inbox.resolve("processing");
+		Files.createDirectories(processing);
+		// left by a stopped instance, its job is still running
+		write(processing.resolve("held.txt"));
+		start();
+
+		Files.write(inbox.resolve("held.txt"), "newer".getBytes(StandardCharsets.US_ASCII));
+		await(() -> !Files.exists(inbox.resolve("held.txt")));
+
+		assertEquals("1|10004", new String(Files.readAllBytes(processing.resolve("held.txt")), StandardCharsets.US_ASCII));
+		List<Path> failed = list(inbox.resolve("failed"));
+		assertEquals(1, failed.size());
+		assertTrue(failed.get(0).getFileName().toString().startsWith("held.txt."), failed.toString());
+		assertEquals("newer", new String(Files.readAllBytes(failed.get(0)), StandardCharsets.US_ASCII));
+		IngestedFile rejected = service.list().stream()
+				.filter(file -> file.getState() == JobState.FAILED)
+				.findFirst().orElseThrow(AssertionError::new);
+		assertEquals("DUPLICATE", rejected.getResult().getCode());
+	}
+
+	private Path start() throws IOException {
+		Path inbox = tempDir.resolve("inbox");
+		service = new DirectoryIngestionService();
+		ReflectionTestUtils.setField(service, "jobService", new ImmediateJobService());
+		ReflectionTestUtils.setField(service, "metrics", new ProcessMetrics(new SimpleMeterRegistry()));
+		ReflectionTestUtils.setField(service, "enabled", true);
+		ReflectionTestUtils.setField(service, "ingestDirectory", inbox.toString());
+		ReflectionTestUtils.setField(service, "outputDirectory", tempDir.resolve("outbox").toString());
+		ReflectionTestUtils.setField(service, "filePattern", "*.txt");
+		ReflectionTestUtils.setField(service, "settleTime", SETTLE_TIME);
+		ReflectionTestUtils.setField(service, "history", 100);
+		service.start();
+		return inbox;
+	}
+
+	private IngestedFile ingested(String fileName) {
+		return service.list().stream()
+				.filter(file -> file.getFileName().equals(fileName))
+				.findFirst().orElseThrow(AssertionError::new);
+	}
+
+	private static void write(Path file) throws IOException {
+		Files.write(file, "1|10004".getBytes(StandardCharsets.US_ASCII));
+	}
+
+	private static List<Path> list(Path directory) throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.collect(Collectors.toList());
+		}
+	}
+
+	private static void await(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 20 * SETTLE_TIME;
+		while (!condition.getAsBoolean()) {
+			assertTrue(System.currentTimeMillis() < deadline, "timed out");
+			Thread.sleep(50);
+		}
+	}
+
+	/**
+	 * Fails the files named fail*, never finishes the ones named held*, succeeds the others
+	 */
+	private static class ImmediateJobService extends ProcessJobService {
+
+		@Override
+		public synchronized ProcessJob submit(String inputFile, String outputFile, Consumer<ProcessJob> onFinished) {
+			String fileName = Paths.get(inputFile).getFileName().toString();
+			JobState state = fileName.startsWith("fail") ? JobState.FAILED : JobState.SUCCEEDED;
+			ProcessJob job = ProcessJob.builder()
+					.id(UUID.randomUUID().toString())
+					.state(state)
+					.inputFile(inputFile)
+					.outputFile(outputFile)
+					.finishedAt(Instant.now())
+					.result(new ProcessStatus(state.name(), fileName))
+					.build();
+			if (!fileName.startsWith("held")) {
+				onFinished.accept(job);
+			}
+			return job;
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package com.rajesh.files.fileprocessor.service;
+
+import com.rajesh.files.fileprocessor.repository.FacMsaTestTable;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+
+import static com.rajesh.files.fileprocessor.repository.FacMsaTestTable.INFINITE;
+import static com.rajesh.files.fileprocessor.repository.FacMsaTestTable.row;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FacMsaKeyFilterServiceTests {
+
+	private static final LocalDate LOADED = LocalDate.of(2022, 1, 2);
+
+	private JdbcTemplate jdbcTemplate;
+
+	@BeforeEach
+	void createTable() {
+		jdbcTemplate = FacMsaTestTable.create("keyfilter");
+		for (int procCode = 10000; procCode < 10010; procCode++) {
+			FacMsaTestTable.insert(jdbcTemplate, row(1, procCode, "MSA", 5.0, LOADED, INFINITE));
+		}
+	}
+
+	@Test
+	void keepsTheFilterWhileFacMsaIsUnchanged() {
+		FacMsaKeyFilterService service = service(3_600_000);
+		FacMsaKeyFilter filter = service.current();
+
+		assertSame(filter, service.refreshIfChanged());
+		assertTrue(filter.mightContain(1, 10004, "DERIVED", "MSA"));
+	}
+
+	@Test
+	void rebuildsWhenAReloadKeepsMaxEffDateAndRowCount() {
+		FacMsaKeyFilterService service = service(3_600_000);
+		FacMsaKeyFilter filter = service.current();
+
+		// same number of rows and the same max eff_dt, one key replaced by a new one
+		jdbcTemplate.update("DELETE FROM FAC_MSA WHERE PROC_CODE = 10009");
+		FacMsaTestTable.insert(jdbcTemplate, row(7, 20000, "STATE", 5.0, LOADED, INFINITE));
+
+		FacMsaKeyFilter rebuilt = service.refreshIfChanged();
+		assertNotSame(filter, rebuilt);
+		assertTrue(rebuilt.mightContain(7, 20000, "DERIVED", "STATE"));
+	}
+
+	@Test
+	void rebuildsOnceTheFilterReachedItsMaxAge() throws InterruptedException {
+		FacMsaKeyFilterService service = service(1);
+		FacMsaKeyFilter filter = service.current();
+		Thread.sleep(10);
+
+		assertNotSame(filter, service.refreshIfChanged());
+	}
+
+	private FacMsaKeyFilterService service(long maxAge) {
+		FacMsaKeyFilterService service = new FacMsaKeyFilterService();
+		ReflectionTestUtils.setField(service, "jdbcTemplate", jdbcTemplate);
+		ReflectionTestUtils.setField(service, "enabled", true);
+		ReflectionTestUtils.setField(service, "falsePositiveRate", 0.01);
+		ReflectionTestUtils.setField(service, "headroom", 0.2);
+		ReflectionTestUtils.setField(service, "fetchSize", 100);
+		ReflectionTestUtils.setField(service, "maxAge", maxAge);
+		return service;
+	}
+}
@@ -0,0 +1,26 @@
+package com.rajesh.files.fileprocessor.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FacMsaKeyFilterTests {
+
+	@Test
+	void keepsEveryKeyPutAndRejectsMostAbsentOnes() {
+		FacMsaKeyFilter filter = new FacMsaKeyFilter(100_000, 0.01);
+		for (int i = 0; i < 100_000; i++) {
+			filter.put(i % 5000, i / 5000, "DERIVED", "MSA");
+		}
+
+		int falsePositives = 0;
+		for (int i = 0; i < 100_000; i++) {
+			assertTrue(filter.mightContain(i % 5000, i / 5000, "DERIVED", "MSA"));
+			if (filter.mightContain(i % 5000, 1000 + i / 5000, "DERIVED", "MSA")) {
+				falsePositives++;
+			}
+		}
+		assertTrue(falsePositives < 2000, falsePositives + " false positives");
+		assertTrue(filter.currentFalsePositiveRate() < 0.02);
+	}
+}
@@ -0,0 +1,110 @@
+package com.rajesh.files.fileprocessor.service;
+
+import com.rajesh.files.fileprocessor.domain.ProcedureCodeData;
+import com.rajesh.files.fileprocessor.repository.FacMsaTestTable;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.rajesh.files.fileprocessor.repository.FacMsaTestTable.INFINITE;
+import static com.rajesh.files.fileprocessor.repository.FacMsaTestTable.row;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FacMsaSnapshotServiceTests {
+
+	private static final LocalDate MAY = LocalDate.of(2023, 5, 1);
+	private static final LocalDate JUNE = LocalDate.of(2023, 6, 1);
+
+	@TempDir
+	Path snapshotDirectory;
+
+	private JdbcTemplate jdbcTemplate;
+
+	@BeforeEach
+	void createTable() {
+		jdbcTemplate = FacMsaTestTable.create("snapshot");
+		FacMsaTestTable.insert(jdbcTemplate,
+				row(1, 10004, "MSA", 10.0, LocalDate.of(2020, 1, 1), MAY),
+				row(1, 10004, "MSA", 11.0, MAY, INFINITE),
+				row(1, 10005, "MSA", 20.0, JUNE, INFINITE));
+	}
+
+	@Test
+	void buildsTheRowsEffectiveOnTheRunDate() throws IOException {
+		FacMsaSnapshot snapshot = service().current(MAY);
+
+		assertEquals(1, snapshot.size());
+		assertEquals(11.0, snapshot.find(probe(10004)).getReferenceAmount());
+		assertNull(snapshot.find(probe(10005)));
+		assertEquals(MAY.toEpochDay(), snapshot.getEffectiveEpochDay());
+		assertTrue(snapshotFiles().get(0).getFileName().toString().startsWith("fac_msa-2023-05-01-"));
+	}
+
+	@Test
+	void reusesTheSnapshotOfTheSameDayAndTableVersion() throws IOException {
+		FacMsaSnapshotService service = service();
+		FacMsaSnapshot snapshot = service.current(MAY);
+		Path file = snapshotFiles().get(0);
+		FileTime written = Files.getLastModifiedTime(file);
+
+		assertSame(snapshot, service.current(MAY));
+		assertSame(snapshot, service.refreshIfChanged(MAY));
+		// a restart maps the existing file
+		FacMsaSnapshot mapped = service().current(MAY);
+		assertEquals(1, mapped.size());
+		assertEquals(written, Files.getLastModifiedTime(file));
+		assertEquals(1, snapshotFiles().size());
+	}
+
+	@Test
+	void rebuildsForAnotherRunDateOrChangedTable() throws IOException {
+		FacMsaSnapshotService service = service();
+		FacMsaSnapshot may = service.current(MAY);
+
+		FacMsaSnapshot june = service.current(JUNE);
+		assertNotSame(may, june);
+		assertEquals(2, june.size());
+		assertEquals(20.0, june.find(probe(10005)).getReferenceAmount());
+		assertEquals(1, snapshotFiles().size());
+		assertTrue(snapshotFiles().get(0).getFileName().toString().startsWith("fac_msa-2023-06-01-"));
+
+		FacMsaTestTable.insert(jdbcTemplate, row(2, 10004, "MSA", 30.0, MAY, INFINITE));
+		FacMsaSnapshot changed = service.refreshIfChanged(JUNE);
+		assertNotSame(june, changed);
+		assertEquals(30.0, changed.find(new ProcedureCodeData(2, 10004, null, null, "DERIVED", "msa", null, null, null, null)).getReferenceAmount());
+	}
+
+	private FacMsaSnapshotService service() {
+		FacMsaSnapshotService service = new FacMsaSnapshotService();
+		ReflectionTestUtils.setField(service, "jdbcTemplate", jdbcTemplate);
+		ReflectionTestUtils.setField(service, "lookupMode", FacMsaSnapshotService.SNAPSHOT_MODE);
+		ReflectionTestUtils.setField(service, "snapshotDirectory", snapshotDirectory.toString());
+		ReflectionTestUtils.setField(service, "fetchSize", 100);
+		return service;
+	}
+
+	private List<Path> snapshotFiles() throws IOException {
+		try (Stream<Path> files = Files.list(snapshotDirectory)) {
+			return files.collect(Collectors.toList());
+		}
+	}
+
+	private static ProcedureCodeData probe(int procedureCode) {
+		return row(1, procedureCode, "MSA", 0, MAY, INFINITE);
+	}
+}
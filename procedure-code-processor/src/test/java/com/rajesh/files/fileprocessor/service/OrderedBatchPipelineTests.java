@@ -0,0 +1,103 @@
+package com.rajesh.files.fileprocessor.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class OrderedBatchPipelineTests {
+
+	private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+	@Test
+	void writesResultsInSubmissionOrder() throws IOException {
+		List<Integer> written = new ArrayList<>();
+		try (OrderedBatchPipeline<Integer, Integer> pipeline = new OrderedBatchPipeline<>(4, 3, batch -> {
+			sleepMillis(ThreadLocalRandom.current().nextInt(3));
+			return batch * 2;
+		}, written::add)) {
+			for (int i = 0; i < 200; i++) {
+				pipeline.submit(i);
+			}
+			pipeline.finish();
+		}
+
+		assertEquals(200, written.size());
+		for (int i = 0; i < written.size(); i++) {
+			assertEquals(i * 2, (int) written.get(i));
+		}
+	}
+
+	@Test
+	void finishReportsWriterFailureWhileTheQueueIsFull() {
+		CountDownLatch writerBlocked = new CountDownLatch(1);
+		CountDownLatch failWriter = new CountDownLatch(1);
+		IOException thrown = assertTimeoutPreemptively(TIMEOUT, () -> assertThrows(IOException.class, () -> {
+			try (OrderedBatchPipeline<Integer, Integer> pipeline = new OrderedBatchPipeline<>(1, 1, batch -> batch, batch -> {
+				writerBlocked.countDown();
+				awaitUninterruptibly(failWriter);
+				throw new IOException("disk full");
+			})) {
+				// the writer holds the first batch, the second one fills the queue
+				pipeline.submit(1);
+				writerBlocked.await(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+				pipeline.submit(2);
+				new Thread(() -> {
+					sleepMillis(200);
+					failWriter.countDown();
+				}).start();
+				pipeline.finish();
+			}
+		}));
+		assertEquals("disk full", thrown.getMessage());
+	}
+
+	@Test
+	void workerExceptionFailsTheRun() {
+		List<Integer> written = new ArrayList<>();
+		IllegalArgumentException thrown = assertTimeoutPreemptively(TIMEOUT, () -> assertThrows(IllegalArgumentException.class, () -> {
+			try (OrderedBatchPipeline<Integer, Integer> pipeline = new OrderedBatchPipeline<>(2, 2, batch -> {
+				if (batch == 3) {
+					throw new IllegalArgumentException("bad batch " + batch);
+				}
+				return batch;
+			}, written::add)) {
+				for (int i = 0; i < 50; i++) {
+					pipeline.submit(i);
+				}
+				pipeline.finish();
+			}
+		}));
+		assertEquals("bad batch 3", thrown.getMessage());
+		// nothing after the failed batch reaches the sink
+		assertEquals(3, written.size());
+	}
+
+	private static void sleepMillis(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void awaitUninterruptibly(CountDownLatch latch) {
+		while (true) {
+			try {
+				latch.await();
+				return;
+			} catch (InterruptedException e) {
+				// keep the writer blocked until the test releases it
+			}
+		}
+	}
+}
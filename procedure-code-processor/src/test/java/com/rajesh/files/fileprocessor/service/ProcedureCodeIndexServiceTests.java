@@ -0,0 +1,97 @@
+package com.rajesh.files.fileprocessor.service;
+
+import com.rajesh.files.fileprocessor.domain.ProcedureCodeData;
+import com.rajesh.files.fileprocessor.repository.ProcedureCodeLookupRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Loading the lookup index from FAC_MSA, with the ordered scan replaced by a list of rows.
+ */
+class ProcedureCodeIndexServiceTests {
+
+	private static final LocalDate SEED_DATE = LocalDate.of(2023, 5, 1);
+	private static final LocalDate INFINITE = LocalDate.of(9999, 12, 31);
+
+	@Test
+	void seedLoadsTheSeedDateAndKeepsTheRowTheLookupsMatch() {
+		// rows of one key in no particular order, as ORDER BY GEOGRAPHY_ID, PROC_CODE leaves them
+		ScannedRows scan = new ScannedRows(Arrays.asList(
+				row(10004, 12.0, LocalDate.of(2022, 1, 2)),
+				row(10004, 14.0, LocalDate.of(2023, 1, 2)),
+				row(10004, 13.0, LocalDate.of(2023, 1, 2)),
+				row(10005, 20.0, LocalDate.of(2022, 1, 2))));
+		ProcedureCodeIndexService service = service(scan);
+
+		service.seed();
+
+		assertEquals(SEED_DATE, scan.effectiveOn);
+		assertEquals(13.0, service.find(1, 10004, "Derived", "MSA").getReferenceAmount());
+		assertEquals(2, service.info().getRecords());
+	}
+
+	@Test
+	void rebuildKeepsTheRecordsOfRunsPublishedDuringTheScan() {
+		ScannedRows scan = new ScannedRows(Arrays.asList(row(10004, 12.0, LocalDate.of(2022, 1, 2)), row(10005, 20.0, LocalDate.of(2022, 1, 2))));
+		ProcedureCodeIndexService service = service(scan);
+		ProcedureCodeIndex.Builder run = service.newRun();
+		run.put(row(10005, 25.0, SEED_DATE));
+		scan.duringScan = () -> service.publish(run, "dataOutput.csv");
+		ProcedureCodeIndex.Builder stale = service.newRun();
+		stale.put(row(10006, 30.0, LocalDate.of(2021, 1, 2)));
+		service.publish(stale, "earlier run");
+
+		service.rebuild(SEED_DATE.plusDays(1));
+
+		assertEquals(SEED_DATE.plusDays(1), scan.effectiveOn);
+		assertEquals(12.0, service.find(1, 10004, "Derived", "MSA").getReferenceAmount());
+		assertEquals(25.0, service.find(1, 10005, "Derived", "MSA").getReferenceAmount());
+		// records of earlier runs are replaced by FAC_MSA
+		assertEquals(2, service.info().getRecords());
+	}
+
+	private static ProcedureCodeIndexService service(ScannedRows scan) {
+		ProcedureCodeIndexService service = new ProcedureCodeIndexService();
+		ReflectionTestUtils.setField(service, "lookupRepository", scan);
+		ReflectionTestUtils.setField(service, "registry", new SimpleMeterRegistry());
+		ReflectionTestUtils.setField(service, "enabled", true);
+		ReflectionTestUtils.setField(service, "seedOnStartup", true);
+		ReflectionTestUtils.setField(service, "seedDate", SEED_DATE.toString());
+		service.registerMeters();
+		return service;
+	}
+
+	private static ProcedureCodeData row(int procCode, double amount, LocalDate effectiveDate) {
+		return new ProcedureCodeData(1, procCode, "FINE NEEDLE ASPIRATION", "26", "Derived", "MSA", "San Juan", amount,
+				effectiveDate, INFINITE);
+	}
+
+	private static class ScannedRows extends ProcedureCodeLookupRepository {
+
+		private final List<ProcedureCodeData> rows;
+		private LocalDate effectiveOn;
+		private Runnable duringScan = () -> {
+		};
+
+		ScannedRows(List<ProcedureCodeData> rows) {
+			this.rows = new ArrayList<>(rows);
+		}
+
+		@Override
+		public long scanOrderedByKey(LocalDate effectiveOn, Consumer<ProcedureCodeData> rowHandler) {
+			this.effectiveOn = effectiveOn;
+			rows.forEach(rowHandler);
+			duringScan.run();
+			return rows.size();
+		}
+	}
+}
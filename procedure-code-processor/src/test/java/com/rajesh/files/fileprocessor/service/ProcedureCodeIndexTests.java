@@ -0,0 +1,76 @@
+package com.rajesh.files.fileprocessor.service;
+
+import com.rajesh.files.fileprocessor.domain.ProcedureCodeData;
+import com.rajesh.files.fileprocessor.domain.ProcedureCodeKey;
+import com.rajesh.files.fileprocessor.io.ProcedureCodeBatch;
+import com.rajesh.files.fileprocessor.io.StringDictionary;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ProcedureCodeIndexTests {
+
+	private static final LocalDate RUN_DATE = LocalDate.of(2023, 5, 1);
+	private static final LocalDate INFINITE = LocalDate.of(9999, 12, 31);
+
+	@Test
+	void runRecordsReplaceCurrentOnesAndKeepTheRest() {
+		ProcedureCodeIndex.Builder seed = new ProcedureCodeIndex.Builder();
+		ProcedureCodeData kept = row(1, 10004, "MSA", "FINE NEEDLE ASPIRATION", 10.0);
+		seed.put(kept);
+		seed.put(row(1, 10005, "MSA", "THYROID HORM UPTK", 20.0));
+		ProcedureCodeIndex base = seed.build("FAC_MSA");
+
+		ProcedureCodeBatch batch = new ProcedureCodeBatch(new StringDictionary(), 2);
+		batch.add(row(1, 10005, "msa", "Thyroid hormone binding ratio", 25.0));
+		batch.add(row(2, 10005, "Census Division", "FINE NEEDLE BX", 30.0));
+		ProcedureCodeIndex.Builder run = new ProcedureCodeIndex.Builder();
+		for (int i = 0; i < batch.size(); i++) {
+			run.put(batch, i, RUN_DATE, INFINITE);
+		}
+		ProcedureCodeIndex.Builder next = new ProcedureCodeIndex.Builder(base);
+		next.putAll(run);
+		ProcedureCodeIndex index = next.build("dataOutput.csv");
+
+		assertEquals(3, index.size());
+		assertEquals(2, base.size());
+		assertSame(kept, index.find(1, 10004, "derived", "msa"));
+		ProcedureCodeData replaced = index.find(1, 10005, "Derived", "MSA");
+		assertEquals(25.0, replaced.getReferenceAmount());
+		assertEquals(RUN_DATE, replaced.getEffectiveDate());
+		assertEquals(INFINITE, replaced.getEndDate());
+		assertEquals(30.0, index.find(new ProcedureCodeKey(2, 10005, "DERIVED", "CENSUS DIVISION")).getReferenceAmount());
+		assertNull(index.find(3, 10004, "Derived", "MSA"));
+	}
+
+	@Test
+	void descriptionPrefixIgnoresCaseAndStopsAtLimit() {
+		ProcedureCodeIndex.Builder builder = new ProcedureCodeIndex.Builder();
+		builder.put(row(1, 1, "MSA", "FINE NEEDLE BX", 1.0));
+		builder.put(row(1, 2, "MSA", "fine needle aspiration", 2.0));
+		builder.put(row(1, 3, "MSA", "FINE", 3.0));
+		builder.put(row(1, 4, "MSA", "FINER", 4.0));
+		builder.put(row(1, 5, "MSA", null, 5.0));
+		ProcedureCodeIndex index = builder.build("test");
+
+		List<ProcedureCodeData> found = index.searchDescription("Fine Needle", 10);
+		assertEquals(2, found.size());
+		assertEquals("fine needle aspiration", found.get(0).getProcedureCodeDescription());
+		assertEquals("FINE NEEDLE BX", found.get(1).getProcedureCodeDescription());
+		assertEquals(4, index.searchDescription("fine", 10).size());
+		assertEquals(2, index.searchDescription("FINE", 2).size());
+		assertEquals(0, index.searchDescription("THYROID", 10).size());
+		// no description, not searchable
+		assertEquals(4, index.searchDescription("", 10).size());
+	}
+
+	private static ProcedureCodeData row(int geographyId, int procCode, String level, String description, double amount) {
+		return new ProcedureCodeData(geographyId, procCode, description, "26", "Derived", level, "San Juan", amount,
+				LocalDate.of(2022, 1, 2), INFINITE);
+	}
+}
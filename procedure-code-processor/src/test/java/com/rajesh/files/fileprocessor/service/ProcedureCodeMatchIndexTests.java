@@ -0,0 +1,54 @@
+package com.rajesh.files.fileprocessor.service;
+
+import com.rajesh.files.fileprocessor.domain.ProcedureCodeData;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProcedureCodeMatchIndexTests {
+
+	@Test
+	void matchesOnFullCompositeKeyIgnoringCase() {
+		ProcedureCodeMatchIndex index = ProcedureCodeMatchIndex.build(Arrays.asList(
+				row(1, 10004, "Derived", "MSA", 10.0, "2022-01-02"),
+				row(2, 10004, "Derived", "MSA", 20.0, "2022-01-02")));
+
+		List<ProcedureCodeData> matches = index.probe(row(1, 10004, "DERIVED", "msa", 0.0, null));
+
+		assertEquals(1, matches.size());
+		assertEquals(10.0, matches.get(0).getReferenceAmount());
+		assertTrue(index.probe(row(1, 10004, "Actual", "MSA", 0.0, null)).isEmpty());
+	}
+
+	@Test
+	void prefersLatestEffectiveRowRegardlessOfDbOrder() {
+		ProcedureCodeData older = row(1, 10004, "Derived", "MSA", 10.0, "2021-01-01");
+		ProcedureCodeData newer = row(1, 10004, "Derived", "MSA", 20.0, "2022-01-02");
+
+		List<ProcedureCodeData> matches = ProcedureCodeMatchIndex.build(Arrays.asList(older, newer))
+				.probe(row(1, 10004, "Derived", "MSA", 0.0, null));
+		List<ProcedureCodeData> reversed = ProcedureCodeMatchIndex.build(Arrays.asList(newer, older))
+				.probe(row(1, 10004, "Derived", "MSA", 0.0, null));
+
+		assertEquals(2, matches.size());
+		assertEquals(newer, matches.get(0));
+		assertEquals(newer, reversed.get(0));
+	}
+
+	private static ProcedureCodeData row(int geographyId, int procCode, String indicator, String level, double amount, String effDate) {
+		return ProcedureCodeData.builder()
+				.geographyId(geographyId)
+				.procedureCode(procCode)
+				.actualDerivedIndicator(indicator)
+				.geographicLevel(level)
+				.referenceAmount(amount)
+				.effectiveDate(effDate == null ? null : LocalDate.parse(effDate))
+				.endDate(LocalDate.parse("9999-12-31"))
+				.build();
+	}
+}
@@ -0,0 +1,230 @@
+package com.rajesh.files.fileprocessor.service;
+
+import com.rajesh.files.fileprocessor.domain.ProcedureCodeData;
+import com.rajesh.files.fileprocessor.domain.ProcessStatistics;
+import com.rajesh.files.fileprocessor.domain.ProcessStatus;
+import com.rajesh.files.fileprocessor.loadtest.SyntheticDataGenerator;
+import com.rajesh.files.fileprocessor.repository.FacMsaTestTable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+import static com.rajesh.files.fileprocessor.repository.FacMsaTestTable.INFINITE;
+import static com.rajesh.files.fileprocessor.repository.FacMsaTestTable.row;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs of processProcData on an in-memory H2 FAC_MSA.
+ */
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:processor;DB_CLOSE_DELAY=-1;IGNORE_UNKNOWN_SETTINGS=TRUE",
+		"spring.datasource.driver-class-name=org.h2.Driver",
+		"spring.datasource.username=sa",
+		"spring.datasource.password=",
+		"spring.jpa.hibernate.ddl-auto=none",
+		"spring.sql.init.mode=never",
+		"lookup.mode=database"})
+class ProcedureCodeProcessorServiceTests {
+
+	private static final LocalDate RUN_DATE = LocalDate.of(2023, 5, 1);
+	private static final int LINES = 40;
+
+	@Autowired
+	private ProcedureCodeProcessorService processorService;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@TempDir
+	Path tempDir;
+
+	@BeforeEach
+	void createTable() {
+		FacMsaTestTable.reset(jdbcTemplate);
+		for (int i = 0; i < LINES; i += 3) {
+			FacMsaTestTable.insert(jdbcTemplate, row(1, 10000 + i, "MSA", 5.0, LocalDate.of(2022, 1, 2), INFINITE));
+		}
+	}
+
+	@AfterEach
+	void restoreSettings() {
+		ReflectionTestUtils.setField(processorService, "outputMode", "file");
+		ReflectionTestUtils.setField(processorService, "batchSize", 999);
+		ReflectionTestUtils.setField(processorService, "adaptiveBatchSize", true);
+		ReflectionTestUtils.setField(processorService, "workers", 0);
+	}
+
+	@Test
+	void resumeCutsTheTornTailAndContinuesOnTheCheckpointRunDate() throws IOException {
+		List<String> lines = inputLines();
+		Path input = writeInput("dataInput.txt", lines);
+		byte[] expected = process(input, "expected.csv", RUN_DATE);
+
+		// a run that stopped after the first half: checkpoint, its output and a torn row after it
+		int done = LINES / 2;
+		Path firstHalfOutput = tempDir.resolve("firstHalf.csv");
+		ProcessStatus firstHalf = processorService.processProcData(new ProcessRun(writeInput("firstHalf.txt", lines.subList(0, done)),
+				firstHalfOutput, null, RUN_DATE));
+		byte[] written = Files.readAllBytes(firstHalfOutput);
+		Path output = tempDir.resolve("dataOutput.csv");
+		byte[] part = new byte[written.length + 9];
+		System.arraycopy(written, 0, part, 0, written.length);
+		System.arraycopy("1|10099|F".getBytes(StandardCharsets.US_ASCII), 0, part, written.length, 9);
+		Files.write(RunCheckpoint.partFile(output), part);
+		RunCheckpoint.of(input, RUN_DATE, inputOffset(lines, done), firstHalf.getStatistics(), written.length, checksum(written), 0)
+				.save(RunCheckpoint.checkpointFile(output));
+
+		// no run date given: the rest is processed on the checkpoint's
+		ProcessStatus resumed = processorService.processProcData(new ProcessRun(input, output));
+
+		assertArrayEquals(expected, Files.readAllBytes(output));
+		assertEquals(LINES, resumed.getStatistics().getLinesRead());
+		assertTrue(resumed.getDescription().contains("resumed after batch"), resumed.getDescription());
+		assertFalse(Files.exists(RunCheckpoint.checkpointFile(output)));
+		assertFalse(Files.exists(RunCheckpoint.partFile(output)));
+	}
+
+	@Test
+	void checkpointOfAnotherRunDateStartsOver() throws IOException {
+		List<String> lines = inputLines();
+		Path input = writeInput("dataInput.txt", lines);
+		LocalDate nextDay = RUN_DATE.plusDays(1);
+		byte[] expected = process(input, "expected.csv", nextDay);
+
+		Path output = tempDir.resolve("dataOutput.csv");
+		byte[] stale = "stale output of another day\n".getBytes(StandardCharsets.US_ASCII);
+		Files.write(RunCheckpoint.partFile(output), stale);
+		RunCheckpoint.of(input, RUN_DATE, inputOffset(lines, LINES / 2), new ProcessStatistics(),
+				stale.length, checksum(stale), 0).save(RunCheckpoint.checkpointFile(output));
+
+		ProcessStatus status = processorService.processProcData(new ProcessRun(input, output, null, nextDay));
+
+		assertArrayEquals(expected, Files.readAllBytes(output));
+		assertFalse(status.getDescription().contains("resumed"), status.getDescription());
+	}
+
+	@Test
+	void databaseModeLeavesOneCurrentRowPerKeyAcrossBatchesAndReruns() throws IOException {
+		ReflectionTestUtils.setField(processorService, "outputMode", ProcedureCodeProcessorService.OUTPUT_MODE_DATABASE);
+		ReflectionTestUtils.setField(processorService, "batchSize", 4);
+		ReflectionTestUtils.setField(processorService, "adaptiveBatchSize", false);
+		ReflectionTestUtils.setField(processorService, "workers", 4);
+		// every key twice, the second time several batches later, looked up while the first one is applied
+		List<String> lines = inputLines();
+		lines.addAll(inputLines());
+		Path input = writeInput("dataInput.txt", lines);
+		Path output = tempDir.resolve("dataOutput.csv");
+
+		processorService.processProcData(new ProcessRun(input, output, null, RUN_DATE));
+		processorService.processProcData(new ProcessRun(input, output, null, RUN_DATE));
+
+		for (int i = 0; i < LINES; i++) {
+			List<ProcedureCodeData> rows = FacMsaTestTable.rows(jdbcTemplate, 1, 10000 + i);
+			long current = rows.stream().filter(row -> INFINITE.equals(row.getEndDate())).count();
+			assertEquals(1, current, "current rows of " + (10000 + i));
+			assertEquals(i % 3 == 0 ? 2 : 1, rows.size(), "rows of " + (10000 + i));
+		}
+		assertFalse(Files.exists(output));
+	}
+
+	@Test
+	void mergeModeRejectsWritingToFacMsa() {
+		ProcedureCodeProcessorService service = new ProcedureCodeProcessorService();
+		ReflectionTestUtils.setField(service, "lookupMode", ProcedureCodeProcessorService.SORT_MERGE_MODE);
+		ReflectionTestUtils.setField(service, "outputMode", ProcedureCodeProcessorService.OUTPUT_MODE_BOTH);
+
+		assertThrows(IllegalStateException.class, service::validateModes);
+		ReflectionTestUtils.setField(service, "outputMode", "file");
+		service.validateModes();
+	}
+
+	@Test
+	void changesOnlyRejectsWritingToFacMsa() {
+		ProcedureCodeProcessorService service = new ProcedureCodeProcessorService();
+		ReflectionTestUtils.setField(service, "lookupMode", "database");
+		ReflectionTestUtils.setField(service, "changesOnly", true);
+		ReflectionTestUtils.setField(service, "outputMode", ProcedureCodeProcessorService.OUTPUT_MODE_DATABASE);
+
+		assertThrows(IllegalStateException.class, service::validateModes);
+		ReflectionTestUtils.setField(service, "outputMode", "file");
+		service.validateModes();
+	}
+
+	@Test
+	void databaseModeKeepsTheValuesOfTheLaterBatchOfAKey() throws IOException {
+		ReflectionTestUtils.setField(processorService, "outputMode", ProcedureCodeProcessorService.OUTPUT_MODE_DATABASE);
+		ReflectionTestUtils.setField(processorService, "batchSize", 4);
+		ReflectionTestUtils.setField(processorService, "adaptiveBatchSize", false);
+		ReflectionTestUtils.setField(processorService, "workers", 4);
+		// 10000 changed by the first batch and sent back to its FAC_MSA amount by the second, looked up before the first is applied
+		List<String> lines = inputLines().subList(0, 8);
+		lines.set(0, "1|10000|FINE NEEDLE ASPIRATION|26|Derived|MSA|San Juan|7.25");
+		lines.set(4, "1|10000|FINE NEEDLE ASPIRATION|26|Derived|MSA|San Juan|5.00");
+		Path input = writeInput("dataInput.txt", lines);
+
+		processorService.processProcData(new ProcessRun(input, tempDir.resolve("dataOutput.csv"), null, RUN_DATE));
+
+		List<ProcedureCodeData> current = FacMsaTestTable.rows(jdbcTemplate, 1, 10000).stream()
+				.filter(row -> INFINITE.equals(row.getEndDate()))
+				.collect(Collectors.toList());
+		assertEquals(1, current.size(), current.toString());
+		assertEquals(5.0, current.get(0).getReferenceAmount());
+	}
+
+	private byte[] process(Path input, String outputName, LocalDate runDate) throws IOException {
+		Path output = tempDir.resolve(outputName);
+		processorService.processProcData(new ProcessRun(input, output, null, runDate));
+		return Files.readAllBytes(output);
+	}
+
+	private static List<String> inputLines() {
+		List<String> lines = new ArrayList<>();
+		for (int i = 0; i < LINES; i++) {
+			lines.add("1|" + (10000 + i) + "|FINE NEEDLE ASPIRATION|26|Derived|MSA|San Juan|" + (100 + i) + ".25");
+		}
+		return lines;
+	}
+
+	private Path writeInput(String name, List<String> lines) throws IOException {
+		List<String> withHeader = new ArrayList<>();
+		withHeader.add(SyntheticDataGenerator.HEADER);
+		withHeader.addAll(lines);
+		return Files.write(tempDir.resolve(name), (String.join("\n", withHeader) + "\n").getBytes(StandardCharsets.US_ASCII));
+	}
+
+	/**
+	 * @return input offset right after the first {@code count} data lines
+	 */
+	private static long inputOffset(List<String> lines, int count) {
+		long offset = SyntheticDataGenerator.HEADER.length() + 1;
+		for (String line : lines.subList(0, count)) {
+			offset += line.length() + 1;
+		}
+		return offset;
+	}
+
+	private static long checksum(byte[] bytes) {
+		CRC32 crc = new CRC32();
+		crc.update(bytes);
+		return crc.getValue();
+	}
+}
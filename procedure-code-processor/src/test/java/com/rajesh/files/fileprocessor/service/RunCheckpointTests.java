@@ -0,0 +1,87 @@
+package com.rajesh.files.fileprocessor.service;
+
+import com.rajesh.files.fileprocessor.domain.ProcessStatistics;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RunCheckpointTests {
+
+	private static final LocalDate RUN_DATE = LocalDate.of(2023, 5, 1);
+	private static final byte[] OUTPUT = "1,10004,FINE NEEDLE\n2,10005,THYROID\n".getBytes(StandardCharsets.US_ASCII);
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void savedCheckpointLoadsWithTheSameProgress() throws IOException {
+		Path input = Files.write(tempDir.resolve("dataInput.txt"), "header\nline\n".getBytes(StandardCharsets.US_ASCII));
+		ProcessStatistics statistics = ProcessStatistics.builder().linesRead(1).batches(1).matchedRows(1).outputRows(2)
+				.endDatedRows(1).insertedRows(1).build();
+		Path checkpointFile = RunCheckpoint.checkpointFile(tempDir.resolve("dataOutput.csv"));
+
+		RunCheckpoint.of(input, RUN_DATE, 12, statistics, OUTPUT.length, checksum(OUTPUT), 0).save(checkpointFile);
+		RunCheckpoint loaded = RunCheckpoint.load(checkpointFile);
+
+		assertTrue(loaded.isFor(input));
+		assertEquals(RUN_DATE, loaded.getRunDate());
+		assertEquals(12, loaded.getInputOffset());
+		assertEquals(OUTPUT.length, loaded.getOutputLength());
+		assertEquals(statistics, loaded.statistics());
+		assertTrue(loaded.resumesOn(null));
+		assertTrue(loaded.resumesOn(RUN_DATE));
+		assertFalse(loaded.resumesOn(RUN_DATE.plusDays(1)));
+
+		Files.write(input, "header\nline\nmore\n".getBytes(StandardCharsets.US_ASCII));
+		assertFalse(loaded.isFor(input));
+	}
+
+	@Test
+	void checkpointWithoutRunDateDoesNotResume() throws IOException {
+		Path checkpointFile = tempDir.resolve("dataOutput.csv.checkpoint");
+		RunCheckpoint.builder().inputFile("dataInput.txt").build().save(checkpointFile);
+
+		RunCheckpoint loaded = RunCheckpoint.load(checkpointFile);
+		assertNull(loaded.getRunDate());
+		assertFalse(loaded.resumesOn(null));
+		assertNull(RunCheckpoint.load(tempDir.resolve("missing.checkpoint")));
+	}
+
+	@Test
+	void verifiesTheCrcOfTheCheckpointedPrefixOnly() throws IOException {
+		RunCheckpoint checkpoint = RunCheckpoint.builder().outputLength(OUTPUT.length).outputChecksum(checksum(OUTPUT)).build();
+		Path partFile = tempDir.resolve("dataOutput.csv.part");
+		byte[] withTornRow = new byte[OUTPUT.length + 5];
+		System.arraycopy(OUTPUT, 0, withTornRow, 0, OUTPUT.length);
+		Files.write(partFile, withTornRow);
+
+		CRC32 continued = new CRC32();
+		assertTrue(checkpoint.verifyOutput(partFile, continued));
+		assertEquals(checksum(OUTPUT), continued.getValue());
+
+		byte[] corrupted = OUTPUT.clone();
+		corrupted[3] = 'X';
+		Files.write(partFile, corrupted);
+		assertFalse(checkpoint.verifyOutput(partFile, new CRC32()));
+
+		Files.write(partFile, "1,10004".getBytes(StandardCharsets.US_ASCII));
+		assertFalse(checkpoint.verifyOutput(partFile, new CRC32()));
+	}
+
+	private static long checksum(byte[] bytes) {
+		CRC32 crc = new CRC32();
+		crc.update(bytes);
+		return crc.getValue();
+	}
+}
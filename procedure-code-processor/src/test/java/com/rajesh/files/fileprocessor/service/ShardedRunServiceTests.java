@@ -0,0 +1,207 @@
+package com.rajesh.files.fileprocessor.service;
+
+import com.rajesh.files.fileprocessor.domain.ProcessShard;
+import com.rajesh.files.fileprocessor.domain.ProcessStatistics;
+import com.rajesh.files.fileprocessor.domain.ProcessStatus;
+import com.rajesh.files.fileprocessor.exception.ProcessCancelledException;
+import com.rajesh.files.fileprocessor.io.ProcedureCodeFileReader;
+import com.rajesh.files.fileprocessor.loadtest.SyntheticDataGenerator;
+import com.rajesh.files.fileprocessor.repository.FacMsaTestTable;
+import com.rajesh.files.fileprocessor.repository.ProcessShardRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static com.rajesh.files.fileprocessor.repository.FacMsaTestTable.INFINITE;
+import static com.rajesh.files.fileprocessor.repository.FacMsaTestTable.row;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Sharded runs of one instance on an in-memory H2 FAC_MSA and PROCESS_SHARD, the runs created up front with small shards.
+ */
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:sharded;DB_CLOSE_DELAY=-1;IGNORE_UNKNOWN_SETTINGS=TRUE",
+		"spring.datasource.driver-class-name=org.h2.Driver",
+		"spring.datasource.username=sa",
+		"spring.datasource.password=",
+		"spring.jpa.hibernate.ddl-auto=none",
+		"spring.sql.init.mode=never",
+		"lookup.mode=database",
+		"process.shard.poll-interval=10"})
+class ShardedRunServiceTests {
+
+	private static final LocalDate RUN_DATE = LocalDate.of(2023, 5, 1);
+	private static final int LINES = 40;
+
+	@Autowired
+	private ShardedRunService shardedRunService;
+
+	@Autowired
+	private ProcedureCodeProcessorService processorService;
+
+	@Autowired
+	private ProcessShardRepository repository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@TempDir
+	Path tempDir;
+
+	@BeforeEach
+	void createTable() {
+		FacMsaTestTable.reset(jdbcTemplate);
+		for (int i = 0; i < LINES; i += 3) {
+			FacMsaTestTable.insert(jdbcTemplate, row(1, 10000 + i, "MSA", 5.0, LocalDate.of(2022, 1, 2), INFINITE));
+		}
+		ReflectionTestUtils.setField(processorService, "batchSize", 4);
+		ReflectionTestUtils.setField(processorService, "adaptiveBatchSize", false);
+	}
+
+	@AfterEach
+	void restoreSettings() {
+		ReflectionTestUtils.setField(processorService, "batchSize", 999);
+		ReflectionTestUtils.setField(processorService, "adaptiveBatchSize", true);
+		ReflectionTestUtils.setField(shardedRunService, "takeoverGrace", 10000L);
+	}
+
+	@Test
+	void mergesTheShardsInInputOrderAndSumsTheirCounters() throws IOException {
+		List<String> lines = inputLines();
+		Path input = writeInput("dataInput.txt", lines);
+		Path expectedOutput = tempDir.resolve("expected.csv");
+		ProcessStatistics expected = processorService.processProcData(new ProcessRun(input, expectedOutput, null, RUN_DATE)).getStatistics();
+		Path output = tempDir.resolve("dataOutput.csv");
+		createRun(input, output, 3);
+
+		ProcessStatus status = shardedRunService.process(input.toString(), output.toString());
+
+		assertArrayEquals(Files.readAllBytes(expectedOutput), Files.readAllBytes(output));
+		ProcessStatistics totals = status.getStatistics();
+		assertEquals(LINES, totals.getLinesRead());
+		assertEquals(expected.getMatchedRows(), totals.getMatchedRows());
+		assertEquals(expected.getUnmatchedRows(), totals.getUnmatchedRows());
+		assertEquals(expected.getMultiMatchedRows(), totals.getMultiMatchedRows());
+		assertEquals(expected.getChangedRows(), totals.getChangedRows());
+		assertEquals(expected.getUnchangedRows(), totals.getUnchangedRows());
+		assertEquals(expected.getOutputRows(), totals.getOutputRows());
+		// shard, part, checkpoint and merge files are gone
+		assertEquals(3, files().size(), files().toString());
+	}
+
+	@Test
+	void expiredShardIsResumedFromTheCheckpointOfTheEarlierAttempt() throws IOException, InterruptedException {
+		List<String> lines = inputLines();
+		Path input = writeInput("dataInput.txt", lines);
+		Path expectedOutput = tempDir.resolve("expected.csv");
+		processorService.processProcData(new ProcessRun(input, expectedOutput, null, RUN_DATE));
+		Path output = tempDir.resolve("dataOutput.csv");
+		String runId = createRun(input, output, 2);
+
+		// an instance that claimed the first shard, checkpointed its first lines and died
+		ProcessShard dead = repository.claimShard(runId, "dead", 1, 0);
+		int done = 5;
+		Path firstLinesOutput = tempDir.resolve("firstLines.csv");
+		ProcessStatus firstLines = processorService.processProcData(new ProcessRun(writeInput("firstLines.txt", lines.subList(0, done)),
+				firstLinesOutput, null, RUN_DATE));
+		byte[] written = Files.readAllBytes(firstLinesOutput);
+		Path deadShardFile = ShardedRunService.shardFile(output, dead.getShardNo(), dead.getAttempts());
+		Files.write(RunCheckpoint.partFile(deadShardFile), written);
+		RunCheckpoint.of(input, RUN_DATE, inputOffset(lines, done), firstLines.getStatistics(), written.length, checksum(written), 0)
+				.save(RunCheckpoint.checkpointFile(deadShardFile));
+		Files.delete(firstLinesOutput);
+		Files.delete(tempDir.resolve("firstLines.txt"));
+		ReflectionTestUtils.setField(shardedRunService, "takeoverGrace", 0L);
+		Thread.sleep(10);
+		double resumedBefore = meterRegistry.counter("procedure.runs.resumed").count();
+
+		ProcessStatus status = shardedRunService.process(input.toString(), output.toString());
+
+		assertArrayEquals(Files.readAllBytes(expectedOutput), Files.readAllBytes(output));
+		assertEquals(LINES, status.getStatistics().getLinesRead());
+		assertEquals(resumedBefore + 1, meterRegistry.counter("procedure.runs.resumed").count());
+		assertEquals(2, repository.findRun(runId).get(1).getDoneAttempt());
+		assertEquals(3, files().size(), files().toString());
+	}
+
+	@Test
+	void runWhoseLeaseIsNoLongerHeldStopsBeforeWriting() throws IOException {
+		Path input = writeInput("dataInput.txt", inputLines());
+		Path output = tempDir.resolve("dataOutput.csv");
+		ProcessRun run = new ProcessRun(input, output, null, RUN_DATE);
+		run.setHeld(() -> false);
+
+		assertThrows(ProcessCancelledException.class, () -> processorService.processProcData(run));
+
+		assertFalse(Files.exists(output));
+		assertFalse(Files.exists(RunCheckpoint.checkpointFile(output)));
+	}
+
+	private String createRun(Path input, Path output, int shards) throws IOException {
+		long size = Files.size(input);
+		String runId = ShardedRunService.runId(input, output, size);
+		repository.createRun(runId, RUN_DATE, ProcedureCodeFileReader.split(input, shards), size);
+		return runId;
+	}
+
+	private List<Path> files() throws IOException {
+		try (Stream<Path> files = Files.list(tempDir)) {
+			return files.collect(Collectors.toList());
+		}
+	}
+
+	private static List<String> inputLines() {
+		List<String> lines = new ArrayList<>();
+		for (int i = 0; i < LINES; i++) {
+			lines.add("1|" + (10000 + i) + "|FINE NEEDLE ASPIRATION|26|Derived|MSA|San Juan|" + (100 + i) + ".25");
+		}
+		return lines;
+	}
+
+	private Path writeInput(String name, List<String> lines) throws IOException {
+		List<String> withHeader = new ArrayList<>();
+		withHeader.add(SyntheticDataGenerator.HEADER);
+		withHeader.addAll(lines);
+		return Files.write(tempDir.resolve(name), (String.join("\n", withHeader) + "\n").getBytes(StandardCharsets.US_ASCII));
+	}
+
+	/**
+	 * @return input offset right after the first {@code count} data lines
+	 */
+	private static long inputOffset(List<String> lines, int count) {
+		long offset = SyntheticDataGenerator.HEADER.length() + 1;
+		for (String line : lines.subList(0, count)) {
+			offset += line.length() + 1;
+		}
+		return offset;
+	}
+
+	private static long checksum(byte[] bytes) {
+		CRC32 crc = new CRC32();
+		crc.update(bytes);
+		return crc.getValue();
+	}
+}